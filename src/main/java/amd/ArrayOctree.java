@@ -0,0 +1,801 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package amd;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * The octree color quantization of {@link Quantize}, keeping the tree in parallel primitive arrays indexed by node id
+ * instead of a tree of node objects. The nodes are visited in the same order and computed with the same integer
+ * arithmetic as in {@link Quantize}, so the palettes are identical, and so are the assigned colors unless
+ * {@link Assignment#LOOKUP_TABLE} is used. The arrays are kept between runs and grow only when a larger tree is
+ * needed, so an instance should be reused for many images, as the sprite builder does with one octree per thread and
+ * build. This class is not thread-safe.
+ */
+public final class ArrayOctree {
+
+    /** Id of the root node. */
+    private static final int ROOT = 0;
+
+    /** Id standing for no child node, the root is never a child. */
+    private static final int NONE = ROOT;
+
+    /** Number of nodes the arrays hold initially. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Number of bits of each color component used to address {@link Assignment#LOOKUP_TABLE} cells. */
+    private static final int LOOKUP_TABLE_BITS = 5;
+
+    /** How colors are mapped to the palette. */
+    private final Assignment assignment;
+
+    /** The parent node of each node, the root is its own parent. */
+    private int[] parent;
+
+    /** The 8 child nodes of each node, {@link #NONE} for missing children. */
+    private int[] child;
+
+    /** The number of child nodes of each node. */
+    private int[] childCount;
+
+    /** The index of each node within its parent. */
+    private int[] childIndex;
+
+    /** The level of each node within the tree. */
+    private int[] level;
+
+    /** The red color midpoint of each node. */
+    private int[] midRed;
+
+    /** The green color midpoint of each node. */
+    private int[] midGreen;
+
+    /** The blue color midpoint of each node. */
+    private int[] midBlue;
+
+    /** The pixel count for each node and all its children. */
+    private int[] numberPixels;
+
+    /** The pixel count for each node. */
+    private int[] unique;
+
+    /** The sum of the red components of the pixels of each node. */
+    private int[] totalRed;
+
+    /** The sum of the green components of the pixels of each node. */
+    private int[] totalGreen;
+
+    /** The sum of the blue components of the pixels of each node. */
+    private int[] totalBlue;
+
+    /** The palette index of each node. */
+    private int[] colorNumber;
+
+    /** Number of node ids used so far in the current run. */
+    private int allocated;
+
+    /** Ids of pruned nodes, available for new nodes. */
+    private int[] freeNodes;
+
+    /** Number of ids in {@link #freeNodes}. */
+    private int freeCount;
+
+    /** The depth of the tree. */
+    private int depth;
+
+    /** Counter for the number of colors in the tree, recalculated often. */
+    private int colors;
+
+    /** Counter for the number of nodes in the tree, excluding the root. */
+    private int nodes;
+
+    /** The palette built by the current run. */
+    private int[] colormap;
+
+    /** Palette indices of the colors seen in the current run, with {@link Assignment#MEMOIZED}. */
+    private int[] memoKeys;
+
+    /** Palette indices of the colors in {@link #memoKeys}. */
+    private int[] memoValues;
+
+    /** Number of colors in {@link #memoKeys}. */
+    private int memoSize;
+
+    /** The mask of the slot indices of {@link #memoKeys}, its length is a power of two. */
+    private int memoMask;
+
+    /** Palette indices of the cells of the color space, with {@link Assignment#LOOKUP_TABLE}. */
+    private int[] lookupTable;
+
+    /** Smallest distance found by the current closest color search. */
+    private int searchDistance;
+
+    /** Palette index found by the current closest color search. */
+    private int searchColorNumber;
+
+    /**
+     * Creates an empty octree mapping colors to the palette with {@link Assignment#MEMOIZED}.
+     */
+    public ArrayOctree() {
+        this(Assignment.MEMOIZED);
+    }
+
+    /**
+     * Creates an empty octree.
+     *
+     * @param assignment
+     *            how colors are mapped to the palette
+     */
+    public ArrayOctree(Assignment assignment) {
+        this.assignment = assignment;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Reduces the colors of the image the same way as {@link Quantize#quantizeImage(int[], int)}.
+     *
+     * @param pixels
+     *            an array of ARGB pixels, overwritten with the palette index of each pixel
+     * @param maxColors
+     *            the desired number of colors
+     *
+     * @return the new color palette
+     */
+    public int[] quantizeImage(int[] pixels, int maxColors) {
+        return quantizeImage(pixels, maxColors, newDepth -> {
+            // Ignore
+        });
+    }
+
+    /**
+     * Reduces the colors of the image the same way as {@link Quantize#quantizeImage(int[], int)}, reporting pruning
+     * to the provided listener instead of printing it.
+     *
+     * @param pixels
+     *            an array of ARGB pixels, overwritten with the palette index of each pixel
+     * @param maxColors
+     *            the desired number of colors
+     * @param pruningListener
+     *            called with the new tree depth whenever the tree exceeds {@link Quantize#MAX_NODES} nodes and its
+     *            deepest level is pruned
+     *
+     * @return the new color palette
+     */
+    public int[] quantizeImage(int[] pixels, int maxColors, IntConsumer pruningListener) {
+        reset(maxColors);
+        classification(pixels, pruningListener);
+        reduction(maxColors);
+        assignment(pixels);
+
+        final int[] result = colormap;
+        colormap = null;
+        return result;
+    }
+
+    /**
+     * Reduces the colors of an image given as a histogram of its distinct colors. The sums kept by the tree do not
+     * depend on the order of the pixels, so unless the tree has to be pruned, the palette is the same as
+     * {@link #quantizeImage(int[], int, IntConsumer)} builds for an image with each color repeated as many times as its
+     * count. The colors are classified from the last one, so when the tree may be pruned, see
+     * {@link #dependsOnColorOrder(int)}, the palette is the same only if the colors are in the reverse order in which
+     * {@link #quantizeImage(int[], int, IntConsumer)} would meet their first pixels. Each distinct color is searched
+     * in the tree once, so the assigned colors are exact whatever the {@link Assignment} of this octree is.
+     *
+     * @param distinctColors
+     *            an array of distinct RGB colors, overwritten with the palette index of each color
+     * @param counts
+     *            the number of pixels of each color
+     * @param length
+     *            the number of colors in the arrays
+     * @param maxColors
+     *            the desired number of colors
+     * @param pruningListener
+     *            called with the new tree depth whenever the tree exceeds {@link Quantize#MAX_NODES} nodes and its
+     *            deepest level is pruned
+     *
+     * @return the new color palette
+     */
+    public int[] quantizeHistogram(int[] distinctColors, int[] counts, int length, int maxColors,
+            IntConsumer pruningListener) {
+        reset(maxColors);
+        for (int i = length; i-- > 0;) {
+            classification(distinctColors[i], counts[i], pruningListener);
+        }
+        reduction(maxColors);
+
+        buildColormap();
+        for (int i = 0; i < length; i++) {
+            final int color = distinctColors[i];
+            distinctColors[i] = closestColor(color >> 16 & 0xFF, color >> 8 & 0xFF, color & 0xFF);
+        }
+
+        final int[] result = colormap;
+        colormap = null;
+        return result;
+    }
+
+    /**
+     * Checks if the tree may have to be pruned while the colors are classified, in which case the palette depends on
+     * the order of the colors. The tree for up to 1023 colors never outgrows {@link Quantize#MAX_NODES}
+     * nodes.
+     *
+     * @param maxColors
+     *            the desired number of colors
+     *
+     * @return true, if the order of the colors matters
+     */
+    public static boolean dependsOnColorOrder(int maxColors) {
+        long levelNodes = 1;
+        long treeNodes = 1;
+        for (int level = depth(maxColors); level > 0; level--) {
+            levelNodes *= 8;
+            treeNodes += levelNodes;
+        }
+        return treeNodes > Quantize.MAX_NODES;
+    }
+
+    /**
+     * Computes the depth of the tree, log4 of the desired number of colors.
+     *
+     * @param maxColors
+     *            the desired number of colors
+     *
+     * @return the depth
+     */
+    private static int depth(int maxColors) {
+        int depth;
+        int i = maxColors;
+        for (depth = 1; i != 0; depth++) {
+            i /= 4;
+        }
+        if (depth > 1) {
+            --depth;
+        }
+        if (depth > Quantize.MAX_TREE_DEPTH) {
+            depth = Quantize.MAX_TREE_DEPTH;
+        } else if (depth < 2) {
+            depth = 2;
+        }
+        return depth;
+    }
+
+    /**
+     * Prepares an empty tree for a new run.
+     *
+     * @param maxColors
+     *            the desired number of colors
+     */
+    private void reset(int maxColors) {
+        depth = depth(maxColors);
+        colors = 0;
+        nodes = 0;
+        allocated = 0;
+        freeCount = 0;
+
+        final int root = newNode();
+        parent[root] = root;
+        childIndex[root] = 0;
+        level[root] = 0;
+        numberPixels[root] = Integer.MAX_VALUE;
+        midRed[root] = Quantize.MAX_RGB + 1 >> 1;
+        midGreen[root] = Quantize.MAX_RGB + 1 >> 1;
+        midBlue[root] = Quantize.MAX_RGB + 1 >> 1;
+    }
+
+    /**
+     * Builds the tree from the pixels.
+     *
+     * @param pixels
+     *            the pixels
+     * @param pruningListener
+     *            the pruning listener
+     */
+    private void classification(int[] pixels, IntConsumer pruningListener) {
+        for (int i = pixels.length; i-- > 0;) {
+            classification(pixels[i], 1, pruningListener);
+        }
+    }
+
+    /**
+     * Adds pixels of the same color to the tree.
+     *
+     * @param pixel
+     *            the color
+     * @param count
+     *            the number of pixels
+     * @param pruningListener
+     *            the pruning listener
+     */
+    private void classification(int pixel, int count, IntConsumer pruningListener) {
+        final int red = pixel >> 16 & 0xFF;
+        final int green = pixel >> 8 & 0xFF;
+        final int blue = pixel & 0xFF;
+
+        // a hard limit on the number of nodes in the tree
+        if (nodes > Quantize.MAX_NODES) {
+            pruneLevel(ROOT);
+            --depth;
+            pruningListener.accept(depth);
+        }
+
+        // walk the tree to depth, increasing the number_pixels count for each node
+        int node = ROOT;
+        for (int nodeLevel = 1; nodeLevel <= depth; ++nodeLevel) {
+            final int id = childId(node, red, green, blue);
+            int next = child[node * 8 + id];
+            if (next == NONE) {
+                next = newChild(node, id, nodeLevel);
+            }
+            node = next;
+            numberPixels[node] += Quantize.SHIFT[nodeLevel] * count;
+        }
+
+        unique[node] += count;
+        totalRed[node] += red * count;
+        totalGreen[node] += green * count;
+        totalBlue[node] += blue * count;
+    }
+
+    /**
+     * Prunes the tree until it has no more than the desired number of colors.
+     *
+     * @param maxColors
+     *            the desired number of colors
+     */
+    private void reduction(int maxColors) {
+        int threshold = 1;
+        while (colors > maxColors) {
+            colors = 0;
+            threshold = reduce(ROOT, threshold, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Builds the palette and replaces each pixel with the index of the closest palette color.
+     *
+     * @param pixels
+     *            the pixels
+     */
+    private void assignment(int[] pixels) {
+        buildColormap();
+
+        switch (assignment) {
+            case MEMOIZED:
+                clearMemo();
+                for (int i = pixels.length; i-- > 0;) {
+                    pixels[i] = memoizedClosestColor(pixels[i] & 0xFFFFFF);
+                }
+                break;
+
+            case LOOKUP_TABLE:
+                if (lookupTable == null) {
+                    lookupTable = new int[1 << 3 * LOOKUP_TABLE_BITS];
+                }
+                Arrays.fill(lookupTable, -1);
+                final int shift = 8 - LOOKUP_TABLE_BITS;
+                final int center = 1 << shift >> 1;
+                for (int i = pixels.length; i-- > 0;) {
+                    final int pixel = pixels[i];
+                    final int red = (pixel >> 16 & 0xFF) >> shift;
+                    final int green = (pixel >> 8 & 0xFF) >> shift;
+                    final int blue = (pixel & 0xFF) >> shift;
+                    final int cell = (red << LOOKUP_TABLE_BITS | green) << LOOKUP_TABLE_BITS | blue;
+                    if (lookupTable[cell] < 0) {
+                        lookupTable[cell] = closestColor((red << shift) + center, (green << shift) + center,
+                                (blue << shift) + center);
+                    }
+                    pixels[i] = lookupTable[cell];
+                }
+                break;
+
+            default:
+                for (int i = pixels.length; i-- > 0;) {
+                    final int pixel = pixels[i];
+                    pixels[i] = closestColor(pixel >> 16 & 0xFF, pixel >> 8 & 0xFF, pixel & 0xFF);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Builds the palette from the colors left in the tree.
+     */
+    private void buildColormap() {
+        colormap = new int[colors];
+        colors = 0;
+        colormap(ROOT);
+    }
+
+    /**
+     * Finds the palette index of a color, the same way as {@link Quantize} does.
+     *
+     * @param red
+     *            the red
+     * @param green
+     *            the green
+     * @param blue
+     *            the blue
+     *
+     * @return the palette index
+     */
+    private int closestColor(int red, int green, int blue) {
+        // walk the tree to find the cube containing that color
+        int node = ROOT;
+        for (;;) {
+            final int next = child[node * 8 + childId(node, red, green, blue)];
+            if (next == NONE) {
+                break;
+            }
+            node = next;
+        }
+
+        // Find the closest color
+        searchDistance = Integer.MAX_VALUE;
+        closestColor(parent[node], red, green, blue);
+        return searchColorNumber;
+    }
+
+    /**
+     * Finds the palette index of a color, searching the tree only for colors not seen before in the current run.
+     *
+     * @param rgb
+     *            the color, without alpha
+     *
+     * @return the palette index
+     */
+    private int memoizedClosestColor(int rgb) {
+        // Keys are stored with the alpha bits set, so that no key is 0
+        final int key = rgb | 0xFF000000;
+        int slot = hash(key) & memoMask;
+        int existing;
+        while ((existing = memoKeys[slot]) != 0) {
+            if (existing == key) {
+                return memoValues[slot];
+            }
+            slot = slot + 1 & memoMask;
+        }
+
+        final int colorNumber = closestColor(rgb >> 16 & 0xFF, rgb >> 8 & 0xFF, rgb & 0xFF);
+        memoKeys[slot] = key;
+        memoValues[slot] = colorNumber;
+        if (++memoSize > memoMask >> 1) {
+            growMemo();
+        }
+        return colorNumber;
+    }
+
+    /**
+     * Spreads the bits of a memoized color, so that similar colors do not end up in adjacent slots.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the hash
+     */
+    private static int hash(int key) {
+        final int h = key * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+
+    /**
+     * Empties the memoized colors, keeping the storage.
+     */
+    private void clearMemo() {
+        if (memoKeys == null) {
+            memoKeys = new int[INITIAL_CAPACITY];
+            memoValues = new int[INITIAL_CAPACITY];
+            memoMask = INITIAL_CAPACITY - 1;
+        } else {
+            Arrays.fill(memoKeys, 0);
+        }
+        memoSize = 0;
+    }
+
+    /**
+     * Moves the memoized colors to a table twice as large.
+     */
+    private void growMemo() {
+        final int[] oldKeys = memoKeys;
+        final int[] oldValues = memoValues;
+        memoKeys = new int[oldKeys.length << 1];
+        memoValues = new int[oldKeys.length << 1];
+        memoMask = memoKeys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            final int key = oldKeys[i];
+            if (key != 0) {
+                int slot = hash(key) & memoMask;
+                while (memoKeys[slot] != 0) {
+                    slot = slot + 1 & memoMask;
+                }
+                memoKeys[slot] = key;
+                memoValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Computes the index of the child node containing the color.
+     *
+     * @param node
+     *            the node
+     * @param red
+     *            the red
+     * @param green
+     *            the green
+     * @param blue
+     *            the blue
+     *
+     * @return the child index
+     */
+    private int childId(int node, int red, int green, int blue) {
+        return (red > midRed[node] ? 1 : 0) | (green > midGreen[node] ? 1 : 0) << 1
+                | (blue > midBlue[node] ? 1 : 0) << 2;
+    }
+
+    /**
+     * Adds a child node.
+     *
+     * @param parentNode
+     *            the parent node
+     * @param id
+     *            the index of the child within the parent
+     * @param nodeLevel
+     *            the level of the child
+     *
+     * @return the child node
+     */
+    private int newChild(int parentNode, int id, int nodeLevel) {
+        final int node = newNode();
+        parent[node] = parentNode;
+        childIndex[node] = id;
+        level[node] = nodeLevel;
+
+        // add to the cube
+        ++nodes;
+        if (nodeLevel == depth) {
+            ++colors;
+        }
+
+        // add to the parent
+        ++childCount[parentNode];
+        child[parentNode * 8 + id] = node;
+
+        // figure out our midpoint
+        final int bi = 1 << Quantize.MAX_TREE_DEPTH - nodeLevel >> 1;
+        midRed[node] = midRed[parentNode] + ((id & 1) > 0 ? bi : -bi);
+        midGreen[node] = midGreen[parentNode] + ((id & 2) > 0 ? bi : -bi);
+        midBlue[node] = midBlue[parentNode] + ((id & 4) > 0 ? bi : -bi);
+        return node;
+    }
+
+    /**
+     * Takes an unused node id, growing the arrays if needed, and clears the node's counters.
+     *
+     * @return the node id
+     */
+    private int newNode() {
+        final int node;
+        if (freeCount > 0) {
+            node = freeNodes[--freeCount];
+        } else {
+            if (allocated == parent.length) {
+                allocate(parent.length << 1);
+            }
+            node = allocated++;
+        }
+
+        Arrays.fill(child, node * 8, node * 8 + 8, NONE);
+        childCount[node] = 0;
+        numberPixels[node] = 0;
+        unique[node] = 0;
+        totalRed[node] = 0;
+        totalGreen[node] = 0;
+        totalBlue[node] = 0;
+        colorNumber[node] = 0;
+        return node;
+    }
+
+    /**
+     * Grows the arrays, keeping their content.
+     *
+     * @param capacity
+     *            the number of nodes to hold
+     */
+    private void allocate(int capacity) {
+        if (parent == null) {
+            parent = new int[capacity];
+            child = new int[capacity * 8];
+            childCount = new int[capacity];
+            childIndex = new int[capacity];
+            level = new int[capacity];
+            midRed = new int[capacity];
+            midGreen = new int[capacity];
+            midBlue = new int[capacity];
+            numberPixels = new int[capacity];
+            unique = new int[capacity];
+            totalRed = new int[capacity];
+            totalGreen = new int[capacity];
+            totalBlue = new int[capacity];
+            colorNumber = new int[capacity];
+            freeNodes = new int[capacity];
+            return;
+        }
+
+        parent = Arrays.copyOf(parent, capacity);
+        child = Arrays.copyOf(child, capacity * 8);
+        childCount = Arrays.copyOf(childCount, capacity);
+        childIndex = Arrays.copyOf(childIndex, capacity);
+        level = Arrays.copyOf(level, capacity);
+        midRed = Arrays.copyOf(midRed, capacity);
+        midGreen = Arrays.copyOf(midGreen, capacity);
+        midBlue = Arrays.copyOf(midBlue, capacity);
+        numberPixels = Arrays.copyOf(numberPixels, capacity);
+        unique = Arrays.copyOf(unique, capacity);
+        totalRed = Arrays.copyOf(totalRed, capacity);
+        totalGreen = Arrays.copyOf(totalGreen, capacity);
+        totalBlue = Arrays.copyOf(totalBlue, capacity);
+        colorNumber = Arrays.copyOf(colorNumber, capacity);
+        freeNodes = Arrays.copyOf(freeNodes, capacity);
+    }
+
+    /**
+     * Merges the node into its parent and removes it from the tree.
+     *
+     * @param node
+     *            the node
+     */
+    private void pruneChild(int node) {
+        final int parentNode = parent[node];
+        --childCount[parentNode];
+        unique[parentNode] += unique[node];
+        totalRed[parentNode] += totalRed[node];
+        totalGreen[parentNode] += totalGreen[node];
+        totalBlue[parentNode] += totalBlue[node];
+        child[parentNode * 8 + childIndex[node]] = NONE;
+        --nodes;
+        freeNodes[freeCount++] = node;
+    }
+
+    /**
+     * Prunes the nodes at the deepest level of the subtree.
+     *
+     * @param node
+     *            the subtree root
+     */
+    private void pruneLevel(int node) {
+        if (childCount[node] != 0) {
+            for (int i = 0; i < 8; i++) {
+                final int childNode = child[node * 8 + i];
+                if (childNode != NONE) {
+                    pruneLevel(childNode);
+                }
+            }
+        }
+        if (level[node] == depth) {
+            pruneChild(node);
+        }
+    }
+
+    /**
+     * Prunes the nodes of the subtree with no more pixels than the threshold and counts the remaining colors.
+     *
+     * @param node
+     *            the subtree root
+     * @param threshold
+     *            the threshold
+     * @param nextThreshold
+     *            the smallest pixel count above the threshold found so far
+     *
+     * @return the smallest pixel count above the threshold
+     */
+    private int reduce(int node, int threshold, int nextThreshold) {
+        if (childCount[node] != 0) {
+            for (int i = 0; i < 8; i++) {
+                final int childNode = child[node * 8 + i];
+                if (childNode != NONE) {
+                    nextThreshold = reduce(childNode, threshold, nextThreshold);
+                }
+            }
+        }
+        if (numberPixels[node] <= threshold) {
+            pruneChild(node);
+        } else {
+            if (unique[node] != 0) {
+                colors++;
+            }
+            if (numberPixels[node] < nextThreshold) {
+                nextThreshold = numberPixels[node];
+            }
+        }
+        return nextThreshold;
+    }
+
+    /**
+     * Adds the colors of the subtree to the palette.
+     *
+     * @param node
+     *            the subtree root
+     */
+    private void colormap(int node) {
+        if (childCount[node] != 0) {
+            for (int i = 0; i < 8; i++) {
+                final int childNode = child[node * 8 + i];
+                if (childNode != NONE) {
+                    colormap(childNode);
+                }
+            }
+        }
+        final int count = unique[node];
+        if (count != 0) {
+            final int r = (totalRed[node] + (count >> 1)) / count;
+            final int g = (totalGreen[node] + (count >> 1)) / count;
+            final int b = (totalBlue[node] + (count >> 1)) / count;
+            colormap[colors] = 0xFF << 24 | (r & 0xFF) << 16 | (g & 0xFF) << 8 | b & 0xFF;
+            colorNumber[node] = colors++;
+        }
+    }
+
+    /**
+     * Finds the palette color of the subtree closest to the color.
+     *
+     * @param node
+     *            the subtree root
+     * @param red
+     *            the red
+     * @param green
+     *            the green
+     * @param blue
+     *            the blue
+     */
+    private void closestColor(int node, int red, int green, int blue) {
+        if (childCount[node] != 0) {
+            for (int i = 0; i < 8; i++) {
+                final int childNode = child[node * 8 + i];
+                if (childNode != NONE) {
+                    closestColor(childNode, red, green, blue);
+                }
+            }
+        }
+
+        if (unique[node] != 0) {
+            final int distance = Quantize.Cube.Node.distance(colormap[colorNumber[node]], red, green, blue);
+            if (distance < searchDistance) {
+                searchDistance = distance;
+                searchColorNumber = colorNumber[node];
+            }
+        }
+    }
+
+    /**
+     * Strategies of mapping the image's colors to the palette, once the palette is built.
+     */
+    public enum Assignment {
+
+        /**
+         * Searches the tree for the closest palette color for every pixel, exactly as {@link Quantize} does.
+         */
+        SEARCH,
+
+        /**
+         * Searches the tree once for each distinct color of the image and remembers the result. The result depends
+         * only on the color, so the assigned colors are exactly the same as with {@link #SEARCH}, but images with
+         * many pixels of the same colors are mapped much faster.
+         */
+        MEMOIZED,
+
+        /**
+         * Divides the color space into 32 x 32 x 32 cells and searches the tree once for the center of each cell the
+         * image's colors fall into, then maps all colors of the cell to the same palette color. The memory needed does
+         * not depend on the number of distinct colors, but the result is approximate: colors near the border of a cell
+         * may get a different, slightly more distant palette color than with {@link #SEARCH}.
+         */
+        LOOKUP_TABLE
+    }
+}
@@ -291,6 +291,35 @@ public class Quantize {
      * @return The new color palette.
      */
     public static int[] quantizeImage(int[][] pixels, int maxColors) {
+        final int width = pixels.length;
+        final int height = pixels[0].length;
+
+        // Column by column, so that the pixels are classified in the same order as before
+        final int[] flat = new int[width * height];
+        for (int x = 0; x < width; x++) {
+            System.arraycopy(pixels[x], 0, flat, x * height, height);
+        }
+
+        final int[] colormap = quantizeImage(flat, maxColors);
+        for (int x = 0; x < width; x++) {
+            System.arraycopy(flat, x * height, pixels[x], 0, height);
+        }
+        return colormap;
+    }
+
+    /**
+     * Reduce the image to the given number of colors. The pixels are reduced in place. The pixels can be in any order,
+     * for example row by row as returned by {@link java.awt.image.BufferedImage#getRGB(int, int, int, int, int[], int,
+     * int)}.
+     *
+     * @param pixels
+     *            the pixels
+     * @param maxColors
+     *            the max colors
+     *
+     * @return The new color palette.
+     */
+    public static int[] quantizeImage(int[] pixels, int maxColors) {
         Cube cube = new Cube(pixels, maxColors);
         cube.classification();
         cube.reduction();
@@ -304,7 +333,7 @@ public class Quantize {
     static class Cube {
 
         /** The pixels. */
-        int[][] pixels;
+        int[] pixels;
 
         /** The max colors. */
         int maxColors;
@@ -335,7 +364,7 @@ public class Quantize {
          * @param maxColors
          *            the max colors
          */
-        Cube(int[][] pixels, int maxColors) {
+        Cube(int[] pixels, int maxColors) {
             this.pixels = pixels;
             this.maxColors = maxColors;
 
@@ -384,44 +413,39 @@ public class Quantize {
          * pixels represented by this node.
          */
         void classification() {
-            int[][] pixels = this.pixels;
-
-            int width = pixels.length;
-            int height = pixels[0].length;
+            int[] pixels = this.pixels;
 
             // convert to indexed color
-            for (int x = width; x-- > 0;) {
-                for (int y = height; y-- > 0;) {
-                    int pixel = pixels[x][y];
-                    int red = pixel >> 16 & 0xFF;
-                    int green = pixel >> 8 & 0xFF;
-                    int blue = pixel >> 0 & 0xFF;
-
-                    // a hard limit on the number of nodes in the tree
-                    if (nodes > MAX_NODES) {
-                        System.out.println("pruning");
-                        root.pruneLevel();
-                        --depth;
-                    }
+            for (int i = pixels.length; i-- > 0;) {
+                int pixel = pixels[i];
+                int red = pixel >> 16 & 0xFF;
+                int green = pixel >> 8 & 0xFF;
+                int blue = pixel >> 0 & 0xFF;
+
+                // a hard limit on the number of nodes in the tree
+                if (nodes > MAX_NODES) {
+                    System.out.println("pruning");
+                    root.pruneLevel();
+                    --depth;
+                }
 
-                    // walk the tree to depth, increasing the
-                    // number_pixels count for each node
-                    Node node = root;
-                    for (int level = 1; level <= depth; ++level) {
-                        int id = (red > node.midRed ? 1 : 0) << 0 | (green > node.midGreen ? 1 : 0) << 1
-                                | (blue > node.midBlue ? 1 : 0) << 2;
-                        if (node.child[id] == null) {
-                            new Node(node, id, level);
-                        }
-                        node = node.child[id];
-                        node.numberPixels += SHIFT[level];
+                // walk the tree to depth, increasing the
+                // number_pixels count for each node
+                Node node = root;
+                for (int level = 1; level <= depth; ++level) {
+                    int id = (red > node.midRed ? 1 : 0) << 0 | (green > node.midGreen ? 1 : 0) << 1
+                            | (blue > node.midBlue ? 1 : 0) << 2;
+                    if (node.child[id] == null) {
+                        new Node(node, id, level);
                     }
-
-                    ++node.unique;
-                    node.totalRed += red;
-                    node.totalGreen += green;
-                    node.totalBlue += blue;
+                    node = node.child[id];
+                    node.numberPixels += SHIFT[level];
                 }
+
+                ++node.unique;
+                node.totalRed += red;
+                node.totalGreen += green;
+                node.totalBlue += blue;
             }
         }
 
@@ -477,43 +501,38 @@ public class Quantize {
             colors = 0;
             root.colormap();
 
-            int[][] pixels = this.pixels;
-
-            int width = pixels.length;
-            int height = pixels[0].length;
+            int[] pixels = this.pixels;
 
             Search search = new Search();
 
             // convert to indexed color
-            for (int x = width; x-- > 0;) {
-                for (int y = height; y-- > 0;) {
-                    int pixel = pixels[x][y];
-                    int red = pixel >> 16 & 0xFF;
-                    int green = pixel >> 8 & 0xFF;
-                    int blue = pixel >> 0 & 0xFF;
-
-                    // walk the tree to find the cube containing that color
-                    Node node = root;
-                    for (;;) {
-                        int id = (red > node.midRed ? 1 : 0) << 0 | (green > node.midGreen ? 1 : 0) << 1
-                                | (blue > node.midBlue ? 1 : 0) << 2;
-                        if (node.child[id] == null) {
-                            break;
-                        }
-                        node = node.child[id];
+            for (int i = pixels.length; i-- > 0;) {
+                int pixel = pixels[i];
+                int red = pixel >> 16 & 0xFF;
+                int green = pixel >> 8 & 0xFF;
+                int blue = pixel >> 0 & 0xFF;
+
+                // walk the tree to find the cube containing that color
+                Node node = root;
+                for (;;) {
+                    int id = (red > node.midRed ? 1 : 0) << 0 | (green > node.midGreen ? 1 : 0) << 1
+                            | (blue > node.midBlue ? 1 : 0) << 2;
+                    if (node.child[id] == null) {
+                        break;
                     }
+                    node = node.child[id];
+                }
 
-                    if (QUICK) {
-                        // if QUICK is set, just use that
-                        // node. Strictly speaking, this isn't
-                        // necessarily best match.
-                        pixels[x][y] = node.colorNumber;
-                    } else {
-                        // Find the closest color.
-                        search.distance = Integer.MAX_VALUE;
-                        node.parent.closestColor(red, green, blue, search);
-                        pixels[x][y] = search.colorNumber;
-                    }
+                if (QUICK) {
+                    // if QUICK is set, just use that
+                    // node. Strictly speaking, this isn't
+                    // necessarily best match.
+                    pixels[i] = node.colorNumber;
+                } else {
+                    // Find the closest color.
+                    search.distance = Integer.MAX_VALUE;
+                    node.parent.closestColor(red, green, blue, search);
+                    pixels[i] = search.colorNumber;
                 }
             }
         }
@@ -0,0 +1,194 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Objects;
+
+import org.carrot2.util.FileUtils;
+
+/**
+ * A cache of decoded individual images, which can be shared between {@link SpriteBuilder}s and builds to avoid
+ * decoding the same images again, for example in watch mode or when the Ant task runs many times in one JVM. Images
+ * are identified by the canonical path of the image file together with its size and last modification time, so a
+ * changed file is decoded again. Only images read from the local file system are cached, see
+ * {@link org.carrot2.labs.smartsprites.resource.ResourceHandler#readsLocalFiles()}. The cache is bounded by the
+ * total number of bytes of the decoded pixels, the least recently used images are evicted first. This class is
+ * thread-safe, cached images must not be modified.
+ */
+public final class DecodedImageCache {
+
+    /** The default maximum number of bytes of the cached pixels. */
+    public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+    /** The cached images. */
+    private final Cache<Key, BufferedImage> images;
+
+    /**
+     * Creates a cache holding at most {@link #DEFAULT_MAXIMUM_BYTES} of pixels.
+     */
+    public DecodedImageCache() {
+        this(DEFAULT_MAXIMUM_BYTES);
+    }
+
+    /**
+     * Creates a cache holding at most the provided number of bytes of pixels.
+     *
+     * @param maximumBytes
+     *            the maximum number of bytes of the cached pixels
+     */
+    public DecodedImageCache(long maximumBytes) {
+        // A single segment, so that the least recently used image of the whole cache is evicted first
+        images = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(maximumBytes)
+                .weigher((Key key, BufferedImage image) -> weight(image)).recordStats().build();
+    }
+
+    /**
+     * Gets the statistics of this cache since it was created.
+     *
+     * @return the hit, miss and eviction counts
+     */
+    public CacheStats getStats() {
+        return images.stats();
+    }
+
+    /**
+     * Discards the cached images of a file.
+     *
+     * @param path
+     *            the path of the file
+     */
+    public void invalidate(String path) {
+        if (Strings.isNullOrEmpty(path)) {
+            return;
+        }
+
+        final String canonicalPath = FileUtils.getCanonicalOrAbsoluteFile(path).getPath();
+        images.asMap().keySet().removeIf(key -> key.path.equals(canonicalPath));
+    }
+
+    /**
+     * Discards all cached images.
+     */
+    public void invalidateAll() {
+        images.invalidateAll();
+    }
+
+    /**
+     * Identifies the current content of a file. Must be called before the file is read, so that an image decoded from
+     * content changed in the meantime is not cached under the new key.
+     *
+     * @param path
+     *            the path of the file
+     *
+     * @return the key or <code>null</code> if the path does not denote a file in the local file system
+     */
+    Key key(String path) {
+        if (Strings.isNullOrEmpty(path)) {
+            return null;
+        }
+
+        final File file = FileUtils.getCanonicalOrAbsoluteFile(path);
+        if (!file.isFile()) {
+            return null;
+        }
+        return new Key(file.getPath(), file.length(), file.lastModified());
+    }
+
+    /**
+     * Gets a cached image.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the image or <code>null</code> if the image is not cached
+     */
+    BufferedImage get(Key key) {
+        return images.getIfPresent(key);
+    }
+
+    /**
+     * Caches an image.
+     *
+     * @param key
+     *            the key
+     * @param image
+     *            the image
+     */
+    void put(Key key, BufferedImage image) {
+        images.put(key, image);
+    }
+
+    /**
+     * Estimates the number of bytes of the image's pixels.
+     *
+     * @param image
+     *            the image
+     *
+     * @return the weight, capped at {@link Integer#MAX_VALUE}
+     */
+    private static int weight(BufferedImage image) {
+        final long bytes = (long) image.getWidth() * image.getHeight()
+                * ((image.getColorModel().getPixelSize() + 7) / 8);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes));
+    }
+
+    /**
+     * Identifies the content of an image file.
+     */
+    static final class Key {
+
+        /** The canonical path. */
+        final String path;
+
+        /** The file size. */
+        private final long size;
+
+        /** The last modification time. */
+        private final long lastModified;
+
+        /**
+         * Instantiates a new key.
+         *
+         * @param path
+         *            the path
+         * @param size
+         *            the size
+         * @param lastModified
+         *            the last modified
+         */
+        Key(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return size == other.size && lastModified == other.lastModified && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, lastModified);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites;
+
+import java.io.IOException;
+
+import org.carrot2.labs.smartsprites.message.Message.MessageLevel;
+import org.carrot2.labs.smartsprites.message.MessageLog;
+import org.carrot2.labs.smartsprites.resource.ResourceHandler;
+
+/**
+ * The outcome of a {@link LoggedTask} run with its own buffered message log, so that it can run concurrently with other
+ * tasks. Replaying the results in the order of tasks produces the same log as running the tasks one after another.
+ *
+ * @param <T>
+ *            the result type
+ */
+final class LoggedTaskResult<T> {
+
+    /** The buffered log of the task. */
+    private final MessageLog messageLog;
+
+    /** The result, <code>null</code> if the task failed. */
+    private T value;
+
+    /** The exception the task failed with, if any. */
+    private Exception exception;
+
+    /**
+     * Instantiates a new logged task result.
+     *
+     * @param messageLog
+     *            the buffered log of the task
+     */
+    private LoggedTaskResult(MessageLog messageLog) {
+        this.messageLog = messageLog;
+    }
+
+    /**
+     * A task that logs messages to the provided log and accesses resources through the provided resource handler.
+     *
+     * @param <T>
+     *            the result type
+     */
+    @FunctionalInterface
+    interface LoggedTask<T> {
+
+        /**
+         * Runs the task.
+         *
+         * @param messageLog
+         *            the message log
+         * @param resourceHandler
+         *            the resource handler
+         *
+         * @return the result
+         *
+         * @throws IOException
+         *             Signals that an I/O exception has occurred.
+         */
+        T run(MessageLog messageLog, ResourceHandler resourceHandler) throws IOException;
+    }
+
+    /**
+     * Runs a task with a {@link MessageLog#buffered()} log derived from the provided log and a resource handler
+     * reporting to that buffered log.
+     *
+     * @param <T>
+     *            the result type
+     * @param messageLog
+     *            the log the task's messages will be passed on to
+     * @param resourceHandler
+     *            the resource handler to derive the task's resource handler from
+     * @param task
+     *            the task
+     *
+     * @return the result of the task along with the messages it logged
+     */
+    static <T> LoggedTaskResult<T> run(MessageLog messageLog, ResourceHandler resourceHandler, LoggedTask<T> task) {
+        final LoggedTaskResult<T> result = new LoggedTaskResult<>(messageLog.buffered());
+        try {
+            result.value = task.run(result.messageLog, resourceHandler.withMessageLog(result.messageLog));
+        } catch (final IOException | RuntimeException e) {
+            result.exception = e;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the task logged messages of at least the provided level.
+     *
+     * @param level
+     *            the minimum level
+     *
+     * @return <code>true</code> if the task logged such messages
+     */
+    boolean hasMessages(MessageLevel level) {
+        return messageLog.hasBufferedMessages(level);
+    }
+
+    /**
+     * Passes on the task's messages and final location to the log the task was run with, then returns the result or
+     * rethrows the exception of the task, just like if the task was run directly with that log.
+     *
+     * @return the result
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    T replay() throws IOException {
+        messageLog.flush();
+
+        if (exception instanceof IOException) {
+            throw (IOException) exception;
+        }
+        if (exception != null) {
+            throw (RuntimeException) exception;
+        }
+        return value;
+    }
+}
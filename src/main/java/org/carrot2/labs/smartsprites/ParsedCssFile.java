@@ -0,0 +1,142 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The content of a CSS file read into memory once, along with the SmartSprites directives found in it. Sprite image
+ * directives are parsed when the file is read, sprite reference directives are kept in their raw form and resolved
+ * once all sprite image directives are known.
+ */
+public class ParsedCssFile {
+
+    /** Path to the CSS file. */
+    public final String cssFile;
+
+    /** Content of the CSS file. */
+    private final String content;
+
+    /** Offsets of the first character of each line in {@link #content}. */
+    private final int[] lineStarts;
+
+    /** Offsets of the line terminator (or content end) of each line in {@link #content}. */
+    private final int[] lineEnds;
+
+    /** Number of lines in the file. */
+    private final int lineCount;
+
+    /** Sprite image directives found in the file, in line order. */
+    final List<SpriteImageOccurrence> spriteImageOccurrences = new ArrayList<>();
+
+    /** Raw sprite reference directives found in the file, in line order. */
+    final List<RawSpriteReference> spriteReferences = new ArrayList<>();
+
+    /**
+     * Splits the content into lines the same way as {@link java.io.BufferedReader#readLine()} does.
+     *
+     * @param cssFile
+     *            the css file
+     * @param content
+     *            the content of the css file
+     */
+    ParsedCssFile(String cssFile, String content) {
+        this.cssFile = cssFile;
+        this.content = content;
+
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int count = 0;
+        int start = 0;
+        final int length = content.length();
+        while (start < length) {
+            int end = start;
+            while (end < length && content.charAt(end) != '\n' && content.charAt(end) != '\r') {
+                end++;
+            }
+
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+
+            if (end < length && content.charAt(end) == '\r' && end + 1 < length && content.charAt(end + 1) == '\n') {
+                end++;
+            }
+            start = end + 1;
+        }
+
+        this.lineStarts = starts;
+        this.lineEnds = ends;
+        this.lineCount = count;
+    }
+
+    /**
+     * Gets the number of lines in the file.
+     *
+     * @return the line count
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Gets the line with the provided 0-based number, without the line terminator.
+     *
+     * @param line
+     *            the line number
+     *
+     * @return the line
+     */
+    public String getLine(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " out of " + lineCount);
+        }
+        return content.substring(lineStarts[line], lineEnds[line]);
+    }
+
+    /**
+     * Gets the sprite image directives found in the file.
+     *
+     * @return the sprite image occurrences
+     */
+    public List<SpriteImageOccurrence> getSpriteImageOccurrences() {
+        return Collections.unmodifiableList(spriteImageOccurrences);
+    }
+
+    /**
+     * A sprite reference directive string found in a CSS file, not yet parsed.
+     */
+    static final class RawSpriteReference {
+
+        /** Line number on which the directive occurred. */
+        final int line;
+
+        /** The directive string. */
+        final String directive;
+
+        /**
+         * Instantiates a new raw sprite reference.
+         *
+         * @param line
+         *            the line
+         * @param directive
+         *            the directive
+         */
+        RawSpriteReference(int line, String directive) {
+            this.line = line;
+            this.directive = directive;
+        }
+    }
+}
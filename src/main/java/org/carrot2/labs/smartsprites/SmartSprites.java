@@ -52,7 +52,15 @@ public class SmartSprites {
 
         // Get parameters form system properties
         final MessageLog messageLog = new MessageLog(new PrintStreamMessageSink(System.out, parameters.getLogLevel()));
-        new SpriteBuilder(parameters, messageLog).buildSprites();
+        if (parameters.isWatch()) {
+            try {
+                new SpriteWatcher(parameters, messageLog).watch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            new SpriteBuilder(parameters, messageLog).buildSprites();
+        }
     }
 
     /**
@@ -17,6 +17,7 @@ import org.carrot2.labs.smartsprites.message.Message.MessageLevel;
 import org.carrot2.labs.smartsprites.message.Message.MessageType;
 import org.carrot2.labs.smartsprites.message.MessageLog;
 import org.carrot2.util.FileUtils;
+import org.carrot2.util.QuantizerEngine;
 import org.carrot2.util.StringUtils;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
@@ -92,6 +93,13 @@ public final class SmartSpritesParameters {
     @Option(name = "--sprite-png-depth")
     private PngDepth spritePngDepth;
 
+    /**
+     * The quantizer to use when the colors of sprites have to be reduced, unless the sprite image directive specifies
+     * one.
+     */
+    @Option(name = "--sprite-quantizer")
+    private QuantizerEngine spriteQuantizer = DEFAULT_SPRITE_QUANTIZER;
+
     /**
      * If <code>true</code>, SmartSprites will generate the sprite directive indicating that the image is a sprite
      * image.
@@ -99,12 +107,40 @@ public final class SmartSpritesParameters {
     @Option(name = "--mark-sprite-images")
     private boolean markSpriteImages;
 
+    /**
+     * The number of threads to use for reading CSS files and building sprite images. With the default of 1, all work
+     * is done one step after another on the calling thread. Values lower than 1 mean one thread per available
+     * processor. Regardless of the number of threads, the generated files and the order of logged messages stay the
+     * same.
+     */
+    @Option(name = "--threads", metaVar = "N")
+    private int threads = DEFAULT_THREADS;
+
+    /**
+     * Whether to keep a manifest of sprite inputs between builds and skip rebuilding sprite images whose directives and
+     * images have not changed since the previous build. The manifest is stored in a file named
+     * <code>.smartsprites-manifest</code> in the output directory, or in the root directory if there is no output
+     * directory, or in the current working directory if neither is specified.
+     */
+    @Option(name = "--incremental")
+    private boolean incremental = DEFAULT_INCREMENTAL;
+
+    /**
+     * Whether to keep running after the initial build, watching the input files and rebuilding only the sprite images
+     * and CSS files affected by each change.
+     */
+    @Option(name = "--watch")
+    private boolean watch = DEFAULT_WATCH;
+
     /** The default suffix to be added to the generated CSS files. */
     public static final String DEFAULT_CSS_FILE_SUFFIX = "-sprite";
 
     /** By default, we use full color only when necessary. */
     public static final PngDepth DEFAULT_SPRITE_PNG_DEPTH = PngDepth.AUTO;
 
+    /** By default, we quantize with the octree. */
+    public static final QuantizerEngine DEFAULT_SPRITE_QUANTIZER = QuantizerEngine.OCTREE;
+
     /** By default, we'll assume CSS files are UTF-8 encoded. */
     public static final String DEFAULT_CSS_FILE_ENCODING = StandardCharsets.UTF_8.name();
 
@@ -114,6 +150,15 @@ public final class SmartSpritesParameters {
     /** By default, we don't generate sprite directive in output css. */
     public static final boolean DEFAULT_MARK_SPRITE_IMAGES = false;
 
+    /** By default, we build sprites on the calling thread only. */
+    public static final int DEFAULT_THREADS = 1;
+
+    /** By default, we rebuild all sprite images. */
+    public static final boolean DEFAULT_INCREMENTAL = false;
+
+    /** By default, we build sprites once and exit. */
+    public static final boolean DEFAULT_WATCH = false;
+
     /**
      * The Enum PngDepth.
      */
@@ -402,6 +447,25 @@ public final class SmartSpritesParameters {
         return spritePngDepth;
     }
 
+    /**
+     * Gets the quantizer to use when the colors of sprites have to be reduced.
+     *
+     * @return the sprite quantizer
+     */
+    public QuantizerEngine getSpriteQuantizer() {
+        return spriteQuantizer;
+    }
+
+    /**
+     * Sets the quantizer to use when the colors of sprites have to be reduced.
+     *
+     * @param spriteQuantizer
+     *            the new sprite quantizer
+     */
+    public void setSpriteQuantizer(QuantizerEngine spriteQuantizer) {
+        this.spriteQuantizer = spriteQuantizer;
+    }
+
     /**
      * Checks if is mark sprite images.
      *
@@ -419,4 +483,73 @@ public final class SmartSpritesParameters {
     public String getCssFileEncoding() {
         return cssFileEncoding;
     }
+
+    /**
+     * Gets the number of threads to use for processing, as configured.
+     *
+     * @return the threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads to use for processing. Values lower than 1 mean one thread per available processor.
+     *
+     * @param threads
+     *            the new threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Gets the actual number of threads to use for processing, resolving values lower than 1 to the number of available
+     * processors.
+     *
+     * @return the effective number of threads
+     */
+    public int getEffectiveThreads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Checks if sprite images whose inputs have not changed since the previous build should be reused. The manifest
+     * recording the inputs is stored in the output directory, or in the root directory if there is no output
+     * directory, or in the current working directory if neither is specified.
+     *
+     * @return true, if is incremental
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets whether sprite images whose inputs have not changed since the previous build should be reused.
+     *
+     * @param incremental
+     *            the new incremental
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Checks if the input files should be watched and sprites rebuilt on changes.
+     *
+     * @return true, if is watch
+     */
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * Sets whether the input files should be watched and sprites rebuilt on changes.
+     *
+     * @param watch
+     *            the new watch
+     */
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
 }
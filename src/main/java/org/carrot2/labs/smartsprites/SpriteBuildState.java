@@ -0,0 +1,233 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites;
+
+import com.google.common.base.Strings;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.carrot2.util.FileUtils;
+
+/**
+ * State retained between consecutive builds of the same parameters, used by {@link SpriteWatcher} to rebuild only the
+ * sprite images and CSS files affected by changed files. Files are identified by their canonical paths. Decoded
+ * individual images are retained in a {@link DecodedImageCache}. This class is not thread-safe, except for the output
+ * files, which are recorded by concurrent sprite tasks.
+ */
+final class SpriteBuildState {
+
+    /** Parsed CSS files by canonical path, reused as long as the files do not change. */
+    private final Map<String, ParsedCssFile> parsedCssFiles = new HashMap<>();
+
+    /** Sprite images built by the previous build by sprite id. */
+    private final Map<String, SpriteState> sprites = new HashMap<>();
+
+    /** Canonical paths of the files written by the builds, changes to these files are ignored. */
+    private final Set<String> outputFiles = ConcurrentHashMap.newKeySet();
+
+    /** Canonical paths of the files changed since the previous build. */
+    private final Set<String> changedFiles = new HashSet<>();
+
+    /** Whether the next build must process all files, true until the first build completes. */
+    private boolean rebuildAll = true;
+
+    /**
+     * Returns the canonical path of a file, used to identify files regardless of how their paths were built.
+     *
+     * @param path
+     *            the path, can be <code>null</code> or empty for paths that could not be resolved
+     *
+     * @return the canonical path, or the provided path if it is <code>null</code> or empty
+     */
+    static String canonicalPath(String path) {
+        if (Strings.isNullOrEmpty(path)) {
+            return path;
+        }
+        return FileUtils.getCanonicalOrAbsoluteFile(path).getPath();
+    }
+
+    /**
+     * Records a changed, created or deleted file. Changes to files written by the builds are ignored.
+     *
+     * @param path
+     *            the path
+     *
+     * @return <code>true</code> if the change requires a rebuild
+     */
+    boolean fileChanged(String path) {
+        final String canonicalPath = canonicalPath(path);
+        if (outputFiles.contains(canonicalPath)) {
+            return false;
+        }
+
+        changedFiles.add(canonicalPath);
+        parsedCssFiles.remove(canonicalPath);
+        return true;
+    }
+
+    /**
+     * Discards all retained state, so that the next build processes all files, for example when file changes may have
+     * been missed.
+     */
+    void invalidate() {
+        parsedCssFiles.clear();
+        sprites.clear();
+        changedFiles.clear();
+        rebuildAll = true;
+    }
+
+    /**
+     * Checks if the next build must process all files.
+     *
+     * @return true, if all files must be processed
+     */
+    boolean isRebuildAll() {
+        return rebuildAll;
+    }
+
+    /**
+     * Checks if the file has changed since the previous build.
+     *
+     * @param path
+     *            the path
+     *
+     * @return true, if the file has changed
+     */
+    boolean isChanged(String path) {
+        return rebuildAll || changedFiles.contains(canonicalPath(path));
+    }
+
+    /**
+     * Checks if the file has been written by one of the builds.
+     *
+     * @param path
+     *            the path
+     *
+     * @return true, if the file is an output file
+     */
+    boolean isOutputFile(String path) {
+        return outputFiles.contains(canonicalPath(path));
+    }
+
+    /**
+     * Records a file written by the build.
+     *
+     * @param path
+     *            the path
+     */
+    void addOutputFile(String path) {
+        outputFiles.add(canonicalPath(path));
+    }
+
+    /**
+     * Gets the CSS file parsed by a previous build, if the file has not changed since.
+     *
+     * @param path
+     *            the path
+     *
+     * @return the parsed css file or <code>null</code> if the file must be parsed again
+     */
+    ParsedCssFile getParsedCssFile(String path) {
+        return rebuildAll ? null : parsedCssFiles.get(canonicalPath(path));
+    }
+
+    /**
+     * Retains a parsed CSS file for the next builds.
+     *
+     * @param parsedCssFile
+     *            the parsed css file
+     */
+    void putParsedCssFile(ParsedCssFile parsedCssFile) {
+        parsedCssFiles.put(canonicalPath(parsedCssFile.cssFile), parsedCssFile);
+    }
+
+    /**
+     * Gets the sprite image built by the previous build.
+     *
+     * @param spriteId
+     *            the sprite id
+     *
+     * @return the sprite state or <code>null</code> if the sprite was not built by the previous build
+     */
+    SpriteState getSprite(String spriteId) {
+        return rebuildAll ? null : sprites.get(spriteId);
+    }
+
+    /**
+     * Gets the CSS files and individual images the sprite images of the previous build were built from.
+     *
+     * @return the canonical paths of the input files
+     */
+    Set<String> getInputFiles() {
+        final Set<String> inputFiles = new HashSet<>();
+        for (final SpriteState sprite : sprites.values()) {
+            inputFiles.addAll(sprite.cssFiles);
+            inputFiles.addAll(sprite.imageFiles);
+        }
+        inputFiles.remove(null);
+        inputFiles.remove("");
+        return inputFiles;
+    }
+
+    /**
+     * Completes a build, retaining the sprite images it built or reused and starting to collect changes for the next
+     * build.
+     *
+     * @param builtSprites
+     *            the sprite images of the build by sprite id
+     */
+    void buildCompleted(Map<String, SpriteState> builtSprites) {
+        sprites.clear();
+        sprites.putAll(builtSprites);
+        changedFiles.clear();
+        rebuildAll = false;
+    }
+
+    /**
+     * The inputs and replacements of a sprite image built by a previous build.
+     */
+    static final class SpriteState {
+
+        /** The sprite image directive occurrence the sprite was built for. */
+        final SpriteImageOccurrence spriteImageOccurrence;
+
+        /** Canonical paths of the CSS files referring to the sprite. */
+        final Set<String> cssFiles;
+
+        /** Canonical paths of the individual images of the sprite. */
+        final Set<String> imageFiles;
+
+        /** The replacements of the references to the sprite. */
+        final Collection<SpriteReferenceReplacement> spriteReferenceReplacements;
+
+        /**
+         * Instantiates a new sprite state.
+         *
+         * @param spriteImageOccurrence
+         *            the sprite image occurrence
+         * @param cssFiles
+         *            the css files
+         * @param imageFiles
+         *            the image files
+         * @param spriteReferenceReplacements
+         *            the sprite reference replacements
+         */
+        SpriteState(SpriteImageOccurrence spriteImageOccurrence, Set<String> cssFiles, Set<String> imageFiles,
+                Collection<SpriteReferenceReplacement> spriteReferenceReplacements) {
+            this.spriteImageOccurrence = spriteImageOccurrence;
+            this.cssFiles = cssFiles;
+            this.imageFiles = imageFiles;
+            this.spriteReferenceReplacements = spriteReferenceReplacements;
+        }
+    }
+}
@@ -8,14 +8,16 @@
 package org.carrot2.labs.smartsprites;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -26,13 +28,18 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
+import org.carrot2.labs.smartsprites.SpriteBuildState.SpriteState;
 import org.carrot2.labs.smartsprites.message.LevelCounterMessageSink;
 import org.carrot2.labs.smartsprites.message.Message.MessageType;
 import org.carrot2.labs.smartsprites.message.MessageLog;
 import org.carrot2.labs.smartsprites.resource.FileSystemResourceHandler;
 import org.carrot2.labs.smartsprites.resource.ResourceHandler;
+import org.carrot2.util.Abortable;
 import org.carrot2.util.FileUtils;
+import org.carrot2.util.ParallelUtils;
 import org.carrot2.util.PathUtils;
 import org.carrot2.util.StringUtils;
 
@@ -59,6 +66,9 @@ public class SpriteBuilder {
     /** Resource handler. */
     private ResourceHandler resourceHandler;
 
+    /** The cache of decoded individual images, <code>null</code> if images are not cached. */
+    private final DecodedImageCache decodedImageCache;
+
     /**
      * Creates a {@link SpriteBuilder} with the provided parameters and log.
      *
@@ -83,11 +93,32 @@ public class SpriteBuilder {
      *            the resource handler
      */
     public SpriteBuilder(SmartSpritesParameters parameters, MessageLog messageLog, ResourceHandler resourceHandler) {
+        this(parameters, messageLog, resourceHandler, null);
+    }
+
+    /**
+     * Creates a {@link SpriteBuilder} with the provided parameters and log, reusing the individual images decoded by
+     * the builders sharing the provided cache.
+     *
+     * @param parameters
+     *            the parameters
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     * @param decodedImageCache
+     *            the decoded image cache, <code>null</code> to decode all images. The cache is ignored if the
+     *            resource handler does not {@linkplain ResourceHandler#readsLocalFiles() read local files}.
+     */
+    public SpriteBuilder(SmartSpritesParameters parameters, MessageLog messageLog, ResourceHandler resourceHandler,
+            DecodedImageCache decodedImageCache) {
         this.messageLog = messageLog;
         this.parameters = parameters;
         this.resourceHandler = resourceHandler;
+        this.decodedImageCache = decodedImageCache;
         spriteDirectiveOccurrenceCollector = new SpriteDirectiveOccurrenceCollector(messageLog, resourceHandler);
         spriteImageBuilder = new SpriteImageBuilder(parameters, messageLog, resourceHandler);
+        spriteImageBuilder.setDecodedImageCache(decodedImageCache);
     }
 
     /**
@@ -101,10 +132,41 @@ public class SpriteBuilder {
             return;
         }
 
-        final Collection<String> filePaths;
+        buildSprites(getCssFilePaths());
+    }
+
+    /**
+     * Rebuilds the sprite images and CSS files affected by the changes recorded in the provided state since the
+     * previous build, see {@link SpriteWatcher}. The parameters must have been validated before.
+     *
+     * @param state
+     *            the state retained between builds
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    void buildSprites(SpriteBuildState state) throws IOException {
+        final List<String> filePaths = getCssFilePaths();
+
+        // Do not take the CSS files written by the previous builds as input
+        filePaths.removeIf(state::isOutputFile);
+
+        buildSprites(filePaths, state);
+    }
+
+    /**
+     * Collects the paths of the CSS files to process, either the provided files or all CSS files in the root dir.
+     *
+     * @return the css file paths
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private List<String> getCssFilePaths() throws IOException {
+        final List<String> filePaths;
         if (parameters.getCssFiles() != null && !parameters.getCssFiles().isEmpty()) {
             // Take directly provided css fle paths
-            filePaths = parameters.getCssFiles();
+            filePaths = new ArrayList<>(parameters.getCssFiles());
 
             // If root dir is provided, filter out those files that are outside root dir
             if (StringUtils.isNotBlank(parameters.getOutputDir())) {
@@ -136,8 +198,7 @@ public class SpriteBuilder {
                 filePaths.add(file.getPath());
             }
         }
-
-        buildSprites(filePaths);
+        return filePaths;
     }
 
     /**
@@ -170,14 +231,72 @@ public class SpriteBuilder {
      *             Signals that an I/O exception has occurred.
      */
     public void buildSprites(Collection<String> filePaths) throws IOException {
+        buildSprites(filePaths, null);
+    }
+
+    /**
+     * Performs processing from the list of file paths, reusing the results of the previous build recorded in the
+     * provided state for the files that have not changed.
+     *
+     * @param filePaths
+     *            paths of CSS files to process
+     * @param state
+     *            the state retained between builds, <code>null</code> to process all files
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private void buildSprites(Collection<String> filePaths, SpriteBuildState state) throws IOException {
         final long start = System.currentTimeMillis();
 
         final LevelCounterMessageSink levelCounter = new LevelCounterMessageSink();
         messageLog.addMessageSink(levelCounter);
 
-        // Collect sprite declarations from all css files
-        final Multimap<String, SpriteImageOccurrence> spriteImageOccurrencesByFile = spriteDirectiveOccurrenceCollector
-                .collectSpriteImageOccurrences(filePaths);
+        final CacheStats cacheStatsBefore = decodedImageCache != null ? decodedImageCache.getStats() : null;
+        final ForkJoinPool pool = ParallelUtils.createPool(parameters.getEffectiveThreads());
+        try {
+            buildSprites(filePaths, state, pool);
+        } finally {
+            ParallelUtils.shutdown(pool);
+            messageLog.removeMessageSink(levelCounter);
+        }
+
+        if (cacheStatsBefore != null) {
+            final CacheStats cacheStats = decodedImageCache.getStats().minus(cacheStatsBefore);
+            messageLog.info(MessageType.DECODED_IMAGE_CACHE_STATS, cacheStats.hitCount(), cacheStats.missCount(),
+                    cacheStats.evictionCount());
+        }
+
+        final long stop = System.currentTimeMillis();
+
+        if (levelCounter.getWarnCount() > 0) {
+            messageLog.status(MessageType.PROCESSING_COMPLETED_WITH_WARNINGS, stop - start,
+                    levelCounter.getWarnCount());
+        } else {
+            messageLog.status(MessageType.PROCESSING_COMPLETED, stop - start);
+        }
+    }
+
+    /**
+     * Performs all stages of processing, using the provided pool for the stages that can run concurrently.
+     *
+     * @param filePaths
+     *            the file paths
+     * @param state
+     *            the state retained between builds, <code>null</code> to process all files
+     * @param pool
+     *            the pool, <code>null</code> to run all stages on the calling thread
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private void buildSprites(Collection<String> filePaths, SpriteBuildState state, ForkJoinPool pool)
+            throws IOException {
+        // Read all css files once, collecting sprite declarations
+        final Set<String> parsedFilePaths = new HashSet<>();
+        final List<ParsedCssFile> parsedCssFiles = parseCssFiles(filePaths, state, parsedFilePaths, pool);
+        final Multimap<String, SpriteImageOccurrence> spriteImageOccurrencesByFile = SpriteDirectiveOccurrenceCollector
+                .collectSpriteImageOccurrences(parsedCssFiles);
 
         // Merge them, checking for duplicates
         final Map<String, SpriteImageOccurrence> spriteImageOccurrencesBySpriteId = spriteDirectiveOccurrenceCollector
@@ -189,160 +308,382 @@ public class SpriteBuilder {
 
         // Collect sprite references from all css files
         final Multimap<String, SpriteReferenceOccurrence> spriteEntriesByFile = spriteDirectiveOccurrenceCollector
-                .collectSpriteReferenceOccurrences(filePaths, spriteImageDirectivesBySpriteId);
+                .collectSpriteReferenceOccurrences(parsedCssFiles, spriteImageDirectivesBySpriteId, pool);
 
         // Now merge and regroup all files by sprite-id
         final Multimap<String, SpriteReferenceOccurrence> spriteReferenceOccurrencesBySpriteId = SpriteDirectiveOccurrenceCollector
                 .mergeSpriteReferenceOccurrences(spriteEntriesByFile);
 
-        // Build the sprite images
+        // Build the sprite images, reusing the unchanged ones in incremental mode
         messageLog.setCssFile(null);
-        final Multimap<String, SpriteReferenceReplacement> spriteReplacementsByFile = spriteImageBuilder
-                .buildSpriteImages(spriteImageOccurrencesBySpriteId, spriteReferenceOccurrencesBySpriteId);
+        final SpriteManifest manifest = parameters.isIncremental() ? SpriteManifest.load(getManifestPath()) : null;
+        final Multimap<String, SpriteReferenceReplacement> spriteReplacementsByFile;
+        final Map<String, SpriteState> sprites = new HashMap<>();
+        final Set<String> cssFilesToRewrite = new HashSet<>(parsedFilePaths);
+        if (state == null) {
+            spriteReplacementsByFile = spriteImageBuilder.buildSpriteImages(spriteImageOccurrencesBySpriteId,
+                    spriteReferenceOccurrencesBySpriteId, pool, manifest);
+        } else {
+            spriteReplacementsByFile = buildChangedSpriteImages(spriteImageOccurrencesBySpriteId,
+                    spriteReferenceOccurrencesBySpriteId, state, parsedFilePaths, sprites, cssFilesToRewrite, pool,
+                    manifest);
+        }
+        if (manifest != null) {
+            try {
+                manifest.save();
+                if (state != null) {
+                    state.addOutputFile(manifest.getPath().toString());
+                }
+            } catch (final IOException e) {
+                messageLog.warning(MessageType.CANNOT_WRITE_INCREMENTAL_MANIFEST, manifest.getPath(), e.getMessage());
+            }
+        }
 
-        // Rewrite the CSS
-        rewriteCssFiles(spriteImageOccurrencesByFile, spriteReplacementsByFile);
+        // Rewrite the CSS. If nothing to replace, still, copy the original files, so that there is some output file.
+        final Map<String, ParsedCssFile> parsedCssFilesByPath = new HashMap<>();
+        for (final ParsedCssFile parsedCssFile : parsedCssFiles) {
+            parsedCssFilesByPath.put(parsedCssFile.cssFile, parsedCssFile);
+        }
+        final List<String> cssFiles = new ArrayList<>(spriteReplacementsByFile.isEmpty()
+                ? spriteImageOccurrencesByFile.keySet() : spriteReplacementsByFile.keySet());
+        if (state != null) {
+            // Only rewrite the files that changed or refer to rebuilt sprite images, in the order of the input files
+            cssFiles.clear();
+            final Set<String> cssFilesWithOutput = spriteReplacementsByFile.isEmpty()
+                    ? spriteImageOccurrencesByFile.keySet() : spriteReplacementsByFile.keySet();
+            for (final ParsedCssFile parsedCssFile : parsedCssFiles) {
+                if (cssFilesWithOutput.contains(parsedCssFile.cssFile)
+                        && cssFilesToRewrite.contains(parsedCssFile.cssFile)) {
+                    cssFiles.add(parsedCssFile.cssFile);
+                }
+            }
+        }
+        rewriteCssFiles(parsedCssFilesByPath, spriteImageOccurrencesByFile, spriteReplacementsByFile, cssFiles, pool,
+                state);
 
-        final long stop = System.currentTimeMillis();
+        if (state != null) {
+            state.buildCompleted(sprites);
+        }
+    }
 
-        if (levelCounter.getWarnCount() > 0) {
-            messageLog.status(MessageType.PROCESSING_COMPLETED_WITH_WARNINGS, stop - start,
-                    levelCounter.getWarnCount());
-        } else {
-            messageLog.status(MessageType.PROCESSING_COMPLETED, stop - start);
+    /**
+     * Reads the CSS files, reusing the files parsed by the previous build if they have not changed since.
+     *
+     * @param filePaths
+     *            the file paths
+     * @param state
+     *            the state retained between builds, <code>null</code> to read all files
+     * @param parsedFilePaths
+     *            collects the paths of the files actually read
+     * @param pool
+     *            the pool to read the files in, <code>null</code> to read them on the calling thread
+     *
+     * @return the parsed css files, in input order
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private List<ParsedCssFile> parseCssFiles(Collection<String> filePaths, SpriteBuildState state,
+            Set<String> parsedFilePaths, ForkJoinPool pool) throws IOException {
+        final List<String> filePathsToParse = new ArrayList<>();
+        for (final String filePath : filePaths) {
+            if (state == null || state.getParsedCssFile(filePath) == null) {
+                filePathsToParse.add(filePath);
+            }
+        }
+        parsedFilePaths.addAll(filePathsToParse);
+
+        final List<ParsedCssFile> newlyParsedCssFiles = spriteDirectiveOccurrenceCollector
+                .parseCssFiles(filePathsToParse, pool);
+        if (state == null) {
+            return newlyParsedCssFiles;
+        }
+
+        final Iterator<ParsedCssFile> newlyParsedCssFilesIterator = newlyParsedCssFiles.iterator();
+        final List<ParsedCssFile> parsedCssFiles = new ArrayList<>(filePaths.size());
+        for (final String filePath : filePaths) {
+            ParsedCssFile parsedCssFile = state.getParsedCssFile(filePath);
+            if (parsedCssFile == null) {
+                parsedCssFile = newlyParsedCssFilesIterator.next();
+                state.putParsedCssFile(parsedCssFile);
+            }
+            parsedCssFiles.add(parsedCssFile);
+        }
+        return parsedCssFiles;
+    }
+
+    /**
+     * Builds the sprite images whose directives, references or individual images changed since the previous build,
+     * reusing the sprite reference replacements of the other sprite images.
+     *
+     * @param spriteImageOccurrencesBySpriteId
+     *            the sprite image occurrences by sprite id
+     * @param spriteReferenceOccurrencesBySpriteId
+     *            the sprite reference occurrences by sprite id
+     * @param state
+     *            the state retained between builds
+     * @param parsedFilePaths
+     *            the paths of the CSS files read by this build
+     * @param sprites
+     *            collects the sprite images of this build, to be retained for the next build
+     * @param cssFilesToRewrite
+     *            collects the paths of the CSS files referring to rebuilt sprite images
+     * @param pool
+     *            the pool to build sprite images in, <code>null</code> to build them on the calling thread
+     * @param manifest
+     *            the manifest of the incremental build, <code>null</code> if not in incremental mode
+     *
+     * @return the sprite reference replacements by file
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private Multimap<String, SpriteReferenceReplacement> buildChangedSpriteImages(
+            Map<String, SpriteImageOccurrence> spriteImageOccurrencesBySpriteId,
+            Multimap<String, SpriteReferenceOccurrence> spriteReferenceOccurrencesBySpriteId, SpriteBuildState state,
+            Set<String> parsedFilePaths, Map<String, SpriteState> sprites, Set<String> cssFilesToRewrite,
+            ForkJoinPool pool, SpriteManifest manifest) throws IOException {
+        // Resolving image paths again must not repeat the warnings logged while building the sprite images
+        final ResourceHandler quietResourceHandler = resourceHandler.withMessageLog(new MessageLog());
+
+        final Multimap<String, SpriteReferenceReplacement> spriteReplacementsByFile = LinkedListMultimap.create();
+        final Map<String, SpriteImageOccurrence> changedSpriteImageOccurrences = new LinkedHashMap<>();
+        final Multimap<String, SpriteReferenceOccurrence> changedSpriteReferenceOccurrences = LinkedListMultimap
+                .create();
+        final Map<String, Set<String>> changedSpriteCssFiles = new HashMap<>();
+        final Map<String, Set<String>> changedSpriteImageFiles = new HashMap<>();
+        for (final Map.Entry<String, Collection<SpriteReferenceOccurrence>> entry : spriteReferenceOccurrencesBySpriteId
+                .asMap().entrySet()) {
+            final String spriteId = entry.getKey();
+            final SpriteImageOccurrence spriteImageOccurrence = spriteImageOccurrencesBySpriteId.get(spriteId);
+
+            boolean changed = false;
+            final Set<String> cssFiles = new HashSet<>();
+            final Set<String> imageFiles = new HashSet<>();
+            for (final SpriteReferenceOccurrence spriteReferenceOccurrence : entry.getValue()) {
+                final String imageFile = quietResourceHandler.getResourcePath(spriteReferenceOccurrence.cssFile,
+                        spriteReferenceOccurrence.imagePath);
+                changed |= parsedFilePaths.contains(spriteReferenceOccurrence.cssFile) || state.isChanged(imageFile);
+                cssFiles.add(SpriteBuildState.canonicalPath(spriteReferenceOccurrence.cssFile));
+                imageFiles.add(SpriteBuildState.canonicalPath(imageFile));
+            }
+
+            // Unchanged files yield the same occurrence instances, so the directive has not changed either
+            final SpriteState previous = state.getSprite(spriteId);
+            if (!changed && previous != null && previous.spriteImageOccurrence == spriteImageOccurrence
+                    && previous.cssFiles.equals(cssFiles) && previous.imageFiles.equals(imageFiles)) {
+                sprites.put(spriteId, previous);
+                for (final SpriteReferenceReplacement spriteReferenceReplacement : previous.spriteReferenceReplacements) {
+                    spriteReplacementsByFile.put(spriteReferenceReplacement.spriteReferenceOccurrence.cssFile,
+                            spriteReferenceReplacement);
+                }
+                continue;
+            }
+
+            changedSpriteImageOccurrences.put(spriteId, spriteImageOccurrence);
+            changedSpriteReferenceOccurrences.putAll(spriteId, entry.getValue());
+            changedSpriteCssFiles.put(spriteId, cssFiles);
+            changedSpriteImageFiles.put(spriteId, imageFiles);
+            for (final SpriteReferenceOccurrence spriteReferenceOccurrence : entry.getValue()) {
+                cssFilesToRewrite.add(spriteReferenceOccurrence.cssFile);
+            }
+        }
+
+        final Multimap<String, SpriteReferenceReplacement> changedSpriteReplacementsByFile = spriteImageBuilder
+                .buildSpriteImages(changedSpriteImageOccurrences, changedSpriteReferenceOccurrences, pool, manifest);
+        spriteReplacementsByFile.putAll(changedSpriteReplacementsByFile);
+
+        final Multimap<String, SpriteReferenceReplacement> changedSpriteReplacementsBySpriteId = LinkedListMultimap
+                .create();
+        for (final SpriteReferenceReplacement spriteReferenceReplacement : changedSpriteReplacementsByFile.values()) {
+            changedSpriteReplacementsBySpriteId.put(
+                    spriteReferenceReplacement.spriteReferenceOccurrence.spriteReferenceDirective.spriteRef,
+                    spriteReferenceReplacement);
+        }
+        for (final Map.Entry<String, SpriteImageOccurrence> entry : changedSpriteImageOccurrences.entrySet()) {
+            final String spriteId = entry.getKey();
+            sprites.put(spriteId,
+                    new SpriteState(entry.getValue(), changedSpriteCssFiles.get(spriteId),
+                            changedSpriteImageFiles.get(spriteId),
+                            new ArrayList<>(changedSpriteReplacementsBySpriteId.get(spriteId))));
+        }
+
+        return spriteReplacementsByFile;
+    }
+
+    /**
+     * Gets the path of the incremental build manifest: in the output directory, the root directory or the current
+     * working directory, whichever is specified first.
+     *
+     * @return the manifest path
+     */
+    private Path getManifestPath() {
+        if (parameters.hasOutputDir()) {
+            return Path.of(parameters.getOutputDir(), SpriteManifest.FILE_NAME);
+        }
+        if (parameters.hasRootDir()) {
+            return Path.of(parameters.getRootDir(), SpriteManifest.FILE_NAME);
         }
+        return Path.of(SpriteManifest.FILE_NAME);
     }
 
     /**
      * Rewrites the original files to refer to the generated sprite images.
      *
+     * @param parsedCssFilesByPath
+     *            the parsed css files by path
      * @param spriteImageOccurrencesByFile
      *            the sprite image occurrences by file
      * @param spriteReplacementsByFile
      *            the sprite replacements by file
+     * @param cssFiles
+     *            the paths of the css files to rewrite
+     * @param pool
+     *            the pool to rewrite the files in, <code>null</code> to rewrite them on the calling thread
+     * @param state
+     *            the state to record the written files in, <code>null</code> if not needed
      *
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private void rewriteCssFiles(final Multimap<String, SpriteImageOccurrence> spriteImageOccurrencesByFile,
-            final Multimap<String, SpriteReferenceReplacement> spriteReplacementsByFile) throws IOException {
-        if (spriteReplacementsByFile.isEmpty()) {
-            // If nothing to replace, still, copy the original file, so that there
-            // is some output file.
-            for (final Map.Entry<String, Collection<SpriteImageOccurrence>> entry : spriteImageOccurrencesByFile.asMap()
-                    .entrySet()) {
-                final String cssFile = entry.getKey();
-
-                createProcessedCss(cssFile, SpriteImageBuilder.getSpriteImageOccurrencesByLineNumber(
-                        spriteImageOccurrencesByFile.get(cssFile)), new HashMap<>());
+    private void rewriteCssFiles(final Map<String, ParsedCssFile> parsedCssFilesByPath,
+            final Multimap<String, SpriteImageOccurrence> spriteImageOccurrencesByFile,
+            final Multimap<String, SpriteReferenceReplacement> spriteReplacementsByFile, List<String> cssFiles,
+            ForkJoinPool pool, SpriteBuildState state) throws IOException {
+        if (state != null) {
+            for (final String cssFile : cssFiles) {
+                state.addOutputFile(getProcessedCssFile(cssFile));
             }
-        } else {
-            for (final Map.Entry<String, Collection<SpriteReferenceReplacement>> entry : spriteReplacementsByFile
-                    .asMap().entrySet()) {
-                final String cssFile = entry.getKey();
-                final Map<Integer, SpriteReferenceReplacement> spriteReplacementsByLineNumber = SpriteImageBuilder
-                        .getSpriteReplacementsByLineNumber(entry.getValue());
-
-                createProcessedCss(cssFile, SpriteImageBuilder.getSpriteImageOccurrencesByLineNumber(
-                        spriteImageOccurrencesByFile.get(cssFile)), spriteReplacementsByLineNumber);
+        }
+
+        if (pool == null) {
+            for (final String cssFile : cssFiles) {
+                createProcessedCss(parsedCssFilesByPath.get(cssFile), spriteImageOccurrencesByFile.get(cssFile),
+                        spriteReplacementsByFile.get(cssFile), messageLog, resourceHandler);
             }
+            return;
+        }
+
+        // Each file is written by a separate task, messages are passed on in file order
+        final List<LoggedTaskResult<Void>> results = ParallelUtils.map(pool, cssFiles,
+                cssFile -> LoggedTaskResult.run(messageLog, resourceHandler, (fileMessageLog, fileResourceHandler) -> {
+                    createProcessedCss(parsedCssFilesByPath.get(cssFile), spriteImageOccurrencesByFile.get(cssFile),
+                            spriteReplacementsByFile.get(cssFile), fileMessageLog, fileResourceHandler);
+                    return null;
+                }));
+        for (final LoggedTaskResult<Void> result : results) {
+            result.replay();
         }
     }
 
     /**
      * Rewrites one CSS file to refer to the generated sprite images.
      *
-     * @param originalCssFile
+     * @param parsedCssFile
      *            the original css file
-     * @param spriteImageOccurrencesByLineNumber
-     *            the sprite image occurrences by line number
-     * @param spriteReplacementsByLineNumber
-     *            the sprite replacements by line number
+     * @param spriteImageOccurrences
+     *            the sprite image occurrences in the file
+     * @param spriteReferenceReplacements
+     *            the sprite reference replacements in the file
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
      *
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private void createProcessedCss(String originalCssFile,
-            Map<Integer, SpriteImageOccurrence> spriteImageOccurrencesByLineNumber,
-            Map<Integer, SpriteReferenceReplacement> spriteReplacementsByLineNumber) throws IOException {
+    private void createProcessedCss(ParsedCssFile parsedCssFile,
+            Collection<SpriteImageOccurrence> spriteImageOccurrences,
+            Collection<SpriteReferenceReplacement> spriteReferenceReplacements, MessageLog messageLog,
+            ResourceHandler resourceHandler) throws IOException {
+        final Map<Integer, SpriteImageOccurrence> spriteImageOccurrencesByLineNumber = SpriteImageBuilder
+                .getSpriteImageOccurrencesByLineNumber(spriteImageOccurrences);
+        final Map<Integer, SpriteReferenceReplacement> spriteReplacementsByLineNumber = SpriteImageBuilder
+                .getSpriteReplacementsByLineNumber(spriteReferenceReplacements);
+
+        String originalCssFile = parsedCssFile.cssFile;
         final String processedCssFile = getProcessedCssFile(originalCssFile);
         messageLog.setCssFile(null);
         messageLog.info(MessageType.CREATING_CSS_STYLE_SHEET, processedCssFile);
         messageLog.info(MessageType.READING_CSS, originalCssFile);
         messageLog.info(MessageType.WRITING_CSS, processedCssFile);
 
-        String originalCssLine;
-        int originalCssLineNumber = -1;
         int lastReferenceReplacementLine = -1;
 
         boolean markSpriteImages = parameters.isMarkSpriteImages();
 
         // Generate UID for sprite file
-        try (BufferedReader originalCssReader = new BufferedReader(
-                resourceHandler.getResourceAsReader(originalCssFile));
-                BufferedWriter processedCssWriter = new BufferedWriter(
-                        resourceHandler.getResourceAsWriter(processedCssFile))) {
-            messageLog.setCssFile(originalCssFile);
+        try (Writer resourceWriter = resourceHandler.getResourceAsWriter(processedCssFile);
+                BufferedWriter processedCssWriter = new BufferedWriter(resourceWriter)) {
+            try {
+                messageLog.setCssFile(originalCssFile);
 
-            originalCssFile = originalCssFile.replace(File.separatorChar, '/');
+                originalCssFile = originalCssFile.replace(File.separatorChar, '/');
 
-            while ((originalCssLine = originalCssReader.readLine()) != null) {
-                originalCssLineNumber++;
-                messageLog.setLine(originalCssLineNumber);
-
-                if (originalCssLine.contains("}")) {
-                    lastReferenceReplacementLine = -1;
-                }
+                for (int originalCssLineNumber = 0; originalCssLineNumber < parsedCssFile
+                        .getLineCount(); originalCssLineNumber++) {
+                    final String originalCssLine = parsedCssFile.getLine(originalCssLineNumber);
+                    messageLog.setLine(originalCssLineNumber);
 
-                final SpriteImageOccurrence spriteImageOccurrence = spriteImageOccurrencesByLineNumber
-                        .get(originalCssLineNumber);
-                final SpriteReferenceReplacement spriteReferenceReplacement = spriteReplacementsByLineNumber
-                        .get(originalCssLineNumber);
+                    if (originalCssLine.contains("}")) {
+                        lastReferenceReplacementLine = -1;
+                    }
 
-                if (spriteImageOccurrence != null) {
-                    // Ignore line with directive
-                    continue;
-                }
+                    final SpriteImageOccurrence spriteImageOccurrence = spriteImageOccurrencesByLineNumber
+                            .get(originalCssLineNumber);
+                    final SpriteReferenceReplacement spriteReferenceReplacement = spriteReplacementsByLineNumber
+                            .get(originalCssLineNumber);
 
-                if (spriteReferenceReplacement != null) {
-                    final boolean important = spriteReferenceReplacement.spriteReferenceOccurrence.important;
-                    lastReferenceReplacementLine = originalCssLineNumber;
-
-                    processedCssWriter.write("  background-image: url('"
-                            + getRelativeToReplacementLocation(spriteReferenceReplacement.spriteImage.resolvedPath,
-                                    originalCssFile, spriteReferenceReplacement)
-                            + "')" + (important ? " !important" : "") + ";"
-                            + (markSpriteImages ? " /** sprite:sprite */" : "") + "\n");
-
-                    processedCssWriter
-                            .write("  background-position: " + spriteReferenceReplacement.horizontalPositionString + " "
-                                    + spriteReferenceReplacement.verticalPositionString
-                                    + (important ? " !important" : "") + ";\n");
-
-                    // If the sprite scale is not 1, write out a background-size directive
-                    final float scale = spriteReferenceReplacement.spriteImage.scaleRatio;
-                    if (scale != 1.0f) {
-                        processedCssWriter.write("  background-size: "
-                                + Math.round(spriteReferenceReplacement.spriteImage.spriteWidth / scale) + "px "
-                                + Math.round(spriteReferenceReplacement.spriteImage.spriteHeight / scale) + "px;\n");
+                    if (spriteImageOccurrence != null) {
+                        // Ignore line with directive
+                        continue;
                     }
 
-                    continue;
-                }
+                    if (spriteReferenceReplacement != null) {
+                        final boolean important = spriteReferenceReplacement.spriteReferenceOccurrence.important;
+                        lastReferenceReplacementLine = originalCssLineNumber;
+
+                        processedCssWriter.write("  background-image: url('"
+                                + getRelativeToReplacementLocation(spriteReferenceReplacement.spriteImage.resolvedPath,
+                                        originalCssFile, spriteReferenceReplacement)
+                                + "')" + (important ? " !important" : "") + ";"
+                                + (markSpriteImages ? " /** sprite:sprite */" : "") + "\n");
+
+                        processedCssWriter.write("  background-position: "
+                                + spriteReferenceReplacement.horizontalPositionString + " "
+                                + spriteReferenceReplacement.verticalPositionString
+                                + (important ? " !important" : "") + ";\n");
+
+                        // If the sprite scale is not 1, write out a background-size directive
+                        final float scale = spriteReferenceReplacement.spriteImage.scaleRatio;
+                        if (scale != 1.0f) {
+                            processedCssWriter.write("  background-size: "
+                                    + Math.round(spriteReferenceReplacement.spriteImage.spriteWidth / scale) + "px "
+                                    + Math.round(spriteReferenceReplacement.spriteImage.spriteHeight / scale)
+                                    + "px;\n");
+                        }
 
-                if (lastReferenceReplacementLine >= 0) {
-                    for (final String property : OVERRIDING_PROPERTIES) {
-                        if (originalCssLine.contains(property)) {
-                            messageLog.warning(MessageType.OVERRIDING_PROPERTY_FOUND, property,
-                                    lastReferenceReplacementLine);
+                        continue;
+                    }
+
+                    if (lastReferenceReplacementLine >= 0) {
+                        for (final String property : OVERRIDING_PROPERTIES) {
+                            if (originalCssLine.contains(property)) {
+                                messageLog.warning(MessageType.OVERRIDING_PROPERTY_FOUND, property,
+                                        lastReferenceReplacementLine);
+                            }
                         }
                     }
-                }
 
-                // Just write the original line
-                processedCssWriter.write(originalCssLine + "\n");
+                    // Just write the original line
+                    processedCssWriter.write(originalCssLine + "\n");
+                }
+            } catch (final IOException | RuntimeException e) {
+                // Leave the previous processed CSS in place rather than a partially written one
+                Abortable.abort(resourceWriter);
+                throw e;
             }
-
             messageLog.setCssFile(null);
         }
     }
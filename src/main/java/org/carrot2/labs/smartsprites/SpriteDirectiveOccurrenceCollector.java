@@ -9,27 +9,35 @@ package org.carrot2.labs.smartsprites;
 
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.io.CharStreams;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.carrot2.labs.smartsprites.ParsedCssFile.RawSpriteReference;
 import org.carrot2.labs.smartsprites.css.CssProperty;
 import org.carrot2.labs.smartsprites.css.CssSyntaxUtils;
 import org.carrot2.labs.smartsprites.message.Message.MessageType;
 import org.carrot2.labs.smartsprites.message.MessageLog;
 import org.carrot2.labs.smartsprites.resource.ResourceHandler;
+import org.carrot2.util.ParallelUtils;
 
 /**
  * Methods for collecting SmartSprites directives from CSS files.
  */
 public class SpriteDirectiveOccurrenceCollector {
 
+    /** A prefix common to all SmartSprites directives. */
+    private static final String DIRECTIVE_PREFIX = "sprite";
+
     /** A regular expression for extracting sprite image directives. */
     private static final Pattern SPRITE_IMAGE_DIRECTIVE = Pattern.compile("/\\*+\\s+(sprite:[^*]*)\\*+/");
 
@@ -56,149 +64,195 @@ public class SpriteDirectiveOccurrenceCollector {
     }
 
     /**
-     * Collects {@link SpriteImageOccurrence}s from a single CSS file.
+     * Reads a single CSS file, collects {@link SpriteImageOccurrence}s and raw sprite reference directives from it.
      *
      * @param cssFile
      *            the css file
      *
-     * @return the collection
+     * @return the parsed css file
      *
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    Collection<SpriteImageOccurrence> collectSpriteImageOccurrences(String cssFile) throws IOException {
-        final Collection<SpriteImageOccurrence> occurrences = new ArrayList<>();
+    ParsedCssFile parseCssFile(String cssFile) throws IOException {
         messageLog.setCssFile(null);
         messageLog.info(MessageType.READING_SPRITE_IMAGE_DIRECTIVES, cssFile);
         messageLog.setCssFile(cssFile);
 
-        int lineNumber = -1;
-        String line;
+        final ParsedCssFile parsedCssFile;
+        try (Reader reader = resourceHandler.getResourceAsReader(cssFile)) {
+            parsedCssFile = new ParsedCssFile(cssFile, CharStreams.toString(reader));
+        }
+
+        for (int lineNumber = 0; lineNumber < parsedCssFile.getLineCount(); lineNumber++) {
+            messageLog.setLine(lineNumber);
+
+            final String line = parsedCssFile.getLine(lineNumber);
 
-        try (BufferedReader reader = new BufferedReader(resourceHandler.getResourceAsReader(cssFile))) {
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                messageLog.setLine(lineNumber);
+            // Both directives contain the prefix, skip the regular expressions for all other lines
+            if (!line.contains(DIRECTIVE_PREFIX)) {
+                continue;
+            }
 
-                final String spriteImageDirectiveString = extractSpriteImageDirectiveString(line);
-                if (spriteImageDirectiveString == null) {
-                    continue;
-                }
+            final String spriteReferenceDirectiveString = extractSpriteReferenceDirectiveString(line);
+            if (spriteReferenceDirectiveString != null) {
+                parsedCssFile.spriteReferences.add(new RawSpriteReference(lineNumber, spriteReferenceDirectiveString));
+            }
 
-                final SpriteImageDirective directive = SpriteImageDirective.parse(spriteImageDirectiveString,
-                        messageLog);
-                if (directive == null) {
-                    continue;
-                }
+            final String spriteImageDirectiveString = extractSpriteImageDirectiveString(line);
+            if (spriteImageDirectiveString == null) {
+                continue;
+            }
 
-                occurrences.add(new SpriteImageOccurrence(directive, cssFile, lineNumber));
+            final SpriteImageDirective directive = SpriteImageDirective.parse(spriteImageDirectiveString, messageLog);
+            if (directive == null) {
+                continue;
             }
+
+            parsedCssFile.spriteImageOccurrences.add(new SpriteImageOccurrence(directive, cssFile, lineNumber));
         }
 
-        return occurrences;
+        return parsedCssFile;
     }
 
     /**
-     * Collects {@link SpriteReferenceOccurrence}s from a single CSS file.
+     * Collects {@link SpriteReferenceOccurrence}s from a single parsed CSS file.
      *
-     * @param cssFile
-     *            the css file
+     * @param parsedCssFile
+     *            the parsed css file
      * @param spriteImageDirectives
      *            the sprite image directives
      *
      * @return the collection
-     *
-     * @throws IOException
-     *             Signals that an I/O exception has occurred.
      */
-    Collection<SpriteReferenceOccurrence> collectSpriteReferenceOccurrences(String cssFile,
-            Map<String, SpriteImageDirective> spriteImageDirectives) throws IOException {
+    Collection<SpriteReferenceOccurrence> collectSpriteReferenceOccurrences(ParsedCssFile parsedCssFile,
+            Map<String, SpriteImageDirective> spriteImageDirectives) {
+        final String cssFile = parsedCssFile.cssFile;
         final Collection<SpriteReferenceOccurrence> directives = new ArrayList<>();
 
         messageLog.setCssFile(null);
         messageLog.info(MessageType.READING_SPRITE_REFERENCE_DIRECTIVES, cssFile);
         messageLog.setCssFile(cssFile);
 
-        int lineNumber = -1;
-        String line;
-
-        try (BufferedReader reader = new BufferedReader(resourceHandler.getResourceAsReader(cssFile))) {
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                messageLog.setLine(lineNumber);
-
-                final String directiveString = extractSpriteReferenceDirectiveString(line);
-                if (directiveString == null) {
-                    continue;
-                }
-
-                final CssProperty backgroundProperty = extractSpriteReferenceCssProperty(line);
-                final String imageUrl = CssSyntaxUtils.unpackUrl(backgroundProperty.value, messageLog);
-                if (imageUrl == null) {
-                    continue;
-                }
-
-                final SpriteReferenceDirective directive = SpriteReferenceDirective.parse(directiveString,
-                        spriteImageDirectives, messageLog);
-                if (directive == null) {
-                    continue;
-                }
-
-                directives.add(new SpriteReferenceOccurrence(directive, imageUrl, cssFile, lineNumber,
-                        backgroundProperty.important));
+        for (final RawSpriteReference spriteReference : parsedCssFile.spriteReferences) {
+            messageLog.setLine(spriteReference.line);
+
+            final CssProperty backgroundProperty = extractSpriteReferenceCssProperty(
+                    parsedCssFile.getLine(spriteReference.line));
+            final String imageUrl = CssSyntaxUtils.unpackUrl(backgroundProperty.value, messageLog);
+            if (imageUrl == null) {
+                continue;
             }
+
+            final SpriteReferenceDirective directive = SpriteReferenceDirective.parse(spriteReference.directive,
+                    spriteImageDirectives, messageLog);
+            if (directive == null) {
+                continue;
+            }
+
+            directives.add(new SpriteReferenceOccurrence(directive, imageUrl, cssFile, spriteReference.line,
+                    backgroundProperty.important));
+        }
+
+        // Leave the log at the last line of the file, just like after reading it line by line
+        if (parsedCssFile.getLineCount() > 0) {
+            messageLog.setLine(parsedCssFile.getLineCount() - 1);
         }
 
         return directives;
     }
 
     /**
-     * Collects {@link SpriteImageOccurrence}s from the provided CSS files.
+     * Reads the provided CSS files, collecting sprite image and raw sprite reference directives. If a pool is provided,
+     * the files are read concurrently. The results and messages are collected in input order in either case.
      *
      * @param filePaths
      *            the file paths
+     * @param pool
+     *            the pool to read the files in, <code>null</code> to read them on the calling thread
      *
-     * @return the multimap
+     * @return the parsed css files, in input order
      *
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    Multimap<String, SpriteImageOccurrence> collectSpriteImageOccurrences(Collection<String> filePaths)
-            throws IOException {
-        final Multimap<String, SpriteImageOccurrence> spriteImageOccurrencesByFile = LinkedListMultimap.create();
-        for (final String cssFile : filePaths) {
-            messageLog.setCssFile(cssFile);
+    List<ParsedCssFile> parseCssFiles(Collection<String> filePaths, ForkJoinPool pool) throws IOException {
+        final List<ParsedCssFile> parsedCssFiles = new ArrayList<>(filePaths.size());
+        if (pool == null) {
+            for (final String cssFile : filePaths) {
+                messageLog.setCssFile(cssFile);
+                parsedCssFiles.add(parseCssFile(cssFile));
+            }
+            return parsedCssFiles;
+        }
 
-            final Collection<SpriteImageOccurrence> spriteImageOccurrences = collectSpriteImageOccurrences(cssFile);
+        final List<LoggedTaskResult<ParsedCssFile>> results = ParallelUtils.map(pool, new ArrayList<>(filePaths),
+                cssFile -> LoggedTaskResult.run(messageLog, resourceHandler, (fileMessageLog,
+                        fileResourceHandler) -> new SpriteDirectiveOccurrenceCollector(fileMessageLog,
+                                fileResourceHandler).parseCssFile(cssFile)));
+        for (final LoggedTaskResult<ParsedCssFile> result : results) {
+            parsedCssFiles.add(result.replay());
+        }
+        return parsedCssFiles;
+    }
 
-            spriteImageOccurrencesByFile.putAll(cssFile, spriteImageOccurrences);
+    /**
+     * Collects {@link SpriteImageOccurrence}s from the provided parsed CSS files.
+     *
+     * @param parsedCssFiles
+     *            the parsed css files
+     *
+     * @return the multimap
+     */
+    static Multimap<String, SpriteImageOccurrence> collectSpriteImageOccurrences(
+            Collection<ParsedCssFile> parsedCssFiles) {
+        final Multimap<String, SpriteImageOccurrence> spriteImageOccurrencesByFile = LinkedListMultimap.create();
+        for (final ParsedCssFile parsedCssFile : parsedCssFiles) {
+            spriteImageOccurrencesByFile.putAll(parsedCssFile.cssFile, parsedCssFile.spriteImageOccurrences);
         }
         return spriteImageOccurrencesByFile;
     }
 
     /**
-     * Collects {@link SpriteReferenceOccurrence}s from the provided CSS files.
+     * Collects {@link SpriteReferenceOccurrence}s from the provided parsed CSS files. If a pool is provided, the files
+     * are processed concurrently. The results and messages are collected in input order in either case.
      *
-     * @param files
-     *            the files
+     * @param parsedCssFiles
+     *            the parsed css files
      * @param spriteImageDirectivesBySpriteId
      *            the sprite image directives by sprite id
+     * @param pool
+     *            the pool to process the files in, <code>null</code> to process them on the calling thread
      *
      * @return the multimap
      *
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    Multimap<String, SpriteReferenceOccurrence> collectSpriteReferenceOccurrences(Collection<String> files,
-            final Map<String, SpriteImageDirective> spriteImageDirectivesBySpriteId) throws IOException {
+    Multimap<String, SpriteReferenceOccurrence> collectSpriteReferenceOccurrences(List<ParsedCssFile> parsedCssFiles,
+            final Map<String, SpriteImageDirective> spriteImageDirectivesBySpriteId, ForkJoinPool pool)
+            throws IOException {
         final Multimap<String, SpriteReferenceOccurrence> spriteEntriesByFile = LinkedListMultimap.create();
-        for (final String cssFile : files) {
-            messageLog.setCssFile(cssFile);
+        if (pool == null) {
+            for (final ParsedCssFile parsedCssFile : parsedCssFiles) {
+                messageLog.setCssFile(parsedCssFile.cssFile);
+
+                final Collection<SpriteReferenceOccurrence> spriteReferenceOccurrences = collectSpriteReferenceOccurrences(
+                        parsedCssFile, spriteImageDirectivesBySpriteId);
 
-            final Collection<SpriteReferenceOccurrence> spriteReferenceOccurrences = collectSpriteReferenceOccurrences(
-                    cssFile, spriteImageDirectivesBySpriteId);
+                spriteEntriesByFile.putAll(parsedCssFile.cssFile, spriteReferenceOccurrences);
+            }
+            return spriteEntriesByFile;
+        }
 
-            spriteEntriesByFile.putAll(cssFile, spriteReferenceOccurrences);
+        final List<LoggedTaskResult<Collection<SpriteReferenceOccurrence>>> results = ParallelUtils.map(pool,
+                parsedCssFiles,
+                parsedCssFile -> LoggedTaskResult.run(messageLog, resourceHandler,
+                        (fileMessageLog, fileResourceHandler) -> new SpriteDirectiveOccurrenceCollector(fileMessageLog,
+                                fileResourceHandler).collectSpriteReferenceOccurrences(parsedCssFile,
+                                        spriteImageDirectivesBySpriteId)));
+        for (int i = 0; i < parsedCssFiles.size(); i++) {
+            spriteEntriesByFile.putAll(parsedCssFiles.get(i).cssFile, results.get(i).replay());
         }
         return spriteEntriesByFile;
     }
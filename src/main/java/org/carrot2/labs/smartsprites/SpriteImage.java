@@ -22,7 +22,7 @@ import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteUidType;
  */
 public class SpriteImage {
 
-    /** The rendered sprite image bitmap. */
+    /** The rendered sprite image bitmap, <code>null</code> for sprite images reused by an incremental build. */
     public final BufferedImage sprite;
 
     /**
@@ -55,6 +55,16 @@ public class SpriteImage {
      */
     public float scaleRatio;
 
+    /**
+     * The index of this sheet among the sheets the sprite has been split into.
+     */
+    public final int sheet;
+
+    /**
+     * The number of sheets the sprite has been split into, 1 if the sprite has not been split.
+     */
+    public final int sheetCount;
+
     /** The Constant SPRITE_VARIABLE. */
     private static final Pattern SPRITE_VARIABLE = Pattern.compile("${sprite}", Pattern.LITERAL);
 
@@ -77,12 +87,40 @@ public class SpriteImage {
     public SpriteImage(BufferedImage sprite, SpriteImageOccurrence spriteImageOccurrence,
             Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReplacements, int width, int height,
             float scale) {
+        this(sprite, spriteImageOccurrence, spriteReplacements, width, height, scale, 0, 1);
+    }
+
+    /**
+     * Instantiates a new sprite image holding one of the sheets a sprite has been split into.
+     *
+     * @param sprite
+     *            the sprite
+     * @param spriteImageOccurrence
+     *            the sprite image occurrence
+     * @param spriteReplacements
+     *            the sprite replacements
+     * @param width
+     *            the width
+     * @param height
+     *            the height
+     * @param scale
+     *            the scale
+     * @param sheet
+     *            the index of the sheet
+     * @param sheetCount
+     *            the number of sheets
+     */
+    public SpriteImage(BufferedImage sprite, SpriteImageOccurrence spriteImageOccurrence,
+            Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReplacements, int width, int height,
+            float scale, int sheet, int sheetCount) {
         this.sprite = sprite;
         this.spriteReferenceReplacements = spriteReplacements;
         this.spriteImageOccurrence = spriteImageOccurrence;
         this.spriteWidth = width;
         this.spriteHeight = height;
         this.scaleRatio = scale;
+        this.sheet = sheet;
+        this.sheetCount = sheetCount;
 
         for (SpriteReferenceReplacement replacement : spriteReplacements.values()) {
             replacement.spriteImage = this;
@@ -105,6 +143,15 @@ public class SpriteImage {
     String resolveImagePath(byte[] image, String timestamp) throws IOException {
         String imagePath = spriteImageOccurrence.spriteImageDirective.imagePath;
 
+        // The sheets of a split sprite need different file names, number them even if there is no sprite variable
+        String spriteName = spriteImageOccurrence.spriteImageDirective.spriteId;
+        if (sheetCount > 1) {
+            spriteName += "-" + (sheet + 1);
+            if (!SPRITE_VARIABLE.matcher(imagePath).find()) {
+                imagePath = appendToFileName(imagePath, "-" + (sheet + 1));
+            }
+        }
+
         // Backwards compatibility: if there are no place holders in the path
         // and the UID type is defined, append the UID as a query string just like
         // the previous versions did. To be removed in 0.4.0.
@@ -125,12 +172,30 @@ public class SpriteImage {
         imagePath = SpriteUidType.DATE.pattern.matcher(imagePath).replaceAll(timestamp);
 
         // Resolve sprite name
-        imagePath = SPRITE_VARIABLE.matcher(imagePath).replaceAll(spriteImageOccurrence.spriteImageDirective.spriteId);
+        imagePath = SPRITE_VARIABLE.matcher(imagePath).replaceAll(spriteName);
 
         this.resolvedPath = imagePath;
         return this.resolvedPath;
     }
 
+    /**
+     * Appends a suffix to the file name in an image path, before the extension and the query string if any.
+     *
+     * @param imagePath
+     *            the image path
+     * @param suffix
+     *            the suffix
+     *
+     * @return the image path with the suffix
+     */
+    private static String appendToFileName(String imagePath, String suffix) {
+        final int queryStringIndex = imagePath.indexOf('?');
+        final int end = queryStringIndex >= 0 ? queryStringIndex : imagePath.length();
+        final int extensionIndex = imagePath.lastIndexOf('.', end - 1);
+        final int index = extensionIndex > imagePath.lastIndexOf('/', end - 1) ? extensionIndex : end;
+        return imagePath.substring(0, index) + suffix + imagePath.substring(index);
+    }
+
     /**
      * Computes Sha512 using guava.
      *
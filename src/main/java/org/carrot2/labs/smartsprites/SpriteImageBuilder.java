@@ -9,18 +9,30 @@ package org.carrot2.labs.smartsprites;
 
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.ImageIO;
 
@@ -31,12 +43,18 @@ import org.apache.batik.transcoder.image.ImageTranscoder;
 import org.apache.commons.math3.util.ArithmeticUtils;
 import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteImageFormat;
 import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteImageLayout;
+import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteTrimMode;
 import org.carrot2.labs.smartsprites.SpriteLayoutProperties.SpriteAlignment;
+import org.carrot2.labs.smartsprites.message.Message.MessageLevel;
 import org.carrot2.labs.smartsprites.message.Message.MessageType;
 import org.carrot2.labs.smartsprites.message.MessageLog;
 import org.carrot2.labs.smartsprites.resource.ResourceHandler;
+import org.carrot2.util.Abortable;
 import org.carrot2.util.BufferedImageUtils;
 import org.carrot2.util.FileUtils;
+import org.carrot2.util.ParallelUtils;
+import org.carrot2.util.QuantizerPool;
+import org.carrot2.util.SkylinePacker;
 
 /**
  * Lays out and builds sprite images based on the collected SmartSprites directives.
@@ -63,6 +81,9 @@ public class SpriteImageBuilder {
      */
     private Instant timestamp;
 
+    /** The cache of decoded individual images, <code>null</code> to decode all images. */
+    private DecodedImageCache decodedImageCache;
+
     /**
      * Creates a {@link SpriteImageBuilder} with the provided parameters and log.
      *
@@ -81,12 +102,31 @@ public class SpriteImageBuilder {
     }
 
     /**
-     * Builds all sprite images based on the collected directives.
+     * Sets the cache of decoded individual images to reuse instead of reading the images again. Images decoded while
+     * building sprite images are added to the cache. The cache is only used if the resource handler
+     * {@linkplain ResourceHandler#readsLocalFiles() reads local files}.
+     *
+     * @param decodedImageCache
+     *            the decoded image cache, <code>null</code> to decode all images
+     */
+    void setDecodedImageCache(DecodedImageCache decodedImageCache) {
+        this.decodedImageCache = decodedImageCache;
+    }
+
+    /**
+     * Builds all sprite images based on the collected directives. If a pool is provided, independent sprite images
+     * are built concurrently. Messages logged while building each sprite image are collected separately and passed on
+     * to this builder's log in sprite order, so that the log looks the same as for a sequential build.
      *
      * @param spriteImageOccurrencesBySpriteId
      *            the sprite image occurrences by sprite id
      * @param spriteReferenceOccurrencesBySpriteId
      *            the sprite reference occurrences by sprite id
+     * @param pool
+     *            the pool to build sprite images in, <code>null</code> to build them on the calling thread
+     * @param manifest
+     *            the manifest to reuse unchanged sprite images from and record the built sprite images to,
+     *            <code>null</code> to build all sprite images
      *
      * @return the multimap
      *
@@ -95,25 +135,265 @@ public class SpriteImageBuilder {
      */
     Multimap<String, SpriteReferenceReplacement> buildSpriteImages(
             Map<String, SpriteImageOccurrence> spriteImageOccurrencesBySpriteId,
-            Multimap<String, SpriteReferenceOccurrence> spriteReferenceOccurrencesBySpriteId) throws IOException {
+            Multimap<String, SpriteReferenceOccurrence> spriteReferenceOccurrencesBySpriteId, ForkJoinPool pool,
+            SpriteManifest manifest) throws IOException {
         timestamp = Instant.now();
 
-        final Multimap<String, SpriteReferenceReplacement> spriteReplacementsByFile = LinkedListMultimap.create();
-        for (final Map.Entry<String, Collection<SpriteReferenceOccurrence>> spriteReferenceOccurrences : spriteReferenceOccurrencesBySpriteId
-                .asMap().entrySet()) {
-            final Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReferenceReplacements = buildSpriteReplacements(
-                    spriteImageOccurrencesBySpriteId.get(spriteReferenceOccurrences.getKey()),
-                    spriteReferenceOccurrences.getValue());
+        // Quantizers are reused by the sprites of this build only, so that their storage does not outlive it
+        final QuantizerPool quantizers = new QuantizerPool();
 
-            for (final SpriteReferenceReplacement spriteReferenceReplacement : spriteReferenceReplacements.values()) {
-                spriteReplacementsByFile.put(spriteReferenceReplacement.spriteReferenceOccurrence.cssFile,
-                        spriteReferenceReplacement);
+        final Multimap<String, SpriteReferenceReplacement> spriteReplacementsByFile = LinkedListMultimap.create();
+        if (pool == null) {
+            for (final Map.Entry<String, Collection<SpriteReferenceOccurrence>> spriteReferenceOccurrences : spriteReferenceOccurrencesBySpriteId
+                    .asMap().entrySet()) {
+                final Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReferenceReplacements = buildSpriteReplacements(
+                        spriteImageOccurrencesBySpriteId.get(spriteReferenceOccurrences.getKey()),
+                        spriteReferenceOccurrences.getValue(), messageLog, resourceHandler, null, quantizers,
+                        manifest);
+
+                addSpriteReplacements(spriteReplacementsByFile, spriteReferenceReplacements);
             }
+            return spriteReplacementsByFile;
+        }
+
+        final List<LoggedTaskResult<Map<SpriteReferenceOccurrence, SpriteReferenceReplacement>>> results = ParallelUtils
+                .map(pool, new ArrayList<>(spriteReferenceOccurrencesBySpriteId.asMap().entrySet()),
+                        spriteReferenceOccurrences -> LoggedTaskResult.run(messageLog, resourceHandler,
+                                (spriteMessageLog, spriteResourceHandler) -> buildSpriteReplacements(
+                                        spriteImageOccurrencesBySpriteId.get(spriteReferenceOccurrences.getKey()),
+                                        spriteReferenceOccurrences.getValue(), spriteMessageLog, spriteResourceHandler,
+                                        pool, quantizers, manifest)));
+
+        // Pass on the messages in sprite order, stopping at the first failure, just like a sequential build would
+        for (final LoggedTaskResult<Map<SpriteReferenceOccurrence, SpriteReferenceReplacement>> result : results) {
+            addSpriteReplacements(spriteReplacementsByFile, result.replay());
         }
 
         return spriteReplacementsByFile;
     }
 
+    /**
+     * Groups the sprite reference replacements of one sprite image by CSS file.
+     *
+     * @param spriteReplacementsByFile
+     *            the sprite replacements by file to add to
+     * @param spriteReferenceReplacements
+     *            the sprite reference replacements
+     */
+    private static void addSpriteReplacements(Multimap<String, SpriteReferenceReplacement> spriteReplacementsByFile,
+            Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReferenceReplacements) {
+        for (final SpriteReferenceReplacement spriteReferenceReplacement : spriteReferenceReplacements.values()) {
+            spriteReplacementsByFile.put(spriteReferenceReplacement.spriteReferenceOccurrence.cssFile,
+                    spriteReferenceReplacement);
+        }
+    }
+
+    /**
+     * Reads the individual images of a sprite. If a pool is provided, the images are read concurrently and the messages
+     * are passed on in the original order, so that the layout and the log do not depend on the order of reading.
+     *
+     * @param spriteReferenceOccurrences
+     *            the sprite reference occurrences
+     * @param decode
+     *            whether to decode the images while reading them, otherwise their content is only read into memory
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     * @param pool
+     *            the pool to read images in, <code>null</code> to read them on the calling thread
+     *
+     * @return the images, in the order of the sprite reference occurrences
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private List<SourceImage> readSourceImages(Collection<SpriteReferenceOccurrence> spriteReferenceOccurrences,
+            boolean decode, MessageLog messageLog, ResourceHandler resourceHandler, ForkJoinPool pool)
+            throws IOException {
+        final List<SourceImage> sourceImages = new ArrayList<>(spriteReferenceOccurrences.size());
+        if (pool == null) {
+            for (final SpriteReferenceOccurrence spriteReferenceOccurrence : spriteReferenceOccurrences) {
+                sourceImages.add(readSourceImage(spriteReferenceOccurrence, decode, messageLog, resourceHandler));
+            }
+            return sourceImages;
+        }
+
+        final List<LoggedTaskResult<SourceImage>> results = ParallelUtils.map(pool,
+                new ArrayList<>(spriteReferenceOccurrences),
+                spriteReferenceOccurrence -> LoggedTaskResult.run(messageLog, resourceHandler, (imageMessageLog,
+                        imageResourceHandler) -> readSourceImage(spriteReferenceOccurrence, decode, imageMessageLog,
+                                imageResourceHandler)));
+        for (final LoggedTaskResult<SourceImage> result : results) {
+            sourceImages.add(result.replay());
+        }
+        return sourceImages;
+    }
+
+    /**
+     * Reads the image of a single sprite reference, logs a warning if the image cannot be read.
+     *
+     * @param spriteReferenceOccurrence
+     *            the sprite reference occurrence
+     * @param decode
+     *            whether to decode the image while reading it, otherwise the content is only read into memory
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     *
+     * @return the image, without content if the image could not be read
+     */
+    private SourceImage readSourceImage(SpriteReferenceOccurrence spriteReferenceOccurrence, boolean decode,
+            MessageLog messageLog, ResourceHandler resourceHandler) {
+        messageLog.setCssFile(spriteReferenceOccurrence.cssFile);
+        messageLog.setLine(spriteReferenceOccurrence.line);
+
+        final SourceImage sourceImage = new SourceImage(spriteReferenceOccurrence, resourceHandler
+                .getResourcePath(spriteReferenceOccurrence.cssFile, spriteReferenceOccurrence.imagePath));
+        messageLog.info(MessageType.READING_IMAGE, sourceImage.path);
+        final DecodedImageCache.Key cacheKey = decode && decodedImageCache != null
+                && resourceHandler.readsLocalFiles() ? decodedImageCache.key(sourceImage.path) : null;
+        if (cacheKey != null) {
+            sourceImage.image = decodedImageCache.get(cacheKey);
+            if (sourceImage.image != null) {
+                messageLog.setCssFile(null);
+                return sourceImage;
+            }
+        }
+
+        try (InputStream is = resourceHandler.getResourceAsInputStream(sourceImage.path)) {
+
+            // Load image
+            if (is == null) {
+                messageLog.warning(MessageType.CANNOT_NOT_LOAD_IMAGE, sourceImage.path, CANNOT_READ_INPUT_FILE_MESSAGE);
+                return sourceImage;
+            }
+            if (!decode) {
+                sourceImage.bytes = ByteStreams.toByteArray(is);
+                return sourceImage;
+            }
+
+            sourceImage.image = readImage(is, sourceImage.path);
+            if (sourceImage.image == null) {
+                messageLog.warning(MessageType.UNSUPPORTED_INDIVIDUAL_IMAGE_FORMAT, sourceImage.path);
+            } else if (cacheKey != null) {
+                decodedImageCache.put(cacheKey, sourceImage.image);
+            }
+        } catch (final IOException e) {
+            logCannotLoadImage(sourceImage.path, e, messageLog);
+            return sourceImage;
+        }
+
+        messageLog.setCssFile(null);
+        return sourceImage;
+    }
+
+    /**
+     * Decodes the individual images of a sprite that have been read without decoding. If a pool is provided, the
+     * images are decoded concurrently and the messages are passed on in the original order.
+     *
+     * @param sourceImages
+     *            the images
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     * @param pool
+     *            the pool to decode images in, <code>null</code> to decode them on the calling thread
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private void decodeSourceImages(List<SourceImage> sourceImages, MessageLog messageLog,
+            ResourceHandler resourceHandler, ForkJoinPool pool) throws IOException {
+        if (pool == null) {
+            for (final SourceImage sourceImage : sourceImages) {
+                decodeSourceImage(sourceImage, messageLog);
+            }
+            return;
+        }
+
+        final List<LoggedTaskResult<SourceImage>> results = ParallelUtils.map(pool, sourceImages,
+                sourceImage -> LoggedTaskResult.run(messageLog, resourceHandler,
+                        (imageMessageLog, imageResourceHandler) -> {
+                            decodeSourceImage(sourceImage, imageMessageLog);
+                            return sourceImage;
+                        }));
+        for (final LoggedTaskResult<SourceImage> result : results) {
+            result.replay();
+        }
+    }
+
+    /**
+     * Decodes the content of an image read into memory, logs a warning if the image cannot be decoded.
+     *
+     * @param sourceImage
+     *            the image
+     * @param messageLog
+     *            the message log
+     */
+    private void decodeSourceImage(SourceImage sourceImage, MessageLog messageLog) {
+        if (sourceImage.bytes == null) {
+            return;
+        }
+
+        messageLog.setCssFile(sourceImage.spriteReferenceOccurrence.cssFile);
+        messageLog.setLine(sourceImage.spriteReferenceOccurrence.line);
+
+        final byte[] bytes = sourceImage.bytes;
+        sourceImage.bytes = null;
+        try {
+            sourceImage.image = readImage(new ByteArrayInputStream(bytes), sourceImage.path);
+        } catch (final IOException e) {
+            logCannotLoadImage(sourceImage.path, e, messageLog);
+            return;
+        }
+        if (sourceImage.image == null) {
+            messageLog.warning(MessageType.UNSUPPORTED_INDIVIDUAL_IMAGE_FORMAT, sourceImage.path);
+        }
+
+        messageLog.setCssFile(null);
+    }
+
+    /**
+     * Logs a warning about an image that cannot be read or decoded.
+     *
+     * @param imagePath
+     *            the image path
+     * @param e
+     *            the exception
+     * @param messageLog
+     *            the message log
+     */
+    private void logCannotLoadImage(String imagePath, IOException e, MessageLog messageLog) {
+        final String errorMessage;
+        if (isSvgPath(imagePath) && e.getMessage() != null && !e.getMessage().isBlank()) {
+            errorMessage = e.getMessage();
+        } else {
+            errorMessage = CANNOT_READ_INPUT_FILE_MESSAGE;
+        }
+        messageLog.warning(MessageType.CANNOT_NOT_LOAD_IMAGE, imagePath, errorMessage);
+    }
+
+    /**
+     * Collects the decoded individual images of a sprite, skipping images that could not be read or decoded.
+     *
+     * @param sourceImages
+     *            the images
+     *
+     * @return the decoded images by sprite reference occurrence
+     */
+    private static Map<SpriteReferenceOccurrence, BufferedImage> getImages(List<SourceImage> sourceImages) {
+        final Map<SpriteReferenceOccurrence, BufferedImage> images = new LinkedHashMap<>();
+        for (final SourceImage sourceImage : sourceImages) {
+            if (sourceImage.image != null) {
+                images.put(sourceImage.spriteReferenceOccurrence, sourceImage.image);
+            }
+        }
+        return images;
+    }
+
     /**
      * Reads an image from an input stream.
      *
@@ -185,56 +465,284 @@ public class SpriteImageBuilder {
     Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> buildSpriteReplacements(
             SpriteImageOccurrence spriteImageOccurrence,
             Collection<SpriteReferenceOccurrence> spriteReferenceOccurrences) throws IOException {
+        return buildSpriteReplacements(spriteImageOccurrence, spriteReferenceOccurrences, messageLog,
+                resourceHandler, null, new QuantizerPool(), null);
+    }
+
+    /**
+     * Builds sprite image for a single sprite image directive, logging messages to the provided log.
+     *
+     * @param spriteImageOccurrence
+     *            the sprite image occurrence
+     * @param spriteReferenceOccurrences
+     *            the sprite reference occurrences
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     * @param pool
+     *            the pool to read images and quantize the sprite in, <code>null</code> to do it on the calling thread
+     * @param quantizers
+     *            the quantizers to borrow from
+     * @param manifest
+     *            the manifest of the incremental build, <code>null</code> to always build the sprite image
+     *
+     * @return the map
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> buildSpriteReplacements(
+            SpriteImageOccurrence spriteImageOccurrence,
+            Collection<SpriteReferenceOccurrence> spriteReferenceOccurrences, MessageLog messageLog,
+            ResourceHandler resourceHandler, ForkJoinPool pool, QuantizerPool quantizers, SpriteManifest manifest)
+            throws IOException {
+        if (manifest != null && SpriteManifest.supports(spriteImageOccurrence.spriteImageDirective)) {
+            return buildSpriteReplacementsIncrementally(spriteImageOccurrence, spriteReferenceOccurrences, messageLog,
+                    resourceHandler, pool, quantizers, manifest);
+        }
+
         // Load images into memory. TODO: impose some limit here?
-        final Map<SpriteReferenceOccurrence, BufferedImage> images = new LinkedHashMap<>();
-        for (final SpriteReferenceOccurrence spriteReferenceOccurrence : spriteReferenceOccurrences) {
-            messageLog.setCssFile(spriteReferenceOccurrence.cssFile);
-            messageLog.setLine(spriteReferenceOccurrence.line);
+        final List<SourceImage> sourceImages = readSourceImages(spriteReferenceOccurrences, true, messageLog,
+                resourceHandler, pool);
 
-            final String realImagePath = resourceHandler.getResourcePath(spriteReferenceOccurrence.cssFile,
-                    spriteReferenceOccurrence.imagePath);
+        // Build the sprite image bitmaps
+        final List<SpriteImage> spriteImages = SpriteImageBuilder.buildSpriteSheets(spriteImageOccurrence,
+                getImages(sourceImages), messageLog);
 
-            try (InputStream is = resourceHandler.getResourceAsInputStream(realImagePath)) {
+        return writeSpriteSheets(spriteImages, messageLog, resourceHandler, pool, quantizers);
+    }
 
-                // Load image
-                if (is == null) {
-                    messageLog.warning(MessageType.CANNOT_NOT_LOAD_IMAGE, realImagePath,
-                            CANNOT_READ_INPUT_FILE_MESSAGE);
-                    continue;
-                }
-                messageLog.info(MessageType.READING_IMAGE, realImagePath);
-                final BufferedImage image = readImage(is, realImagePath);
-                if (image != null) {
-                    images.put(spriteReferenceOccurrence, image);
-                } else {
-                    messageLog.warning(MessageType.UNSUPPORTED_INDIVIDUAL_IMAGE_FORMAT, realImagePath);
-                }
-            } catch (final IOException e) {
-                final String errorMessage;
-                if (isSvgPath(realImagePath) && e.getMessage() != null && !e.getMessage().isBlank()) {
-                    errorMessage = e.getMessage();
-                } else {
-                    errorMessage = CANNOT_READ_INPUT_FILE_MESSAGE;
-                }
-                messageLog.warning(MessageType.CANNOT_NOT_LOAD_IMAGE, realImagePath, errorMessage);
-                continue;
+    /**
+     * Renders the sheets of a sprite image into the required formats and writes them to the disk.
+     *
+     * @param spriteImages
+     *            the sheets of the sprite image
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     * @param pool
+     *            the pool to quantize the sheets in, <code>null</code> to do it on the calling thread
+     * @param quantizers
+     *            the quantizers to borrow from
+     *
+     * @return the sprite reference replacements of all sheets
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> writeSpriteSheets(
+            List<SpriteImage> spriteImages, MessageLog messageLog, ResourceHandler resourceHandler, ForkJoinPool pool,
+            QuantizerPool quantizers) throws IOException {
+        final Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReplacements = new LinkedHashMap<>();
+        for (final SpriteImage spriteImage : spriteImages) {
+            // Render the sprite into the required formats, perform quantization if needed
+            final BufferedImage[] mergedImages = spriteImageRenderer.render(spriteImage, messageLog, pool,
+                    quantizers);
+
+            writeSprite(spriteImage, mergedImages[0], messageLog, resourceHandler);
+            spriteReplacements.putAll(spriteImage.spriteReferenceReplacements);
+        }
+        return spriteReplacements;
+    }
+
+    /**
+     * Builds sprite image for a single sprite image directive, reusing the sprite image written by the previous build
+     * if its inputs have not changed. Sprite images built with warnings are not recorded in the manifest, so that they
+     * are rebuilt and the warnings are reported again by the next build.
+     *
+     * @param spriteImageOccurrence
+     *            the sprite image occurrence
+     * @param spriteReferenceOccurrences
+     *            the sprite reference occurrences
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     * @param pool
+     *            the pool to read images and quantize the sprite in, <code>null</code> to do it on the calling thread
+     * @param quantizers
+     *            the quantizers to borrow from
+     * @param manifest
+     *            the manifest of the incremental build
+     *
+     * @return the map
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> buildSpriteReplacementsIncrementally(
+            SpriteImageOccurrence spriteImageOccurrence,
+            Collection<SpriteReferenceOccurrence> spriteReferenceOccurrences, MessageLog messageLog,
+            ResourceHandler resourceHandler, ForkJoinPool pool, QuantizerPool quantizers, SpriteManifest manifest)
+            throws IOException {
+        final LoggedTaskResult<IncrementalBuildResult> result = LoggedTaskResult.run(messageLog, resourceHandler,
+                (spriteMessageLog, spriteResourceHandler) -> buildSpriteImageIncrementally(spriteImageOccurrence,
+                        spriteReferenceOccurrences, spriteMessageLog, spriteResourceHandler, pool, quantizers,
+                        manifest));
+        final boolean warnings = result.hasMessages(MessageLevel.WARN);
+        final IncrementalBuildResult incrementalBuildResult = result.replay();
+
+        if (!warnings && incrementalBuildResult.manifestEntry != null) {
+            manifest.record(incrementalBuildResult.manifestEntry);
+        }
+        return incrementalBuildResult.spriteReferenceReplacements;
+    }
+
+    /**
+     * Reads the individual images of a sprite and reuses the sprite image recorded in the manifest if the inputs match,
+     * otherwise decodes the images and builds the sprite image.
+     *
+     * @param spriteImageOccurrence
+     *            the sprite image occurrence
+     * @param spriteReferenceOccurrences
+     *            the sprite reference occurrences
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     * @param pool
+     *            the pool to read images and quantize the sprite in, <code>null</code> to do it on the calling thread
+     * @param quantizers
+     *            the quantizers to borrow from
+     * @param manifest
+     *            the manifest of the incremental build
+     *
+     * @return the result
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private IncrementalBuildResult buildSpriteImageIncrementally(SpriteImageOccurrence spriteImageOccurrence,
+            Collection<SpriteReferenceOccurrence> spriteReferenceOccurrences, MessageLog messageLog,
+            ResourceHandler resourceHandler, ForkJoinPool pool, QuantizerPool quantizers, SpriteManifest manifest)
+            throws IOException {
+        // Only read the images, there is no need to decode them if the sprite image is up to date
+        final List<SourceImage> sourceImages = readSourceImages(spriteReferenceOccurrences, false, messageLog,
+                resourceHandler, pool);
+        final String fingerprint = SpriteManifest.fingerprint(parameters, spriteImageOccurrence, sourceImages);
+
+        final SpriteManifest.Entry previousEntry = manifest
+                .getPreviousEntry(spriteImageOccurrence.spriteImageDirective.spriteId);
+        if (previousEntry != null && previousEntry.fingerprint.equals(fingerprint)) {
+            final SpriteImage spriteImage = reuseSpriteImage(spriteImageOccurrence, sourceImages, previousEntry,
+                    messageLog, resourceHandler);
+            if (spriteImage != null) {
+                return new IncrementalBuildResult(spriteImage.spriteReferenceReplacements, previousEntry);
             }
+        }
 
-            messageLog.setCssFile(null);
+        decodeSourceImages(sourceImages, messageLog, resourceHandler, pool);
+        final List<SpriteImage> spriteImages = SpriteImageBuilder.buildSpriteSheets(spriteImageOccurrence,
+                getImages(sourceImages), messageLog);
+        if (spriteImages.size() != 1) {
+            // The manifest records whole sprite images only, sprites split into sheets are rebuilt every time
+            return new IncrementalBuildResult(
+                    writeSpriteSheets(spriteImages, messageLog, resourceHandler, pool, quantizers), null);
         }
 
-        // Build the sprite image bitmap
-        final SpriteImage spriteImage = SpriteImageBuilder.buildSpriteImage(spriteImageOccurrence, images, messageLog);
-        if (spriteImage == null) {
-            return Map.of();
+        final SpriteImage spriteImage = spriteImages.get(0);
+        final BufferedImage[] mergedImages = spriteImageRenderer.render(spriteImage, messageLog, pool, quantizers);
+        final byte[] spriteImageBytes = writeSprite(spriteImage, mergedImages[0], messageLog, resourceHandler);
+        return new IncrementalBuildResult(spriteImage.spriteReferenceReplacements,
+                createManifestEntry(fingerprint, spriteImage, sourceImages, spriteImageBytes));
+    }
+
+    /**
+     * Recreates a sprite image recorded in the manifest, provided that the sprite image file written by the previous
+     * build has not been changed or removed since.
+     *
+     * @param spriteImageOccurrence
+     *            the sprite image occurrence
+     * @param sourceImages
+     *            the individual images, in layout order
+     * @param entry
+     *            the manifest entry
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     *
+     * @return the sprite image, without the bitmap, or <code>null</code> if the sprite image must be rebuilt
+     */
+    private SpriteImage reuseSpriteImage(SpriteImageOccurrence spriteImageOccurrence, List<SourceImage> sourceImages,
+            SpriteManifest.Entry entry, MessageLog messageLog, ResourceHandler resourceHandler) {
+        final SpriteImageLayout layout = spriteImageOccurrence.spriteImageDirective.layout;
+        final int offsetsPerImage = SpriteImageLayout.PACKED.equals(layout) ? 2 : 1;
+        if (entry.offsets.size() != sourceImages.size() * offsetsPerImage) {
+            return null;
+        }
+
+        final String spriteImageFile = getImageFile(spriteImageOccurrence.cssFile,
+                removeQueryString(entry.resolvedPath), resourceHandler);
+        try (InputStream is = resourceHandler.getResourceAsInputStream(spriteImageFile)) {
+            if (is == null || !entry.outputHash.equals(SpriteManifest.hash(ByteStreams.toByteArray(is)))) {
+                return null;
+            }
+        } catch (final IOException e) {
+            return null;
         }
 
-        // Render the sprite into the required formats, perform quantization if needed
-        final BufferedImage[] mergedImages = spriteImageRenderer.render(spriteImage);
+        final Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReplacements = new LinkedHashMap<>();
+        for (int i = 0; i < sourceImages.size(); i++) {
+            final SpriteReferenceOccurrence spriteReferenceOccurrence = sourceImages.get(i).spriteReferenceOccurrence;
+            final int offset = entry.offsets.get(i * offsetsPerImage);
+            spriteReplacements.put(spriteReferenceOccurrence, offsetsPerImage == 2
+                    ? spriteReferenceOccurrence.buildReplacement(layout, offset, entry.offsets.get(i * 2 + 1))
+                    : spriteReferenceOccurrence.buildReplacement(layout, offset));
+        }
+
+        final SpriteImage spriteImage = new SpriteImage(null, spriteImageOccurrence, spriteReplacements,
+                entry.spriteWidth, entry.spriteHeight, entry.scaleRatio);
+        spriteImage.resolvedPath = entry.resolvedPath;
+
+        messageLog.setCssFile(null);
+        messageLog.info(MessageType.SPRITE_IMAGE_UP_TO_DATE, spriteImageOccurrence.spriteImageDirective.spriteId,
+                spriteImageFile);
+        return spriteImage;
+    }
+
+    /**
+     * Creates the manifest entry for a sprite image built from all its individual images.
+     *
+     * @param fingerprint
+     *            the fingerprint of the inputs
+     * @param spriteImage
+     *            the sprite image
+     * @param sourceImages
+     *            the individual images, in layout order
+     * @param spriteImageBytes
+     *            the content of the written sprite image file, <code>null</code> if the file was not written
+     *
+     * @return the entry or <code>null</code> if the sprite image cannot be reused by the next build
+     */
+    private static SpriteManifest.Entry createManifestEntry(String fingerprint, SpriteImage spriteImage,
+            List<SourceImage> sourceImages, byte[] spriteImageBytes) {
+        if (spriteImageBytes == null) {
+            return null;
+        }
 
-        writeSprite(spriteImage, mergedImages[0]);
+        final SpriteImageLayout layout = spriteImage.spriteImageOccurrence.spriteImageDirective.layout;
+        final List<Integer> offsets = new ArrayList<>(sourceImages.size());
+        for (final SourceImage sourceImage : sourceImages) {
+            final SpriteReferenceReplacement spriteReferenceReplacement = spriteImage.spriteReferenceReplacements
+                    .get(sourceImage.spriteReferenceOccurrence);
+            if (spriteReferenceReplacement == null) {
+                return null;
+            }
+            // Packed sprites record both coordinates of each individual image
+            if (!SpriteImageLayout.VERTICAL.equals(layout)) {
+                offsets.add(spriteReferenceReplacement.horizontalPosition);
+            }
+            if (!SpriteImageLayout.HORIZONTAL.equals(layout)) {
+                offsets.add(spriteReferenceReplacement.verticalPosition);
+            }
+        }
 
-        return spriteImage.spriteReferenceReplacements;
+        return new SpriteManifest.Entry(spriteImage.spriteImageOccurrence.spriteImageDirective.spriteId, fingerprint,
+                SpriteManifest.hash(spriteImageBytes), spriteImage.resolvedPath, spriteImage.spriteWidth,
+                spriteImage.spriteHeight, spriteImage.scaleRatio, offsets);
     }
 
     /**
@@ -244,11 +752,18 @@ public class SpriteImageBuilder {
      *            the sprite image
      * @param mergedImage
      *            the merged image
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler
+     *
+     * @return the content of the written file or <code>null</code> if the file could not be written
      *
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private void writeSprite(SpriteImage spriteImage, final BufferedImage mergedImage) throws IOException {
+    private byte[] writeSprite(SpriteImage spriteImage, final BufferedImage mergedImage, MessageLog messageLog,
+            ResourceHandler resourceHandler) throws IOException {
         final SpriteImageOccurrence spriteImageOccurrence = spriteImage.spriteImageOccurrence;
         final SpriteImageDirective spriteImageDirective = spriteImageOccurrence.spriteImageDirective;
 
@@ -274,22 +789,42 @@ public class SpriteImageBuilder {
 
         // Build file name
         byte[] spriteImageBytes = spriteImageByteArrayOutputStream.toByteArray();
-        String resolvedImagePath = spriteImage.resolveImagePath(spriteImageBytes, timestamp.toString());
-        if (resolvedImagePath.indexOf('?') >= 0) {
-            resolvedImagePath = resolvedImagePath.substring(0, resolvedImagePath.indexOf('?'));
-        }
+        final String resolvedImagePath = removeQueryString(
+                spriteImage.resolveImagePath(spriteImageBytes, timestamp.toString()));
 
         // Save the image to the disk
-        final String mergedImageFile = getImageFile(spriteImageOccurrence.cssFile, resolvedImagePath);
+        final String mergedImageFile = getImageFile(spriteImageOccurrence.cssFile, resolvedImagePath,
+                resourceHandler);
 
         try (OutputStream spriteImageOutputStream = resourceHandler.getResourceAsOutputStream(mergedImageFile)) {
             messageLog.info(MessageType.WRITING_SPRITE_IMAGE, mergedImage.getWidth(), mergedImage.getHeight(),
                     spriteImageDirective.spriteId, mergedImageFile);
 
-            spriteImageOutputStream.write(spriteImageBytes);
+            try {
+                spriteImageOutputStream.write(spriteImageBytes);
+            } catch (final IOException | RuntimeException e) {
+                // Leave the previous sprite in place rather than a partially written one
+                Abortable.abort(spriteImageOutputStream);
+                throw e;
+            }
         } catch (final IOException e) {
             messageLog.warning(MessageType.CANNOT_WRITE_SPRITE_IMAGE, mergedImageFile, e.getMessage());
+            return null;
         }
+        return spriteImageBytes;
+    }
+
+    /**
+     * Removes the query string, if any, from a resolved sprite image path.
+     *
+     * @param resolvedImagePath
+     *            the resolved image path
+     *
+     * @return the path of the sprite image file
+     */
+    private static String removeQueryString(String resolvedImagePath) {
+        final int queryStringIndex = resolvedImagePath.indexOf('?');
+        return queryStringIndex >= 0 ? resolvedImagePath.substring(0, queryStringIndex) : resolvedImagePath;
     }
 
     /**
@@ -304,6 +839,22 @@ public class SpriteImageBuilder {
      * @return the image file
      */
     String getImageFile(String cssFile, String imagePath) {
+        return getImageFile(cssFile, imagePath, resourceHandler);
+    }
+
+    /**
+     * Computes the image path using the provided resource handler, see {@link #getImageFile(String, String)}.
+     *
+     * @param cssFile
+     *            the css file
+     * @param imagePath
+     *            the image path
+     * @param resourceHandler
+     *            the resource handler
+     *
+     * @return the image file
+     */
+    private String getImageFile(String cssFile, String imagePath, ResourceHandler resourceHandler) {
         // Absolute path resolution is done by resourceHandler
         final String path = resourceHandler.getResourcePath(cssFile, imagePath);
 
@@ -315,26 +866,36 @@ public class SpriteImageBuilder {
     }
 
     /**
-     * Calculates total dimensions and lays out a single sprite image.
+     * Calculates total dimensions and lays out a single sprite image, split into several sheets if it exceeds the size
+     * limits of the sprite image directive.
      *
      * @param spriteImageOccurrence
      *            the sprite image occurrence
-     * @param images
-     *            the images
+     * @param decodedImages
+     *            the decoded individual images
      * @param messageLog
      *            the message log
      *
-     * @return the sprite image
+     * @return the sheets of the sprite image, empty if there is nothing to draw
      */
-    static SpriteImage buildSpriteImage(SpriteImageOccurrence spriteImageOccurrence,
-            Map<SpriteReferenceOccurrence, BufferedImage> images, MessageLog messageLog) {
-        // First find the least common multiple of the images with 'repeat' alignment
+    static List<SpriteImage> buildSpriteSheets(SpriteImageOccurrence spriteImageOccurrence,
+            Map<SpriteReferenceOccurrence, BufferedImage> decodedImages, MessageLog messageLog) {
         final SpriteImageLayout layout = spriteImageOccurrence.spriteImageDirective.layout;
         final float spriteScale = spriteImageOccurrence.spriteImageDirective.scaleRatio;
+
+        // Crop the transparent borders of the individual images if requested
+        final Map<SpriteReferenceOccurrence, BufferedImage> images = SpriteTrimMode.TRANSPARENT
+                .equals(spriteImageOccurrence.spriteImageDirective.trimMode)
+                        ? trimTransparentBorders(decodedImages, layout, spriteScale)
+                        : decodedImages;
+
+        // First find the least common multiple of the images with 'repeat' alignment
         final int leastCommonMultiple = SpriteImageBuilder.calculateLeastCommonMultiple(images, layout);
 
         // Compute sprite dimension (width for vertical, height for horizontal sprites)
+        // (not used by packed sprites, which lay out the individual images along both axes)
         final boolean vertical = layout.equals(SpriteImageLayout.VERTICAL);
+        final boolean packed = layout.equals(SpriteImageLayout.PACKED);
         int dimension = leastCommonMultiple;
         for (final Map.Entry<SpriteReferenceOccurrence, BufferedImage> entry : images.entrySet()) {
             final BufferedImage image = entry.getValue();
@@ -350,23 +911,44 @@ public class SpriteImageBuilder {
             dimension += leastCommonMultiple - dimension % leastCommonMultiple;
         }
 
-        // Compute the other sprite dimension.
-        int currentOffset = 0;
-        final Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReplacements = new LinkedHashMap<>();
-        final Map<BufferedImageEqualsWrapper, Integer> renderedImageToOffset = new LinkedHashMap<>();
+        // Find the distinct areas to render the individual images to, without rendering them yet
+        final Map<BufferedImage, BufferedImageEqualsWrapper> wholeImages = new IdentityHashMap<>();
+        final Map<BufferedImage, BufferedImageEqualsWrapper> trimmedImages = new IdentityHashMap<>();
+        final Map<RenderedImageKey, Integer> renderedImageToArea = new HashMap<>();
+        final List<SpriteReferenceOccurrence> occurrencesToDraw = new ArrayList<>();
+        final int[] areaWidths = new int[images.size()];
+        final int[] areaHeights = new int[images.size()];
+        final int[] occurrenceAreas = new int[images.size()];
+        int occurrenceIndex = 0;
+        int duplicateImages = 0;
+        long bytesSaved = 0;
         for (final Map.Entry<SpriteReferenceOccurrence, BufferedImage> entry : images.entrySet()) {
             final SpriteReferenceOccurrence spriteReferenceOccurrence = entry.getKey();
             final BufferedImage image = entry.getValue();
 
-            final BufferedImage rendered = spriteReferenceOccurrence.render(image, layout, dimension);
-            final BufferedImageEqualsWrapper imageWrapper = new BufferedImageEqualsWrapper(rendered);
-            Integer imageOffset = renderedImageToOffset.get(imageWrapper);
-            if (imageOffset == null) {
+            final int renderedWidth = vertical ? dimension : spriteReferenceOccurrence.getRequiredWidth(image, layout);
+            final int renderedHeight = vertical || packed ? spriteReferenceOccurrence.getRequiredHeight(image, layout)
+                    : dimension;
+            final BufferedImageEqualsWrapper imageWrapper = RenderedImageKey
+                    .requiresWholeImage(spriteReferenceOccurrence, image, layout, dimension)
+                            ? wholeImages.computeIfAbsent(image, BufferedImageEqualsWrapper::new)
+                            : trimmedImages.computeIfAbsent(image, i -> new BufferedImageEqualsWrapper(i, true));
+            final RenderedImageKey renderedImageKey = new RenderedImageKey(imageWrapper, spriteReferenceOccurrence,
+                    layout, dimension, renderedWidth, renderedHeight);
+            Integer area = renderedImageToArea.get(renderedImageKey);
+            if (area == null) {
                 // Draw a new image
-                imageOffset = currentOffset;
-                renderedImageToOffset.put(imageWrapper, imageOffset);
-                currentOffset += vertical ? rendered.getHeight() : rendered.getWidth();
+                area = occurrencesToDraw.size();
+                renderedImageToArea.put(renderedImageKey, area);
+                occurrencesToDraw.add(spriteReferenceOccurrence);
+                areaWidths[area] = renderedWidth;
+                areaHeights[area] = renderedHeight;
+            } else {
+                // The sprite image stores 4 bytes per pixel
+                duplicateImages++;
+                bytesSaved += 4L * renderedWidth * renderedHeight;
             }
+            occurrenceAreas[occurrenceIndex++] = area;
 
             final float scaledImageWidth = spriteReferenceOccurrence.getRequiredWidth(image, layout) / spriteScale;
             final float scaledImageHeight = spriteReferenceOccurrence.getRequiredHeight(image, layout) / spriteScale;
@@ -375,36 +957,355 @@ public class SpriteImageBuilder {
                 messageLog.warning(MessageType.IMAGE_FRACTIONAL_SCALE_VALUE, spriteReferenceOccurrence.imagePath,
                         scaledImageWidth, scaledImageHeight);
             }
+        }
 
-            final int adjustedImageOffset = Math.round(imageOffset / spriteScale);
-            spriteReplacements.put(spriteReferenceOccurrence,
-                    spriteReferenceOccurrence.buildReplacement(layout, adjustedImageOffset));
+        if (duplicateImages > 0) {
+            messageLog.info(MessageType.DUPLICATE_IMAGES_REUSED, spriteImageOccurrence.spriteImageDirective.spriteId,
+                    duplicateImages, bytesSaved);
         }
 
-        // Render the sprite image and build sprite reference replacements
-        final int spriteWidth = vertical ? dimension : currentOffset;
-        final int spriteHeight = vertical ? currentOffset : dimension;
-        if (spriteWidth == 0 || spriteHeight == 0) {
-            return null;
+        // Split the areas into sheets within the size limits and lay out each sheet
+        final SpriteImageDirective spriteImageDirective = spriteImageOccurrence.spriteImageDirective;
+        final int areas = occurrencesToDraw.size();
+        if (areas == 0) {
+            return List.of();
+        }
+        final int[] positions = new int[areas * 2];
+        final int[] sheetStarts = splitIntoSheets(spriteImageDirective, occurrencesToDraw, areaWidths, areaHeights,
+                vertical, packed, positions, messageLog);
+        final int sheetCount = sheetStarts.length - 1;
+        if (sheetCount > 1) {
+            messageLog.info(MessageType.SPRITE_IMAGE_SPLIT, spriteImageDirective.spriteId, sheetCount);
+        }
+
+        final int[] areaSheets = new int[areas];
+        final int[] sheetWidths = new int[sheetCount];
+        final int[] sheetHeights = new int[sheetCount];
+        for (int sheet = 0; sheet < sheetCount; sheet++) {
+            for (int area = sheetStarts[sheet]; area < sheetStarts[sheet + 1]; area++) {
+                areaSheets[area] = sheet;
+                sheetWidths[sheet] = Math.max(sheetWidths[sheet], positions[area * 2] + areaWidths[area]);
+                sheetHeights[sheet] = Math.max(sheetHeights[sheet], positions[area * 2 + 1] + areaHeights[area]);
+            }
+        }
+
+        // Build sprite reference replacements
+        final List<Map<SpriteReferenceOccurrence, SpriteReferenceReplacement>> spriteReplacements = new ArrayList<>(
+                sheetCount);
+        for (int sheet = 0; sheet < sheetCount; sheet++) {
+            spriteReplacements.add(new LinkedHashMap<>());
+        }
+        occurrenceIndex = 0;
+        for (final SpriteReferenceOccurrence spriteReferenceOccurrence : images.keySet()) {
+            final int area = occurrenceAreas[occurrenceIndex];
+            final int x = positions[area * 2];
+            final int y = positions[area * 2 + 1];
+            spriteReplacements.get(areaSheets[area]).put(spriteReferenceOccurrence, spriteReferenceOccurrence
+                    .buildReplacement(layout, Math.round(x / spriteScale), Math.round(y / spriteScale)));
+            occurrenceIndex++;
+        }
+
+        // Render the sprite images
+        final List<SpriteImage> spriteImages = new ArrayList<>(sheetCount);
+        for (int sheet = 0; sheet < sheetCount; sheet++) {
+            final int spriteWidth = sheetWidths[sheet];
+            final int spriteHeight = sheetHeights[sheet];
+            final float scaledWidth = spriteWidth / spriteScale;
+            final float scaledHeight = spriteHeight / spriteScale;
+            if (Math.round(scaledWidth) != scaledWidth || Math.round(scaledHeight) != scaledHeight) {
+                messageLog.warning(MessageType.FRACTIONAL_SCALE_VALUE, spriteImageDirective.spriteId, scaledWidth,
+                        scaledHeight);
+            }
+
+            final BufferedImage sprite = new BufferedImage(spriteWidth, spriteHeight, BufferedImage.TYPE_4BYTE_ABGR);
+
+            for (int area = sheetStarts[sheet]; area < sheetStarts[sheet + 1]; area++) {
+                final SpriteReferenceOccurrence spriteReferenceOccurrence = occurrencesToDraw.get(area);
+                spriteReferenceOccurrence.draw(images.get(spriteReferenceOccurrence), layout, dimension, sprite,
+                        positions[area * 2], positions[area * 2 + 1]);
+            }
+
+            spriteImages.add(new SpriteImage(sprite, spriteImageOccurrence, spriteReplacements.get(sheet),
+                    spriteWidth, spriteHeight, spriteScale, sheet, sheetCount));
+        }
+        return spriteImages;
+    }
+
+    /**
+     * Crops the fully transparent borders of the individual images where this does not change the rendered position
+     * of the images. Only the borders across vertical and horizontal sprites are cropped: along the sprite, the space
+     * of a cropped border would be taken by the neighboring image, which would then show through the transparent
+     * border on the page. For the same reason, images in packed sprites are not cropped, and neither are repeated
+     * images, which must fill the whole sprite. Across the sprite, the border on the aligned edge is kept, so that
+     * the background position needs no offset: left and top aligned images lose their right or bottom border, right
+     * and bottom aligned images their left or top border, and centered images are cropped evenly on both sides.
+     *
+     * @param images
+     *            the individual images
+     * @param layout
+     *            the layout
+     * @param spriteScale
+     *            the sprite scale, only whole scaled pixels are cropped
+     *
+     * @return the cropped images
+     */
+    private static Map<SpriteReferenceOccurrence, BufferedImage> trimTransparentBorders(
+            Map<SpriteReferenceOccurrence, BufferedImage> images, SpriteImageLayout layout, float spriteScale) {
+        // Crop whole scaled pixels only, so that the sprite dimensions in the style sheet stay exact
+        final int step = Math.round(spriteScale);
+        if (SpriteImageLayout.PACKED.equals(layout) || step < 1 || step != spriteScale) {
+            return images;
         }
 
-        final float scaledWidth = spriteWidth / spriteScale;
-        final float scaledHeight = spriteHeight / spriteScale;
-        if (Math.round(scaledWidth) != scaledWidth || Math.round(scaledHeight) != scaledHeight) {
-            messageLog.warning(MessageType.FRACTIONAL_SCALE_VALUE, spriteImageOccurrence.spriteImageDirective.spriteId,
-                    scaledWidth, scaledHeight);
+        final boolean vertical = SpriteImageLayout.VERTICAL.equals(layout);
+        final Map<SpriteReferenceOccurrence, BufferedImage> trimmedImages = new LinkedHashMap<>();
+        for (final Map.Entry<SpriteReferenceOccurrence, BufferedImage> entry : images.entrySet()) {
+            final SpriteReferenceOccurrence spriteReferenceOccurrence = entry.getKey();
+            BufferedImage image = entry.getValue();
+            final Rectangle bounds = BufferedImageEqualsWrapper.getContentBounds(BufferedImageUtils.getArgb(image),
+                    image.getWidth(), image.getHeight());
+            if (!spriteReferenceOccurrence.isRepeated(layout) && !bounds.isEmpty()) {
+                final int length = vertical ? image.getWidth() : image.getHeight();
+                final int contentStart = vertical ? bounds.x : bounds.y;
+                final int contentEnd = contentStart + (vertical ? bounds.width : bounds.height);
+                int before = contentStart - contentStart % step;
+                int after = length - contentEnd - (length - contentEnd) % step;
+
+                final SpriteAlignment alignment = spriteReferenceOccurrence.spriteReferenceDirective
+                        .spriteLayoutProperties.alignment;
+                if (SpriteAlignment.RIGHT.equals(alignment) || SpriteAlignment.BOTTOM.equals(alignment)) {
+                    after = 0;
+                } else if (SpriteAlignment.CENTER.equals(alignment)) {
+                    before = Math.min(before, after);
+                    after = before;
+                } else {
+                    before = 0;
+                }
+
+                if (before + after > 0) {
+                    image = vertical
+                            ? image.getSubimage(before, 0, image.getWidth() - before - after, image.getHeight())
+                            : image.getSubimage(0, before, image.getWidth(), image.getHeight() - before - after);
+                }
+            }
+            trimmedImages.put(spriteReferenceOccurrence, image);
         }
+        return trimmedImages;
+    }
 
-        final BufferedImage sprite = new BufferedImage(spriteWidth, spriteHeight, BufferedImage.TYPE_4BYTE_ABGR);
+    /**
+     * Splits the areas rendered for the individual images into consecutive groups, each laid out in a separate sheet
+     * within the size limits of the sprite. An area exceeding the limits on its own is placed in a sheet of its own.
+     *
+     * @param spriteImageDirective
+     *            the sprite image directive
+     * @param occurrencesToDraw
+     *            the sprite reference occurrences to draw in each area
+     * @param areaWidths
+     *            the widths of the areas
+     * @param areaHeights
+     *            the heights of the areas
+     * @param vertical
+     *            whether the sprite is vertical
+     * @param packed
+     *            whether the sprite is packed
+     * @param positions
+     *            receives the positions of the areas in their sheets, the x coordinate of each area at index
+     *            <code>2 * area</code> and the y coordinate at index <code>2 * area + 1</code>
+     * @param messageLog
+     *            the message log
+     *
+     * @return the index of the first area of each sheet, followed by the number of areas
+     */
+    private static int[] splitIntoSheets(SpriteImageDirective spriteImageDirective,
+            List<SpriteReferenceOccurrence> occurrencesToDraw, int[] areaWidths, int[] areaHeights, boolean vertical,
+            boolean packed, int[] positions, MessageLog messageLog) {
+        final int areas = occurrencesToDraw.size();
+        if (!spriteImageDirective.hasSheetLimits()) {
+            final int[] sheetPositions = layOutAreas(areaWidths, areaHeights, 0, areas, vertical, packed);
+            System.arraycopy(sheetPositions, 0, positions, 0, sheetPositions.length);
+            return new int[] { 0, areas };
+        }
+        if (packed) {
+            return splitIntoPackedSheets(spriteImageDirective, occurrencesToDraw, areaWidths, areaHeights, positions,
+                    messageLog);
+        }
 
-        for (final Map.Entry<BufferedImageEqualsWrapper, Integer> entry : renderedImageToOffset.entrySet()) {
+        // The sheet only grows when an area is added, so the areas are added one by one until the next one no longer
+        // fits, without laying out the sheet again
+        final List<Integer> sheetStarts = new ArrayList<>();
+        int sheetLength = 0;
+        int sheetBreadth = 0;
+        for (int area = 0; area < areas; area++) {
+            final int length = vertical ? areaHeights[area] : areaWidths[area];
+            final int breadth = vertical ? areaWidths[area] : areaHeights[area];
+            if (sheetStarts.isEmpty() || !fitsSheetLimits(spriteImageDirective, sheetLength + length,
+                    Math.max(sheetBreadth, breadth), vertical)) {
+                sheetStarts.add(area);
+                sheetLength = 0;
+                sheetBreadth = 0;
+                if (!fitsSheetLimits(spriteImageDirective, length, breadth, vertical)) {
+                    messageLog.warning(MessageType.IMAGE_EXCEEDS_SPRITE_LIMITS, occurrencesToDraw.get(area).imagePath,
+                            spriteImageDirective.spriteId);
+                }
+            }
+            positions[area * 2 + (vertical ? 1 : 0)] = sheetLength;
+            sheetLength += length;
+            sheetBreadth = Math.max(sheetBreadth, breadth);
+        }
+        sheetStarts.add(areas);
+        return sheetStarts.stream().mapToInt(Integer::intValue).toArray();
+    }
 
-            BufferedImageUtils.drawImage(entry.getKey().image, sprite, vertical ? 0 : entry.getValue(),
-                    vertical ? entry.getValue() : 0);
+    /**
+     * Splits the areas of a packed sprite into sheets within the size limits of the sprite. Packing more areas can
+     * produce a smaller sheet, so the largest number of areas that fit is searched for, keeping the layout of the best
+     * packing found for each sheet.
+     *
+     * @param spriteImageDirective
+     *            the sprite image directive
+     * @param occurrencesToDraw
+     *            the sprite reference occurrences to draw in each area
+     * @param areaWidths
+     *            the widths of the areas
+     * @param areaHeights
+     *            the heights of the areas
+     * @param positions
+     *            receives the positions of the areas in their sheets
+     * @param messageLog
+     *            the message log
+     *
+     * @return the index of the first area of each sheet, followed by the number of areas
+     */
+    private static int[] splitIntoPackedSheets(SpriteImageDirective spriteImageDirective,
+            List<SpriteReferenceOccurrence> occurrencesToDraw, int[] areaWidths, int[] areaHeights, int[] positions,
+            MessageLog messageLog) {
+        final int areas = occurrencesToDraw.size();
+        final List<Integer> sheetStarts = new ArrayList<>();
+        int start = 0;
+        while (start < areas) {
+            sheetStarts.add(start);
+            int[] fittingPositions = layOutAreas(areaWidths, areaHeights, start, start + 1, false, true);
+            if (!fitsSheetLimits(spriteImageDirective, areaWidths, areaHeights, start, fittingPositions)) {
+                messageLog.warning(MessageType.IMAGE_EXCEEDS_SPRITE_LIMITS, occurrencesToDraw.get(start).imagePath,
+                        spriteImageDirective.spriteId);
+            }
+
+            // Find the largest number of areas that fit, doubling it first and then bisecting
+            final int remaining = areas - start;
+            int fitting = 1;
+            int failing = remaining + 1;
+            while (fitting < remaining) {
+                final int candidate = Math.min(fitting * 2, remaining);
+                final int[] candidatePositions = layOutAreas(areaWidths, areaHeights, start, start + candidate, false,
+                        true);
+                if (!fitsSheetLimits(spriteImageDirective, areaWidths, areaHeights, start, candidatePositions)) {
+                    failing = candidate;
+                    break;
+                }
+                fitting = candidate;
+                fittingPositions = candidatePositions;
+            }
+            while (failing - fitting > 1) {
+                final int candidate = fitting + failing >>> 1;
+                final int[] candidatePositions = layOutAreas(areaWidths, areaHeights, start, start + candidate, false,
+                        true);
+                if (fitsSheetLimits(spriteImageDirective, areaWidths, areaHeights, start, candidatePositions)) {
+                    fitting = candidate;
+                    fittingPositions = candidatePositions;
+                } else {
+                    failing = candidate;
+                }
+            }
+            System.arraycopy(fittingPositions, 0, positions, start * 2, fittingPositions.length);
+            start += fitting;
+        }
+        sheetStarts.add(areas);
+        return sheetStarts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Checks if a vertical or horizontal sheet of the provided size fits the size limits of the sprite.
+     *
+     * @param spriteImageDirective
+     *            the sprite image directive
+     * @param length
+     *            the size of the sheet along the sprite
+     * @param breadth
+     *            the size of the sheet across the sprite
+     * @param vertical
+     *            whether the sprite is vertical
+     *
+     * @return true, if the sheet fits the limits
+     */
+    private static boolean fitsSheetLimits(SpriteImageDirective spriteImageDirective, int length, int breadth,
+            boolean vertical) {
+        return vertical ? spriteImageDirective.fitsSheetLimits(breadth, length)
+                : spriteImageDirective.fitsSheetLimits(length, breadth);
+    }
+
+    /**
+     * Checks if a range of areas laid out in one sheet fits the size limits of the sprite.
+     *
+     * @param spriteImageDirective
+     *            the sprite image directive
+     * @param areaWidths
+     *            the widths of the areas
+     * @param areaHeights
+     *            the heights of the areas
+     * @param from
+     *            the first area of the sheet
+     * @param positions
+     *            the positions of the areas in the sheet, as returned by
+     *            {@link #layOutAreas(int[], int[], int, int, boolean, boolean)}
+     *
+     * @return true, if the sheet fits the limits
+     */
+    private static boolean fitsSheetLimits(SpriteImageDirective spriteImageDirective, int[] areaWidths,
+            int[] areaHeights, int from, int[] positions) {
+        int width = 0;
+        int height = 0;
+        for (int i = 0; i < positions.length / 2; i++) {
+            width = Math.max(width, positions[i * 2] + areaWidths[from + i]);
+            height = Math.max(height, positions[i * 2 + 1] + areaHeights[from + i]);
+        }
+        return spriteImageDirective.fitsSheetLimits(width, height);
+    }
+
+    /**
+     * Lays out a range of areas in one sheet, by packing them or by placing them next to each other along the length
+     * of a vertical or horizontal sprite.
+     *
+     * @param areaWidths
+     *            the widths of the areas
+     * @param areaHeights
+     *            the heights of the areas
+     * @param from
+     *            the first area of the sheet
+     * @param to
+     *            the area after the last area of the sheet
+     * @param vertical
+     *            whether the sprite is vertical
+     * @param packed
+     *            whether the sprite is packed
+     *
+     * @return the positions of the areas in the sheet, the x coordinate of area <code>from + i</code> at index
+     *         <code>2 * i</code> and the y coordinate at index <code>2 * i + 1</code>
+     */
+    private static int[] layOutAreas(int[] areaWidths, int[] areaHeights, int from, int to, boolean vertical,
+            boolean packed) {
+        if (packed) {
+            return SkylinePacker.pack(Arrays.copyOfRange(areaWidths, from, to),
+                    Arrays.copyOfRange(areaHeights, from, to), to - from);
         }
 
-        return new SpriteImage(sprite, spriteImageOccurrence, spriteReplacements, spriteWidth, spriteHeight,
-                spriteScale);
+        final int[] positions = new int[(to - from) * 2];
+        int currentOffset = 0;
+        for (int area = from; area < to; area++) {
+            positions[(area - from) * 2 + (vertical ? 1 : 0)] = currentOffset;
+            currentOffset += vertical ? areaHeights[area] : areaWidths[area];
+        }
+        return positions;
     }
 
     /**
@@ -475,6 +1376,63 @@ public class SpriteImageBuilder {
         return result;
     }
 
+    /**
+     * An individual image of a sprite, read into memory before it is decoded.
+     */
+    static final class SourceImage {
+
+        /** The sprite reference occurrence referring to the image. */
+        final SpriteReferenceOccurrence spriteReferenceOccurrence;
+
+        /** The resolved path of the image. */
+        final String path;
+
+        /** The content of the image file, <code>null</code> if it could not be read or once it is decoded. */
+        byte[] bytes;
+
+        /** The decoded image, <code>null</code> if not decoded yet or if it could not be decoded. */
+        BufferedImage image;
+
+        /**
+         * Instantiates a new source image.
+         *
+         * @param spriteReferenceOccurrence
+         *            the sprite reference occurrence
+         * @param path
+         *            the path
+         */
+        SourceImage(SpriteReferenceOccurrence spriteReferenceOccurrence, String path) {
+            this.spriteReferenceOccurrence = spriteReferenceOccurrence;
+            this.path = path;
+        }
+    }
+
+    /**
+     * The outcome of building a single sprite image in incremental mode.
+     */
+    private static final class IncrementalBuildResult {
+
+        /** The sprite reference replacements. */
+        final Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReferenceReplacements;
+
+        /** The manifest entry, <code>null</code> if the sprite image cannot be reused by the next build. */
+        final SpriteManifest.Entry manifestEntry;
+
+        /**
+         * Instantiates a new incremental build result.
+         *
+         * @param spriteReferenceReplacements
+         *            the sprite reference replacements
+         * @param manifestEntry
+         *            the manifest entry
+         */
+        IncrementalBuildResult(Map<SpriteReferenceOccurrence, SpriteReferenceReplacement> spriteReferenceReplacements,
+                SpriteManifest.Entry manifestEntry) {
+            this.spriteReferenceReplacements = spriteReferenceReplacements;
+            this.manifestEntry = manifestEntry;
+        }
+    }
+
     /**
      * A Batik transcoder implementation returning a buffered image in memory.
      */
@@ -504,23 +1462,219 @@ public class SpriteImageBuilder {
         }
     }
 
+    /**
+     * Identifies the content an individual image renders to in a sprite: the individual image's pixels and where they
+     * are drawn within the area rendered for the image. References rendering the same content share one area of the
+     * sprite, even if they refer to different images, for example to an image with transparent borders and to the
+     * same image without them, but with margins of the same size.
+     */
+    static final class RenderedImageKey {
+
+        /** The pixels of the individual image. */
+        private final BufferedImageEqualsWrapper image;
+
+        /** The width of the rendered area. */
+        private final int width;
+
+        /** The height of the rendered area. */
+        private final int height;
+
+        /** The x coordinate of the compared pixels within the rendered area. */
+        private final int x;
+
+        /** The y coordinate of the compared pixels within the rendered area. */
+        private final int y;
+
+        /** Whether the individual image is repeated along the whole rendered area. */
+        private final boolean repeated;
+
+        /**
+         * Instantiates a new rendered image key.
+         *
+         * @param image
+         *            the pixels of the individual image, without transparent borders unless repeated
+         * @param spriteReferenceOccurrence
+         *            the sprite reference occurrence
+         * @param layout
+         *            the layout
+         * @param dimension
+         *            height/width of a horizontal/vertical sprite
+         * @param width
+         *            the width of the rendered area
+         * @param height
+         *            the height of the rendered area
+         */
+        RenderedImageKey(BufferedImageEqualsWrapper image, SpriteReferenceOccurrence spriteReferenceOccurrence,
+                SpriteImageLayout layout, int dimension, int width, int height) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+
+            this.repeated = requiresWholeImage(spriteReferenceOccurrence, image.image, layout, dimension);
+            if (image.isEmpty()) {
+                // Fully transparent images render the same wherever they are drawn
+                this.x = 0;
+                this.y = 0;
+            } else {
+                this.x = spriteReferenceOccurrence.getImageX(image.image, layout, dimension) + image.left;
+                this.y = spriteReferenceOccurrence.getImageY(image.image, layout, dimension) + image.top;
+            }
+        }
+
+        /**
+         * Checks if the key requires the pixels of the whole individual image, including its transparent borders.
+         *
+         * @param spriteReferenceOccurrence
+         *            the sprite reference occurrence
+         * @param image
+         *            the individual image
+         * @param layout
+         *            the layout
+         * @param dimension
+         *            height/width of a horizontal/vertical sprite
+         *
+         * @return true, if the image is repeated
+         */
+        static boolean requiresWholeImage(SpriteReferenceOccurrence spriteReferenceOccurrence, BufferedImage image,
+                SpriteImageLayout layout, int dimension) {
+            // An image filling the whole dimension is drawn once, the same as if it was not repeated
+            final int imageDimension = SpriteImageLayout.VERTICAL.equals(layout) ? image.getWidth()
+                    : image.getHeight();
+            return spriteReferenceOccurrence.isRepeated(layout) && imageDimension < dimension;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RenderedImageKey)) {
+                return false;
+            }
+            final RenderedImageKey other = (RenderedImageKey) obj;
+            return width == other.width && height == other.height && x == other.x && y == other.y
+                    && repeated == other.repeated && image.equals(other.image);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(image, width, height, x, y, repeated);
+        }
+    }
+
     /**
      * A wrapper that implements content-aware {@link Object#equals(Object)} and {@link Object#hashCode()} on
-     * {@link BufferedImage}s.
+     * {@link BufferedImage}s, comparing the images' ARGB pixels regardless of the image type, with fully transparent
+     * pixels normalized. Optionally, only the pixels within the fully transparent borders of the image are compared.
+     * A 128-bit hash of the compared pixels is computed once, when the wrapper is created. The pixels are compared
+     * one by one only if the hashes are equal.
      */
     static final class BufferedImageEqualsWrapper {
 
         /** The image. */
         BufferedImage image;
 
+        /** The x coordinate of the compared pixels within the image. */
+        final int left;
+
+        /** The y coordinate of the compared pixels within the image. */
+        final int top;
+
+        /** The width of the compared pixels. */
+        private final int width;
+
+        /** The height of the compared pixels. */
+        private final int height;
+
+        /** The hash of the size and the compared pixels. */
+        private final HashCode contentHash;
+
         /**
-         * Instantiates a new buffered image equals wrapper.
+         * Instantiates a new buffered image equals wrapper comparing all pixels of the image.
          *
          * @param image
          *            the image
          */
         BufferedImageEqualsWrapper(BufferedImage image) {
+            this(image, false);
+        }
+
+        /**
+         * Instantiates a new buffered image equals wrapper.
+         *
+         * @param image
+         *            the image
+         * @param trimTransparentBorders
+         *            if <code>true</code>, only the pixels within the fully transparent borders are compared
+         */
+        BufferedImageEqualsWrapper(BufferedImage image, boolean trimTransparentBorders) {
             this.image = image;
+
+            final int imageWidth = image.getWidth();
+            final int imageHeight = image.getHeight();
+            final int[] pixels = BufferedImageUtils.getArgb(image);
+
+            final Rectangle bounds = trimTransparentBorders ? getContentBounds(pixels, imageWidth, imageHeight)
+                    : new Rectangle(imageWidth, imageHeight);
+            this.left = bounds.x;
+            this.top = bounds.y;
+            this.width = bounds.width;
+            this.height = bounds.height;
+
+            final Hasher hasher = Hashing.murmur3_128().newHasher().putInt(width).putInt(height);
+            for (int y = top; y < top + height; y++) {
+                for (int i = y * imageWidth + left, end = i + width; i < end; i++) {
+                    hasher.putInt(ignoreFullTransparency(pixels[i]));
+                }
+            }
+            this.contentHash = hasher.hash();
+        }
+
+        /**
+         * Finds the part of an image within its fully transparent borders.
+         *
+         * @param pixels
+         *            the pixels in row-major order
+         * @param imageWidth
+         *            the image width
+         * @param imageHeight
+         *            the image height
+         *
+         * @return the bounds of the part within the borders, empty for fully transparent images
+         */
+        static Rectangle getContentBounds(int[] pixels, int imageWidth, int imageHeight) {
+            int minX = 0;
+            int minY = 0;
+            int maxX = imageWidth - 1;
+            int maxY = imageHeight - 1;
+            while (minY <= maxY && isTransparent(pixels, imageWidth, minY * imageWidth, 1, imageWidth)) {
+                minY++;
+            }
+            while (maxY > minY && isTransparent(pixels, imageWidth, maxY * imageWidth, 1, imageWidth)) {
+                maxY--;
+            }
+            final int rows = maxY - minY + 1;
+            while (minX <= maxX && isTransparent(pixels, imageWidth, minY * imageWidth + minX, rows, 1)) {
+                minX++;
+            }
+            while (maxX > minX && isTransparent(pixels, imageWidth, minY * imageWidth + maxX, rows, 1)) {
+                maxX--;
+            }
+
+            if (minY > maxY || minX > maxX) {
+                return new Rectangle();
+            }
+            return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        }
+
+        /**
+         * Checks if there are no pixels to compare, which happens for fully transparent images when transparent
+         * borders are trimmed.
+         *
+         * @return true, if empty
+         */
+        boolean isEmpty() {
+            return width == 0;
         }
 
         @Override
@@ -533,43 +1687,57 @@ public class SpriteImageBuilder {
                 return true;
             }
 
-            final BufferedImage other = ((BufferedImageEqualsWrapper) obj).image;
-
-            boolean equal = other.getWidth() == image.getWidth() && other.getHeight() == image.getHeight()
-                    && other.getType() == image.getType();
+            final BufferedImageEqualsWrapper other = (BufferedImageEqualsWrapper) obj;
+            if (!contentHash.equals(other.contentHash) || width != other.width || height != other.height) {
+                return false;
+            }
 
-            if (equal) {
-                for (int y = 0; y < image.getHeight(); y++) {
-                    for (int x = 0; x < image.getWidth(); x++) {
-                        if (ignoreFullTransparency(image.getRGB(x, y)) != ignoreFullTransparency(other.getRGB(x, y))) {
-                            return false;
-                        }
+            // Rule out hash collisions
+            final int[] pixels = BufferedImageUtils.getArgb(image);
+            final int[] otherPixels = BufferedImageUtils.getArgb(other.image);
+            for (int y = 0; y < height; y++) {
+                final int start = (top + y) * image.getWidth() + left;
+                final int otherStart = (other.top + y) * other.image.getWidth() + other.left;
+                for (int x = 0; x < width; x++) {
+                    if (ignoreFullTransparency(pixels[start + x]) != ignoreFullTransparency(
+                            otherPixels[otherStart + x])) {
+                        return false;
                     }
                 }
             }
-
-            return equal;
+            return true;
         }
 
         @Override
         public int hashCode() {
-            if (image == null) {
-                return 0;
-            }
-
-            int hash = image.getWidth() ^ image.getHeight() << 16;
-
-            // Computes the hashCode based on an 4 x 4 to 7 x 7 grid of image's pixels
-            final int xIncrement = image.getWidth() > 7 ? image.getWidth() >> 2 : 1;
-            final int yIncrement = image.getHeight() > 7 ? image.getHeight() >> 2 : 1;
+            return contentHash.asInt();
+        }
 
-            for (int y = 0; y < image.getHeight(); y += yIncrement) {
-                for (int x = 0; x < image.getWidth(); x += xIncrement) {
-                    hash ^= ignoreFullTransparency(image.getRGB(x, y));
+        /**
+         * Checks if a row or a column of pixels is fully transparent.
+         *
+         * @param pixels
+         *            the pixels in row-major order
+         * @param imageWidth
+         *            the image width
+         * @param start
+         *            the index of the first pixel
+         * @param rows
+         *            the number of rows to check
+         * @param columns
+         *            the number of columns to check
+         *
+         * @return true, if all the pixels are fully transparent
+         */
+        private static boolean isTransparent(int[] pixels, int imageWidth, int start, int rows, int columns) {
+            for (int row = 0; row < rows; row++) {
+                for (int i = start + row * imageWidth, end = i + columns; i < end; i++) {
+                    if ((pixels[i] & 0xff000000) != 0x00000000) {
+                        return false;
+                    }
                 }
             }
-
-            return hash;
+            return true;
         }
 
         /**
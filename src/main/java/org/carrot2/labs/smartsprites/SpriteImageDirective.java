@@ -24,6 +24,7 @@ import org.carrot2.labs.smartsprites.css.CssSyntaxUtils;
 import org.carrot2.labs.smartsprites.message.Message.MessageType;
 import org.carrot2.labs.smartsprites.message.MessageLog;
 import org.carrot2.util.CollectionUtils;
+import org.carrot2.util.QuantizerEngine;
 import org.carrot2.util.StringUtils;
 
 /**
@@ -49,10 +50,26 @@ public class SpriteImageDirective {
     /** The Constant PROPERTY_SPRITE_SCALE. */
     public static final String PROPERTY_SPRITE_SCALE = "sprite-scale";
 
+    /** The Constant PROPERTY_SPRITE_QUANTIZER. */
+    public static final String PROPERTY_SPRITE_QUANTIZER = "sprite-quantizer";
+
+    /** The Constant PROPERTY_SPRITE_MAX_WIDTH. */
+    public static final String PROPERTY_SPRITE_MAX_WIDTH = "sprite-max-width";
+
+    /** The Constant PROPERTY_SPRITE_MAX_HEIGHT. */
+    public static final String PROPERTY_SPRITE_MAX_HEIGHT = "sprite-max-height";
+
+    /** The Constant PROPERTY_SPRITE_MAX_BYTES. */
+    public static final String PROPERTY_SPRITE_MAX_BYTES = "sprite-max-bytes";
+
+    /** The Constant PROPERTY_SPRITE_TRIM. */
+    public static final String PROPERTY_SPRITE_TRIM = "sprite-trim";
+
     /** A set of allowed properties. */
     private static final Set<String> ALLOWED_PROPERTIES = ImmutableSet.of(PROPERTY_SPRITE_ID,
             PROPERTY_SPRITE_IMAGE_LAYOUT, PROPERTY_SPRITE_IMAGE_URL, PROPERTY_SPRITE_MATTE_COLOR, PROPERTY_SPRITE_SCALE,
-            PROPERTY_SPRITE_IMAGE_UID_SUFFIX);
+            PROPERTY_SPRITE_IMAGE_UID_SUFFIX, PROPERTY_SPRITE_QUANTIZER, PROPERTY_SPRITE_MAX_WIDTH,
+            PROPERTY_SPRITE_MAX_HEIGHT, PROPERTY_SPRITE_MAX_BYTES, PROPERTY_SPRITE_TRIM);
 
     /**
      * Defines the layout of this sprite.
@@ -66,7 +83,12 @@ public class SpriteImageDirective {
         /**
          * Horizontal layout, images next to each other.
          */
-        HORIZONTAL;
+        HORIZONTAL,
+
+        /**
+         * Packed layout, images placed in rows and columns to keep the sprite small, each at its own x and y position.
+         */
+        PACKED;
 
         /** The value. */
         private final String value;
@@ -143,6 +165,47 @@ public class SpriteImageDirective {
         }
     }
 
+    /**
+     * Defines how the individual images of this sprite are trimmed before they are laid out.
+     */
+    public enum SpriteTrimMode {
+        /**
+         * Individual images are laid out as they are.
+         */
+        NONE,
+
+        /**
+         * Fully transparent borders of individual images are cropped where this does not change the rendered
+         * position of the images.
+         */
+        TRANSPARENT;
+
+        /** The value. */
+        private final String value;
+
+        /**
+         * Instantiates a new sprite trim mode.
+         */
+        SpriteTrimMode() {
+            this.value = name().toLowerCase(Locale.ENGLISH);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+
+        /**
+         * Values as string.
+         *
+         * @return the string
+         */
+        public static String valuesAsString() {
+            final String list = new ArrayList<>(Arrays.asList(values())).toString();
+            return list.substring(1, list.length() - 1);
+        }
+    }
+
     /**
      * Defines supported image file formats.
      */
@@ -228,6 +291,32 @@ public class SpriteImageDirective {
      */
     public final float scaleRatio;
 
+    /**
+     * Quantizer to be used when reducing colors, <code>null</code> to use the one from the parameters.
+     */
+    public final QuantizerEngine quantizer;
+
+    /**
+     * Maximum width of a sheet of this sprite image, 0 for no limit. Sprite images exceeding any of the limits are
+     * split into several sheets.
+     */
+    public final int maxWidth;
+
+    /**
+     * Maximum height of a sheet of this sprite image, 0 for no limit.
+     */
+    public final int maxHeight;
+
+    /**
+     * Maximum size in bytes of a decoded sheet of this sprite image, taking 4 bytes per pixel, 0 for no limit.
+     */
+    public final long maxBytes;
+
+    /**
+     * How the individual images are trimmed before they are laid out.
+     */
+    public final SpriteTrimMode trimMode;
+
     /**
      * Sprite layout properties defined at the sprite image directive level. The defaults provided here can be
      * overridden at the sprite reference directive level.
@@ -295,6 +384,105 @@ public class SpriteImageDirective {
      */
     public SpriteImageDirective(String id, String imageUrl, SpriteImageLayout layout, SpriteImageFormat format,
             Color matteColor, SpriteUidType uidType, float scale, SpriteLayoutProperties spriteLayoutProperties) {
+        this(id, imageUrl, layout, format, matteColor, uidType, scale, spriteLayoutProperties, null);
+    }
+
+    /**
+     * Instantiates a new sprite image directive.
+     *
+     * @param id
+     *            the id
+     * @param imageUrl
+     *            the image url
+     * @param layout
+     *            the layout
+     * @param format
+     *            the format
+     * @param matteColor
+     *            the matte color
+     * @param uidType
+     *            the uid type
+     * @param scale
+     *            the scale
+     * @param spriteLayoutProperties
+     *            the sprite layout properties
+     * @param quantizer
+     *            the quantizer, <code>null</code> to use the one from the parameters
+     */
+    public SpriteImageDirective(String id, String imageUrl, SpriteImageLayout layout, SpriteImageFormat format,
+            Color matteColor, SpriteUidType uidType, float scale, SpriteLayoutProperties spriteLayoutProperties,
+            QuantizerEngine quantizer) {
+        this(id, imageUrl, layout, format, matteColor, uidType, scale, spriteLayoutProperties, quantizer, 0, 0, 0);
+    }
+
+    /**
+     * Instantiates a new sprite image directive.
+     *
+     * @param id
+     *            the id
+     * @param imageUrl
+     *            the image url
+     * @param layout
+     *            the layout
+     * @param format
+     *            the format
+     * @param matteColor
+     *            the matte color
+     * @param uidType
+     *            the uid type
+     * @param scale
+     *            the scale
+     * @param spriteLayoutProperties
+     *            the sprite layout properties
+     * @param quantizer
+     *            the quantizer, <code>null</code> to use the one from the parameters
+     * @param maxWidth
+     *            the maximum width of a sheet, 0 for no limit
+     * @param maxHeight
+     *            the maximum height of a sheet, 0 for no limit
+     * @param maxBytes
+     *            the maximum size in bytes of a decoded sheet, 0 for no limit
+     */
+    public SpriteImageDirective(String id, String imageUrl, SpriteImageLayout layout, SpriteImageFormat format,
+            Color matteColor, SpriteUidType uidType, float scale, SpriteLayoutProperties spriteLayoutProperties,
+            QuantizerEngine quantizer, int maxWidth, int maxHeight, long maxBytes) {
+        this(id, imageUrl, layout, format, matteColor, uidType, scale, spriteLayoutProperties, quantizer, maxWidth,
+                maxHeight, maxBytes, SpriteTrimMode.NONE);
+    }
+
+    /**
+     * Instantiates a new sprite image directive.
+     *
+     * @param id
+     *            the id
+     * @param imageUrl
+     *            the image url
+     * @param layout
+     *            the layout
+     * @param format
+     *            the format
+     * @param matteColor
+     *            the matte color
+     * @param uidType
+     *            the uid type
+     * @param scale
+     *            the scale
+     * @param spriteLayoutProperties
+     *            the sprite layout properties
+     * @param quantizer
+     *            the quantizer, <code>null</code> to use the one from the parameters
+     * @param maxWidth
+     *            the maximum width of a sheet, 0 for no limit
+     * @param maxHeight
+     *            the maximum height of a sheet, 0 for no limit
+     * @param maxBytes
+     *            the maximum size in bytes of a decoded sheet, 0 for no limit
+     * @param trimMode
+     *            how the individual images are trimmed before they are laid out
+     */
+    public SpriteImageDirective(String id, String imageUrl, SpriteImageLayout layout, SpriteImageFormat format,
+            Color matteColor, SpriteUidType uidType, float scale, SpriteLayoutProperties spriteLayoutProperties,
+            QuantizerEngine quantizer, int maxWidth, int maxHeight, long maxBytes, SpriteTrimMode trimMode) {
         this.spriteId = id;
         this.imagePath = imageUrl;
         this.layout = layout;
@@ -303,6 +491,35 @@ public class SpriteImageDirective {
         this.uidType = uidType;
         this.scaleRatio = scale;
         this.spriteLayoutProperties = spriteLayoutProperties;
+        this.quantizer = quantizer;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.maxBytes = maxBytes;
+        this.trimMode = trimMode;
+    }
+
+    /**
+     * Checks if the sheets of this sprite image are limited in size.
+     *
+     * @return true, if any of the limits is set
+     */
+    public boolean hasSheetLimits() {
+        return maxWidth > 0 || maxHeight > 0 || maxBytes > 0;
+    }
+
+    /**
+     * Checks if a sheet of the provided size is within the limits of this sprite image.
+     *
+     * @param width
+     *            the width of the sheet
+     * @param height
+     *            the height of the sheet
+     *
+     * @return true, if the sheet does not exceed any of the limits
+     */
+    public boolean fitsSheetLimits(int width, int height) {
+        return (maxWidth <= 0 || width <= maxWidth) && (maxHeight <= 0 || height <= maxHeight)
+                && (maxBytes <= 0 || 4L * width * height <= maxBytes);
     }
 
     /**
@@ -398,8 +615,64 @@ public class SpriteImageDirective {
             scale = 1.0f;
         }
 
+        // Quantizer is optional
+        QuantizerEngine quantizer = null;
+        if (CssSyntaxUtils.hasNonBlankValue(rules, PROPERTY_SPRITE_QUANTIZER)) {
+            final String quantizerValue = rules.get(PROPERTY_SPRITE_QUANTIZER).value;
+            try {
+                quantizer = QuantizerEngine.getValue(quantizerValue);
+            } catch (final IllegalArgumentException e) {
+                messageCollector.warning(MessageType.UNSUPPORTED_QUANTIZER, quantizerValue);
+            }
+        }
+
+        // Sheet limits are optional
+        final int maxWidth = (int) getLimit(PROPERTY_SPRITE_MAX_WIDTH, rules, messageCollector);
+        final int maxHeight = (int) getLimit(PROPERTY_SPRITE_MAX_HEIGHT, rules, messageCollector);
+        final long maxBytes = getLimit(PROPERTY_SPRITE_MAX_BYTES, rules, messageCollector);
+
+        // Trim mode is optional
+        final SpriteTrimMode trimMode = valueOf(CssSyntaxUtils.getValue(rules, PROPERTY_SPRITE_TRIM),
+                SpriteTrimMode.class, SpriteTrimMode.NONE, messageCollector, MessageType.UNSUPPORTED_TRIM_MODE);
+
         return new SpriteImageDirective(id, imagePath, layout, format, matteColor, uidGenerator, scale,
-                SpriteLayoutProperties.parse(directiveString, layout, messageCollector));
+                SpriteLayoutProperties.parse(directiveString, layout, messageCollector), quantizer, maxWidth, maxHeight,
+                maxBytes, trimMode);
+    }
+
+    /**
+     * Parses a sheet limit value, in pixels for the width and height limits, in bytes for the size limit.
+     *
+     * @param limitRule
+     *            the limit rule
+     * @param rules
+     *            the rules
+     * @param messageCollector
+     *            the message collector
+     *
+     * @return the limit, 0 if not provided or invalid
+     */
+    private static long getLimit(String limitRule, Map<String, CssProperty> rules, MessageLog messageCollector) {
+        if (!CssSyntaxUtils.hasNonBlankValue(rules, limitRule)) {
+            return 0;
+        }
+        final String rawLimitValue = rules.get(limitRule).value;
+        String limitValue = rawLimitValue;
+        if (!PROPERTY_SPRITE_MAX_BYTES.equals(limitRule) && limitValue.toLowerCase(Locale.ENGLISH).endsWith("px")) {
+            limitValue = limitValue.substring(0, limitValue.length() - 2);
+        }
+        long limit;
+        try {
+            limit = PROPERTY_SPRITE_MAX_BYTES.equals(limitRule) ? Long.parseLong(limitValue)
+                    : Integer.parseInt(limitValue);
+        } catch (final NumberFormatException e) {
+            limit = 0;
+        }
+        if (limit <= 0) {
+            messageCollector.warning(MessageType.CANNOT_PARSE_SPRITE_LIMIT_VALUE, limitRule, rawLimitValue);
+            return 0;
+        }
+        return limit;
     }
 
     /**
@@ -9,6 +9,7 @@ package org.carrot2.labs.smartsprites;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
 
 import org.carrot2.labs.smartsprites.SmartSpritesParameters.PngDepth;
 import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteImageFormat;
@@ -17,6 +18,9 @@ import org.carrot2.labs.smartsprites.message.Message.MessageType;
 import org.carrot2.labs.smartsprites.message.MessageLog;
 import org.carrot2.util.ColorQuantizer;
 import org.carrot2.util.ColorQuantizer.ColorReductionInfo;
+import org.carrot2.util.PaletteQuantizer;
+import org.carrot2.util.QuantizerEngine;
+import org.carrot2.util.QuantizerPool;
 
 /**
  * Applies color quantization to the merged sprite image if required.
@@ -51,6 +55,25 @@ public class SpriteImageRenderer {
      * @return the buffered image[]
      */
     BufferedImage[] render(SpriteImage spriteImage) {
+        return render(spriteImage, messageLog, null, new QuantizerPool());
+    }
+
+    /**
+     * If needed, quantizes the image, logging messages to the provided log.
+     *
+     * @param spriteImage
+     *            the sprite image
+     * @param messageLog
+     *            the message log
+     * @param pool
+     *            the pool to quantize the pixels in, <code>null</code> to quantize them on the calling thread
+     * @param quantizers
+     *            the quantizers to borrow from
+     *
+     * @return the buffered image[]
+     */
+    BufferedImage[] render(SpriteImage spriteImage, MessageLog messageLog, ForkJoinPool pool,
+            QuantizerPool quantizers) {
         final BufferedImage sprite = spriteImage.sprite;
         final SpriteImageDirective spriteImageDirective = spriteImage.spriteImageOccurrence.spriteImageDirective;
         final boolean isPng = spriteImageDirective.format == SpriteImageFormat.PNG;
@@ -59,8 +82,11 @@ public class SpriteImageRenderer {
         final boolean isPngAuto = isPng && parameters.getSpritePngDepth() == PngDepth.AUTO;
         final boolean isPngDirect = isPng && parameters.getSpritePngDepth() == PngDepth.DIRECT;
 
-        final ColorReductionInfo colorReductionInfo = ColorQuantizer.getColorReductionInfo(sprite);
-        final boolean canReduceWithoutQualityLoss = colorReductionInfo.canReduceWithoutQualityLoss();
+        // Direct color formats never need the color analysis
+        final ColorReductionInfo colorReductionInfo = isPngDirect || isJpg ? null
+                : ColorQuantizer.getColorReductionInfo(sprite);
+        final boolean canReduceWithoutQualityLoss = colorReductionInfo != null
+                && colorReductionInfo.canReduceWithoutQualityLoss();
 
         final BufferedImage[] result = new BufferedImage[2];
 
@@ -80,9 +106,10 @@ public class SpriteImageRenderer {
                 messageLog.warning(MessageType.IGNORING_MATTE_COLOR_NO_PARTIAL_TRANSPARENCY,
                         spriteImageDirective.spriteId);
             }
-            result[0] = ColorQuantizer.reduce(sprite);
+            result[0] = ColorQuantizer.reduce(sprite, colorReductionInfo);
         } else {
-            result[0] = quantize(sprite, spriteImage, colorReductionInfo, MessageLevel.WARN);
+            result[0] = quantize(sprite, spriteImage, colorReductionInfo, MessageLevel.WARN, messageLog, pool,
+                    quantizers);
         }
         return result;
     }
@@ -98,11 +125,18 @@ public class SpriteImageRenderer {
      *            the color reduction info
      * @param logLevel
      *            the log level
+     * @param messageLog
+     *            the message log
+     * @param pool
+     *            the pool to quantize the pixels in, <code>null</code> to quantize them on the calling thread
+     * @param quantizers
+     *            the quantizers to borrow from
      *
      * @return the buffered image
      */
     private BufferedImage quantize(BufferedImage sprite, SpriteImage spriteImage,
-            final ColorReductionInfo colorReductionInfo, MessageLevel logLevel) {
+            final ColorReductionInfo colorReductionInfo, MessageLevel logLevel, MessageLog messageLog,
+            ForkJoinPool pool, QuantizerPool quantizers) {
         final SpriteImageDirective spriteImageDirective = spriteImage.spriteImageOccurrence.spriteImageDirective;
 
         // Need to quantize
@@ -123,6 +157,15 @@ public class SpriteImageRenderer {
             matte = Color.WHITE;
         }
 
-        return ColorQuantizer.quantize(sprite, matte);
+        final QuantizerEngine engine = spriteImageDirective.quantizer != null ? spriteImageDirective.quantizer
+                : parameters.getSpriteQuantizer();
+        final PaletteQuantizer quantizer = quantizers.acquire(engine);
+        try {
+            return ColorQuantizer.quantize(sprite, matte, ColorQuantizer.MAX_INDEXED_COLORS, quantizer,
+                    depth -> messageLog.info(MessageType.COLOR_TREE_PRUNED, spriteImageDirective.spriteId, depth),
+                    pool);
+        } finally {
+            quantizers.release(engine, quantizer);
+        }
     }
 }
@@ -247,7 +247,13 @@ public class SpriteLayoutProperties {
      */
     private static SpriteAlignment correctAlignment(SpriteImageLayout spriteImageLayout, SpriteAlignment alignment,
             MessageLog messageCollector) {
-        if (spriteImageLayout.equals(SpriteImageLayout.HORIZONTAL)) {
+        if (spriteImageLayout.equals(SpriteImageLayout.PACKED)) {
+            // Packed images are positioned explicitly, they cannot be repeated or moved to an edge of the sprite
+            if (!alignment.equals(SpriteAlignment.LEFT) && !alignment.equals(SpriteAlignment.TOP)) {
+                messageCollector.warning(MessageType.ONLY_LEFT_OR_TOP_ALIGNMENT_ALLOWED, alignment.value);
+                return SpriteAlignment.LEFT;
+            }
+        } else if (spriteImageLayout.equals(SpriteImageLayout.HORIZONTAL)) {
             if (alignment.equals(SpriteAlignment.LEFT) || alignment.equals(SpriteAlignment.RIGHT)) {
                 messageCollector.warning(MessageType.ONLY_TOP_OR_BOTTOM_ALIGNMENT_ALLOWED, alignment.value);
                 return SpriteAlignment.TOP;
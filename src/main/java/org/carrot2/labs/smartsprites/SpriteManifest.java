@@ -0,0 +1,392 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.carrot2.labs.smartsprites.SpriteImageBuilder.SourceImage;
+import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteUidType;
+import org.carrot2.util.AtomicFileOutputStream;
+
+/**
+ * Records the inputs and outputs of the sprite images built in incremental mode, so that the next build can reuse
+ * sprite images whose inputs have not changed. The inputs of a sprite image are summarized in a fingerprint computed
+ * from its {@link SpriteImageDirective}, the {@link SpriteReferenceDirective}s referring to it and the content of the
+ * individual images. Only the sprite images recorded during the current build are written back, so entries of removed
+ * sprites do not accumulate. The manifest is stored in the output directory, or in the root directory if there is no
+ * output directory, see {@link SmartSpritesParameters#isIncremental()}.
+ */
+final class SpriteManifest {
+
+    /** Name of the manifest file. */
+    static final String FILE_NAME = ".smartsprites-manifest";
+
+    /** First line of the manifest file, manifests written in other formats are ignored. */
+    private static final String HEADER = "# SmartSprites incremental build manifest, version 1";
+
+    /** Separates the fields of an entry. */
+    private static final String SEPARATOR = "\t";
+
+    /** Separates the offsets of individual images in an entry. */
+    private static final String OFFSET_SEPARATOR = ",";
+
+    /** Path to the manifest file. */
+    private final Path path;
+
+    /** Entries read from the manifest file by sprite id. */
+    private final Map<String, Entry> previousEntries;
+
+    /** Entries recorded during the current build by sprite id, recorded concurrently for parallel builds. */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new sprite manifest.
+     *
+     * @param path
+     *            the path
+     * @param previousEntries
+     *            the previous entries
+     */
+    private SpriteManifest(Path path, Map<String, Entry> previousEntries) {
+        this.path = path;
+        this.previousEntries = previousEntries;
+    }
+
+    /**
+     * Reads the manifest from the provided file. If the file does not exist, cannot be read or was written in a
+     * different format, an empty manifest is returned, so that all sprite images are rebuilt.
+     *
+     * @param path
+     *            the path to the manifest file
+     *
+     * @return the manifest
+     */
+    static SpriteManifest load(Path path) {
+        final Map<String, Entry> previousEntries = new HashMap<>();
+        try {
+            final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && HEADER.equals(lines.get(0))) {
+                for (final String line : lines.subList(1, lines.size())) {
+                    final Entry entry = Entry.parse(line);
+                    if (entry != null) {
+                        previousEntries.put(entry.spriteId, entry);
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            // No usable manifest, everything will be rebuilt
+            previousEntries.clear();
+        }
+        return new SpriteManifest(path, previousEntries);
+    }
+
+    /**
+     * Gets the path to the manifest file.
+     *
+     * @return the path
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the entry recorded for the sprite image by the previous build.
+     *
+     * @param spriteId
+     *            the sprite id
+     *
+     * @return the entry or <code>null</code> if the sprite image was not recorded
+     */
+    Entry getPreviousEntry(String spriteId) {
+        return previousEntries.get(spriteId);
+    }
+
+    /**
+     * Records a sprite image built or reused during the current build. Entries whose values cannot be stored in the
+     * manifest are ignored, the corresponding sprite images will be rebuilt every time.
+     *
+     * @param entry
+     *            the entry
+     */
+    void record(Entry entry) {
+        if (isStorable(entry.spriteId) && isStorable(entry.resolvedPath)) {
+            entries.put(entry.spriteId, entry);
+        }
+    }
+
+    /**
+     * Writes the entries recorded during the current build to the manifest file, in sprite id order. The file is
+     * replaced atomically and left untouched if its content does not change, see {@link AtomicFileOutputStream}.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    void save() throws IOException {
+        final StringBuilder content = new StringBuilder(HEADER).append(System.lineSeparator());
+        for (final Entry entry : new TreeMap<>(entries).values()) {
+            content.append(entry.toLine()).append(System.lineSeparator());
+        }
+
+        final Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (OutputStream out = new AtomicFileOutputStream(path)) {
+            out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Checks if the sprite image can be reused between builds. Sprite images with time stamp based UIDs are rebuilt
+     * every time, so that each build produces a new time stamp.
+     *
+     * @param spriteImageDirective
+     *            the sprite image directive
+     *
+     * @return true, if the sprite image can be reused
+     */
+    static boolean supports(SpriteImageDirective spriteImageDirective) {
+        return spriteImageDirective.uidType != SpriteUidType.DATE
+                && !SpriteUidType.DATE.pattern.matcher(spriteImageDirective.imagePath).find();
+    }
+
+    /**
+     * Computes the fingerprint of the inputs of a sprite image.
+     *
+     * @param parameters
+     *            the parameters
+     * @param spriteImageOccurrence
+     *            the sprite image occurrence
+     * @param sourceImages
+     *            the individual images, in layout order
+     *
+     * @return the fingerprint
+     */
+    static String fingerprint(SmartSpritesParameters parameters, SpriteImageOccurrence spriteImageOccurrence,
+            List<SourceImage> sourceImages) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        putString(hasher, HEADER);
+        putString(hasher, String.valueOf(parameters.getSpritePngDepth()));
+
+        final SpriteImageDirective spriteImageDirective = spriteImageOccurrence.spriteImageDirective;
+        putString(hasher, spriteImageOccurrence.cssFile);
+        putString(hasher, spriteImageDirective.spriteId);
+        putString(hasher, spriteImageDirective.imagePath);
+        putString(hasher, String.valueOf(spriteImageDirective.uidType));
+        putString(hasher, String.valueOf(spriteImageDirective.layout));
+        putString(hasher, String.valueOf(spriteImageDirective.format));
+        final Color matteColor = spriteImageDirective.matteColor;
+        putString(hasher, matteColor != null ? Integer.toHexString(matteColor.getRGB()) : null);
+        putString(hasher, String.valueOf(spriteImageDirective.quantizer != null ? spriteImageDirective.quantizer
+                : parameters.getSpriteQuantizer()));
+        hasher.putFloat(spriteImageDirective.scaleRatio);
+        hasher.putInt(spriteImageDirective.maxWidth).putInt(spriteImageDirective.maxHeight)
+                .putLong(spriteImageDirective.maxBytes);
+        putString(hasher, String.valueOf(spriteImageDirective.trimMode));
+        putLayoutProperties(hasher, spriteImageDirective.spriteLayoutProperties);
+
+        hasher.putInt(sourceImages.size());
+        for (final SourceImage sourceImage : sourceImages) {
+            final SpriteReferenceOccurrence spriteReferenceOccurrence = sourceImage.spriteReferenceOccurrence;
+            putString(hasher, spriteReferenceOccurrence.cssFile);
+            putString(hasher, spriteReferenceOccurrence.imagePath);
+            putLayoutProperties(hasher, spriteReferenceOccurrence.spriteReferenceDirective.spriteLayoutProperties);
+            putString(hasher, sourceImage.path);
+            putString(hasher, sourceImage.bytes != null ? hash(sourceImage.bytes) : null);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Computes the hash of the provided content.
+     *
+     * @param bytes
+     *            the content
+     *
+     * @return the hash
+     */
+    static String hash(byte[] bytes) {
+        return Hashing.sha256().hashBytes(bytes).toString();
+    }
+
+    /**
+     * Adds the layout properties to the fingerprint.
+     *
+     * @param hasher
+     *            the hasher
+     * @param spriteLayoutProperties
+     *            the sprite layout properties, can be <code>null</code>
+     */
+    private static void putLayoutProperties(Hasher hasher, SpriteLayoutProperties spriteLayoutProperties) {
+        if (spriteLayoutProperties == null) {
+            hasher.putBoolean(false);
+            return;
+        }
+
+        hasher.putBoolean(true);
+        putString(hasher, String.valueOf(spriteLayoutProperties.alignment));
+        hasher.putInt(spriteLayoutProperties.marginLeft);
+        hasher.putInt(spriteLayoutProperties.marginRight);
+        hasher.putInt(spriteLayoutProperties.marginTop);
+        hasher.putInt(spriteLayoutProperties.marginBottom);
+    }
+
+    /**
+     * Adds a length-prefixed string to the fingerprint, so that adjacent values cannot be confused.
+     *
+     * @param hasher
+     *            the hasher
+     * @param value
+     *            the value, can be <code>null</code>
+     */
+    private static void putString(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+            return;
+        }
+
+        hasher.putInt(value.length());
+        hasher.putUnencodedChars(value);
+    }
+
+    /**
+     * Checks if the value can be stored in a single manifest field.
+     *
+     * @param value
+     *            the value
+     *
+     * @return true, if is storable
+     */
+    private static boolean isStorable(String value) {
+        return !value.contains(SEPARATOR) && value.indexOf('\n') < 0 && value.indexOf('\r') < 0;
+    }
+
+    /**
+     * The recorded inputs and outputs of a single sprite image.
+     */
+    static final class Entry {
+
+        /** The sprite id. */
+        final String spriteId;
+
+        /** The fingerprint of the sprite image's inputs. */
+        final String fingerprint;
+
+        /** The hash of the written sprite image file. */
+        final String outputHash;
+
+        /** The {@link SpriteImage#resolvedPath}. */
+        final String resolvedPath;
+
+        /** The width of the sprite image. */
+        final int spriteWidth;
+
+        /** The height of the sprite image. */
+        final int spriteHeight;
+
+        /** The scale ratio of the sprite image. */
+        final float scaleRatio;
+
+        /** The offsets of the individual images, in layout order, x and y of each image in packed sprites. */
+        final List<Integer> offsets;
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param spriteId
+         *            the sprite id
+         * @param fingerprint
+         *            the fingerprint
+         * @param outputHash
+         *            the output hash
+         * @param resolvedPath
+         *            the resolved path
+         * @param spriteWidth
+         *            the sprite width
+         * @param spriteHeight
+         *            the sprite height
+         * @param scaleRatio
+         *            the scale ratio
+         * @param offsets
+         *            the offsets
+         */
+        Entry(String spriteId, String fingerprint, String outputHash, String resolvedPath, int spriteWidth,
+                int spriteHeight, float scaleRatio, List<Integer> offsets) {
+            this.spriteId = spriteId;
+            this.fingerprint = fingerprint;
+            this.outputHash = outputHash;
+            this.resolvedPath = resolvedPath;
+            this.spriteWidth = spriteWidth;
+            this.spriteHeight = spriteHeight;
+            this.scaleRatio = scaleRatio;
+            this.offsets = Collections.unmodifiableList(new ArrayList<>(offsets));
+        }
+
+        /**
+         * Formats the entry as a single manifest line.
+         *
+         * @return the line
+         */
+        String toLine() {
+            final StringBuilder offsetsString = new StringBuilder();
+            for (final Integer offset : offsets) {
+                if (offsetsString.length() > 0) {
+                    offsetsString.append(OFFSET_SEPARATOR);
+                }
+                offsetsString.append(offset);
+            }
+
+            return String.join(SEPARATOR, spriteId, fingerprint, outputHash, resolvedPath,
+                    Integer.toString(spriteWidth), Integer.toString(spriteHeight), Float.toString(scaleRatio),
+                    offsetsString);
+        }
+
+        /**
+         * Parses a manifest line.
+         *
+         * @param line
+         *            the line
+         *
+         * @return the entry or <code>null</code> if the line is malformed
+         */
+        static Entry parse(String line) {
+            final String[] fields = line.split(SEPARATOR, -1);
+            if (fields.length != 8) {
+                return null;
+            }
+
+            try {
+                final List<Integer> offsets = new ArrayList<>();
+                if (!fields[7].isEmpty()) {
+                    for (final String offset : fields[7].split(OFFSET_SEPARATOR, -1)) {
+                        offsets.add(Integer.valueOf(offset));
+                    }
+                }
+                return new Entry(fields[0], fields[1], fields[2], fields[3], Integer.parseInt(fields[4]),
+                        Integer.parseInt(fields[5]), Float.parseFloat(fields[6]), offsets);
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
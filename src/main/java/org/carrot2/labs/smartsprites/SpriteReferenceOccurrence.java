@@ -99,7 +99,7 @@ public class SpriteReferenceOccurrence extends SpriteDirectiveOccurrence {
      * @param layout
      *            the layout the enclosing sprite
      * @param dimension
-     *            height/width of a horizontal/vertical sprite
+     *            height/width of a horizontal/vertical sprite, ignored for packed sprites
      *
      * @return the rendered individual image
      */
@@ -107,49 +107,165 @@ public class SpriteReferenceOccurrence extends SpriteDirectiveOccurrence {
         final BufferedImage rendered;
         if (SpriteImageLayout.VERTICAL.equals(layout)) {
             rendered = new BufferedImage(dimension, getRequiredHeight(image, layout), BufferedImage.TYPE_4BYTE_ABGR);
+        } else if (SpriteImageLayout.HORIZONTAL.equals(layout)) {
+            rendered = new BufferedImage(getRequiredWidth(image, layout), dimension, BufferedImage.TYPE_4BYTE_ABGR);
+        } else {
+            rendered = new BufferedImage(getRequiredWidth(image, layout), getRequiredHeight(image, layout),
+                    BufferedImage.TYPE_4BYTE_ABGR);
+        }
+        draw(image, layout, dimension, rendered, 0, 0);
+        return rendered;
+    }
 
-            if (SpriteAlignment.LEFT.equals(spriteReferenceDirective.spriteLayoutProperties.alignment)) {
-                BufferedImageUtils.drawImage(image, rendered,
-                        spriteReferenceDirective.spriteLayoutProperties.marginLeft,
-                        spriteReferenceDirective.spriteLayoutProperties.marginTop);
-            } else if (SpriteAlignment.RIGHT.equals(spriteReferenceDirective.spriteLayoutProperties.alignment)) {
-                BufferedImageUtils.drawImage(image, rendered,
-                        dimension - spriteReferenceDirective.spriteLayoutProperties.marginRight - image.getWidth(),
-                        spriteReferenceDirective.spriteLayoutProperties.marginTop);
-            } else if (SpriteAlignment.CENTER.equals(spriteReferenceDirective.spriteLayoutProperties.alignment)) {
-                BufferedImageUtils.drawImage(image, rendered, (rendered.getWidth() - image.getWidth()) / 2,
-                        spriteReferenceDirective.spriteLayoutProperties.marginTop);
-            } else {
-                // Repeat, ignoring margin-left and margin-right
-                for (int x = 0; x < dimension; x += image.getWidth()) {
-                    BufferedImageUtils.drawImage(image, rendered, x,
-                            spriteReferenceDirective.spriteLayoutProperties.marginTop);
-                }
-            }
+    /**
+     * Draws the individual image, including margins and repeats if any, directly into the sprite image, the same way
+     * as {@link #render(BufferedImage, SpriteImageLayout, int)} renders it.
+     *
+     * @param image
+     *            the individual image as read from the file
+     * @param layout
+     *            the layout the enclosing sprite
+     * @param dimension
+     *            height/width of a horizontal/vertical sprite
+     * @param sprite
+     *            the sprite image to draw into
+     * @param offset
+     *            the offset of the individual image in the sprite, y for vertical and x for horizontal sprites
+     */
+    public void draw(BufferedImage image, SpriteImageLayout layout, int dimension, BufferedImage sprite, int offset) {
+        final boolean vertical = SpriteImageLayout.VERTICAL.equals(layout);
+        draw(image, layout, dimension, sprite, vertical ? 0 : offset, vertical ? offset : 0);
+    }
+
+    /**
+     * Draws the individual image, including margins and repeats if any, into the sprite image at the provided
+     * position of the area rendered for it.
+     *
+     * @param image
+     *            the individual image as read from the file
+     * @param layout
+     *            the layout the enclosing sprite
+     * @param dimension
+     *            height/width of a horizontal/vertical sprite, ignored for packed sprites
+     * @param sprite
+     *            the sprite image to draw into
+     * @param areaX
+     *            the x coordinate of the area rendered for the individual image
+     * @param areaY
+     *            the y coordinate of the area rendered for the individual image
+     */
+    public void draw(BufferedImage image, SpriteImageLayout layout, int dimension, BufferedImage sprite, int areaX,
+            int areaY) {
+        final int x = areaX + getImageX(image, layout, dimension);
+        final int y = areaY + getImageY(image, layout, dimension);
+
+        if (!isRepeated(layout)) {
+            BufferedImageUtils.drawImage(image, sprite, x, y);
+        } else if (SpriteImageLayout.VERTICAL.equals(layout)) {
+            // Repeat, ignoring margin-left and margin-right
+            BufferedImageUtils.drawImageRepeated(image, sprite, areaX, y, repetitions(dimension, image.getWidth()),
+                    1);
         } else {
-            rendered = new BufferedImage(getRequiredWidth(image, layout), dimension, BufferedImage.TYPE_4BYTE_ABGR);
+            // Repeat, ignoring margin-top and margin-bottom
+            BufferedImageUtils.drawImageRepeated(image, sprite, x, areaY, 1,
+                    repetitions(dimension, image.getHeight()));
+        }
+    }
 
-            if (SpriteAlignment.TOP.equals(spriteReferenceDirective.spriteLayoutProperties.alignment)) {
-                BufferedImageUtils.drawImage(image, rendered,
-                        spriteReferenceDirective.spriteLayoutProperties.marginLeft,
-                        spriteReferenceDirective.spriteLayoutProperties.marginTop);
-            } else if (SpriteAlignment.BOTTOM.equals(spriteReferenceDirective.spriteLayoutProperties.alignment)) {
-                BufferedImageUtils.drawImage(image, rendered,
-                        spriteReferenceDirective.spriteLayoutProperties.marginLeft,
-                        dimension - spriteReferenceDirective.spriteLayoutProperties.marginBottom - image.getHeight());
-            } else if (SpriteAlignment.CENTER.equals(spriteReferenceDirective.spriteLayoutProperties.alignment)) {
-                BufferedImageUtils.drawImage(image, rendered,
-                        spriteReferenceDirective.spriteLayoutProperties.marginLeft,
-                        (rendered.getHeight() - image.getHeight()) / 2);
-            } else {
-                // Repeat, ignoring margin-top and margin-bottom
-                for (int y = 0; y < dimension; y += image.getHeight()) {
-                    BufferedImageUtils.drawImage(image, rendered,
-                            spriteReferenceDirective.spriteLayoutProperties.marginLeft, y);
-                }
-            }
+    /**
+     * Computes how many times an image needs to be repeated to cover the dimension.
+     *
+     * @param dimension
+     *            the dimension to cover
+     * @param imageDimension
+     *            the width/height of the image
+     *
+     * @return the number of repetitions
+     */
+    private static int repetitions(int dimension, int imageDimension) {
+        return (dimension + imageDimension - 1) / imageDimension;
+    }
+
+    /**
+     * Returns <code>true</code> if the individual image is repeated along the whole width/height of a
+     * vertical/horizontal sprite.
+     *
+     * @param layout
+     *            the layout the enclosing sprite
+     *
+     * @return true, if repeated
+     */
+    boolean isRepeated(SpriteImageLayout layout) {
+        final SpriteAlignment alignment = spriteReferenceDirective.spriteLayoutProperties.alignment;
+        if (SpriteImageLayout.PACKED.equals(layout)) {
+            return false;
         }
-        return rendered;
+        if (SpriteImageLayout.VERTICAL.equals(layout)) {
+            return !SpriteAlignment.LEFT.equals(alignment) && !SpriteAlignment.RIGHT.equals(alignment)
+                    && !SpriteAlignment.CENTER.equals(alignment);
+        }
+        return !SpriteAlignment.TOP.equals(alignment) && !SpriteAlignment.BOTTOM.equals(alignment)
+                && !SpriteAlignment.CENTER.equals(alignment);
+    }
+
+    /**
+     * Computes the x coordinate of the individual image, relative to the area rendered for it.
+     *
+     * @param image
+     *            the image
+     * @param layout
+     *            the layout the enclosing sprite
+     * @param dimension
+     *            height/width of a horizontal/vertical sprite
+     *
+     * @return the x coordinate, of the first repetition for repeated images
+     */
+    int getImageX(BufferedImage image, SpriteImageLayout layout, int dimension) {
+        final SpriteLayoutProperties properties = spriteReferenceDirective.spriteLayoutProperties;
+        if (!SpriteImageLayout.VERTICAL.equals(layout)) {
+            return properties.marginLeft;
+        }
+
+        if (SpriteAlignment.LEFT.equals(properties.alignment)) {
+            return properties.marginLeft;
+        }
+        if (SpriteAlignment.RIGHT.equals(properties.alignment)) {
+            return dimension - properties.marginRight - image.getWidth();
+        }
+        if (SpriteAlignment.CENTER.equals(properties.alignment)) {
+            return (dimension - image.getWidth()) / 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Computes the y coordinate of the individual image, relative to the area rendered for it.
+     *
+     * @param image
+     *            the image
+     * @param layout
+     *            the layout the enclosing sprite
+     * @param dimension
+     *            height/width of a horizontal/vertical sprite
+     *
+     * @return the y coordinate, of the first repetition for repeated images
+     */
+    int getImageY(BufferedImage image, SpriteImageLayout layout, int dimension) {
+        final SpriteLayoutProperties properties = spriteReferenceDirective.spriteLayoutProperties;
+        if (!SpriteImageLayout.HORIZONTAL.equals(layout)) {
+            return properties.marginTop;
+        }
+
+        if (SpriteAlignment.TOP.equals(properties.alignment)) {
+            return properties.marginTop;
+        }
+        if (SpriteAlignment.BOTTOM.equals(properties.alignment)) {
+            return dimension - properties.marginBottom - image.getHeight();
+        }
+        if (SpriteAlignment.CENTER.equals(properties.alignment)) {
+            return (dimension - image.getHeight()) / 2;
+        }
+        return 0;
     }
 
     /**
@@ -186,4 +302,24 @@ public class SpriteReferenceOccurrence extends SpriteDirectiveOccurrence {
         }
         return new SpriteReferenceReplacement(this, verticalPosition, offset);
     }
+
+    /**
+     * Returns the {@link SpriteReferenceReplacement} corresponding to the occurrence, taking into account the layout
+     * the the enclosing sprite and the position at which the individual image was rendered.
+     *
+     * @param layout
+     *            the layout
+     * @param x
+     *            the x coordinate of the area rendered for the individual image
+     * @param y
+     *            the y coordinate of the area rendered for the individual image
+     *
+     * @return the sprite reference replacement
+     */
+    public SpriteReferenceReplacement buildReplacement(SpriteImageLayout layout, int x, int y) {
+        if (SpriteImageLayout.PACKED.equals(layout)) {
+            return new SpriteReferenceReplacement(this, x, y);
+        }
+        return buildReplacement(layout, SpriteImageLayout.VERTICAL.equals(layout) ? y : x);
+    }
 }
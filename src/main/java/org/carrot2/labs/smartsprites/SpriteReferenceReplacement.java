@@ -67,4 +67,22 @@ public class SpriteReferenceReplacement {
         this.verticalPosition = -1;
         this.verticalPositionString = verticalPosition;
     }
+
+    /**
+     * Instantiates a new sprite reference replacement positioned explicitly along both axes, as in packed sprites.
+     *
+     * @param spriteReferenceOccurrence
+     *            the sprite reference occurrence
+     * @param x
+     *            the x coordinate of the individual image in the sprite
+     * @param y
+     *            the y coordinate of the individual image in the sprite
+     */
+    public SpriteReferenceReplacement(SpriteReferenceOccurrence spriteReferenceOccurrence, int x, int y) {
+        this.spriteReferenceOccurrence = spriteReferenceOccurrence;
+        this.horizontalPosition = x;
+        this.horizontalPositionString = "-" + x + "px";
+        this.verticalPosition = y;
+        this.verticalPositionString = "-" + y + "px";
+    }
 }
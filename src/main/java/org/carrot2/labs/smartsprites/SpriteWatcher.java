@@ -0,0 +1,339 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.carrot2.labs.smartsprites.message.Message.MessageType;
+import org.carrot2.labs.smartsprites.message.MessageLog;
+import org.carrot2.labs.smartsprites.resource.FileSystemResourceHandler;
+import org.carrot2.labs.smartsprites.resource.ResourceHandler;
+import org.carrot2.util.AtomicFileOutputStream;
+import org.carrot2.util.FileUtils;
+
+/**
+ * Builds sprites and then keeps watching the input files, rebuilding only the sprite images and CSS files affected by
+ * each change. The root directory and the document root directory are watched recursively, the directories of the
+ * individually provided CSS files and of the individual images are watched as they are discovered. Changes arriving
+ * in quick succession are handled by a single rebuild. This class is not thread-safe.
+ */
+final class SpriteWatcher {
+
+    /** Time to wait for further changes before rebuilding. */
+    private static final long DEBOUNCE_MILLIS = 200;
+
+    /** This watcher's configuration. */
+    private final SmartSpritesParameters parameters;
+
+    /** This watcher's message log. */
+    private final MessageLog messageLog;
+
+    /** State retained between builds. */
+    private final SpriteBuildState state = new SpriteBuildState();
+
+    /** Individual images decoded by the previous builds. */
+    private final DecodedImageCache decodedImageCache = new DecodedImageCache();
+
+    /** The builder performing the builds. */
+    private final SpriteBuilder spriteBuilder;
+
+    /** Watched directories by watch key. */
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    /** Watched directories whose subdirectories are watched as well. */
+    private final Set<Path> recursiveDirectories = new HashSet<>();
+
+    /**
+     * Creates a {@link SpriteWatcher} with the provided parameters and log.
+     *
+     * @param parameters
+     *            the parameters
+     * @param messageLog
+     *            the message log
+     */
+    SpriteWatcher(SmartSpritesParameters parameters, MessageLog messageLog) {
+        this(parameters, messageLog, new FileSystemResourceHandler(parameters.getDocumentRootDir(),
+                parameters.getCssFileEncoding(), messageLog));
+    }
+
+    /**
+     * Creates a {@link SpriteWatcher} with the provided parameters and log.
+     *
+     * @param parameters
+     *            the parameters
+     * @param messageLog
+     *            the message log
+     * @param resourceHandler
+     *            the resource handler, must resolve paths against the local file system
+     */
+    SpriteWatcher(SmartSpritesParameters parameters, MessageLog messageLog, ResourceHandler resourceHandler) {
+        this.parameters = parameters;
+        this.messageLog = messageLog;
+        this.spriteBuilder = new SpriteBuilder(parameters, messageLog,
+                new OutputRecordingResourceHandler(resourceHandler, state), decodedImageCache);
+    }
+
+    /**
+     * Builds sprites and rebuilds them on changes to the input files until the calling thread is interrupted.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     * @throws InterruptedException
+     *             if the calling thread is interrupted
+     */
+    void watch() throws IOException, InterruptedException {
+        if (!parameters.validate(messageLog)) {
+            return;
+        }
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            if (parameters.hasRootDir()) {
+                registerRecursively(watchService, Path.of(parameters.getRootDir()));
+            }
+            if (parameters.hasCssFiles()) {
+                for (final String cssFile : parameters.getCssFiles()) {
+                    registerParent(watchService, cssFile);
+                }
+            }
+            if (parameters.hasDocumentRootDir()) {
+                registerRecursively(watchService, Path.of(parameters.getDocumentRootDir()));
+            }
+
+            build(watchService);
+
+            while (true) {
+                WatchKey key = watchService.take();
+                final Set<Path> changedFiles = new HashSet<>();
+                do {
+                    processEvents(watchService, key, changedFiles);
+                    key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                if (!changedFiles.isEmpty()) {
+                    messageLog.info(MessageType.REBUILDING_AFTER_CHANGES, changedFiles.size());
+                    build(watchService);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the sprites affected by the changes recorded so far and starts watching the directories of newly
+     * discovered input files. If the build fails, the next build processes all files.
+     *
+     * @param watchService
+     *            the watch service
+     */
+    private void build(WatchService watchService) {
+        try {
+            spriteBuilder.buildSprites(state);
+        } catch (final IOException e) {
+            messageLog.warning(MessageType.REBUILD_FAILED, e.getMessage());
+            state.invalidate();
+        }
+
+        for (final String inputFile : state.getInputFiles()) {
+            registerParent(watchService, inputFile);
+        }
+        messageLog.info(MessageType.WATCHING_FOR_CHANGES, directories.size());
+    }
+
+    /**
+     * Records the changes reported for a watched directory.
+     *
+     * @param watchService
+     *            the watch service
+     * @param key
+     *            the key of the directory
+     * @param changedFiles
+     *            collects the changed files requiring a rebuild
+     */
+    private void processEvents(WatchService watchService, WatchKey key, Set<Path> changedFiles) {
+        final Path directory = directories.get(key);
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                // Some changes have been lost, start over
+                state.invalidate();
+                changedFiles.add((Path) key.watchable());
+                continue;
+            }
+
+            final Path path = directory.resolve((Path) event.context());
+            if (path.getFileName().toString().endsWith(AtomicFileOutputStream.TEMPORARY_FILE_SUFFIX)) {
+                // Output files being replaced
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && recursiveDirectories.contains(directory)
+                    && Files.isDirectory(path)) {
+                registerRecursively(watchService, path);
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && directories.containsValue(path)) {
+                // Files in a deleted directory are not reported individually
+                state.invalidate();
+            }
+            if (state.fileChanged(path.toString())) {
+                decodedImageCache.invalidate(path.toString());
+                changedFiles.add(path);
+            }
+        }
+
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Starts watching a directory and all its subdirectories.
+     *
+     * @param watchService
+     *            the watch service
+     * @param root
+     *            the directory
+     */
+    private void registerRecursively(WatchService watchService, Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    recursiveDirectories.add(register(watchService, dir));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    messageLog.warning(MessageType.CANNOT_WATCH_FOR_CHANGES, file, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException e) {
+            messageLog.warning(MessageType.CANNOT_WATCH_FOR_CHANGES, root, e.getMessage());
+        }
+    }
+
+    /**
+     * Starts watching the directory containing a file.
+     *
+     * @param watchService
+     *            the watch service
+     * @param file
+     *            the file
+     */
+    private void registerParent(WatchService watchService, String file) {
+        final Path parent = FileUtils.getCanonicalOrAbsoluteFile(file).toPath().getParent();
+        if (parent != null && Files.isDirectory(parent)) {
+            register(watchService, parent);
+        }
+    }
+
+    /**
+     * Starts watching a single directory, unless it is already watched.
+     *
+     * @param watchService
+     *            the watch service
+     * @param directory
+     *            the directory
+     *
+     * @return the normalized directory path
+     */
+    private Path register(WatchService watchService, Path directory) {
+        final Path normalized = FileUtils.getCanonicalOrAbsoluteFile(directory.toString()).toPath();
+        if (directories.containsValue(normalized)) {
+            return normalized;
+        }
+
+        try {
+            directories.put(normalized.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), normalized);
+        } catch (final IOException e) {
+            messageLog.warning(MessageType.CANNOT_WATCH_FOR_CHANGES, normalized, e.getMessage());
+        }
+        return normalized;
+    }
+
+    /**
+     * A {@link ResourceHandler} recording the files written by the builds, so that the changes caused by the builds
+     * themselves do not trigger further builds.
+     */
+    private static final class OutputRecordingResourceHandler implements ResourceHandler {
+
+        /** The handler accessing the resources. */
+        private final ResourceHandler delegate;
+
+        /** The state to record the written files in. */
+        private final SpriteBuildState state;
+
+        /**
+         * Instantiates a new output recording resource handler.
+         *
+         * @param delegate
+         *            the delegate
+         * @param state
+         *            the state
+         */
+        OutputRecordingResourceHandler(ResourceHandler delegate, SpriteBuildState state) {
+            this.delegate = delegate;
+            this.state = state;
+        }
+
+        @Override
+        public InputStream getResourceAsInputStream(String path) throws IOException {
+            return delegate.getResourceAsInputStream(path);
+        }
+
+        @Override
+        public Reader getResourceAsReader(String path) throws IOException {
+            return delegate.getResourceAsReader(path);
+        }
+
+        @Override
+        public OutputStream getResourceAsOutputStream(String path) throws IOException {
+            state.addOutputFile(path);
+            return delegate.getResourceAsOutputStream(path);
+        }
+
+        @Override
+        public Writer getResourceAsWriter(String path) throws IOException {
+            state.addOutputFile(path);
+            return delegate.getResourceAsWriter(path);
+        }
+
+        @Override
+        public String getResourcePath(String cssFilePath, String cssRelativePath) {
+            return delegate.getResourcePath(cssFilePath, cssRelativePath);
+        }
+
+        @Override
+        public boolean readsLocalFiles() {
+            return delegate.readsLocalFiles();
+        }
+
+        @Override
+        public ResourceHandler withMessageLog(MessageLog messageLog) {
+            return new OutputRecordingResourceHandler(delegate.withMessageLog(messageLog), state);
+        }
+    }
+}
@@ -17,6 +17,7 @@ import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.types.Resource;
+import org.carrot2.labs.smartsprites.DecodedImageCache;
 import org.carrot2.labs.smartsprites.SmartSpritesParameters;
 import org.carrot2.labs.smartsprites.SmartSpritesParameters.PngDepth;
 import org.carrot2.labs.smartsprites.SpriteBuilder;
@@ -24,7 +25,9 @@ import org.carrot2.labs.smartsprites.message.Message;
 import org.carrot2.labs.smartsprites.message.Message.MessageLevel;
 import org.carrot2.labs.smartsprites.message.MessageLog;
 import org.carrot2.labs.smartsprites.message.MessageSink;
+import org.carrot2.labs.smartsprites.resource.FileSystemResourceHandler;
 import org.carrot2.util.EnumUtils;
+import org.carrot2.util.QuantizerEngine;
 
 /**
  * Ant task for calling SmartSprites processing.
@@ -55,9 +58,24 @@ public class SmartSpritesTask extends Task {
     /** The sprite png depth. */
     private PngDepth spritePngDepth = SmartSpritesParameters.DEFAULT_SPRITE_PNG_DEPTH;
 
+    /** The sprite quantizer. */
+    private QuantizerEngine spriteQuantizer = SmartSpritesParameters.DEFAULT_SPRITE_QUANTIZER;
+
     /** The mark sprite images. */
     private boolean markSpriteImages = SmartSpritesParameters.DEFAULT_MARK_SPRITE_IMAGES;
 
+    /** The threads. */
+    private int threads = SmartSpritesParameters.DEFAULT_THREADS;
+
+    /** The incremental. */
+    private boolean incremental = SmartSpritesParameters.DEFAULT_INCREMENTAL;
+
+    /** The maximum size of the decoded image cache in megabytes, 0 to disable the cache. */
+    private int decodedImageCacheSize;
+
+    /** The decoded image cache shared by all executions of this task in the JVM. */
+    private static DecodedImageCache decodedImageCache;
+
     /** The css files. */
     private List<String> cssFiles = new ArrayList<>();
 
@@ -160,6 +178,20 @@ public class SmartSpritesTask extends Task {
                 SmartSpritesParameters.DEFAULT_SPRITE_PNG_DEPTH);
     }
 
+    /**
+     * Sets the sprite quantizer.
+     *
+     * @param spriteQuantizerString
+     *            the new sprite quantizer
+     */
+    public void setSpriteQuantizer(String spriteQuantizerString) {
+        try {
+            this.spriteQuantizer = QuantizerEngine.getValue(spriteQuantizerString);
+        } catch (final IllegalArgumentException e) {
+            this.spriteQuantizer = SmartSpritesParameters.DEFAULT_SPRITE_QUANTIZER;
+        }
+    }
+
     /**
      * Sets the mark sprite images.
      *
@@ -170,17 +202,72 @@ public class SmartSpritesTask extends Task {
         this.markSpriteImages = markSpriteImages;
     }
 
+    /**
+     * Sets the threads.
+     *
+     * @param threads
+     *            the new threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the incremental.
+     *
+     * @param incremental
+     *            the new incremental
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Sets the maximum size of the decoded image cache shared by all executions of this task, in megabytes. The size
+     * is taken from the first execution enabling the cache.
+     *
+     * @param decodedImageCacheSize
+     *            the new decoded image cache size, 0 to disable the cache
+     */
+    public void setDecodedImageCacheSize(int decodedImageCacheSize) {
+        this.decodedImageCacheSize = decodedImageCacheSize;
+    }
+
+    /**
+     * Gets the decoded image cache shared by all executions of this task, creating it if needed.
+     *
+     * @param size
+     *            the maximum size of the cache in megabytes
+     *
+     * @return the decoded image cache or <code>null</code> if the cache is disabled
+     */
+    private static synchronized DecodedImageCache getDecodedImageCache(int size) {
+        if (size <= 0) {
+            return null;
+        }
+        if (decodedImageCache == null) {
+            decodedImageCache = new DecodedImageCache(size * 1024L * 1024L);
+        }
+        return decodedImageCache;
+    }
+
     @Override
     public void execute() {
         final SmartSpritesParameters parameters = new SmartSpritesParameters(rootDir, cssFiles, outputDir,
                 documentRootDir, logLevel, cssFileSuffix, spritePngDepth, cssFileEncoding, markSpriteImages);
+        parameters.setSpriteQuantizer(spriteQuantizer);
+        parameters.setThreads(threads);
+        parameters.setIncremental(incremental);
 
         final FailureDetectorMessageSink failureDetectorMessageSink = new FailureDetectorMessageSink();
         MessageLog log = new MessageLog(new AntLogMessageSink(), failureDetectorMessageSink);
 
         if (parameters.validate(log)) {
             try {
-                new SpriteBuilder(parameters, log).buildSprites();
+                new SpriteBuilder(parameters, log,
+                        new FileSystemResourceHandler(parameters.getDocumentRootDir(),
+                                parameters.getCssFileEncoding(), log),
+                        getDecodedImageCache(decodedImageCacheSize)).buildSprites();
             } catch (IOException e) {
                 throw new BuildException(e);
             }
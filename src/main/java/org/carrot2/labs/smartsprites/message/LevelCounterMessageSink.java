@@ -7,27 +7,29 @@
  */
 package org.carrot2.labs.smartsprites.message;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.carrot2.labs.smartsprites.message.Message.MessageLevel;
 
 /**
- * Counts the number of messages logged with different levels.
+ * Counts the number of messages logged with different levels. Messages can be added concurrently.
  */
 public class LevelCounterMessageSink implements MessageSink {
 
     /** Number of info messages. */
-    private int infoCount = 0;
+    private final AtomicInteger infoCount = new AtomicInteger();
 
     /** Number of warning messages. */
-    private int warnCount = 0;
+    private final AtomicInteger warnCount = new AtomicInteger();
 
     @Override
     public void add(Message message) {
         if (MessageLevel.INFO.equals(message.level)) {
-            infoCount++;
+            infoCount.incrementAndGet();
         }
 
         if (MessageLevel.WARN.equals(message.level)) {
-            warnCount++;
+            warnCount.incrementAndGet();
         }
     }
 
@@ -37,7 +39,7 @@ public class LevelCounterMessageSink implements MessageSink {
      * @return the info count
      */
     public int getInfoCount() {
-        return infoCount;
+        return infoCount.get();
     }
 
     /**
@@ -46,6 +48,6 @@ public class LevelCounterMessageSink implements MessageSink {
      * @return the warn count
      */
     public int getWarnCount() {
-        return warnCount;
+        return warnCount.get();
     }
 }
@@ -8,16 +8,18 @@
 package org.carrot2.labs.smartsprites.message;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Collects messages in a {@link List}, see {@link #messages}.
+ * Collects messages in a {@link List}, see {@link #messages}. Messages can be added concurrently, iterating over
+ * {@link #messages} while messages are being added requires synchronizing on the list.
  */
 public class MemoryMessageSink implements MessageSink {
     /**
      * Contains collected messages.
      */
-    public final List<Message> messages = new ArrayList<>();
+    public final List<Message> messages = Collections.synchronizedList(new ArrayList<>());
 
     @Override
     public void add(Message message) {
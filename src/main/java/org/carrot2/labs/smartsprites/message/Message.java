@@ -13,9 +13,11 @@ import java.util.Comparator;
 import org.carrot2.labs.smartsprites.SpriteImageDirective;
 import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteImageFormat;
 import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteImageLayout;
+import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteTrimMode;
 import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteUidType;
 import org.carrot2.labs.smartsprites.SpriteLayoutProperties.SpriteAlignment;
 import org.carrot2.labs.smartsprites.SpriteReferenceDirective;
+import org.carrot2.util.QuantizerEngine;
 
 /**
  * Represents a processing message, can be an information message or a warning.
@@ -91,6 +93,9 @@ public class Message implements Serializable {
         /** The cannot parse margin value. */
         CANNOT_PARSE_MARGIN_VALUE("Cannot parse margin value: %s. Only 'px' units are supported."),
 
+        /** The cannot parse sprite limit value. */
+        CANNOT_PARSE_SPRITE_LIMIT_VALUE("Cannot parse %s value: %s. Only positive numbers are supported, ignoring."),
+
         /** The cannot write sprite image. */
         CANNOT_WRITE_SPRITE_IMAGE("Cannot write sprite image: %s due to %s"),
 
@@ -106,6 +111,33 @@ public class Message implements Serializable {
         /** The writing sprite image. */
         WRITING_SPRITE_IMAGE("Writing sprite image of size %s x %s for sprite '%s' to %s"),
 
+        /** The duplicate images reused. */
+        DUPLICATE_IMAGES_REUSED("Sprite '%s' reuses %d duplicate image(s), saving %d bytes"),
+
+        /** The sprite image split. */
+        SPRITE_IMAGE_SPLIT("Sprite '%s' exceeds its size limits, splitting it into %d sheets"),
+
+        /** The sprite image up to date. */
+        SPRITE_IMAGE_UP_TO_DATE("Sprite '%s' is up to date, reusing %s"),
+
+        /** The cannot write incremental manifest. */
+        CANNOT_WRITE_INCREMENTAL_MANIFEST("Cannot write incremental build manifest: %s due to %s"),
+
+        /** The decoded image cache stats. */
+        DECODED_IMAGE_CACHE_STATS("Decoded image cache: %d hit(s), %d miss(es), %d eviction(s)"),
+
+        /** The watching for changes. */
+        WATCHING_FOR_CHANGES("Watching %d directories for changes"),
+
+        /** The rebuilding after changes. */
+        REBUILDING_AFTER_CHANGES("Rebuilding after changes in %d file(s)"),
+
+        /** The cannot watch for changes. */
+        CANNOT_WATCH_FOR_CHANGES("Cannot watch for changes in: %s due to %s"),
+
+        /** The rebuild failed. */
+        REBUILD_FAILED("Rebuild failed due to %s"),
+
         /** The ignoring sprite image redefinition. */
         IGNORING_SPRITE_IMAGE_REDEFINITION("Ignoring sprite image redefinition"),
 
@@ -174,6 +206,10 @@ public class Message implements Serializable {
         ONLY_TOP_OR_BOTTOM_ALIGNMENT_ALLOWED(
                 "Only 'top' or 'bottom' alignment allowed on horizontal sprites, found: %s. Using 'top'."),
 
+        /** The only left or top alignment allowed. */
+        ONLY_LEFT_OR_TOP_ALIGNMENT_ALLOWED(
+                "Only 'left' or 'top' alignment allowed on packed sprites, found: %s. Using 'left'."),
+
         /** The reading sprite image directives. */
         READING_SPRITE_IMAGE_DIRECTIVES("Reading sprite image directives from %s"),
 
@@ -217,6 +253,14 @@ public class Message implements Serializable {
         UNSUPPORTED_UID_TYPE(
                 "Unsupported uid type: %s. Supported uid types are: " + SpriteUidType.valuesAsString() + "."),
 
+        /** The unsupported quantizer. */
+        UNSUPPORTED_QUANTIZER(
+                "Unsupported quantizer: %s. Supported quantizers are: " + QuantizerEngine.valuesAsString() + "."),
+
+        /** The unsupported trim mode. */
+        UNSUPPORTED_TRIM_MODE(
+                "Unsupported trim mode: %s. Supported trim modes are: " + SpriteTrimMode.valuesAsString() + "."),
+
         /** The jpg does not support indexed color. */
         JPG_DOES_NOT_SUPPORT_INDEXED_COLOR("JPG format does not support indexed color"),
 
@@ -228,6 +272,9 @@ public class Message implements Serializable {
         ALPHA_CHANNEL_LOSS_IN_INDEXED_COLOR(
                 "Alpha channel of sprite '%s' cannot be encoded in indexed color mode. Image quality will be degraded."),
 
+        /** The color tree pruned. */
+        COLOR_TREE_PRUNED("Sprite '%s' has too many colors for the quantization color tree, pruned it to depth %d"),
+
         /** The using white matte color as default. */
         USING_WHITE_MATTE_COLOR_AS_DEFAULT(
                 "Defaulting to white matte color to render partial transparencies of sprite '%s'"),
@@ -272,6 +319,10 @@ public class Message implements Serializable {
         IMAGE_FRACTIONAL_SCALE_VALUE(
                 "The sprite-scale value applied to '%s' results in a scaled image with fractional dimensions (%fpx %fpx)."),
 
+        /** The individual image exceeds sprite limits. */
+        IMAGE_EXCEEDS_SPRITE_LIMITS(
+                "The image '%s' alone exceeds the size limits of sprite '%s', placing it in a sheet of its own."),
+
         /** The generic. */
         GENERIC("%s");
 
@@ -10,21 +10,35 @@ package org.carrot2.labs.smartsprites.message;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Gathers {@link Message}s during the runtime of the applications.
+ * <p>
+ * Each log keeps its own current CSS file and line, which are attached to the logged messages. A single log must not
+ * be used by more than one thread at a time. Concurrent tasks should log to their own {@link #child()} or
+ * {@link #buffered()} logs instead, which share this log's sinks but keep a separate location.
  */
 public class MessageLog {
 
+    /** Marks messages logged by a buffered log before it set its own line. */
+    private static final int INHERITED_LINE = Integer.MIN_VALUE;
+
     /** Current line in the CSS file. */
     private int line = 0;
 
     /** CSS file currently processed. */
     private String cssPath = null;
 
-    /** Sinks for messages. */
+    /** Sinks for messages, shared with child logs. */
     private final List<MessageSink> sinks;
 
+    /** The log to pass buffered messages on to, <code>null</code> for logs that are not buffered. */
+    private final MessageLog parent;
+
+    /** Messages held until {@link #flush()}, <code>null</code> for logs that are not buffered. */
+    private final List<Message> buffer;
+
     /**
      * Creates a {@link MessageLog} with the provided {@link MessageSink}s.
      *
@@ -32,7 +46,98 @@ public class MessageLog {
      *            the sinks
      */
     public MessageLog(MessageSink... sinks) {
-        this.sinks = new ArrayList<>(Arrays.asList(sinks));
+        this(new CopyOnWriteArrayList<>(Arrays.asList(sinks)), null, null, null, 0);
+    }
+
+    /**
+     * Creates a {@link MessageLog} sharing the provided sinks.
+     *
+     * @param sinks
+     *            the sinks
+     * @param parent
+     *            the parent, <code>null</code> if the log is not buffered
+     * @param buffer
+     *            the buffer, <code>null</code> if the log is not buffered
+     * @param cssPath
+     *            the initial css path
+     * @param line
+     *            the initial line
+     */
+    private MessageLog(List<MessageSink> sinks, MessageLog parent, List<Message> buffer, String cssPath, int line) {
+        this.sinks = sinks;
+        this.parent = parent;
+        this.buffer = buffer;
+        this.cssPath = cssPath;
+        this.line = line;
+    }
+
+    /**
+     * Creates a log that passes messages on to this log's sinks, starting at this log's current CSS file and line.
+     * Changing the location of the child log does not affect this log, so each concurrent task can log through its own
+     * child.
+     *
+     * @return the child log
+     */
+    public MessageLog child() {
+        return new MessageLog(sinks, null, null, cssPath, line);
+    }
+
+    /**
+     * Creates a log that holds messages until {@link #flush()} is called, starting at this log's current CSS file.
+     * Buffered logs let concurrent tasks log without contention while their messages can still be passed on in a
+     * deterministic order. Messages logged before the line of the buffered log is set get the line of this log at the
+     * time of flushing, just like if they were logged to this log directly.
+     *
+     * @return the buffered log
+     */
+    public MessageLog buffered() {
+        return new MessageLog(sinks, this, new ArrayList<>(), cssPath, INHERITED_LINE);
+    }
+
+    /**
+     * Passes on the messages held by this buffered log to the log it was created from, then moves that log to this
+     * log's current CSS file and line. Has no effect on logs that are not buffered.
+     */
+    public void flush() {
+        if (buffer == null) {
+            return;
+        }
+
+        for (final Message message : buffer) {
+            if (message.line == INHERITED_LINE) {
+                parent.log(new Message(message.level, message.type, message.cssPath, parent.line, message.arguments));
+            } else {
+                parent.log(message);
+            }
+        }
+        buffer.clear();
+
+        parent.cssPath = cssPath;
+        if (line != INHERITED_LINE) {
+            parent.line = line;
+        }
+    }
+
+    /**
+     * Checks whether this buffered log holds messages of at least the provided level, always returns
+     * <code>false</code> for logs that are not buffered.
+     *
+     * @param level
+     *            the minimum level
+     *
+     * @return <code>true</code> if such messages are held until {@link #flush()}
+     */
+    public boolean hasBufferedMessages(Message.MessageLevel level) {
+        if (buffer == null) {
+            return false;
+        }
+
+        for (final Message message : buffer) {
+            if (Message.MessageLevel.COMPARATOR.compare(message.level, level) >= 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -46,8 +151,23 @@ public class MessageLog {
      *            the arguments
      */
     public void log(Message.MessageLevel level, Message.MessageType type, Object... arguments) {
+        log(new Message(level, type, cssPath, line, arguments));
+    }
+
+    /**
+     * Logs an already created message to this log, keeping its CSS file and line.
+     *
+     * @param message
+     *            the message
+     */
+    public void log(Message message) {
+        if (buffer != null) {
+            buffer.add(message);
+            return;
+        }
+
         for (final MessageSink sink : sinks) {
-            sink.add(new Message(level, type, cssPath, line, arguments));
+            sink.add(message);
         }
     }
 
@@ -132,7 +252,7 @@ public class MessageLog {
     }
 
     /**
-     * Adds a {@link MessageSink} to this log.
+     * Adds a {@link MessageSink} to this log and all logs sharing its sinks.
      *
      * @param sink
      *            the sink
@@ -140,4 +260,14 @@ public class MessageLog {
     public void addMessageSink(MessageSink sink) {
         this.sinks.add(sink);
     }
+
+    /**
+     * Removes a {@link MessageSink} from this log and all logs sharing its sinks.
+     *
+     * @param sink
+     *            the sink
+     */
+    public void removeMessageSink(MessageSink sink) {
+        this.sinks.remove(sink);
+    }
 }
@@ -25,6 +25,8 @@ import org.carrot2.labs.smartsprites.SmartSpritesParameters;
 import org.carrot2.labs.smartsprites.message.Message;
 import org.carrot2.labs.smartsprites.message.Message.MessageType;
 import org.carrot2.labs.smartsprites.message.MessageLog;
+import org.carrot2.util.Abortable;
+import org.carrot2.util.AtomicFileOutputStream;
 import org.carrot2.util.FileUtils;
 import org.carrot2.util.StringUtils;
 
@@ -56,9 +58,23 @@ public class FileSystemResourceHandler implements ResourceHandler {
      *            the message log
      */
     public FileSystemResourceHandler(String documentRootDirPath, String charset, MessageLog messageLog) {
+        this(documentRootDirPath, Charset.forName(charset), messageLog);
+    }
+
+    /**
+     * Creates a new {@link FileSystemResourceHandler}.
+     *
+     * @param documentRootDirPath
+     *            the document root directory path, can be <code>null</code>
+     * @param charset
+     *            the charset to assume in the {@link #getResourceAsReader(String)} method
+     * @param messageLog
+     *            the message log
+     */
+    private FileSystemResourceHandler(String documentRootDirPath, Charset charset, MessageLog messageLog) {
         this.documentRootDir = documentRootDirPath;
         this.messageLog = messageLog;
-        this.charset = Charset.forName(charset);
+        this.charset = charset;
     }
 
     @Override
@@ -76,24 +92,44 @@ public class FileSystemResourceHandler implements ResourceHandler {
         }
     }
 
+    /**
+     * This implementation leaves files whose content does not change untouched and replaces the other files
+     * atomically when the stream is closed, see {@link AtomicFileOutputStream}. The file is left untouched if the
+     * stream is aborted, see {@link Abortable}.
+     */
     @Override
     public OutputStream getResourceAsOutputStream(String path) throws IOException {
-        // Create directories if needed
-        final File parentFile = Path.of(path).toFile().getParentFile();
-        if (!parentFile.exists() && !parentFile.mkdirs()) {
-            messageLog.warning(Message.MessageType.CANNOT_CREATE_DIRECTORIES, parentFile.getPath());
-        }
-        return Files.newOutputStream(FileUtils.getCanonicalOrAbsoluteFile(path).toPath());
+        return openAtomicFile(path);
     }
 
+    /**
+     * This implementation replaces the file atomically when the writer is closed, in the same way as
+     * {@link #getResourceAsOutputStream(String)}.
+     */
     @Override
     public Writer getResourceAsWriter(String path) throws IOException {
-        try {
-            return new OutputStreamWriter(getResourceAsOutputStream(path), charset);
-        } catch (UnsupportedEncodingException e) {
-            // Should not happen as we're checking the charset in constructor
-            throw new RuntimeException(e);
+        return new AbortableWriter(openAtomicFile(path), charset);
+    }
+
+    /**
+     * Opens a stream replacing the file atomically, creating the missing directories.
+     *
+     * @param path
+     *            the path
+     *
+     * @return the stream
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private AtomicFileOutputStream openAtomicFile(String path) throws IOException {
+        // Create directories if needed
+        final File parentFile = Path.of(path).toFile().getParentFile();
+        // Check for the directory after mkdirs(), it may have been created concurrently by another sprite
+        if (!parentFile.mkdirs() && !parentFile.isDirectory()) {
+            messageLog.warning(Message.MessageType.CANNOT_CREATE_DIRECTORIES, parentFile.getPath());
         }
+        return new AtomicFileOutputStream(FileUtils.getCanonicalOrAbsoluteFile(path).toPath());
     }
 
     /**
@@ -111,4 +147,41 @@ public class FileSystemResourceHandler implements ResourceHandler {
         messageLog.warning(MessageType.ABSOLUTE_PATH_AND_NO_DOCUMENT_ROOT, filePath);
         return "";
     }
+
+    @Override
+    public boolean readsLocalFiles() {
+        return true;
+    }
+
+    @Override
+    public ResourceHandler withMessageLog(MessageLog messageLog) {
+        return new FileSystemResourceHandler(documentRootDir, charset, messageLog);
+    }
+
+    /**
+     * A writer encoding characters to an {@link AtomicFileOutputStream}, replacing the file when closed.
+     */
+    private static final class AbortableWriter extends OutputStreamWriter implements Abortable {
+
+        /** The stream to abort. */
+        private final AtomicFileOutputStream outputStream;
+
+        /**
+         * Instantiates a new abortable writer.
+         *
+         * @param outputStream
+         *            the output stream
+         * @param charset
+         *            the charset
+         */
+        AbortableWriter(AtomicFileOutputStream outputStream, Charset charset) {
+            super(outputStream, charset);
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void abort() {
+            outputStream.abort();
+        }
+    }
 }
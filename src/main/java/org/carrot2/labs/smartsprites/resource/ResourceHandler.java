@@ -14,6 +14,8 @@ import java.io.Reader;
 import java.io.Writer;
 
 import org.carrot2.labs.smartsprites.SmartSpritesParameters;
+import org.carrot2.labs.smartsprites.message.MessageLog;
+import org.carrot2.util.Abortable;
 
 /**
  * Defines an abstraction layer for resource (CSS, images) management. Resources are defined by means of abstract
@@ -54,7 +56,8 @@ public interface ResourceHandler {
 
     /**
      * Returns the resource output stream for the provided path. If the resource already exists, its content should be
-     * overwritten.
+     * overwritten. If the stream is {@link Abortable}, callers should abort it when they fail to write the whole
+     * content, so that the resource is left untouched.
      *
      * @param path
      *            the resource path
@@ -68,7 +71,8 @@ public interface ResourceHandler {
 
     /**
      * Returns the writer for the provided path. If the resource already exists, its content should be overwritten.
-     * Implementations are responsible for creating the writer with the right charset.
+     * Implementations are responsible for creating the writer with the right charset. If the writer is
+     * {@link Abortable}, aborting it leaves the resource untouched.
      *
      * @param path
      *            the resource path
@@ -94,4 +98,29 @@ public interface ResourceHandler {
      * @return the combined resource path
      */
     String getResourcePath(String cssFilePath, String cssRelativePath);
+
+    /**
+     * Tells whether the resource paths are paths of local files, which are read as they are. Only then can decoded
+     * images be cached between builds, as the cache identifies the images by the size and modification time of their
+     * files. The default is <code>false</code>.
+     *
+     * @return <code>true</code> if the resources are read from the local file system
+     */
+    default boolean readsLocalFiles() {
+        return false;
+    }
+
+    /**
+     * Returns a resource handler that reports its messages to the provided log instead of this handler's log. Used
+     * when resources are accessed concurrently and the messages need to be collected per task. Implementations that
+     * do not log any messages can return <code>this</code>, which is the default.
+     *
+     * @param messageLog
+     *            the message log
+     *
+     * @return the resource handler
+     */
+    default ResourceHandler withMessageLog(MessageLog messageLog) {
+        return this;
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+/**
+ * An output whose content only takes effect when it is closed, and which can be aborted instead, so that a writer
+ * failing halfway does not leave a partial result behind.
+ */
+public interface Abortable {
+
+    /**
+     * Discards the content written so far. Closing the output afterwards does nothing, and content written afterwards
+     * is discarded as well.
+     */
+    void abort();
+
+    /**
+     * Aborts the provided output if it supports aborting. Other outputs keep the content written so far.
+     *
+     * @param output
+     *            the output stream or writer
+     */
+    static void abort(Object output) {
+        if (output instanceof Abortable) {
+            ((Abortable) output).abort();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An {@link OutputStream} replacing the content of a file when closed. The content is collected in memory. If the file
+ * already has exactly the same content, it is left untouched, so that its modification time does not change.
+ * Otherwise, the content is written to a temporary file in the same directory, which gets the permissions of the
+ * target file and is then renamed to the target file, so that readers never see a partially written file. Aborting the
+ * stream, e.g. because the writer failed, leaves the file untouched.
+ */
+public class AtomicFileOutputStream extends OutputStream implements Abortable {
+
+    /** Suffix of the temporary files, which are only present while the content is being written. */
+    public static final String TEMPORARY_FILE_SUFFIX = ".smartsprites-tmp";
+
+    /** The target file. */
+    private final Path file;
+
+    /** The content collected so far. */
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+    /** Whether the stream has been closed or aborted. */
+    private boolean closed;
+
+    /** Whether the stream has been aborted. */
+    private boolean aborted;
+
+    /**
+     * Creates a stream replacing the content of the provided file. Fails early if the file will not be writable, the
+     * same way as {@link Files#newOutputStream(Path, java.nio.file.OpenOption...)} does.
+     *
+     * @param file
+     *            the file
+     *
+     * @throws IOException
+     *             if the directory of the file does not exist or the file is a directory
+     */
+    public AtomicFileOutputStream(Path file) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent == null || !Files.isDirectory(parent)) {
+            throw new NoSuchFileException(file.toString());
+        }
+        if (Files.isDirectory(file)) {
+            throw new FileSystemException(file.toString(), null, "Is a directory");
+        }
+        this.file = file;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (aborted) {
+            return;
+        }
+        ensureOpen();
+        content.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (aborted) {
+            return;
+        }
+        ensureOpen();
+        content.write(b, off, len);
+    }
+
+    /**
+     * Replaces the content of the file with the content written so far, unless the file already has it or the stream
+     * has been aborted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        final byte[] bytes = content.toByteArray();
+        content.reset();
+        if (hasContent(file, bytes)) {
+            return;
+        }
+
+        final Path temporaryFile = file.resolveSibling("." + file.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMPORARY_FILE_SUFFIX);
+        try {
+            Files.write(temporaryFile, bytes, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            copyPermissions(file, temporaryFile);
+            try {
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Discards the content, leaving the file untouched.
+     */
+    @Override
+    public void abort() {
+        closed = true;
+        aborted = true;
+        content.reset();
+    }
+
+    /**
+     * Copies the POSIX permissions of the file being replaced, if any, to the file replacing it, so that replacing
+     * the content does not change the permissions.
+     *
+     * @param file
+     *            the file being replaced
+     * @param replacement
+     *            the file replacing it
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static void copyPermissions(Path file, Path replacement) throws IOException {
+        final PosixFileAttributeView attributes = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        if (attributes == null || !Files.exists(file)) {
+            return;
+        }
+        Files.setPosixFilePermissions(replacement, attributes.readAttributes().permissions());
+    }
+
+    /**
+     * Checks if the file exists and has the provided content.
+     *
+     * @param file
+     *            the file
+     * @param bytes
+     *            the content
+     *
+     * @return true, if the file has the content
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static boolean hasContent(Path file, byte[] bytes) throws IOException {
+        return Files.isRegularFile(file) && Files.size(file) == bytes.length
+                && Arrays.equals(Files.readAllBytes(file), bytes);
+    }
+
+    /**
+     * Ensures the stream has not been closed.
+     *
+     * @throws IOException
+     *             if the stream has been closed
+     */
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed: " + file);
+        }
+    }
+}
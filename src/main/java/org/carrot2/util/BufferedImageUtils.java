@@ -12,9 +12,14 @@ import java.awt.Color;
 import java.awt.CompositeContext;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.Raster;
-import java.util.HashSet;
-import java.util.Set;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
 
 /**
  * Various utility methods for working with {@link BufferedImage}s.
@@ -78,7 +83,22 @@ public class BufferedImageUtils {
      * @return the int
      */
     public static int countDistinctColors(BufferedImage image) {
-        return getDistinctColors(image).length;
+        return countDistinctColors(image, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of distinct colors (excluding transparency) in the <code>image</code>, stopping as soon as
+     * more than <code>limit</code> colors are found.
+     *
+     * @param image
+     *            the image
+     * @param limit
+     *            the number of colors to count up to
+     *
+     * @return the number of distinct colors if not greater than <code>limit</code>, <code>limit + 1</code> otherwise
+     */
+    public static int countDistinctColors(BufferedImage image, int limit) {
+        return collectDistinctColors(image, limit).size();
     }
 
     /**
@@ -105,30 +125,29 @@ public class BufferedImageUtils {
      * @return the distinct colors
      */
     public static int[] getDistinctColors(BufferedImage image, int padding) {
-        final int width = image.getWidth();
-        final int height = image.getHeight();
-
-        final Set<Integer> colors = new HashSet<>();
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                final int pixel = image.getRGB(x, y);
+        return collectDistinctColors(image, Integer.MAX_VALUE).toArray(padding);
+    }
 
-                // Count only colors for which alpha is not fully transparent
-                if ((pixel & 0xff000000) != 0x00000000) {
-                    colors.add(Integer.valueOf(pixel & 0x00ffffff));
-                }
+    /**
+     * Collects the <code>image</code>'s distinct colors in an RGB format, discarding transparency information,
+     * stopping as soon as more than <code>limit</code> colors are found.
+     *
+     * @param image
+     *            the image
+     * @param limit
+     *            the number of colors to collect up to
+     *
+     * @return the colors, at most <code>limit + 1</code>
+     */
+    private static IntHashSet collectDistinctColors(BufferedImage image, int limit) {
+        final IntHashSet colors = new IntHashSet();
+        for (final int pixel : getArgb(image)) {
+            // Count only colors for which alpha is not fully transparent
+            if ((pixel & 0xff000000) != 0x00000000 && colors.add(pixel & 0x00ffffff) && colors.size() > limit) {
+                break;
             }
         }
-
-        final int[] colorMap = new int[colors.size() + padding];
-        int index = padding;
-        for (Integer color : colors) {
-            colorMap[index] = color;
-            index++;
-        }
-
-        return colorMap;
+        return colors;
     }
 
     /**
@@ -143,17 +162,144 @@ public class BufferedImageUtils {
         final int width = image.getWidth();
         final int height = image.getHeight();
 
+        final int[] argb = getArgb(image);
         final int[][] rgb = new int[width][height];
 
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
-                rgb[x][y] = image.getRGB(x, y);
+                rgb[x][y] = argb[y * width + x];
             }
         }
 
         return rgb;
     }
 
+    /**
+     * Returns the <code>image</code>'s pixels in the default ARGB format, the same as returned by
+     * {@link BufferedImage#getRGB(int, int)}, in a flat row-major array: the pixel at <code>x</code> / <code>y</code>
+     * is at index <code>y * width + x</code>. The pixels of {@link BufferedImage#TYPE_INT_ARGB},
+     * {@link BufferedImage#TYPE_INT_RGB} and {@link BufferedImage#TYPE_4BYTE_ABGR} images are read directly from the
+     * image's data buffer, other images are converted by {@link BufferedImage#getRGB(int, int, int, int, int[], int,
+     * int)}.
+     *
+     * @param image
+     *            the image
+     *
+     * @return the pixels, a new array not shared with the image
+     */
+    public static int[] getArgb(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int length = width * height;
+
+        switch (getDirectPixelLength(image)) {
+            case 1:
+                final int[] argb = Arrays.copyOf((int[]) getData(image), length);
+                if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+                    for (int i = 0; i < length; i++) {
+                        argb[i] |= 0xff000000;
+                    }
+                }
+                return argb;
+
+            case 4:
+                final byte[] abgr = (byte[]) getData(image);
+                final int[] converted = new int[length];
+                for (int i = 0, j = 0; i < length; i++, j += 4) {
+                    converted[i] = (abgr[j] & 0xff) << 24 | (abgr[j + 3] & 0xff) << 16 | (abgr[j + 2] & 0xff) << 8
+                            | abgr[j + 1] & 0xff;
+                }
+                return converted;
+
+            default:
+                return image.getRGB(0, 0, width, height, null, 0, width);
+        }
+    }
+
+    /**
+     * Returns the number of data buffer elements per pixel if the pixels of the image can be accessed directly, in
+     * row-major order with no gaps between rows: 1 for {@link BufferedImage#TYPE_INT_ARGB} and
+     * {@link BufferedImage#TYPE_INT_RGB}, 4 for {@link BufferedImage#TYPE_4BYTE_ABGR} images. Returns 0 for other
+     * images, including sub-images of larger rasters.
+     *
+     * @param image
+     *            the image
+     *
+     * @return the number of elements per pixel or 0 if the pixels cannot be accessed directly
+     */
+    private static int getDirectPixelLength(BufferedImage image) {
+        final Raster raster = image.getRaster();
+        final DataBuffer dataBuffer = raster.getDataBuffer();
+        if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || dataBuffer.getNumBanks() != 1 || dataBuffer.getOffset() != 0) {
+            return 0;
+        }
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_RGB:
+                return isPacked(raster.getSampleModel(), image.getWidth()) ? 1 : 0;
+
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                return isInterleavedAbgr(raster.getSampleModel(), image.getWidth()) ? 4 : 0;
+
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the data array of an image for which {@link #getDirectPixelLength(BufferedImage)} is not 0.
+     *
+     * @param image
+     *            the image
+     *
+     * @return the <code>int[]</code> or <code>byte[]</code> data array
+     */
+    private static Object getData(BufferedImage image) {
+        final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        if (dataBuffer instanceof DataBufferInt) {
+            return ((DataBufferInt) dataBuffer).getData();
+        }
+        return ((DataBufferByte) dataBuffer).getData();
+    }
+
+    /**
+     * Checks if the sample model stores one pixel per int, with no gaps between rows.
+     *
+     * @param sampleModel
+     *            the sample model
+     * @param width
+     *            the image width
+     *
+     * @return true, if the pixels can be read directly
+     */
+    private static boolean isPacked(SampleModel sampleModel, int width) {
+        return sampleModel instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride() == width;
+    }
+
+    /**
+     * Checks if the sample model stores the alpha, blue, green and red bytes of each pixel next to each other, with no
+     * gaps between rows, as for newly created {@link BufferedImage#TYPE_4BYTE_ABGR} images.
+     *
+     * @param sampleModel
+     *            the sample model
+     * @param width
+     *            the image width
+     *
+     * @return true, if the pixels can be read directly
+     */
+    private static boolean isInterleavedAbgr(SampleModel sampleModel, int width) {
+        if (!(sampleModel instanceof PixelInterleavedSampleModel)) {
+            return false;
+        }
+
+        final PixelInterleavedSampleModel interleaved = (PixelInterleavedSampleModel) sampleModel;
+        return interleaved.getPixelStride() == 4 && interleaved.getScanlineStride() == width * 4
+                && Arrays.equals(interleaved.getBandOffsets(), new int[] { 3, 2, 1, 0 });
+    }
+
     /**
      * Performs matting of the <code>source</code> image using <code>matteColor</code>. Matting is rendering partial
      * transparencies using solid color as if the original image was put on top of a bitmap filled with
@@ -194,7 +340,12 @@ public class BufferedImageUtils {
 
     /**
      * Draws <code>image</code> on the <code>canvas</code> placing the top left corner of <code>image</code> at
-     * <code>x</code> / <code>y</code> offset from the top left corner of <code>canvas</code>.
+     * <code>x</code> / <code>y</code> offset from the top left corner of <code>canvas</code>. The pixels of the
+     * <code>canvas</code> are replaced, not composited. Images of the same type as the canvas are copied row by row,
+     * other images are converted to the canvas's pixel format once, both directly in the data buffers if the canvas is
+     * a {@link BufferedImage#TYPE_INT_ARGB}, {@link BufferedImage#TYPE_INT_RGB} or
+     * {@link BufferedImage#TYPE_4BYTE_ABGR} image. Otherwise, the pixels are copied by
+     * {@link BufferedImage#setRGB(int, int, int, int, int[], int, int)}.
      *
      * @param image
      *            the image
@@ -206,8 +357,111 @@ public class BufferedImageUtils {
      *            the y
      */
     public static void drawImage(BufferedImage image, BufferedImage canvas, int x, int y) {
-        final int[] imgRGB = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
-        canvas.setRGB(x, y, image.getWidth(), image.getHeight(), imgRGB, 0, image.getWidth());
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int pixelLength = getDirectPixelLength(canvas);
+
+        // Images outside of the canvas go the generic way, failing the same way as before
+        if (pixelLength == 0 || x < 0 || y < 0 || x + width > canvas.getWidth() || y + height > canvas.getHeight()) {
+            final int[] imgRGB = image.getRGB(0, 0, width, height, null, 0, width);
+            canvas.setRGB(x, y, width, height, imgRGB, 0, width);
+            return;
+        }
+
+        final Object canvasData = getData(canvas);
+        final int canvasWidth = canvas.getWidth();
+        final int rowLength = width * pixelLength;
+
+        if (image.getType() == canvas.getType() && getDirectPixelLength(image) == pixelLength) {
+            // Same pixel format, copy the rows
+            final Object imageData = getData(image);
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(imageData, row * rowLength, canvasData, ((y + row) * canvasWidth + x) * pixelLength,
+                        rowLength);
+            }
+            return;
+        }
+
+        final int[] argb = getArgb(image);
+        if (pixelLength == 4) {
+            final byte[] abgr = (byte[]) canvasData;
+            for (int row = 0, i = 0; row < height; row++) {
+                for (int j = ((y + row) * canvasWidth + x) * 4, end = j + rowLength; j < end; j += 4, i++) {
+                    final int pixel = argb[i];
+                    abgr[j] = (byte) (pixel >>> 24);
+                    abgr[j + 1] = (byte) pixel;
+                    abgr[j + 2] = (byte) (pixel >>> 8);
+                    abgr[j + 3] = (byte) (pixel >>> 16);
+                }
+            }
+        } else {
+            final int[] canvasPixels = (int[]) canvasData;
+            final int mask = canvas.getType() == BufferedImage.TYPE_INT_RGB ? 0x00ffffff : 0xffffffff;
+            for (int row = 0, i = 0; row < height; row++) {
+                for (int j = (y + row) * canvasWidth + x, end = j + width; j < end; j++, i++) {
+                    canvasPixels[j] = argb[i] & mask;
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws <code>image</code> on the <code>canvas</code> repeatedly, <code>columns</code> times side by side and
+     * <code>rows</code> times one below another, placing the top left corner of the first repetition at
+     * <code>x</code> / <code>y</code> offset from the top left corner of <code>canvas</code>. The result is the same
+     * as calling {@link #drawImage(BufferedImage, BufferedImage, int, int)} for each repetition, but the image is
+     * converted to the canvas's pixel format only once, further repetitions are copied within the canvas.
+     *
+     * @param image
+     *            the image
+     * @param canvas
+     *            the canvas
+     * @param x
+     *            the x
+     * @param y
+     *            the y
+     * @param columns
+     *            the number of repetitions side by side
+     * @param rows
+     *            the number of repetitions one below another
+     */
+    public static void drawImageRepeated(BufferedImage image, BufferedImage canvas, int x, int y, int columns,
+            int rows) {
+        if (columns <= 0 || rows <= 0) {
+            return;
+        }
+
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int pixelLength = getDirectPixelLength(canvas);
+        if (pixelLength == 0 || x < 0 || y < 0 || x + columns * width > canvas.getWidth()
+                || y + rows * height > canvas.getHeight()) {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    drawImage(image, canvas, x + column * width, y + row * height);
+                }
+            }
+            return;
+        }
+
+        drawImage(image, canvas, x, y);
+
+        // Copy the first repetition along its rows, doubling the copied length each time
+        final Object canvasData = getData(canvas);
+        final int canvasRowLength = canvas.getWidth() * pixelLength;
+        final int rowLength = columns * width * pixelLength;
+        for (int row = 0; row < height; row++) {
+            final int start = (y + row) * canvasRowLength + x * pixelLength;
+            for (int copied = width * pixelLength; copied < rowLength; copied <<= 1) {
+                System.arraycopy(canvasData, start, canvasData, start + copied, Math.min(copied, rowLength - copied));
+            }
+        }
+
+        // Then copy the whole rows of repetitions
+        for (int row = height; row < rows * height; row++) {
+            final int start = (y + row) * canvasRowLength + x * pixelLength;
+            System.arraycopy(canvasData, start - height * canvasRowLength, canvasData, start, rowLength);
+        }
     }
 
     /**
@@ -0,0 +1,233 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts the pixels of each distinct color of an image. Colors get consecutive ids in the order they are first added,
+ * so that per color results can be kept in plain arrays indexed by id. The ids can then be reordered by the position
+ * of the last pixel of each color. The lookup uses open addressing with linear
+ * probing, like {@link IntHashSet}. This class is not thread-safe.
+ */
+final class ColorHistogram {
+
+    /** The maximum ratio of used slots, the table grows when exceeded. */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /** Color id plus one of each slot, 0 for empty slots. The length is always a power of two. */
+    private int[] slots;
+
+    /** The distinct colors, indexed by id. */
+    private int[] colors;
+
+    /** The number of pixels of each color, indexed by id. */
+    private int[] counts;
+
+    /** The greatest position of the pixels of each color, indexed by id, allocated once a position is kept. */
+    private int[] positions;
+
+    /** Number of distinct colors. */
+    private int size;
+
+    /**
+     * Creates an empty histogram.
+     */
+    ColorHistogram() {
+        slots = new int[64];
+        colors = new int[32];
+        counts = new int[32];
+    }
+
+    /**
+     * Counts a pixel.
+     *
+     * @param color
+     *            the color of the pixel
+     *
+     * @return the id of the color
+     */
+    int add(int color) {
+        return add(color, 1);
+    }
+
+    /**
+     * Counts pixels of the same color.
+     *
+     * @param color
+     *            the color of the pixels
+     * @param count
+     *            the number of pixels
+     *
+     * @return the id of the color
+     */
+    int add(int color, int count) {
+        final int mask = slots.length - 1;
+        int slot = hash(color) & mask;
+        int existing;
+        while ((existing = slots[slot]) != 0) {
+            if (colors[existing - 1] == color) {
+                counts[existing - 1] += count;
+                return existing - 1;
+            }
+            slot = slot + 1 & mask;
+        }
+
+        if (size == colors.length) {
+            colors = Arrays.copyOf(colors, size << 1);
+            counts = Arrays.copyOf(counts, size << 1);
+        }
+        final int id = size++;
+        colors[id] = color;
+        counts[id] = count;
+        slots[slot] = id + 1;
+        if (size >= slots.length * LOAD_FACTOR) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Keeps the position of a pixel of the color if it is the greatest one so far.
+     *
+     * @param id
+     *            the id of the color
+     * @param position
+     *            the position of the pixel, not negative and distinct for each pixel
+     */
+    void keepPosition(int id, int position) {
+        if (positions == null || positions.length < colors.length) {
+            positions = positions == null ? new int[colors.length] : Arrays.copyOf(positions, colors.length);
+        }
+        if (positions[id] < position) {
+            positions[id] = position;
+        }
+    }
+
+    /**
+     * Gives the colors new ids in the order of the greatest position of their pixels. A position must have been kept
+     * for every color.
+     *
+     * @return the new id of each color, indexed by its previous id
+     */
+    int[] sortByPosition() {
+        // Radix sort of the ids by position, 16 bits at a time starting from the lowest ones
+        int[] order = new int[size];
+        int[] buffer = new int[size];
+        for (int id = 0; id < size; id++) {
+            order[id] = id;
+        }
+        final int[] offsets = new int[1 << 16];
+        for (int shift = 0; shift < Integer.SIZE; shift += 16) {
+            Arrays.fill(offsets, 0);
+            for (int id = 0; id < size; id++) {
+                offsets[positions[id] >>> shift & 0xffff]++;
+            }
+            for (int digit = 0, offset = 0; digit < offsets.length; digit++) {
+                final int count = offsets[digit];
+                offsets[digit] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                final int id = order[i];
+                buffer[offsets[positions[id] >>> shift & 0xffff]++] = id;
+            }
+            final int[] sorted = buffer;
+            buffer = order;
+            order = sorted;
+        }
+
+        final int[] newIds = buffer;
+        final int[] sortedColors = new int[colors.length];
+        final int[] sortedCounts = new int[counts.length];
+        final int[] sortedPositions = new int[colors.length];
+        for (int newId = 0; newId < size; newId++) {
+            final int id = order[newId];
+            newIds[id] = newId;
+            sortedColors[newId] = colors[id];
+            sortedCounts[newId] = counts[id];
+            sortedPositions[newId] = positions[id];
+        }
+        colors = sortedColors;
+        counts = sortedCounts;
+        positions = sortedPositions;
+
+        // The colors keep their slots
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != 0) {
+                slots[slot] = newIds[slots[slot] - 1] + 1;
+            }
+        }
+        return newIds;
+    }
+
+    /**
+     * Returns the number of distinct colors.
+     *
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the distinct colors, indexed by id. The array may be longer than {@link #size()}.
+     *
+     * @return the colors
+     */
+    int[] getColors() {
+        return colors;
+    }
+
+    /**
+     * Returns the number of pixels of each color, indexed by id. The array may be longer than {@link #size()}.
+     *
+     * @return the counts
+     */
+    int[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * Returns the greatest position of the pixels of each color, indexed by id, <code>null</code> if no position has
+     * been kept. The array may be longer than {@link #size()}.
+     *
+     * @return the positions
+     */
+    int[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Moves the ids to a table twice as large.
+     */
+    private void rehash() {
+        slots = new int[slots.length << 1];
+        final int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(colors[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = slot + 1 & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Spreads the bits of the color, so that similar colors do not end up in adjacent slots.
+     *
+     * @param color
+     *            the color
+     *
+     * @return the hash
+     */
+    private static int hash(int color) {
+        final int h = color * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+}
@@ -8,21 +8,30 @@
 package org.carrot2.util;
 
 import java.awt.Color;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
-import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 
+import amd.ArrayOctree;
 import amd.Quantize;
 
 /**
- * A simple utility wrapping the {@link Quantize} class to work on {@link BufferedImage}s and handle transparency.
+ * A simple utility wrapping the {@link PaletteQuantizer}s, by default the {@link Quantize} algorithm as implemented by
+ * {@link ArrayOctree}, to work on {@link BufferedImage}s and handle transparency.
  */
 public class ColorQuantizer {
 
     /** Maximum number of colors in an indexed image, leaving one for transparency. */
     public static final int MAX_INDEXED_COLORS = 255;
 
+    /** Number of pixels in each band of rows processed concurrently. */
+    private static final int BAND_PIXELS = 1 << 18;
+
     /**
      * Instantiates a new color quantizer.
      */
@@ -72,19 +81,146 @@ public class ColorQuantizer {
      * @return {@link BufferedImage} with type {@link BufferedImage#TYPE_BYTE_INDEXED} and quantized colors
      */
     public static BufferedImage quantize(BufferedImage source, Color matteColor, int maxColors) {
+        return quantize(source, matteColor, maxColors, depth -> {
+            // Ignore
+        });
+    }
+
+    /**
+     * Quantizes the image to the provided number of colors with the provided matte {@link Color} for areas with partial
+     * transparency (full transparency will be preserved), reporting when the color tree of an image with very many
+     * colors gets pruned.
+     *
+     * @param source
+     *            the source
+     * @param matteColor
+     *            the matte color
+     * @param maxColors
+     *            the max colors
+     * @param pruningListener
+     *            called with the new depth of the color tree whenever it is pruned
+     *
+     * @return {@link BufferedImage} with type {@link BufferedImage#TYPE_BYTE_INDEXED} and quantized colors
+     */
+    public static BufferedImage quantize(BufferedImage source, Color matteColor, int maxColors,
+            IntConsumer pruningListener) {
+        return quantize(source, matteColor, maxColors, QuantizerEngine.OCTREE.createQuantizer(), pruningListener);
+    }
+
+    /**
+     * Quantizes the image to the provided number of colors with the provided matte {@link Color} for areas with partial
+     * transparency (full transparency will be preserved), choosing the palette with the provided quantizer.
+     *
+     * @param source
+     *            the source
+     * @param matteColor
+     *            the matte color
+     * @param maxColors
+     *            the max colors
+     * @param quantizer
+     *            the quantizer
+     * @param pruningListener
+     *            called with the new depth of the color tree whenever it is pruned
+     *
+     * @return {@link BufferedImage} with type {@link BufferedImage#TYPE_BYTE_INDEXED} and quantized colors
+     */
+    public static BufferedImage quantize(BufferedImage source, Color matteColor, int maxColors,
+            PaletteQuantizer quantizer, IntConsumer pruningListener) {
+        return quantize(source, matteColor, maxColors, quantizer, pruningListener, null);
+    }
+
+    /**
+     * Quantizes the image to the provided number of colors with the provided matte {@link Color} for areas with partial
+     * transparency (full transparency will be preserved), choosing the palette with the provided quantizer. With a
+     * pool, the pixels are counted and mapped to the palette in bands of rows concurrently. The band counts are merged
+     * in row order, so the palette is the same as without a pool.
+     *
+     * @param source
+     *            the source
+     * @param matteColor
+     *            the matte color
+     * @param maxColors
+     *            the max colors
+     * @param quantizer
+     *            the quantizer
+     * @param pruningListener
+     *            called with the new depth of the color tree whenever it is pruned
+     * @param pool
+     *            the pool to process the pixels in, <code>null</code> to process them on the calling thread
+     *
+     * @return {@link BufferedImage} with type {@link BufferedImage#TYPE_BYTE_INDEXED} and quantized colors
+     */
+    public static BufferedImage quantize(BufferedImage source, Color matteColor, int maxColors,
+            PaletteQuantizer quantizer, IntConsumer pruningListener, ForkJoinPool pool) {
         final int width = source.getWidth();
         final int height = source.getHeight();
 
         // First put the matte color so that we have a sensible result
         // for images with full alpha transparencies
         final BufferedImage mattedSource = BufferedImageUtils.matte(source, matteColor);
+        final int[] pixels = BufferedImageUtils.getArgb(mattedSource);
+        final int[] rgb = BufferedImageUtils.getArgb(source);
+
+        // Count the colors of the visible pixels only, fully transparent ones are written as the transparency
+        // color, so they must neither slow the quantization down nor bias the palette towards the matte color.
+        // Each visible pixel is replaced with the id of its color in the histogram of its band. If the palette depends
+        // on the order of the colors, the position of the last pixel of each color in column order is kept as well.
+        final boolean ordered = quantizer.dependsOnColorOrder(maxColors);
+        final int bandRows = pool == null ? Math.max(1, height) : Math.max(1, BAND_PIXELS / Math.max(1, width));
+        final int bands = (height + bandRows - 1) / bandRows;
+        final ColorHistogram[] bandHistograms = new ColorHistogram[bands];
+        ParallelUtils.forEach(pool, bands, band -> {
+            final ColorHistogram bandHistogram = new ColorHistogram();
+            final int endRow = Math.min(height, (band + 1) * bandRows);
+            for (int y = band * bandRows, i = y * width; y < endRow; y++) {
+                for (int x = 0; x < width; x++, i++) {
+                    if ((rgb[i] & 0xff000000) != 0x00000000) {
+                        pixels[i] = bandHistogram.add(pixels[i]);
+                        if (ordered) {
+                            bandHistogram.keepPosition(pixels[i], x * height + y);
+                        }
+                    }
+                }
+            }
+            bandHistograms[band] = bandHistogram;
+        });
+
+        // Merge the bands in row order, so that the colors are in the same order as when counted in one pass,
+        // the ids of each band's colors are replaced with the ids of the merged histogram
+        final ColorHistogram histogram = bands == 1 ? bandHistograms[0] : new ColorHistogram();
+        final int[][] bandIds = new int[bands][];
+        for (int band = 0; band < bands; band++) {
+            final ColorHistogram bandHistogram = bandHistograms[band];
+            bandIds[band] = new int[bandHistogram.size()];
+            for (int id = 0; id < bandHistogram.size(); id++) {
+                if (bandHistogram == histogram) {
+                    bandIds[band][id] = id;
+                } else {
+                    bandIds[band][id] = histogram.add(bandHistogram.getColors()[id], bandHistogram.getCounts()[id]);
+                    if (ordered) {
+                        histogram.keepPosition(bandIds[band][id], bandHistogram.getPositions()[id]);
+                    }
+                }
+            }
+        }
 
-        // Get two copies of RGB data (quantization will overwrite one)
-        final int[][] bitmap = BufferedImageUtils.getRgb(mattedSource);
+        // The quantizer takes the colors from the last one, and the pixels used to be classified column by column from
+        // the bottom right corner. Ordering the colors by their last pixel in column order passes them in the order
+        // of their first pixel in that walk, so the palette is the same even if the octree gets pruned.
+        if (ordered) {
+            final int[] sortedIds = histogram.sortByPosition();
+            for (final int[] ids : bandIds) {
+                for (int id = 0; id < ids.length; id++) {
+                    ids[id] = sortedIds[ids[id]];
+                }
+            }
+        }
 
-        // Quantize colors and shift palette by one for transparency color
-        // We'll keep transparency color black for now.
-        final int[] colors = Quantize.quantizeImage(bitmap, maxColors);
+        // Quantize colors and shift palette by one for transparency color, the histogram colors get overwritten
+        // with their palette indices
+        final int[] paletteIndices = histogram.getColors();
+        final int[] colors = quantizer.quantize(paletteIndices, histogram.getCounts(), histogram.size(), maxColors,
+                pruningListener);
         final int[] colorsWithAlpha = new int[colors.length + 1];
         System.arraycopy(colors, 0, colorsWithAlpha, 1, colors.length);
         colorsWithAlpha[0] = matteColor.getRGB();
@@ -93,14 +229,16 @@ public class ColorQuantizer {
 
         // Write the results to an indexed image, skipping the fully transparent bits
         final BufferedImage quantized = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
-        final WritableRaster raster = quantized.getRaster();
-        final int[][] rgb = BufferedImageUtils.getRgb(source);
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                final int value = (rgb[x][y] & 0xff000000) != 0x00000000 ? bitmap[x][y] + 1 : 0;
-                raster.setPixel(x, y, new int[] { value });
+        final byte[] indices = getIndices(quantized);
+        ParallelUtils.forEach(pool, bands, band -> {
+            final int[] ids = bandIds[band];
+            final int end = Math.min(height, (band + 1) * bandRows) * width;
+            for (int i = band * bandRows * width; i < end; i++) {
+                if ((rgb[i] & 0xff000000) != 0x00000000) {
+                    indices[i] = (byte) (paletteIndices[ids[pixels[i]]] + 1);
+                }
             }
-        }
+        });
 
         return quantized;
     }
@@ -118,31 +256,57 @@ public class ColorQuantizer {
      *             if the application of this method would result in image quality loss
      */
     public static BufferedImage reduce(BufferedImage source) {
+        return reduce(source, getColorReductionInfo(source));
+    }
+
+    /**
+     * Reduces a direct color buffered image to an indexed color one without quality loss, reusing the palette
+     * collected by the {@link #getColorReductionInfo(BufferedImage)} method call for the same image.
+     *
+     * @param source
+     *            the source
+     * @param colorReductionInfo
+     *            the color reduction info of the source
+     *
+     * @return the buffered image
+     *
+     * @throws IllegalArgumentException
+     *             if the application of this method would result in image quality loss
+     */
+    public static BufferedImage reduce(BufferedImage source, ColorReductionInfo colorReductionInfo) {
         final int width = source.getWidth();
         final int height = source.getHeight();
 
-        if (BufferedImageUtils.hasPartialTransparency(source)) {
+        final ColorReductionInfo info = colorReductionInfo.palette != null ? colorReductionInfo
+                : getColorReductionInfo(source);
+        if (info.hasPartialTransparency) {
             throw new IllegalArgumentException("The source image cannot contain translucent areas");
         }
-
-        final int[] colorsWithAlpha = BufferedImageUtils.getDistinctColors(source, 1);
-        if (colorsWithAlpha.length - 1 > MAX_INDEXED_COLORS) {
+        if (info.distinctColors > MAX_INDEXED_COLORS) {
             throw new IllegalArgumentException(
                     "The source image cannot contain more than " + MAX_INDEXED_COLORS + " colors");
         }
 
+        final int[] colorsWithAlpha = info.palette;
         final IndexColorModel colorModel = new IndexColorModel(8, colorsWithAlpha.length, colorsWithAlpha, 0, false, 0,
                 DataBuffer.TYPE_BYTE);
 
-        // Write the results to an indexed image, skipping the fully transparent bits
+        // Write the results to an indexed image, skipping the fully transparent bits. The palette is sorted after the
+        // transparency entry, so colors are mapped to indices by binary search, remembering the last color because
+        // neighboring pixels often share it.
         final BufferedImage quantized = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
-        final int[][] rgb = BufferedImageUtils.getRgb(source);
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if ((rgb[x][y] & 0xff000000) != 0x00000000) {
-                    quantized.setRGB(x, y, source.getRGB(x, y));
+        final byte[] indices = getIndices(quantized);
+        final int[] rgb = BufferedImageUtils.getArgb(source);
+        int lastColor = -1;
+        int lastIndex = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if ((rgb[i] & 0xff000000) != 0x00000000) {
+                final int color = rgb[i] & 0x00ffffff;
+                if (color != lastColor) {
+                    lastColor = color;
+                    lastIndex = Arrays.binarySearch(colorsWithAlpha, 1, colorsWithAlpha.length, color);
                 }
+                indices[i] = (byte) lastIndex;
             }
         }
 
@@ -150,7 +314,23 @@ public class ColorQuantizer {
     }
 
     /**
-     * Returns a {@link ColorReductionInfo} for the provided image.
+     * Returns the palette indices of a newly created {@link BufferedImage#TYPE_BYTE_INDEXED} image, one byte per pixel
+     * in row-major order.
+     *
+     * @param indexed
+     *            the indexed image
+     *
+     * @return the data array of the image
+     */
+    private static byte[] getIndices(BufferedImage indexed) {
+        return ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Returns a {@link ColorReductionInfo} for the provided image. The image's pixels are read once, classifying their
+     * transparency and collecting their distinct colors at the same time, so that the number of colors needs no
+     * further scan. If the image can be reduced without quality loss, the collected colors are kept for
+     * {@link #reduce(BufferedImage, ColorReductionInfo)}.
      *
      * @param source
      *            the source
@@ -158,8 +338,38 @@ public class ColorQuantizer {
      * @return the color reduction info
      */
     public static ColorReductionInfo getColorReductionInfo(BufferedImage source) {
-        return new ColorReductionInfo(BufferedImageUtils.hasPartialTransparency(source),
-                BufferedImageUtils.countDistinctColors(source));
+        // The same condition as in BufferedImageUtils.hasPartialTransparency()
+        final boolean hasAlphaChannel = source.getTransparency() == Transparency.TRANSLUCENT
+                && source.getAlphaRaster() != null;
+
+        boolean hasPartialTransparency = false;
+        final IntHashSet colors = new IntHashSet();
+        for (final int pixel : BufferedImageUtils.getArgb(source)) {
+            final int alpha = pixel >>> 24;
+            if (alpha == 0x00) {
+                continue;
+            }
+
+            if (alpha != 0xff && hasAlphaChannel) {
+                hasPartialTransparency = true;
+            }
+
+            // Nothing more to learn from the remaining pixels, the number of colors is only reported for images
+            // without partial transparency
+            if (hasPartialTransparency && colors.size() > MAX_INDEXED_COLORS) {
+                break;
+            }
+            colors.add(pixel & 0x00ffffff);
+        }
+
+        final ColorReductionInfo info = new ColorReductionInfo(hasPartialTransparency, colors.size());
+        if (info.canReduceWithoutQualityLoss()) {
+            // Leave the first entry for transparency and sort the palette, so that the same colors always produce the
+            // same image
+            info.palette = colors.toArray(1);
+            Arrays.sort(info.palette, 1, info.palette.length);
+        }
+        return info;
     }
 
     /**
@@ -167,12 +377,21 @@ public class ColorQuantizer {
      */
     public static class ColorReductionInfo {
 
-        /** Number of distinct colors in the image. */
+        /**
+         * Number of distinct colors in the image. For images with partial transparency, counting stops at
+         * {@link #MAX_INDEXED_COLORS} + 1 colors, which is enough to tell that the image cannot be reduced.
+         */
         public int distinctColors;
 
         /** True if the image has partially transparent areas (alpha channel). */
         public boolean hasPartialTransparency;
 
+        /**
+         * The palette for {@link ColorQuantizer#reduce(BufferedImage, ColorReductionInfo)}, with transparency at index
+         * 0 followed by the sorted distinct colors, or <code>null</code> if not collected.
+         */
+        private int[] palette;
+
         /**
          * Instantiates a new color reduction info.
          *
@@ -0,0 +1,191 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive <code>int</code>s using open addressing with linear probing, to collect the distinct colors of
+ * images without boxing each pixel. This class is not thread-safe.
+ */
+public final class IntHashSet {
+
+    /** The value marking empty slots, the value itself is tracked by {@link #containsEmptyValue}. */
+    private static final int EMPTY = 0;
+
+    /** The maximum ratio of used slots, the table grows when exceeded. */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /** The slots, the length is always a power of two. */
+    private int[] slots;
+
+    /** Number of values stored in {@link #slots}. */
+    private int assigned;
+
+    /** Whether the {@link #EMPTY} value has been added. */
+    private boolean containsEmptyValue;
+
+    /** Number of values at which the table grows. */
+    private int resizeAt;
+
+    /**
+     * Creates an empty set.
+     */
+    public IntHashSet() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty set, able to hold the provided number of values without growing.
+     *
+     * @param expectedSize
+     *            the expected size
+     */
+    public IntHashSet(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(4, (int) Math.ceil(expectedSize / LOAD_FACTOR)) - 1) << 1);
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value
+     *            the value
+     *
+     * @return true, if the value was not in the set
+     */
+    public boolean add(int value) {
+        if (value == EMPTY) {
+            final boolean added = !containsEmptyValue;
+            containsEmptyValue = true;
+            return added;
+        }
+
+        final int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        int existing;
+        while ((existing = slots[slot]) != EMPTY) {
+            if (existing == value) {
+                return false;
+            }
+            slot = slot + 1 & mask;
+        }
+
+        slots[slot] = value;
+        if (++assigned >= resizeAt) {
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the value is in the set.
+     *
+     * @param value
+     *            the value
+     *
+     * @return true, if the value is in the set
+     */
+    public boolean contains(int value) {
+        if (value == EMPTY) {
+            return containsEmptyValue;
+        }
+
+        final int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        int existing;
+        while ((existing = slots[slot]) != EMPTY) {
+            if (existing == value) {
+                return true;
+            }
+            slot = slot + 1 & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of values in the set.
+     *
+     * @return the size
+     */
+    public int size() {
+        return assigned + (containsEmptyValue ? 1 : 0);
+    }
+
+    /**
+     * Returns the values of the set, in no particular order, after <code>padding</code> empty slots at the beginning of
+     * the array.
+     *
+     * @param padding
+     *            the padding
+     *
+     * @return the values
+     */
+    public int[] toArray(int padding) {
+        final int[] values = new int[padding + size()];
+        int index = padding;
+        if (containsEmptyValue) {
+            values[index++] = EMPTY;
+        }
+        for (final int value : slots) {
+            if (value != EMPTY) {
+                values[index++] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Moves the values to a table twice as large.
+     */
+    private void rehash() {
+        final int[] oldSlots = slots;
+        allocate(oldSlots.length << 1);
+
+        final int mask = slots.length - 1;
+        for (final int value : oldSlots) {
+            if (value != EMPTY) {
+                int slot = hash(value) & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = slot + 1 & mask;
+                }
+                slots[slot] = value;
+            }
+        }
+    }
+
+    /**
+     * Allocates an empty table.
+     *
+     * @param capacity
+     *            the number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        slots = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads the bits of the value, so that similar colors do not end up in adjacent slots.
+     *
+     * @param value
+     *            the value
+     *
+     * @return the hash
+     */
+    private static int hash(int value) {
+        final int h = value * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+
+    @Override
+    public String toString() {
+        final int[] values = toArray(0);
+        Arrays.sort(values);
+        return Arrays.toString(values);
+    }
+}
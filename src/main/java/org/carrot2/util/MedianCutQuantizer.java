@@ -0,0 +1,218 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Heckbert's median cut color quantization. The colors are kept in boxes of the RGB space, starting with a single box
+ * holding all colors. The box whose longest side times its number of pixels is the largest is split across its longest
+ * side at the median of its pixels, until there are as many boxes as palette colors or no box can be split. Each box
+ * becomes the average color of its pixels. The storage is kept between runs, so an instance should be reused for many
+ * images, e.g. through a {@link QuantizerPool}. This class is not thread-safe.
+ */
+public final class MedianCutQuantizer implements PaletteQuantizer {
+
+    /** The ids of the colors, ordered so that the colors of each box are next to each other. */
+    private int[] order = new int[0];
+
+    /** Number of pixels of each value of the channel being split. */
+    private final long[] channelWeights = new long[256];
+
+    /** The first position in {@link #order} of each box. */
+    private int[] boxStart;
+
+    /** The position in {@link #order} after the last color of each box. */
+    private int[] boxEnd;
+
+    /** The shift of the channel with the longest side of each box. */
+    private int[] boxShift;
+
+    /** The smallest value of the channel with the longest side of each box. */
+    private int[] boxMin;
+
+    /** The largest value of the channel with the longest side of each box. */
+    private int[] boxMax;
+
+    /** The length of the longest side times the number of pixels of each box, 0 if the box cannot be split. */
+    private long[] boxPriority;
+
+    @Override
+    public int[] quantize(int[] colors, int[] counts, int length, int maxColors, IntConsumer pruningListener) {
+        if (length == 0) {
+            return new int[0];
+        }
+
+        if (order.length < length) {
+            order = new int[length];
+        }
+        for (int i = 0; i < length; i++) {
+            order[i] = i;
+        }
+        boxStart = new int[maxColors];
+        boxEnd = new int[maxColors];
+        boxShift = new int[maxColors];
+        boxMin = new int[maxColors];
+        boxMax = new int[maxColors];
+        boxPriority = new long[maxColors];
+
+        int boxes = 1;
+        boxEnd[0] = length;
+        measure(0, colors, counts);
+        while (boxes < maxColors) {
+            int best = 0;
+            for (int box = 1; box < boxes; box++) {
+                if (boxPriority[box] > boxPriority[best]) {
+                    best = box;
+                }
+            }
+            if (boxPriority[best] == 0) {
+                break;
+            }
+
+            split(best, boxes, colors, counts);
+            measure(best, colors, counts);
+            measure(boxes, colors, counts);
+            boxes++;
+        }
+
+        final int[] palette = new int[boxes];
+        for (int box = 0; box < boxes; box++) {
+            long weight = 0;
+            long red = 0;
+            long green = 0;
+            long blue = 0;
+            for (int i = boxStart[box]; i < boxEnd[box]; i++) {
+                final int color = colors[order[i]];
+                final long count = counts[order[i]];
+                weight += count;
+                red += (color >> 16 & 0xFF) * count;
+                green += (color >> 8 & 0xFF) * count;
+                blue += (color & 0xFF) * count;
+            }
+            palette[box] = 0xFF << 24 | average(red, weight) << 16 | average(green, weight) << 8
+                    | average(blue, weight);
+        }
+
+        for (int box = 0; box < boxes; box++) {
+            for (int i = boxStart[box]; i < boxEnd[box]; i++) {
+                colors[order[i]] = box;
+            }
+        }
+        return palette;
+    }
+
+    /**
+     * Finds the longest side of a box and its priority.
+     *
+     * @param box
+     *            the box
+     * @param colors
+     *            the colors
+     * @param counts
+     *            the counts
+     */
+    private void measure(int box, int[] colors, int[] counts) {
+        int minRed = 0xFF;
+        int maxRed = 0;
+        int minGreen = 0xFF;
+        int maxGreen = 0;
+        int minBlue = 0xFF;
+        int maxBlue = 0;
+        long weight = 0;
+        for (int i = boxStart[box]; i < boxEnd[box]; i++) {
+            final int color = colors[order[i]];
+            final int red = color >> 16 & 0xFF;
+            final int green = color >> 8 & 0xFF;
+            final int blue = color & 0xFF;
+            minRed = Math.min(minRed, red);
+            maxRed = Math.max(maxRed, red);
+            minGreen = Math.min(minGreen, green);
+            maxGreen = Math.max(maxGreen, green);
+            minBlue = Math.min(minBlue, blue);
+            maxBlue = Math.max(maxBlue, blue);
+            weight += counts[order[i]];
+        }
+
+        if (maxRed - minRed >= maxGreen - minGreen && maxRed - minRed >= maxBlue - minBlue) {
+            boxShift[box] = 16;
+            boxMin[box] = minRed;
+            boxMax[box] = maxRed;
+        } else if (maxGreen - minGreen >= maxBlue - minBlue) {
+            boxShift[box] = 8;
+            boxMin[box] = minGreen;
+            boxMax[box] = maxGreen;
+        } else {
+            boxShift[box] = 0;
+            boxMin[box] = minBlue;
+            boxMax[box] = maxBlue;
+        }
+        boxPriority[box] = (boxMax[box] - boxMin[box]) * weight;
+    }
+
+    /**
+     * Splits a box across its longest side at the median of its pixels, keeping the lower half in the box.
+     *
+     * @param box
+     *            the box
+     * @param newBox
+     *            the box to get the upper half
+     * @param colors
+     *            the colors
+     * @param counts
+     *            the counts
+     */
+    private void split(int box, int newBox, int[] colors, int[] counts) {
+        final int start = boxStart[box];
+        final int end = boxEnd[box];
+        final int shift = boxShift[box];
+
+        long weight = 0;
+        for (int i = start; i < end; i++) {
+            final long count = counts[order[i]];
+            channelWeights[colors[order[i]] >> shift & 0xFF] += count;
+            weight += count;
+        }
+
+        // The median value goes to the lower half, the upper half must not be empty
+        int median = boxMin[box];
+        for (long lower = channelWeights[median]; lower * 2 < weight && median < boxMax[box] - 1;) {
+            lower += channelWeights[++median];
+        }
+        for (int value = boxMin[box]; value <= boxMax[box]; value++) {
+            channelWeights[value] = 0;
+        }
+
+        int lowerEnd = start;
+        for (int i = start; i < end; i++) {
+            final int id = order[i];
+            if ((colors[id] >> shift & 0xFF) <= median) {
+                order[i] = order[lowerEnd];
+                order[lowerEnd++] = id;
+            }
+        }
+
+        boxEnd[box] = lowerEnd;
+        boxStart[newBox] = lowerEnd;
+        boxEnd[newBox] = end;
+    }
+
+    /**
+     * Computes the rounded average.
+     *
+     * @param sum
+     *            the sum
+     * @param weight
+     *            the number of values
+     *
+     * @return the average
+     */
+    private static int average(long sum, long weight) {
+        return (int) ((sum + weight / 2) / weight);
+    }
+}
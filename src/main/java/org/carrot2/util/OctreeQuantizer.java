@@ -0,0 +1,33 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.util.function.IntConsumer;
+
+import amd.ArrayOctree;
+
+/**
+ * The octree color quantization of {@link amd.Quantize}, as implemented by {@link ArrayOctree}. The storage of the
+ * tree is kept between runs, so an instance should be reused for many images, e.g. through a {@link QuantizerPool}.
+ * This class is not thread-safe.
+ */
+final class OctreeQuantizer implements PaletteQuantizer {
+
+    /** The octree. */
+    private final ArrayOctree octree = new ArrayOctree();
+
+    @Override
+    public int[] quantize(int[] colors, int[] counts, int length, int maxColors, IntConsumer pruningListener) {
+        return octree.quantizeHistogram(colors, counts, length, maxColors, pruningListener);
+    }
+
+    @Override
+    public boolean dependsOnColorOrder(int maxColors) {
+        return ArrayOctree.dependsOnColorOrder(maxColors);
+    }
+}
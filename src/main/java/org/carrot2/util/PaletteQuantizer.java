@@ -0,0 +1,56 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.util.function.IntConsumer;
+
+/**
+ * An algorithm choosing the palette of an indexed image, used by
+ * {@link ColorQuantizer#quantize(java.awt.image.BufferedImage, java.awt.Color, int, PaletteQuantizer, IntConsumer)}.
+ * The image is passed as a histogram of its distinct visible colors, transparency is handled by {@link ColorQuantizer}.
+ * Implementations may keep storage between calls, so an instance must not be used by many threads at the same time;
+ * {@link QuantizerPool} lends instances to one thread at a time. The built-in implementations are listed by
+ * {@link QuantizerEngine}.
+ */
+@FunctionalInterface
+public interface PaletteQuantizer {
+
+    /**
+     * Builds the palette for the colors and maps each color to a palette color.
+     *
+     * @param colors
+     *            an array of distinct RGB colors, the alpha bits must be ignored, overwritten with the palette index of
+     *            each color
+     * @param counts
+     *            the number of pixels of each color
+     * @param length
+     *            the number of colors in the arrays
+     * @param maxColors
+     *            the maximum number of colors of the palette
+     * @param pruningListener
+     *            called with the new tree depth whenever a quantizer based on a color tree has to prune it, other
+     *            quantizers do not call it
+     *
+     * @return the palette of opaque ARGB colors
+     */
+    int[] quantize(int[] colors, int[] counts, int length, int maxColors, IntConsumer pruningListener);
+
+    /**
+     * Tells whether the palette depends on the order of the colors. If so, {@link ColorQuantizer} passes the colors in
+     * the reverse order in which {@link amd.Quantize} would meet their first pixels, so that the palette is the same.
+     * Keeping that order costs time, so it is only done when needed.
+     *
+     * @param maxColors
+     *            the maximum number of colors of the palette
+     *
+     * @return true if the order matters, false by default
+     */
+    default boolean dependsOnColorOrder(int maxColors) {
+        return false;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Various utility methods for running independent tasks concurrently while keeping the results in input order.
+ */
+public class ParallelUtils {
+
+    /**
+     * Instantiates a new parallel utils.
+     */
+    private ParallelUtils() {
+        // Prevent Instantiation
+    }
+
+    /**
+     * A function that may throw an {@link IOException}.
+     *
+     * @param <T>
+     *            the input type
+     * @param <R>
+     *            the result type
+     */
+    @FunctionalInterface
+    public interface IOFunction<T, R> {
+
+        /**
+         * Applies this function to the provided input.
+         *
+         * @param input
+         *            the input
+         *
+         * @return the result
+         *
+         * @throws IOException
+         *             Signals that an I/O exception has occurred.
+         */
+        R apply(T input) throws IOException;
+    }
+
+    /**
+     * Creates a pool for running tasks on the provided number of threads.
+     *
+     * @param threads
+     *            the number of threads
+     *
+     * @return the pool or <code>null</code> if <code>threads</code> is lower than 2, in which case all tasks will be
+     *         run on the calling thread
+     */
+    public static ForkJoinPool createPool(int threads) {
+        return threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    /**
+     * Shuts the pool down, ignores <code>null</code> pools.
+     *
+     * @param pool
+     *            the pool
+     */
+    public static void shutdown(ForkJoinPool pool) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Applies the function to all inputs and returns the results in input order. If the pool is <code>null</code> or
+     * there is at most one input, the function is applied on the calling thread. When called from a task already
+     * running in the pool, the subtasks are forked into the same pool, so that nested calls do not block the pool's
+     * threads.
+     *
+     * @param <T>
+     *            the input type
+     * @param <R>
+     *            the result type
+     * @param pool
+     *            the pool, can be <code>null</code>
+     * @param inputs
+     *            the inputs
+     * @param function
+     *            the function
+     *
+     * @return the results, in input order
+     *
+     * @throws IOException
+     *             the first {@link IOException} thrown by the function, in input order
+     */
+    public static <T, R> List<R> map(ForkJoinPool pool, List<T> inputs, IOFunction<? super T, ? extends R> function)
+            throws IOException {
+        final List<R> results = new ArrayList<>(inputs.size());
+        if (pool == null || inputs.size() < 2) {
+            for (final T input : inputs) {
+                results.add(function.apply(input));
+            }
+            return results;
+        }
+
+        final List<MapTask<T, R>> tasks = new ArrayList<>(inputs.size());
+        for (final T input : inputs) {
+            tasks.add(new MapTask<>(input, function));
+        }
+
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+
+        // Tasks capture their failures, rethrow the first one in input order to keep error reporting deterministic
+        for (final MapTask<T, R> task : tasks) {
+            results.add(task.getResult());
+        }
+        return results;
+    }
+
+    /**
+     * Runs the action for each index from 0 to <code>count</code> - 1. If the pool is <code>null</code> or the count is
+     * lower than 2, the action is run on the calling thread, in index order. When called from a task already running in
+     * the pool, the subtasks are forked into the same pool, so that nested calls do not block the pool's threads.
+     *
+     * @param pool
+     *            the pool, can be <code>null</code>
+     * @param count
+     *            the number of indices
+     * @param action
+     *            the action
+     */
+    public static void forEach(ForkJoinPool pool, int count, IntConsumer action) {
+        if (pool == null || count < 2) {
+            for (int index = 0; index < count; index++) {
+                action.accept(index);
+            }
+            return;
+        }
+
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            final int taskIndex = index;
+            tasks.add(ForkJoinTask.adapt(() -> action.accept(taskIndex)));
+        }
+
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+    }
+
+    /**
+     * Applies the function to a single input.
+     *
+     * @param <T>
+     *            the input type
+     * @param <R>
+     *            the result type
+     */
+    private static final class MapTask<T, R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The input. */
+        private final transient T input;
+
+        /** The function. */
+        private final transient IOFunction<? super T, ? extends R> function;
+
+        /** The result, or <code>null</code> if the function failed. */
+        private transient R result;
+
+        /** The failure, if the function failed. */
+        private transient Throwable failure;
+
+        /**
+         * Instantiates a new map task.
+         *
+         * @param input
+         *            the input
+         * @param function
+         *            the function
+         */
+        MapTask(T input, IOFunction<? super T, ? extends R> function) {
+            this.input = input;
+            this.function = function;
+        }
+
+        @Override
+        protected R compute() {
+            try {
+                result = function.apply(input);
+            } catch (IOException | RuntimeException | Error e) {
+                failure = e;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the result or rethrows the failure of the function.
+         *
+         * @return the result
+         *
+         * @throws IOException
+         *             Signals that an I/O exception has occurred.
+         */
+        R getResult() throws IOException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return result;
+        }
+    }
+}
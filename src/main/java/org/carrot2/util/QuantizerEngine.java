@@ -0,0 +1,94 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * The built-in {@link PaletteQuantizer}s.
+ */
+public enum QuantizerEngine {
+
+    /**
+     * The octree of {@link amd.Quantize}, see {@link OctreeQuantizer}. Close colors are merged starting from the least
+     * used ones.
+     */
+    OCTREE(OctreeQuantizer::new),
+
+    /**
+     * Heckbert's median cut, see {@link MedianCutQuantizer}. The color space is split at the median of the pixels,
+     * giving each palette color about the same number of pixels.
+     */
+    MEDIAN_CUT(MedianCutQuantizer::new),
+
+    /**
+     * Wu's variance minimization, see {@link WuQuantizer}. The color space is split where the color error of the
+     * pixels gets the lowest.
+     */
+    WU(WuQuantizer::new);
+
+    /** The value. */
+    private final String value;
+
+    /** Creates the quantizers. */
+    private final Supplier<PaletteQuantizer> supplier;
+
+    /**
+     * Instantiates a new quantizer engine.
+     *
+     * @param supplier
+     *            creates the quantizers
+     */
+    QuantizerEngine(Supplier<PaletteQuantizer> supplier) {
+        this.value = name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+        this.supplier = supplier;
+    }
+
+    /**
+     * Creates a new quantizer. Quantizers keep their storage between runs, so the caller should reuse the instance for
+     * the images it quantizes on one thread and drop it afterwards, see {@link QuantizerPool}.
+     *
+     * @return the quantizer
+     */
+    public PaletteQuantizer createQuantizer() {
+        return supplier.get();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+
+    /**
+     * Gets the value, accepting both the names and the lowercase values with dashes.
+     *
+     * @param value
+     *            the value
+     *
+     * @return the value
+     *
+     * @throws IllegalArgumentException
+     *             if there is no such engine
+     */
+    public static QuantizerEngine getValue(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+    }
+
+    /**
+     * Values as string.
+     *
+     * @return the string
+     */
+    public static String valuesAsString() {
+        final String list = new ArrayList<>(Arrays.asList(values())).toString();
+        return list.substring(1, list.length() - 1);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Lends {@link PaletteQuantizer}s to the threads quantizing images, so that the storage of each quantizer is reused
+ * for many images. A quantizer is lent to one thread at a time, so no more quantizers of each engine are created than
+ * there are threads quantizing at the same time. The quantizers are dropped together with the pool, which should be
+ * kept for one build only. This class is thread-safe.
+ */
+public final class QuantizerPool {
+
+    /** The quantizers not lent at the moment, by engine. Populated once, so that reading it is thread-safe. */
+    private final Map<QuantizerEngine, Queue<PaletteQuantizer>> idleQuantizers = new EnumMap<>(QuantizerEngine.class);
+
+    /**
+     * Instantiates a new, empty quantizer pool.
+     */
+    public QuantizerPool() {
+        for (final QuantizerEngine engine : QuantizerEngine.values()) {
+            idleQuantizers.put(engine, new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Borrows a quantizer of the provided engine, creating it if all of them are lent at the moment. The quantizer
+     * must be given back with {@link #release(QuantizerEngine, PaletteQuantizer)} once the image is quantized.
+     *
+     * @param engine
+     *            the engine
+     *
+     * @return the quantizer
+     */
+    public PaletteQuantizer acquire(QuantizerEngine engine) {
+        final PaletteQuantizer quantizer = idleQuantizers.get(engine).poll();
+        return quantizer != null ? quantizer : engine.createQuantizer();
+    }
+
+    /**
+     * Gives back a quantizer borrowed with {@link #acquire(QuantizerEngine)}.
+     *
+     * @param engine
+     *            the engine the quantizer was borrowed for
+     * @param quantizer
+     *            the quantizer
+     */
+    public void release(QuantizerEngine engine, PaletteQuantizer quantizer) {
+        idleQuantizers.get(engine).add(quantizer);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs rectangles into a small bounding box using the skyline bottom-left heuristic. The rectangles are placed in
+ * order of decreasing height, each one where its top edge ends up the lowest, on a skyline made of the top edges of
+ * the rectangles placed so far. As the heuristic needs a fixed width, a few widths slightly larger than the side of a
+ * square of the total area of the rectangles and a few widths between the width of the widest rectangle and the width
+ * of a single row are tried, and the packing with the smallest bounding box is kept.
+ */
+public class SkylinePacker {
+
+    /** Number of widths tried in each range of widths. */
+    private static final int WIDTH_STEPS = 8;
+
+    /**
+     * Instantiates a new skyline packer.
+     */
+    private SkylinePacker() {
+        // Prevent Instantiation
+    }
+
+    /**
+     * Packs rectangles without overlaps.
+     *
+     * @param widths
+     *            the widths of the rectangles, at least 1
+     * @param heights
+     *            the heights of the rectangles, at least 1
+     * @param count
+     *            the number of rectangles
+     *
+     * @return the positions of the rectangles, the x coordinate of rectangle <code>i</code> at index
+     *         <code>2 * i</code> and the y coordinate at index <code>2 * i + 1</code>
+     */
+    public static int[] pack(int[] widths, int[] heights, int count) {
+        final Integer[] order = new Integer[count];
+        int maxWidth = 0;
+        long totalWidth = 0;
+        long totalArea = 0;
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            maxWidth = Math.max(maxWidth, widths[i]);
+            totalWidth += widths[i];
+            totalArea += (long) widths[i] * heights[i];
+        }
+        Arrays.sort(order, Comparator.<Integer> comparingInt(i -> -heights[i]).thenComparingInt(i -> -widths[i]));
+
+        final int squareWidth = (int) Math.min(totalWidth, Math.max(maxWidth, (long) Math.ceil(Math.sqrt(totalArea))));
+        int[] best = null;
+        long bestArea = Long.MAX_VALUE;
+        for (int step = 0; step <= WIDTH_STEPS; step++) {
+            // Widths close to a square, and widths leaving room next to the widest rectangle
+            final int[] binWidths = { (int) Math.min(totalWidth, squareWidth + (long) squareWidth * step / WIDTH_STEPS),
+                    (int) (maxWidth + (totalWidth - maxWidth) * step / WIDTH_STEPS) };
+            for (final int binWidth : binWidths) {
+                final int[] positions = pack(widths, heights, order, binWidth);
+                final long area = area(widths, heights, positions);
+                if (area < bestArea) {
+                    best = positions;
+                    bestArea = area;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Packs rectangles into a box of fixed width.
+     *
+     * @param widths
+     *            the widths of the rectangles
+     * @param heights
+     *            the heights of the rectangles
+     * @param order
+     *            the order in which to place the rectangles
+     * @param binWidth
+     *            the width of the box, not smaller than the widest rectangle
+     *
+     * @return the positions of the rectangles
+     */
+    private static int[] pack(int[] widths, int[] heights, Integer[] order, int binWidth) {
+        final int[] positions = new int[order.length * 2];
+
+        // Each placed rectangle adds at most one segment to the skyline
+        final int[] segmentX = new int[order.length + 1];
+        final int[] segmentY = new int[order.length + 1];
+        final int[] segmentWidth = new int[order.length + 1];
+        segmentWidth[0] = binWidth;
+        int segments = 1;
+
+        for (final int rectangle : order) {
+            final int width = widths[rectangle];
+
+            // Find the position with the lowest top edge, the leftmost one on ties
+            int bestSegment = -1;
+            int bestY = 0;
+            long bestTop = Long.MAX_VALUE;
+            for (int i = 0; i < segments && segmentX[i] + width <= binWidth; i++) {
+                int y = 0;
+                for (int j = i, covered = 0; covered < width; covered += segmentWidth[j++]) {
+                    y = Math.max(y, segmentY[j]);
+                }
+                if ((long) y + heights[rectangle] < bestTop) {
+                    bestSegment = i;
+                    bestY = y;
+                    bestTop = (long) y + heights[rectangle];
+                }
+            }
+
+            final int x = segmentX[bestSegment];
+            positions[rectangle * 2] = x;
+            positions[rectangle * 2 + 1] = bestY;
+
+            // Replace the segments below the rectangle with its top edge, shortening the last one if needed
+            final int end = x + width;
+            int next = bestSegment;
+            while (next < segments && segmentX[next] + segmentWidth[next] <= end) {
+                next++;
+            }
+            if (next < segments && segmentX[next] < end) {
+                segmentWidth[next] -= end - segmentX[next];
+                segmentX[next] = end;
+            }
+            final int shift = bestSegment + 1 - next;
+            System.arraycopy(segmentX, next, segmentX, next + shift, segments - next);
+            System.arraycopy(segmentY, next, segmentY, next + shift, segments - next);
+            System.arraycopy(segmentWidth, next, segmentWidth, next + shift, segments - next);
+            segments += shift;
+            segmentX[bestSegment] = x;
+            segmentY[bestSegment] = (int) bestTop;
+            segmentWidth[bestSegment] = width;
+
+            // Merge with the neighbors of the same height
+            segments = merge(segmentX, segmentY, segmentWidth, segments, bestSegment);
+            if (bestSegment > 0) {
+                segments = merge(segmentX, segmentY, segmentWidth, segments, bestSegment - 1);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Merges a skyline segment with the next one if they have the same height.
+     *
+     * @param segmentX
+     *            the x coordinates of the segments
+     * @param segmentY
+     *            the y coordinates of the segments
+     * @param segmentWidth
+     *            the widths of the segments
+     * @param segments
+     *            the number of segments
+     * @param segment
+     *            the segment to merge
+     *
+     * @return the number of segments after merging
+     */
+    private static int merge(int[] segmentX, int[] segmentY, int[] segmentWidth, int segments, int segment) {
+        final int next = segment + 1;
+        if (next >= segments || segmentY[segment] != segmentY[next]) {
+            return segments;
+        }
+        segmentWidth[segment] += segmentWidth[next];
+        System.arraycopy(segmentX, next + 1, segmentX, next, segments - next - 1);
+        System.arraycopy(segmentY, next + 1, segmentY, next, segments - next - 1);
+        System.arraycopy(segmentWidth, next + 1, segmentWidth, next, segments - next - 1);
+        return segments - 1;
+    }
+
+    /**
+     * Computes the area of the bounding box of packed rectangles.
+     *
+     * @param widths
+     *            the widths of the rectangles
+     * @param heights
+     *            the heights of the rectangles
+     * @param positions
+     *            the positions of the rectangles
+     *
+     * @return the area
+     */
+    private static long area(int[] widths, int[] heights, int[] positions) {
+        long width = 0;
+        long height = 0;
+        for (int i = 0; i < positions.length / 2; i++) {
+            width = Math.max(width, (long) positions[i * 2] + widths[i]);
+            height = Math.max(height, (long) positions[i * 2 + 1] + heights[i]);
+        }
+        return width * height;
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Xiaolin Wu's color quantization by variance minimization, from Graphics Gems II. The pixels are counted in a grid of
+ * 32 x 32 x 32 cells of the RGB space, keeping the cumulative moments of each cell, so that the color error of any box
+ * of cells takes constant time to compute. Starting with a single box, the box with the largest error is split where
+ * the sum of the errors of both parts gets the lowest, until there are as many boxes as palette colors or no box can be
+ * split. Each box becomes the average color of its pixels. The storage is kept between runs, so an instance should be
+ * reused for many images, e.g. through a {@link QuantizerPool}. This class is not thread-safe.
+ */
+public final class WuQuantizer implements PaletteQuantizer {
+
+    /** Number of cells along each side of the grid, plus one for the zero moments. */
+    private static final int SIDE = 33;
+
+    /** The red direction. */
+    private static final int RED = 2;
+
+    /** The green direction. */
+    private static final int GREEN = 1;
+
+    /** The blue direction. */
+    private static final int BLUE = 0;
+
+    /** The cumulative number of pixels. */
+    private final long[] weights = new long[SIDE * SIDE * SIDE];
+
+    /** The cumulative sums of the red components. */
+    private final long[] momentsRed = new long[SIDE * SIDE * SIDE];
+
+    /** The cumulative sums of the green components. */
+    private final long[] momentsGreen = new long[SIDE * SIDE * SIDE];
+
+    /** The cumulative sums of the blue components. */
+    private final long[] momentsBlue = new long[SIDE * SIDE * SIDE];
+
+    /** The cumulative sums of the squared color components. */
+    private final double[] moments = new double[SIDE * SIDE * SIDE];
+
+    /** The box of each cell. */
+    private final int[] tags = new int[SIDE * SIDE * SIDE];
+
+    /** The lower bounds of the boxes, exclusive, indexed by box times 3 plus direction. */
+    private int[] lower;
+
+    /** The upper bounds of the boxes, inclusive, indexed by box times 3 plus direction. */
+    private int[] upper;
+
+    /** The position found by the last {@link #maximize(int, int, long, long, long, long)} call. */
+    private int cut;
+
+    @Override
+    public int[] quantize(int[] colors, int[] counts, int length, int maxColors, IntConsumer pruningListener) {
+        if (length == 0) {
+            return new int[0];
+        }
+
+        histogram(colors, counts, length);
+        moments();
+
+        lower = new int[maxColors * 3];
+        upper = new int[maxColors * 3];
+        Arrays.fill(upper, 0, 3, SIDE - 1);
+        final double[] variances = new double[maxColors];
+
+        int boxes = 1;
+        int next = 0;
+        while (boxes < maxColors) {
+            if (cut(next, boxes)) {
+                variances[next] = volume(next) > 1 ? variance(next) : 0;
+                variances[boxes] = volume(boxes) > 1 ? variance(boxes) : 0;
+                boxes++;
+            } else {
+                variances[next] = 0;
+            }
+
+            next = 0;
+            for (int box = 1; box < boxes; box++) {
+                if (variances[box] > variances[next]) {
+                    next = box;
+                }
+            }
+            if (variances[next] <= 0) {
+                break;
+            }
+        }
+
+        final int[] palette = new int[boxes];
+        for (int box = 0; box < boxes; box++) {
+            final long weight = volume(box, weights);
+            palette[box] = 0xFF << 24 | average(volume(box, momentsRed), weight) << 16
+                    | average(volume(box, momentsGreen), weight) << 8 | average(volume(box, momentsBlue), weight);
+            mark(box);
+        }
+
+        for (int i = 0; i < length; i++) {
+            final int color = colors[i];
+            colors[i] = tags[cell(color)];
+        }
+        return palette;
+    }
+
+    /**
+     * Counts the pixels and their moments in each cell.
+     *
+     * @param colors
+     *            the colors
+     * @param counts
+     *            the counts
+     * @param length
+     *            the number of colors
+     */
+    private void histogram(int[] colors, int[] counts, int length) {
+        Arrays.fill(weights, 0);
+        Arrays.fill(momentsRed, 0);
+        Arrays.fill(momentsGreen, 0);
+        Arrays.fill(momentsBlue, 0);
+        Arrays.fill(moments, 0);
+
+        for (int i = 0; i < length; i++) {
+            final int color = colors[i];
+            final int red = color >> 16 & 0xFF;
+            final int green = color >> 8 & 0xFF;
+            final int blue = color & 0xFF;
+            final long count = counts[i];
+            final int cell = cell(color);
+            weights[cell] += count;
+            momentsRed[cell] += red * count;
+            momentsGreen[cell] += green * count;
+            momentsBlue[cell] += blue * count;
+            moments[cell] += (double) (red * red + green * green + blue * blue) * count;
+        }
+    }
+
+    /**
+     * Turns the moments of each cell into the cumulative moments of all cells up to the cell.
+     */
+    private void moments() {
+        final long[] areaWeight = new long[SIDE];
+        final long[] areaRed = new long[SIDE];
+        final long[] areaGreen = new long[SIDE];
+        final long[] areaBlue = new long[SIDE];
+        final double[] area = new double[SIDE];
+
+        for (int red = 1; red < SIDE; red++) {
+            Arrays.fill(areaWeight, 0);
+            Arrays.fill(areaRed, 0);
+            Arrays.fill(areaGreen, 0);
+            Arrays.fill(areaBlue, 0);
+            Arrays.fill(area, 0);
+            for (int green = 1; green < SIDE; green++) {
+                long lineWeight = 0;
+                long lineRed = 0;
+                long lineGreen = 0;
+                long lineBlue = 0;
+                double line = 0;
+                for (int blue = 1; blue < SIDE; blue++) {
+                    final int cell = index(red, green, blue);
+                    lineWeight += weights[cell];
+                    lineRed += momentsRed[cell];
+                    lineGreen += momentsGreen[cell];
+                    lineBlue += momentsBlue[cell];
+                    line += moments[cell];
+
+                    areaWeight[blue] += lineWeight;
+                    areaRed[blue] += lineRed;
+                    areaGreen[blue] += lineGreen;
+                    areaBlue[blue] += lineBlue;
+                    area[blue] += line;
+
+                    final int previous = cell - SIDE * SIDE;
+                    weights[cell] = weights[previous] + areaWeight[blue];
+                    momentsRed[cell] = momentsRed[previous] + areaRed[blue];
+                    momentsGreen[cell] = momentsGreen[previous] + areaGreen[blue];
+                    momentsBlue[cell] = momentsBlue[previous] + areaBlue[blue];
+                    moments[cell] = moments[previous] + area[blue];
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits a box where the sum of the variances of both parts gets the lowest.
+     *
+     * @param box
+     *            the box
+     * @param newBox
+     *            the box to get the upper part
+     *
+     * @return true, if the box could be split
+     */
+    private boolean cut(int box, int newBox) {
+        final long wholeRed = volume(box, momentsRed);
+        final long wholeGreen = volume(box, momentsGreen);
+        final long wholeBlue = volume(box, momentsBlue);
+        final long wholeWeight = volume(box, weights);
+
+        int direction = -1;
+        int position = 0;
+        double max = 0;
+        for (final int candidate : new int[] { RED, GREEN, BLUE }) {
+            final double value = maximize(box, candidate, wholeRed, wholeGreen, wholeBlue, wholeWeight);
+            if (cut >= 0 && (direction < 0 || value > max)) {
+                direction = candidate;
+                position = cut;
+                max = value;
+            }
+        }
+        if (direction < 0) {
+            return false;
+        }
+
+        System.arraycopy(lower, box * 3, lower, newBox * 3, 3);
+        System.arraycopy(upper, box * 3, upper, newBox * 3, 3);
+        upper[box * 3 + direction] = position;
+        lower[newBox * 3 + direction] = position;
+        return true;
+    }
+
+    /**
+     * Finds the position across a direction splitting a box into the parts with the lowest sum of variances.
+     *
+     * @param box
+     *            the box
+     * @param direction
+     *            the direction
+     * @param wholeRed
+     *            the red moment of the box
+     * @param wholeGreen
+     *            the green moment of the box
+     * @param wholeBlue
+     *            the blue moment of the box
+     * @param wholeWeight
+     *            the number of pixels of the box
+     *
+     * @return the value to maximize, the position is stored in {@link #cut}, -1 if the box cannot be split
+     */
+    private double maximize(int box, int direction, long wholeRed, long wholeGreen, long wholeBlue,
+            long wholeWeight) {
+        final long baseRed = bottom(box, direction, momentsRed);
+        final long baseGreen = bottom(box, direction, momentsGreen);
+        final long baseBlue = bottom(box, direction, momentsBlue);
+        final long baseWeight = bottom(box, direction, weights);
+
+        double max = 0;
+        cut = -1;
+        for (int position = lower[box * 3 + direction] + 1; position < upper[box * 3 + direction]; position++) {
+            long halfRed = baseRed + top(box, direction, position, momentsRed);
+            long halfGreen = baseGreen + top(box, direction, position, momentsGreen);
+            long halfBlue = baseBlue + top(box, direction, position, momentsBlue);
+            long halfWeight = baseWeight + top(box, direction, position, weights);
+            if (halfWeight == 0) {
+                continue;
+            }
+            double value = ((double) halfRed * halfRed + (double) halfGreen * halfGreen
+                    + (double) halfBlue * halfBlue) / halfWeight;
+
+            halfRed = wholeRed - halfRed;
+            halfGreen = wholeGreen - halfGreen;
+            halfBlue = wholeBlue - halfBlue;
+            halfWeight = wholeWeight - halfWeight;
+            if (halfWeight == 0) {
+                continue;
+            }
+            value += ((double) halfRed * halfRed + (double) halfGreen * halfGreen + (double) halfBlue * halfBlue)
+                    / halfWeight;
+
+            if (value > max) {
+                max = value;
+                cut = position;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Computes the sum of the squared distances of the pixels of a box from their average color.
+     *
+     * @param box
+     *            the box
+     *
+     * @return the variance
+     */
+    private double variance(int box) {
+        final double red = volume(box, momentsRed);
+        final double green = volume(box, momentsGreen);
+        final double blue = volume(box, momentsBlue);
+        return volume(box, moments) - (red * red + green * green + blue * blue) / volume(box, weights);
+    }
+
+    /**
+     * Computes the number of cells of a box.
+     *
+     * @param box
+     *            the box
+     *
+     * @return the volume
+     */
+    private int volume(int box) {
+        return (upper[box * 3 + RED] - lower[box * 3 + RED]) * (upper[box * 3 + GREEN] - lower[box * 3 + GREEN])
+                * (upper[box * 3 + BLUE] - lower[box * 3 + BLUE]);
+    }
+
+    /**
+     * Computes the moment of a box from the cumulative moments.
+     *
+     * @param box
+     *            the box
+     * @param moment
+     *            the cumulative moments
+     *
+     * @return the moment of the box
+     */
+    private long volume(int box, long[] moment) {
+        final int r0 = lower[box * 3 + RED];
+        final int r1 = upper[box * 3 + RED];
+        final int g0 = lower[box * 3 + GREEN];
+        final int g1 = upper[box * 3 + GREEN];
+        final int b0 = lower[box * 3 + BLUE];
+        final int b1 = upper[box * 3 + BLUE];
+        return moment[index(r1, g1, b1)] - moment[index(r1, g1, b0)] - moment[index(r1, g0, b1)]
+                + moment[index(r1, g0, b0)] - moment[index(r0, g1, b1)] + moment[index(r0, g1, b0)]
+                + moment[index(r0, g0, b1)] - moment[index(r0, g0, b0)];
+    }
+
+    /**
+     * Computes the moment of a box from the cumulative moments.
+     *
+     * @param box
+     *            the box
+     * @param moment
+     *            the cumulative moments
+     *
+     * @return the moment of the box
+     */
+    private double volume(int box, double[] moment) {
+        final int r0 = lower[box * 3 + RED];
+        final int r1 = upper[box * 3 + RED];
+        final int g0 = lower[box * 3 + GREEN];
+        final int g1 = upper[box * 3 + GREEN];
+        final int b0 = lower[box * 3 + BLUE];
+        final int b1 = upper[box * 3 + BLUE];
+        return moment[index(r1, g1, b1)] - moment[index(r1, g1, b0)] - moment[index(r1, g0, b1)]
+                + moment[index(r1, g0, b0)] - moment[index(r0, g1, b1)] + moment[index(r0, g1, b0)]
+                + moment[index(r0, g0, b1)] - moment[index(r0, g0, b0)];
+    }
+
+    /**
+     * Computes the part of the moment of a box not depending on the position of a cut across a direction.
+     *
+     * @param box
+     *            the box
+     * @param direction
+     *            the direction
+     * @param moment
+     *            the cumulative moments
+     *
+     * @return the part of the moment
+     */
+    private long bottom(int box, int direction, long[] moment) {
+        final int r0 = lower[box * 3 + RED];
+        final int r1 = upper[box * 3 + RED];
+        final int g0 = lower[box * 3 + GREEN];
+        final int g1 = upper[box * 3 + GREEN];
+        final int b0 = lower[box * 3 + BLUE];
+        final int b1 = upper[box * 3 + BLUE];
+        switch (direction) {
+            case RED:
+                return -moment[index(r0, g1, b1)] + moment[index(r0, g1, b0)] + moment[index(r0, g0, b1)]
+                        - moment[index(r0, g0, b0)];
+            case GREEN:
+                return -moment[index(r1, g0, b1)] + moment[index(r1, g0, b0)] + moment[index(r0, g0, b1)]
+                        - moment[index(r0, g0, b0)];
+            default:
+                return -moment[index(r1, g1, b0)] + moment[index(r1, g0, b0)] + moment[index(r0, g1, b0)]
+                        - moment[index(r0, g0, b0)];
+        }
+    }
+
+    /**
+     * Computes the part of the moment of a box depending on the position of a cut across a direction.
+     *
+     * @param box
+     *            the box
+     * @param direction
+     *            the direction
+     * @param position
+     *            the position of the cut
+     * @param moment
+     *            the cumulative moments
+     *
+     * @return the part of the moment
+     */
+    private long top(int box, int direction, int position, long[] moment) {
+        final int r0 = lower[box * 3 + RED];
+        final int r1 = upper[box * 3 + RED];
+        final int g0 = lower[box * 3 + GREEN];
+        final int g1 = upper[box * 3 + GREEN];
+        final int b0 = lower[box * 3 + BLUE];
+        final int b1 = upper[box * 3 + BLUE];
+        switch (direction) {
+            case RED:
+                return moment[index(position, g1, b1)] - moment[index(position, g1, b0)]
+                        - moment[index(position, g0, b1)] + moment[index(position, g0, b0)];
+            case GREEN:
+                return moment[index(r1, position, b1)] - moment[index(r1, position, b0)]
+                        - moment[index(r0, position, b1)] + moment[index(r0, position, b0)];
+            default:
+                return moment[index(r1, g1, position)] - moment[index(r1, g0, position)]
+                        - moment[index(r0, g1, position)] + moment[index(r0, g0, position)];
+        }
+    }
+
+    /**
+     * Assigns the cells of a box to the box.
+     *
+     * @param box
+     *            the box
+     */
+    private void mark(int box) {
+        for (int red = lower[box * 3 + RED] + 1; red <= upper[box * 3 + RED]; red++) {
+            for (int green = lower[box * 3 + GREEN] + 1; green <= upper[box * 3 + GREEN]; green++) {
+                for (int blue = lower[box * 3 + BLUE] + 1; blue <= upper[box * 3 + BLUE]; blue++) {
+                    tags[index(red, green, blue)] = box;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the index of the cell of a color.
+     *
+     * @param color
+     *            the color
+     *
+     * @return the index
+     */
+    private static int cell(int color) {
+        return index((color >> 19 & 0x1F) + 1, (color >> 11 & 0x1F) + 1, (color >> 3 & 0x1F) + 1);
+    }
+
+    /**
+     * Computes the index of a cell.
+     *
+     * @param red
+     *            the red position
+     * @param green
+     *            the green position
+     * @param blue
+     *            the blue position
+     *
+     * @return the index
+     */
+    private static int index(int red, int green, int blue) {
+        return (red * SIDE + green) * SIDE + blue;
+    }
+
+    /**
+     * Computes the rounded average.
+     *
+     * @param sum
+     *            the sum
+     * @param weight
+     *            the number of values
+     *
+     * @return the average
+     */
+    private static int average(long sum, long weight) {
+        return (int) ((sum + weight / 2) / weight);
+    }
+}
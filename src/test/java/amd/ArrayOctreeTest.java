@@ -0,0 +1,163 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package amd;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for {@link ArrayOctree}.
+ */
+class ArrayOctreeTest {
+
+    /**
+     * The same octree gives the same palettes and colors as {@link Quantize} for many images.
+     */
+    @Test
+    void matchesQuantize() {
+        final ArrayOctree octree = new ArrayOctree();
+        final Random random = new Random(0);
+        for (final int maxColors : new int[] { 255, 16, 2 }) {
+            for (final int size : new int[] { 1, 1000, 20000 }) {
+                // Random colors, few colors and one dominant color
+                assertSameAsQuantize(octree, pixels(random, size, 0xffffff, 0), maxColors);
+                assertSameAsQuantize(octree, pixels(random, size, 0x3f, 0x040404), maxColors);
+                assertSameAsQuantize(octree, pixels(random, size, 1, 0x123456), maxColors);
+            }
+        }
+    }
+
+    /**
+     * All assignment strategies give the same palettes as {@link Quantize}, the exact ones also the same colors.
+     */
+    @Test
+    void assignmentStrategies() {
+        final Random random = new Random(0);
+        for (final ArrayOctree.Assignment assignment : ArrayOctree.Assignment.values()) {
+            final ArrayOctree octree = new ArrayOctree(assignment);
+            for (final int size : new int[] { 1, 1000, 20000 }) {
+                final int[] pixels = pixels(random, size, 0xffffff, 0);
+                final int[] expectedPixels = pixels.clone();
+                final int[] expectedColormap = Quantize.quantizeImage(expectedPixels, 64);
+
+                final int[] colormap = octree.quantizeImage(pixels, 64);
+                assertArrayEquals(expectedColormap, colormap);
+                if (assignment == ArrayOctree.Assignment.LOOKUP_TABLE) {
+                    for (final int index : pixels) {
+                        assertTrue(index >= 0 && index < colormap.length);
+                    }
+                } else {
+                    assertArrayEquals(expectedPixels, pixels);
+                }
+            }
+        }
+    }
+
+    /**
+     * Quantizing a histogram of the colors gives the same palette and colors as quantizing the pixels.
+     */
+    @Test
+    void histogramMatchesPixels() {
+        final ArrayOctree octree = new ArrayOctree();
+        final Random random = new Random(0);
+        for (final int maxColors : new int[] { 255, 16, 2 }) {
+            for (final int bound : new int[] { 0xffffff, 0x3f, 1 }) {
+                final int[] pixels = pixels(random, 20000, bound, bound == 0xffffff ? 0 : 0x040404);
+
+                final Map<Integer, Integer> histogram = new LinkedHashMap<>();
+                for (final int pixel : pixels) {
+                    histogram.merge(pixel, 1, Integer::sum);
+                }
+                final int[] colors = new int[histogram.size()];
+                final int[] counts = new int[histogram.size()];
+                int index = 0;
+                for (final Map.Entry<Integer, Integer> entry : histogram.entrySet()) {
+                    colors[index] = entry.getKey();
+                    counts[index++] = entry.getValue();
+                }
+                final int[] distinctColors = colors.clone();
+
+                final int[] colormap = octree.quantizeHistogram(colors, counts, colors.length, maxColors, depth -> {
+                    // Ignore
+                });
+                final Map<Integer, Integer> assigned = new HashMap<>();
+                for (int i = 0; i < colors.length; i++) {
+                    assigned.put(distinctColors[i], colors[i]);
+                }
+                final int[] indices = new int[pixels.length];
+                for (int i = 0; i < pixels.length; i++) {
+                    indices[i] = assigned.get(pixels[i]);
+                }
+
+                assertArrayEquals(octree.quantizeImage(pixels, maxColors), colormap);
+                assertArrayEquals(pixels, indices);
+            }
+        }
+    }
+
+    /**
+     * Only trees deep enough to be pruned depend on the order of the colors.
+     */
+    @Test
+    void dependsOnColorOrder() {
+        assertFalse(ArrayOctree.dependsOnColorOrder(2));
+        assertFalse(ArrayOctree.dependsOnColorOrder(255));
+        assertFalse(ArrayOctree.dependsOnColorOrder(1023));
+        assertTrue(ArrayOctree.dependsOnColorOrder(1024));
+        assertTrue(ArrayOctree.dependsOnColorOrder(20000));
+    }
+
+    /**
+     * Creates random pixels.
+     *
+     * @param random
+     *            the random
+     * @param size
+     *            the number of pixels
+     * @param bound
+     *            the bound of the random values
+     * @param multiplier
+     *            the multiplier of the random values, 0 to use them as they are
+     *
+     * @return the pixels
+     */
+    private static int[] pixels(Random random, int size, int bound, int multiplier) {
+        final int[] pixels = new int[size];
+        for (int i = 0; i < size; i++) {
+            final int value = random.nextInt(bound + 1);
+            pixels[i] = 0xff000000 | (multiplier == 0 ? value : value * multiplier);
+        }
+        return pixels;
+    }
+
+    /**
+     * Asserts that the octree quantizes the pixels the same way as {@link Quantize}.
+     *
+     * @param octree
+     *            the octree
+     * @param pixels
+     *            the pixels
+     * @param maxColors
+     *            the max colors
+     */
+    private static void assertSameAsQuantize(ArrayOctree octree, int[] pixels, int maxColors) {
+        final int[] expectedPixels = pixels.clone();
+        final int[] expectedColormap = Quantize.quantizeImage(expectedPixels, maxColors);
+
+        assertArrayEquals(expectedColormap, octree.quantizeImage(pixels, maxColors));
+        assertArrayEquals(expectedPixels, pixels);
+    }
+}
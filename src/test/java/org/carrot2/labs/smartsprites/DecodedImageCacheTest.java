@@ -0,0 +1,150 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test cases for {@link DecodedImageCache}.
+ */
+class DecodedImageCacheTest {
+
+    /**
+     * Cached images are returned for unchanged files.
+     *
+     * @param tempDir
+     *            the temp dir
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void returnsCachedImage(@TempDir File tempDir) throws IOException {
+        final File file = imageFile(tempDir, "a.png", "a");
+        final DecodedImageCache cache = new DecodedImageCache();
+        final BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+
+        assertNull(cache.get(cache.key(file.getPath())));
+        cache.put(cache.key(file.getPath()), image);
+        assertSame(image, cache.get(cache.key(file.getPath())));
+
+        assertEquals(1, cache.getStats().hitCount());
+        assertEquals(1, cache.getStats().missCount());
+    }
+
+    /**
+     * Changed files get different keys.
+     *
+     * @param tempDir
+     *            the temp dir
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void changedFileHasDifferentKey(@TempDir File tempDir) throws IOException {
+        final File file = imageFile(tempDir, "a.png", "a");
+        final DecodedImageCache cache = new DecodedImageCache();
+        final DecodedImageCache.Key key = cache.key(file.getPath());
+
+        Files.write(file.toPath(), new byte[] { 'b', 'b' });
+        assertNotEquals(key, cache.key(file.getPath()));
+    }
+
+    /**
+     * Only files are cached.
+     *
+     * @param tempDir
+     *            the temp dir
+     */
+    @Test
+    void missingFileHasNoKey(@TempDir File tempDir) {
+        final DecodedImageCache cache = new DecodedImageCache();
+
+        assertNull(cache.key(new File(tempDir, "missing.png").getPath()));
+        assertNull(cache.key(tempDir.getPath()));
+        assertNull(cache.key(""));
+    }
+
+    /**
+     * Least recently used images are evicted when the cache exceeds its size.
+     *
+     * @param tempDir
+     *            the temp dir
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void evictsLeastRecentlyUsedImages(@TempDir File tempDir) throws IOException {
+        // Each image takes 10 * 10 * 4 bytes, the cache holds two of them
+        final DecodedImageCache cache = new DecodedImageCache(800);
+        final DecodedImageCache.Key a = cache.key(imageFile(tempDir, "a.png", "a").getPath());
+        final DecodedImageCache.Key b = cache.key(imageFile(tempDir, "b.png", "b").getPath());
+        final DecodedImageCache.Key c = cache.key(imageFile(tempDir, "c.png", "c").getPath());
+
+        cache.put(a, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+        cache.put(b, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+        cache.get(a);
+        cache.put(c, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+
+        assertNull(cache.get(b));
+        assertEquals(1, cache.getStats().evictionCount());
+    }
+
+    /**
+     * Invalidated files are decoded again.
+     *
+     * @param tempDir
+     *            the temp dir
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void invalidatesFile(@TempDir File tempDir) throws IOException {
+        final File file = imageFile(tempDir, "a.png", "a");
+        final DecodedImageCache cache = new DecodedImageCache();
+        cache.put(cache.key(file.getPath()), new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB));
+
+        cache.invalidate(new File(tempDir, "./a.png").getPath());
+        assertNull(cache.get(cache.key(file.getPath())));
+    }
+
+    /**
+     * Creates a file standing for an image, the content is never decoded.
+     *
+     * @param dir
+     *            the dir
+     * @param name
+     *            the name
+     * @param content
+     *            the content
+     *
+     * @return the file
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static File imageFile(File dir, String name, String content) throws IOException {
+        final File file = new File(dir, name);
+        Files.writeString(file.toPath(), content);
+        return file;
+    }
+}
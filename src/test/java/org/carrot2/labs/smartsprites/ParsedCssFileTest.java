@@ -0,0 +1,88 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for {@link ParsedCssFile}.
+ */
+class ParsedCssFileTest {
+
+    /**
+     * Test empty content.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testEmptyContent() throws IOException {
+        checkLines("");
+    }
+
+    /**
+     * Test unix line terminators.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testUnixLineTerminators() throws IOException {
+        checkLines(".a {\n  color: red;\n}\n");
+        checkLines(".a {\n  color: red;\n}");
+        checkLines("\n\n.a {}\n\n");
+    }
+
+    /**
+     * Test windows and mac line terminators.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testWindowsAndMacLineTerminators() throws IOException {
+        checkLines(".a {\r\n  color: red;\r\n}\r\n");
+        checkLines(".a {\r  color: red;\r}");
+        checkLines("\r\n\r\r\n\n.a {}\r");
+    }
+
+    /**
+     * Checks that the content is split into the same lines as {@link BufferedReader#readLine()} returns.
+     *
+     * @param content
+     *            the content
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static void checkLines(String content) throws IOException {
+        final List<String> expected = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                expected.add(line);
+            }
+        }
+
+        final ParsedCssFile parsedCssFile = new ParsedCssFile("style.css", content);
+        final List<String> actual = new ArrayList<>();
+        for (int i = 0; i < parsedCssFile.getLineCount(); i++) {
+            actual.add(parsedCssFile.getLine(i));
+        }
+
+        assertEquals(expected, actual);
+    }
+}
@@ -15,7 +15,14 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -27,6 +34,8 @@ import org.carrot2.labs.smartsprites.SmartSpritesParameters.PngDepth;
 import org.carrot2.labs.smartsprites.message.Message;
 import org.carrot2.labs.smartsprites.message.Message.MessageLevel;
 import org.carrot2.labs.smartsprites.message.Message.MessageType;
+import org.carrot2.labs.smartsprites.resource.FileSystemResourceHandler;
+import org.carrot2.labs.smartsprites.resource.ResourceHandler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -148,6 +157,60 @@ class SpriteBuilderTest extends TestWithMemoryMessageSink {
         assertThat(messages).doesNotHaveMessagesOfLevel(MessageLevel.WARN);
     }
 
+    /**
+     * Test packed sprite, the small images stacked next to the large one.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testPackedSprite() throws IOException {
+        final File testDir = testDir("packed-sprite");
+        buildSprites(testDir);
+
+        assertThat(processedCss()).hasSameTextualContentAs(expectedCss());
+        assertThat(testDir.toPath().resolve("img/sprite.png")).exists();
+        assertThat(sprite(testDir)).hasSize(new Dimension(48 + 17, 47));
+        assertThat(messages).doesNotHaveMessagesOfLevel(MessageLevel.WARN);
+    }
+
+    /**
+     * Test sprite split into sheets, the logo does not fit in the first sheet within the maximum height.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testSpriteSheets() throws IOException {
+        final File testDir = testDir("sprite-sheets");
+        buildSprites(testDir);
+
+        assertThat(processedCss()).hasSameTextualContentAs(expectedCss());
+        assertThat(testDir.toPath().resolve("img/sprite-test.png")).doesNotExist();
+        assertThat(sprite(testDir, "img/sprite-test-1.png")).hasSize(new Dimension(48, 17 + 16));
+        assertThat(sprite(testDir, "img/sprite-test-2.png")).hasSize(new Dimension(48, 47));
+        assertThat(messages).doesNotHaveMessagesOfLevel(MessageLevel.WARN);
+    }
+
+    /**
+     * Test trimmed sprite, the transparent borders across the sprites cropped on the side opposite to the alignment,
+     * so that no position needs an offset, including in a sprite whose widest image is trimmed.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testTrimmedSprite() throws IOException {
+        final File testDir = testDir("trimmed-sprite");
+        buildSprites(testDir);
+
+        assertThat(processedCss()).hasSameTextualContentAs(expectedCss());
+        assertThat(sprite(testDir, "img/sprite-vertical.png")).hasSize(new Dimension(32 - 8, 32 + 32 + 20));
+        assertThat(sprite(testDir, "img/sprite-horizontal.png")).hasSize(new Dimension(32, 32 - 8));
+        assertThat(sprite(testDir, "img/sprite-widest.png")).hasSize(new Dimension(32 - 8, 32 + 20));
+        assertThat(messages).doesNotHaveMessagesOfLevel(MessageLevel.WARN);
+    }
+
     /**
      * Test multiple css files.
      *
@@ -299,6 +362,29 @@ class SpriteBuilderTest extends TestWithMemoryMessageSink {
                         "background-position", 27));
     }
 
+    /**
+     * Test overriding css properties are reported against the right file and line in a parallel build.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testOverridingCssPropertiesParallelBuild() throws IOException {
+        final File testDir = testDir("overriding-css-properties");
+        final SmartSpritesParameters parameters = new SmartSpritesParameters(testDir.getPath());
+        parameters.setThreads(4);
+        buildSprites(parameters);
+
+        assertThat(processedCss()).hasSameTextualContentAs(expectedCss());
+
+        final String styleCssPath = testDir.toPath().resolve("css/style.css").toString();
+        assertThat(messages).isEquivalentTo(Message.MessageLevel.WARN,
+                new Message(Message.MessageLevel.WARN, Message.MessageType.OVERRIDING_PROPERTY_FOUND, styleCssPath, 17,
+                        "background-image", 16),
+                new Message(Message.MessageLevel.WARN, Message.MessageType.OVERRIDING_PROPERTY_FOUND, styleCssPath, 28,
+                        "background-position", 27));
+    }
+
     /**
      * Test absolute image url.
      *
@@ -449,6 +535,14 @@ class SpriteBuilderTest extends TestWithMemoryMessageSink {
         assertThat(testDir.toPath().resolve("img/sprite.png")).exists();
         assertThat(sprite(testDir)).hasSize(new Dimension(17 + 19, 19));
         assertThat(messages).doesNotHaveMessagesOfLevel(MessageLevel.WARN);
+
+        // Two references render the same images as the previous ones, 17 x 19 and 19 x 19 pixels
+        assertThat(count(messages, MessageType.DUPLICATE_IMAGES_REUSED)).isEqualTo(1);
+        for (final Message message : messages) {
+            if (message.type == MessageType.DUPLICATE_IMAGES_REUSED) {
+                assertThat(message.arguments).containsExactly("test", 2, 4L * (17 * 19 + 19 * 19));
+            }
+        }
     }
 
     /**
@@ -530,6 +624,265 @@ class SpriteBuilderTest extends TestWithMemoryMessageSink {
                         "many-colors", 293, 255));
     }
 
+    /**
+     * Test parallel build produces the same output and messages as a sequential build.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testParallelBuild() throws IOException {
+        final File testDir = testDir("indexed-color");
+        final SmartSpritesParameters parameters = filesystemSmartSpritesParameters(testDir, null, null,
+                MessageLevel.INFO, SmartSpritesParameters.DEFAULT_CSS_FILE_SUFFIX, PngDepth.INDEXED,
+                SmartSpritesParameters.DEFAULT_CSS_FILE_ENCODING);
+        buildSprites(parameters);
+
+        final List<Message> sequentialMessages = new ArrayList<>(messages);
+        final String sequentialCss = FileUtils.readFileToString(processedCss(), StandardCharsets.UTF_8);
+        messages.clear();
+
+        parameters.setThreads(4);
+        buildSprites(parameters);
+
+        assertThat(processedCss()).hasContent(sequentialCss);
+        assertThat(messages).isEquivalentTo(MessageLevel.INFO, filter(sequentialMessages, MessageLevel.INFO));
+        assertThat(messages).isEquivalentTo(MessageLevel.WARN, filter(sequentialMessages, MessageLevel.WARN));
+        org.carrot2.labs.test.Assertions.assertThat(sprite(testDir, "img/sprite-many-colors.png")).isIndexedColor()
+                .doesNotHaveAlpha();
+    }
+
+    /**
+     * Test parallel build of sprites with many individual images writes the same sprite images and logs the same
+     * messages in the same order as a sequential build.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testParallelBuildMultipleImages() throws IOException {
+        final File testDir = testDir("real-world-example");
+        final SmartSpritesParameters parameters = filesystemSmartSpritesParameters(testDir, null, null,
+                MessageLevel.INFO, SmartSpritesParameters.DEFAULT_CSS_FILE_SUFFIX,
+                SmartSpritesParameters.DEFAULT_SPRITE_PNG_DEPTH, SmartSpritesParameters.DEFAULT_CSS_FILE_ENCODING);
+        final File[] sprites = { testDir.toPath().resolve("img/sprite-vert.png").toFile(),
+                testDir.toPath().resolve("img/sprite-horiz.png").toFile() };
+        buildSprites(parameters);
+
+        final List<Message> sequentialMessages = new ArrayList<>(messages);
+        final String sequentialCss = FileUtils.readFileToString(processedCss(css("css/common.css")),
+                StandardCharsets.UTF_8);
+        final List<byte[]> sequentialSprites = new ArrayList<>();
+        for (final File sprite : sprites) {
+            sequentialSprites.add(Files.readAllBytes(sprite.toPath()));
+            assertThat(sprite.delete()).isTrue();
+        }
+        assertThat(count(messages, MessageType.READING_IMAGE)).isGreaterThan(sprites.length);
+        messages.clear();
+
+        parameters.setThreads(4);
+        buildSprites(parameters);
+
+        assertThat(processedCss(css("css/common.css"))).hasContent(sequentialCss);
+        for (int i = 0; i < sprites.length; i++) {
+            assertThat(sprites[i]).hasBinaryContent(sequentialSprites.get(i));
+        }
+        assertThat(messages).isEquivalentTo(MessageLevel.INFO, filter(sequentialMessages, MessageLevel.INFO));
+        assertThat(messages).isEquivalentTo(MessageLevel.WARN, filter(sequentialMessages, MessageLevel.WARN));
+    }
+
+    /**
+     * Test the first declaration of a sprite id wins in a parallel build the same as in a sequential build.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testSpriteIdRedefinitionParallelBuild() throws IOException {
+        final File testDir = testDir("sprite-id-redefinition");
+        final SmartSpritesParameters parameters = filesystemSmartSpritesParameters(testDir, null, null,
+                MessageLevel.INFO, SmartSpritesParameters.DEFAULT_CSS_FILE_SUFFIX,
+                SmartSpritesParameters.DEFAULT_SPRITE_PNG_DEPTH, SmartSpritesParameters.DEFAULT_CSS_FILE_ENCODING);
+        buildSprites(parameters);
+
+        final List<Message> sequentialMessages = new ArrayList<>(messages);
+        final String sequentialCss = FileUtils.readFileToString(processedCss(), StandardCharsets.UTF_8);
+        final String sequentialCss2 = FileUtils.readFileToString(processedCss(css("css/style2.css")),
+                StandardCharsets.UTF_8);
+        final String sequentialCss3 = FileUtils.readFileToString(processedCss(css("css/style3.css")),
+                StandardCharsets.UTF_8);
+        assertThat(processedCss()).hasSameTextualContentAs(expectedCss());
+        assertThat(processedCss(css("css/style2.css"))).hasSameTextualContentAs(css("css/style2-expected.css"));
+        assertThat(processedCss(css("css/style3.css"))).hasSameTextualContentAs(css("css/style3-expected.css"));
+        assertThat(testDir.toPath().resolve("img/sprite-redefined.png")).doesNotExist();
+        assertThat(count(messages, MessageType.IGNORING_SPRITE_IMAGE_REDEFINITION)).isEqualTo(1);
+        assertThat(filter(messages, MessageLevel.WARN).get(0).cssPath)
+                .isEqualTo(css("css/style2.css").getPath());
+        messages.clear();
+
+        parameters.setThreads(4);
+        buildSprites(parameters);
+
+        assertThat(processedCss()).hasContent(sequentialCss);
+        assertThat(processedCss(css("css/style2.css"))).hasContent(sequentialCss2);
+        assertThat(processedCss(css("css/style3.css"))).hasContent(sequentialCss3);
+        assertThat(testDir.toPath().resolve("img/sprite-redefined.png")).doesNotExist();
+        assertThat(messages).isEquivalentTo(MessageLevel.INFO, filter(sequentialMessages, MessageLevel.INFO));
+        assertThat(messages).isEquivalentTo(MessageLevel.WARN, filter(sequentialMessages, MessageLevel.WARN));
+    }
+
+    /**
+     * Test incremental build.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testIncrementalBuild() throws IOException {
+        final File testDir = testDir("indexed-color");
+        final SmartSpritesParameters parameters = filesystemSmartSpritesParameters(testDir, null, null,
+                MessageLevel.INFO, SmartSpritesParameters.DEFAULT_CSS_FILE_SUFFIX,
+                SmartSpritesParameters.DEFAULT_SPRITE_PNG_DEPTH, SmartSpritesParameters.DEFAULT_CSS_FILE_ENCODING);
+        parameters.setIncremental(true);
+        buildSprites(parameters);
+
+        final int spriteCount = count(messages, MessageType.WRITING_SPRITE_IMAGE);
+        final String fullBuildCss = FileUtils.readFileToString(processedCss(), StandardCharsets.UTF_8);
+        assertThat(spriteCount).isPositive();
+        assertThat(count(messages, MessageType.SPRITE_IMAGE_UP_TO_DATE)).isZero();
+        final Path manifest = testDir.toPath().resolve(SpriteManifest.FILE_NAME);
+        assertThat(manifest).exists();
+        messages.clear();
+
+        // Nothing changed, all sprites are reused and the manifest is left untouched
+        final FileTime manifestTime = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(manifest, manifestTime);
+        buildSprites(parameters);
+        assertThat(processedCss()).hasContent(fullBuildCss);
+        assertThat(count(messages, MessageType.WRITING_SPRITE_IMAGE)).isZero();
+        assertThat(count(messages, MessageType.SPRITE_IMAGE_UP_TO_DATE)).isEqualTo(spriteCount);
+        assertThat(Files.getLastModifiedTime(manifest)).isEqualTo(manifestTime);
+        messages.clear();
+
+        // A removed sprite image is rebuilt
+        final File spriteFile = testDir.toPath().resolve("img/sprite-many-colors.png").toFile();
+        assertThat(spriteFile.delete()).isTrue();
+        buildSprites(parameters);
+        assertThat(processedCss()).hasContent(fullBuildCss);
+        assertThat(spriteFile).exists();
+        assertThat(count(messages, MessageType.WRITING_SPRITE_IMAGE)).isEqualTo(1);
+        assertThat(count(messages, MessageType.SPRITE_IMAGE_UP_TO_DATE)).isEqualTo(spriteCount - 1);
+    }
+
+    /**
+     * Test rebuilding only the sprites affected by changed files, as done in watch mode.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testRebuildAfterChanges() throws IOException {
+        final File testDir = testDir("indexed-color");
+        final SmartSpritesParameters parameters = filesystemSmartSpritesParameters(testDir, null, null,
+                MessageLevel.INFO, SmartSpritesParameters.DEFAULT_CSS_FILE_SUFFIX,
+                SmartSpritesParameters.DEFAULT_SPRITE_PNG_DEPTH, SmartSpritesParameters.DEFAULT_CSS_FILE_ENCODING);
+        final SpriteBuildState state = new SpriteBuildState();
+        final DecodedImageCache decodedImageCache = new DecodedImageCache();
+        spriteBuilder = new SpriteBuilder(parameters, messageLog, new FileSystemResourceHandler(
+                parameters.getDocumentRootDir(), parameters.getCssFileEncoding(), messageLog), decodedImageCache);
+        spriteBuilder.buildSprites(state);
+
+        final int spriteCount = count(messages, MessageType.WRITING_SPRITE_IMAGE);
+        final String fullBuildCss = FileUtils.readFileToString(processedCss(), StandardCharsets.UTF_8);
+        assertThat(spriteCount).isPositive();
+        messages.clear();
+
+        // Nothing changed, nothing is written
+        spriteBuilder.buildSprites(state);
+        assertThat(count(messages, MessageType.READING_IMAGE)).isZero();
+        assertThat(count(messages, MessageType.WRITING_SPRITE_IMAGE)).isZero();
+        assertThat(count(messages, MessageType.WRITING_CSS)).isZero();
+        messages.clear();
+
+        // A changed individual image rebuilds its sprite only
+        final String changedImage = new File(testDir, "img/many-colors.png").getPath();
+        assertThat(state.fileChanged(changedImage)).isTrue();
+        decodedImageCache.invalidate(changedImage);
+        final long missCount = decodedImageCache.getStats().missCount();
+        spriteBuilder.buildSprites(state);
+        assertThat(processedCss()).hasContent(fullBuildCss);
+        assertThat(decodedImageCache.getStats().missCount() - missCount).isEqualTo(1);
+        assertThat(count(messages, MessageType.WRITING_SPRITE_IMAGE)).isEqualTo(1);
+        messages.clear();
+
+        // Changes to the written files are ignored
+        assertThat(state.fileChanged(processedCss().getPath())).isFalse();
+
+        // A changed CSS file rebuilds all sprites it defines, reusing the decoded images
+        assertThat(state.fileChanged(sourceCss().getPath())).isTrue();
+        final long hitCount = decodedImageCache.getStats().hitCount();
+        spriteBuilder.buildSprites(state);
+        assertThat(processedCss()).hasContent(fullBuildCss);
+        assertThat(count(messages, MessageType.WRITING_SPRITE_IMAGE)).isEqualTo(spriteCount);
+        assertThat(decodedImageCache.getStats().missCount()).isEqualTo(missCount + 1);
+        assertThat(count(messages, MessageType.READING_IMAGE)).isPositive();
+        assertThat(decodedImageCache.getStats().hitCount() - hitCount)
+                .isEqualTo(count(messages, MessageType.READING_IMAGE));
+    }
+
+    /**
+     * Test that decoded images are not cached if the resource handler does not read local files.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testDecodedImageCacheRequiresLocalFiles() throws IOException {
+        final File testDir = testDir("indexed-color");
+        final SmartSpritesParameters parameters = filesystemSmartSpritesParameters(testDir, null, null,
+                MessageLevel.INFO, SmartSpritesParameters.DEFAULT_CSS_FILE_SUFFIX,
+                SmartSpritesParameters.DEFAULT_SPRITE_PNG_DEPTH, SmartSpritesParameters.DEFAULT_CSS_FILE_ENCODING);
+        final ResourceHandler fileSystemResourceHandler = new FileSystemResourceHandler(
+                parameters.getDocumentRootDir(), parameters.getCssFileEncoding(), messageLog);
+        final ResourceHandler resourceHandler = new ResourceHandler() {
+            @Override
+            public InputStream getResourceAsInputStream(String path) throws IOException {
+                return fileSystemResourceHandler.getResourceAsInputStream(path);
+            }
+
+            @Override
+            public Reader getResourceAsReader(String path) throws IOException {
+                return fileSystemResourceHandler.getResourceAsReader(path);
+            }
+
+            @Override
+            public OutputStream getResourceAsOutputStream(String path) throws IOException {
+                return fileSystemResourceHandler.getResourceAsOutputStream(path);
+            }
+
+            @Override
+            public Writer getResourceAsWriter(String path) throws IOException {
+                return fileSystemResourceHandler.getResourceAsWriter(path);
+            }
+
+            @Override
+            public String getResourcePath(String cssFilePath, String cssRelativePath) {
+                return fileSystemResourceHandler.getResourcePath(cssFilePath, cssRelativePath);
+            }
+        };
+        final DecodedImageCache decodedImageCache = new DecodedImageCache();
+        spriteBuilder = new SpriteBuilder(parameters, messageLog, resourceHandler, decodedImageCache);
+        spriteBuilder.buildSprites();
+        final String firstBuildCss = FileUtils.readFileToString(processedCss(), StandardCharsets.UTF_8);
+        final int readCount = count(messages, MessageType.READING_IMAGE);
+        messages.clear();
+
+        spriteBuilder.buildSprites();
+        assertThat(processedCss()).hasContent(firstBuildCss);
+        assertThat(count(messages, MessageType.READING_IMAGE)).isEqualTo(readCount);
+        assertThat(decodedImageCache.getStats().requestCount()).isZero();
+    }
+
     /**
      * Test matte color.
      *
@@ -831,6 +1184,9 @@ class SpriteBuilderTest extends TestWithMemoryMessageSink {
         // Delete sprites
         org.carrot2.util.FileUtils.deleteThrowingExceptions(
                 Path.of(rootDir, "img").toFile().listFiles((FilenameFilter) (dir, name) -> name.startsWith("sprite")));
+
+        // Delete the incremental build manifest
+        Files.deleteIfExists(Path.of(rootDir, SpriteManifest.FILE_NAME));
     }
 
     /**
@@ -989,6 +1345,46 @@ class SpriteBuilderTest extends TestWithMemoryMessageSink {
         spriteBuilder.buildSprites();
     }
 
+    /**
+     * Returns messages of the provided level.
+     *
+     * @param messages
+     *            the messages
+     * @param level
+     *            the level
+     *
+     * @return the messages of the provided level
+     */
+    private static List<Message> filter(List<Message> messages, MessageLevel level) {
+        final List<Message> result = new ArrayList<>();
+        for (final Message message : messages) {
+            if (message.level == level) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts messages of the provided type.
+     *
+     * @param messages
+     *            the messages
+     * @param type
+     *            the type
+     *
+     * @return the number of messages of the provided type
+     */
+    private static int count(List<Message> messages, MessageType type) {
+        int count = 0;
+        for (final Message message : messages) {
+            if (message.type == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Filesystem smart sprites parameters.
      *
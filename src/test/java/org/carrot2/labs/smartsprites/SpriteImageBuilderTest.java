@@ -0,0 +1,318 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteImageFormat;
+import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteImageLayout;
+import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteUidType;
+import org.carrot2.labs.smartsprites.SpriteLayoutProperties.SpriteAlignment;
+import org.carrot2.labs.smartsprites.message.Message.MessageType;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for {@link SpriteImageBuilder} laying out and drawing individual images.
+ */
+class SpriteImageBuilderTest extends TestWithMemoryMessageSink {
+
+    /** The width/height of the sprites drawn in the rendering tests. */
+    private static final int DIMENSION = 24;
+
+    /**
+     * An image with transparent borders and the same image without them, but with equal margins, share one area.
+     */
+    @Test
+    void sharesAreaOfImageWithTransparentBorders() {
+        final Map<SpriteReferenceOccurrence, BufferedImage> images = new LinkedHashMap<>();
+        images.put(occurrence(SpriteAlignment.LEFT, 0, 0, 0, 0), image(16, 16, 4, 4, 8, 8));
+        images.put(occurrence(SpriteAlignment.LEFT, 4, 4, 4, 4), image(8, 8, 0, 0, 8, 8));
+
+        final SpriteImage sprite = buildSprite(SpriteImageLayout.VERTICAL, images);
+
+        assertEquals(16, sprite.spriteHeight);
+        assertEquals(List.of(0, 0), verticalPositions(sprite));
+        assertEquals(MessageType.DUPLICATE_IMAGES_REUSED, messages.get(0).type);
+    }
+
+    /**
+     * Repeated images are compared with their transparent borders, which are repeated along with them.
+     */
+    @Test
+    void comparesRepeatedImagesWhole() {
+        final Map<SpriteReferenceOccurrence, BufferedImage> images = new LinkedHashMap<>();
+        images.put(occurrence(SpriteAlignment.LEFT, 0, 0, 0, 0), image(16, 1, 0, 0, 16, 1));
+        images.put(occurrence(SpriteAlignment.REPEAT, 0, 0, 0, 0), image(8, 8, 0, 0, 4, 8));
+        images.put(occurrence(SpriteAlignment.REPEAT, 0, 0, 0, 0), image(4, 8, 0, 0, 4, 8));
+        images.put(occurrence(SpriteAlignment.REPEAT, 0, 0, 0, 0), image(8, 8, 0, 0, 4, 8));
+
+        final SpriteImage sprite = buildSprite(SpriteImageLayout.VERTICAL, images);
+
+        assertEquals(17, sprite.spriteHeight);
+        assertEquals(List.of(0, 1, 9, 1), verticalPositions(sprite));
+    }
+
+    /**
+     * Fully transparent images render the same wherever they are drawn, so they share one area.
+     */
+    @Test
+    void sharesAreaOfTransparentImages() {
+        final Map<SpriteReferenceOccurrence, BufferedImage> images = new LinkedHashMap<>();
+        images.put(occurrence(SpriteAlignment.LEFT, 0, 0, 0, 0), image(4, 4, 0, 0, 0, 0));
+        images.put(occurrence(SpriteAlignment.LEFT, 2, 0, 0, 0), image(2, 4, 0, 0, 0, 0));
+        images.put(occurrence(SpriteAlignment.LEFT, 0, 0, 2, 0), image(4, 2, 0, 0, 0, 0));
+
+        final SpriteImage sprite = buildSprite(SpriteImageLayout.VERTICAL, images);
+
+        assertEquals(4, sprite.spriteHeight);
+        assertEquals(List.of(0, 0, 0), verticalPositions(sprite));
+    }
+
+    /**
+     * Images differing in their position within the area get separate areas.
+     */
+    @Test
+    void separatesImagesAtDifferentPositions() {
+        final Map<SpriteReferenceOccurrence, BufferedImage> images = new LinkedHashMap<>();
+        images.put(occurrence(SpriteAlignment.LEFT, 0, 0, 0, 0), image(16, 16, 4, 4, 8, 8));
+        images.put(occurrence(SpriteAlignment.LEFT, 4, 4, 5, 3), image(8, 8, 0, 0, 8, 8));
+
+        final SpriteImage sprite = buildSprite(SpriteImageLayout.VERTICAL, images);
+
+        assertEquals(32, sprite.spriteHeight);
+        assertEquals(List.of(0, 16), verticalPositions(sprite));
+    }
+
+    /**
+     * Drawing into a vertical sprite matches rendering the individual image separately.
+     */
+    @Test
+    void drawsVerticalAlignments() {
+        for (final SpriteAlignment alignment : new SpriteAlignment[] { SpriteAlignment.LEFT, SpriteAlignment.RIGHT,
+                SpriteAlignment.CENTER, SpriteAlignment.REPEAT }) {
+            checkDraw(SpriteImageLayout.VERTICAL, alignment);
+        }
+    }
+
+    /**
+     * Drawing into a horizontal sprite matches rendering the individual image separately.
+     */
+    @Test
+    void drawsHorizontalAlignments() {
+        for (final SpriteAlignment alignment : new SpriteAlignment[] { SpriteAlignment.TOP, SpriteAlignment.BOTTOM,
+                SpriteAlignment.CENTER, SpriteAlignment.REPEAT }) {
+            checkDraw(SpriteImageLayout.HORIZONTAL, alignment);
+        }
+    }
+
+    /**
+     * Drawing into a packed sprite matches rendering the individual image separately.
+     */
+    @Test
+    void drawsPacked() {
+        checkDraw(SpriteImageLayout.PACKED, SpriteAlignment.LEFT);
+    }
+
+    /**
+     * Checks that the individual image drawn into a larger sprite, with margins, matches both its separate rendering
+     * and the expected rendering.
+     *
+     * @param layout
+     *            the layout
+     * @param alignment
+     *            the alignment
+     */
+    private static void checkDraw(SpriteImageLayout layout, SpriteAlignment alignment) {
+        final String context = layout + " " + alignment;
+        final SpriteReferenceOccurrence occurrence = occurrence(alignment, 1, 2, 3, 4);
+        final BufferedImage image = image(4, 3, 0, 0, 4, 3);
+
+        final BufferedImage expected = expectedRendering(image, layout, alignment, 1, 2, 3, 4);
+        final BufferedImage rendered = occurrence.render(image, layout, DIMENSION);
+        assertEquals(expected.getWidth(), rendered.getWidth(), context);
+        assertEquals(expected.getHeight(), rendered.getHeight(), context);
+        assertArrayEquals(argb(expected), argb(rendered), context);
+
+        // Draw at an offset into a sprite with room around the area
+        final int areaX = SpriteImageLayout.VERTICAL.equals(layout) ? 0 : 5;
+        final int areaY = SpriteImageLayout.HORIZONTAL.equals(layout) ? 0 : 7;
+        final BufferedImage sprite = new BufferedImage(expected.getWidth() + areaX * 2,
+                expected.getHeight() + areaY * 2, BufferedImage.TYPE_4BYTE_ABGR);
+        occurrence.draw(image, layout, DIMENSION, sprite, areaX, areaY);
+
+        final BufferedImage expectedSprite = new BufferedImage(sprite.getWidth(), sprite.getHeight(),
+                BufferedImage.TYPE_4BYTE_ABGR);
+        expectedSprite.setRGB(areaX, areaY, expected.getWidth(), expected.getHeight(), argb(expected), 0,
+                expected.getWidth());
+        assertArrayEquals(argb(expectedSprite), argb(sprite), context);
+    }
+
+    /**
+     * Renders the individual image the way separately rendered images were drawn into sprites, pixel by pixel.
+     *
+     * @param image
+     *            the image
+     * @param layout
+     *            the layout
+     * @param alignment
+     *            the alignment
+     * @param marginLeft
+     *            the margin left
+     * @param marginRight
+     *            the margin right
+     * @param marginTop
+     *            the margin top
+     * @param marginBottom
+     *            the margin bottom
+     *
+     * @return the rendered image
+     */
+    private static BufferedImage expectedRendering(BufferedImage image, SpriteImageLayout layout,
+            SpriteAlignment alignment, int marginLeft, int marginRight, int marginTop, int marginBottom) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final boolean vertical = SpriteImageLayout.VERTICAL.equals(layout);
+        final boolean horizontal = SpriteImageLayout.HORIZONTAL.equals(layout);
+        final BufferedImage rendered = new BufferedImage(vertical ? DIMENSION : marginLeft + width + marginRight,
+                horizontal ? DIMENSION : marginTop + height + marginBottom, BufferedImage.TYPE_4BYTE_ABGR);
+
+        int x = marginLeft;
+        int y = marginTop;
+        int columns = 1;
+        int rows = 1;
+        if (vertical && SpriteAlignment.RIGHT.equals(alignment)) {
+            x = DIMENSION - marginRight - width;
+        } else if (vertical && SpriteAlignment.CENTER.equals(alignment)) {
+            x = (DIMENSION - width) / 2;
+        } else if (vertical && SpriteAlignment.REPEAT.equals(alignment)) {
+            x = 0;
+            columns = DIMENSION / width;
+        } else if (horizontal && SpriteAlignment.BOTTOM.equals(alignment)) {
+            y = DIMENSION - marginBottom - height;
+        } else if (horizontal && SpriteAlignment.CENTER.equals(alignment)) {
+            y = (DIMENSION - height) / 2;
+        } else if (horizontal && SpriteAlignment.REPEAT.equals(alignment)) {
+            y = 0;
+            rows = DIMENSION / height;
+        }
+
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                for (int imageY = 0; imageY < height; imageY++) {
+                    for (int imageX = 0; imageX < width; imageX++) {
+                        rendered.setRGB(x + column * width + imageX, y + row * height + imageY,
+                                image.getRGB(imageX, imageY));
+                    }
+                }
+            }
+        }
+        return rendered;
+    }
+
+    /**
+     * Lays out a single sheet of a sprite image.
+     *
+     * @param layout
+     *            the layout
+     * @param images
+     *            the individual images
+     *
+     * @return the sprite image
+     */
+    private SpriteImage buildSprite(SpriteImageLayout layout, Map<SpriteReferenceOccurrence, BufferedImage> images) {
+        final SpriteImageDirective directive = new SpriteImageDirective("sprite", "sprite.png", layout,
+                SpriteImageFormat.PNG, null, SpriteUidType.NONE, 1);
+        final List<SpriteImage> sheets = SpriteImageBuilder
+                .buildSpriteSheets(new SpriteImageOccurrence(directive, "style.css", 1), images, messageLog);
+        assertEquals(1, sheets.size());
+        return sheets.get(0);
+    }
+
+    /**
+     * Returns the vertical positions of the individual images within the sprite, in their order.
+     *
+     * @param sprite
+     *            the sprite
+     *
+     * @return the vertical positions
+     */
+    private static List<Integer> verticalPositions(SpriteImage sprite) {
+        return sprite.spriteReferenceReplacements.values().stream().map(r -> r.verticalPosition)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Creates a sprite reference occurrence.
+     *
+     * @param alignment
+     *            the alignment
+     * @param marginLeft
+     *            the margin left
+     * @param marginRight
+     *            the margin right
+     * @param marginTop
+     *            the margin top
+     * @param marginBottom
+     *            the margin bottom
+     *
+     * @return the sprite reference occurrence
+     */
+    private static SpriteReferenceOccurrence occurrence(SpriteAlignment alignment, int marginLeft, int marginRight,
+            int marginTop, int marginBottom) {
+        return new SpriteReferenceOccurrence(new SpriteReferenceDirective("sprite",
+                new SpriteLayoutProperties(alignment, marginLeft, marginRight, marginTop, marginBottom)), "image.png",
+                "style.css", 1, false);
+    }
+
+    /**
+     * Creates a transparent image with a block of distinct opaque pixels.
+     *
+     * @param width
+     *            the image width
+     * @param height
+     *            the image height
+     * @param x
+     *            the x coordinate of the block
+     * @param y
+     *            the y coordinate of the block
+     * @param blockWidth
+     *            the block width, 0 for a fully transparent image
+     * @param blockHeight
+     *            the block height
+     *
+     * @return the image
+     */
+    private static BufferedImage image(int width, int height, int x, int y, int blockWidth, int blockHeight) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int blockY = 0; blockY < blockHeight; blockY++) {
+            for (int blockX = 0; blockX < blockWidth; blockX++) {
+                image.setRGB(x + blockX, y + blockY, 0xff000000 | blockX << 16 | blockY << 8 | 0x80);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Returns the pixels of an image in the default ARGB color model.
+     *
+     * @param image
+     *            the image
+     *
+     * @return the pixels
+     */
+    private static int[] argb(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
@@ -9,16 +9,20 @@ package org.carrot2.labs.smartsprites;
 
 import static org.carrot2.labs.test.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.awt.Color;
 
+import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteTrimMode;
 import org.carrot2.labs.smartsprites.SpriteImageDirective.SpriteUidType;
 import org.carrot2.labs.smartsprites.SpriteLayoutProperties.SpriteAlignment;
 import org.carrot2.labs.smartsprites.message.Message;
 import org.carrot2.labs.smartsprites.message.Message.MessageLevel;
 import org.carrot2.labs.smartsprites.message.Message.MessageType;
+import org.carrot2.util.QuantizerEngine;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -289,6 +293,98 @@ class SpriteImageDirectiveTest extends TestWithMemoryMessageSink {
                 new Message(Message.MessageLevel.WARN, Message.MessageType.UNSUPPORTED_LAYOUT, null, 0, "other"));
     }
 
+    /**
+     * Test quantizer.
+     */
+    @Test
+    void testQuantizer() {
+        final SpriteImageDirective directive = SpriteImageDirective
+                .parse("sprite: sprite; sprite-image: url('../sprite.png'); sprite-quantizer: median-cut", messageLog);
+
+        assertNotNull(directive);
+        assertEquals(QuantizerEngine.MEDIAN_CUT, directive.quantizer);
+        assertNull(SpriteImageDirective.parse("sprite: sprite; sprite-image: url('../sprite.png')", messageLog)
+                .quantizer);
+        assertThat(messages).isEmpty();
+    }
+
+    /**
+     * Test unsupported quantizer.
+     */
+    @Test
+    void testUnsupportedQuantizer() {
+        final SpriteImageDirective directive = SpriteImageDirective
+                .parse("sprite: sprite; sprite-image: url('../sprite.png'); sprite-quantizer: other", messageLog);
+
+        assertNotNull(directive);
+        assertNull(directive.quantizer);
+        assertThat(messages).isEquivalentTo(
+                new Message(Message.MessageLevel.WARN, Message.MessageType.UNSUPPORTED_QUANTIZER, null, 0, "other"));
+    }
+
+    /**
+     * Test sheet limits.
+     */
+    @Test
+    void testSheetLimits() {
+        final SpriteImageDirective directive = SpriteImageDirective.parse("sprite: sprite; "
+                + "sprite-image: url('../sprite.png'); sprite-max-width: 100px; sprite-max-height: 50; "
+                + "sprite-max-bytes: 16000", messageLog);
+
+        assertNotNull(directive);
+        assertEquals(100, directive.maxWidth);
+        assertEquals(50, directive.maxHeight);
+        assertEquals(16000, directive.maxBytes);
+        assertTrue(directive.fitsSheetLimits(100, 40));
+        assertFalse(directive.fitsSheetLimits(100, 41));
+        assertFalse(directive.fitsSheetLimits(101, 10));
+        assertThat(messages).isEmpty();
+    }
+
+    /**
+     * Test invalid sheet limit.
+     */
+    @Test
+    void testInvalidSheetLimit() {
+        final SpriteImageDirective directive = SpriteImageDirective.parse(
+                "sprite: sprite; sprite-image: url('../sprite.png'); sprite-max-height: -10px", messageLog);
+
+        assertNotNull(directive);
+        assertEquals(0, directive.maxHeight);
+        assertFalse(directive.hasSheetLimits());
+        assertThat(messages).isEquivalentTo(new Message(Message.MessageLevel.WARN,
+                Message.MessageType.CANNOT_PARSE_SPRITE_LIMIT_VALUE, null, 0, "sprite-max-height", "-10px"));
+    }
+
+    /**
+     * Test trim mode.
+     */
+    @Test
+    void testTrimMode() {
+        final SpriteImageDirective directive = SpriteImageDirective
+                .parse("sprite: sprite; sprite-image: url('../sprite.png'); sprite-trim: transparent", messageLog);
+
+        assertNotNull(directive);
+        assertEquals(SpriteTrimMode.TRANSPARENT, directive.trimMode);
+        assertEquals(SpriteTrimMode.NONE,
+                SpriteImageDirective.parse("sprite: sprite; sprite-image: url('../sprite.png')", messageLog).trimMode);
+        assertThat(messages).isEmpty();
+    }
+
+    /**
+     * Test unsupported trim mode.
+     */
+    @Test
+    void testUnsupportedTrimMode() {
+        final SpriteImageDirective directive = SpriteImageDirective
+                .parse("sprite: sprite; sprite-image: url('../sprite.png'); sprite-trim: other", messageLog);
+
+        assertNotNull(directive);
+        assertEquals(SpriteTrimMode.NONE, directive.trimMode);
+        assertThat(messages).isEquivalentTo(
+                new Message(Message.MessageLevel.WARN, Message.MessageType.UNSUPPORTED_TRIM_MODE, null, 0, "other"));
+    }
+
     /**
      * Test unsupported properties.
      */
@@ -39,6 +39,10 @@ class SpriteReferenceDirectiveTest extends TestWithMemoryMessageSink {
     private static final SpriteImageDirective HORIZONTAL_SPRITE_IMAGE_DIRECTIVE = new SpriteImageDirective("hsprite",
             "hsprite.png", SpriteImageLayout.HORIZONTAL, SpriteImageFormat.PNG, Color.WHITE, SpriteUidType.NONE, 1);
 
+    /** The Constant PACKED_SPRITE_IMAGE_DIRECTIVE. */
+    private static final SpriteImageDirective PACKED_SPRITE_IMAGE_DIRECTIVE = new SpriteImageDirective("psprite",
+            "psprite.png", SpriteImageLayout.PACKED, SpriteImageFormat.PNG, Color.WHITE, SpriteUidType.NONE, 1);
+
     /** The Constant VERTICAL_SPRITE_IMAGE_DIRECTIVE_WITH_LAYOUT. */
     private static final SpriteImageDirective VERTICAL_SPRITE_IMAGE_DIRECTIVE_WITH_LAYOUT = new SpriteImageDirective(
             "vsprite", "sprite.png", SpriteImageLayout.VERTICAL, SpriteImageFormat.PNG, Color.WHITE, SpriteUidType.NONE,
@@ -46,8 +50,8 @@ class SpriteReferenceDirectiveTest extends TestWithMemoryMessageSink {
 
     /** The Constant SPRITE_IMAGE_DIRECTIVES. */
     private static final Map<String, SpriteImageDirective> SPRITE_IMAGE_DIRECTIVES = ImmutableMap.of("vsprite",
-            VERTICAL_SPRITE_IMAGE_DIRECTIVE, "hsprite", HORIZONTAL_SPRITE_IMAGE_DIRECTIVE, "vlsprite",
-            VERTICAL_SPRITE_IMAGE_DIRECTIVE_WITH_LAYOUT);
+            VERTICAL_SPRITE_IMAGE_DIRECTIVE, "hsprite", HORIZONTAL_SPRITE_IMAGE_DIRECTIVE, "psprite",
+            PACKED_SPRITE_IMAGE_DIRECTIVE, "vlsprite", VERTICAL_SPRITE_IMAGE_DIRECTIVE_WITH_LAYOUT);
 
     /**
      * Test empty.
@@ -190,6 +194,24 @@ class SpriteReferenceDirectiveTest extends TestWithMemoryMessageSink {
                 Message.MessageType.ONLY_TOP_OR_BOTTOM_ALIGNMENT_ALLOWED);
     }
 
+    /**
+     * Test mismatched repeat alignment in a packed sprite.
+     */
+    @Test
+    void testMismatchedPackedRepeatAlignment() {
+        checkMismatchedAlignment("psprite", "repeat", SpriteAlignment.LEFT,
+                Message.MessageType.ONLY_LEFT_OR_TOP_ALIGNMENT_ALLOWED);
+    }
+
+    /**
+     * Test mismatched right alignment in a packed sprite.
+     */
+    @Test
+    void testMismatchedPackedRightAlignment() {
+        checkMismatchedAlignment("psprite", "right", SpriteAlignment.LEFT,
+                Message.MessageType.ONLY_LEFT_OR_TOP_ALIGNMENT_ALLOWED);
+    }
+
     /**
      * Check mismatched alignment.
      *
@@ -86,4 +86,30 @@ class LevelCounterMessageSinkTest {
         sink.add(new Message(MessageLevel.WARN, MessageType.GENERIC, null, 0, "w"));
         assertTrue(sink.getWarnCount() > 0);
     }
+
+    /**
+     * Counts messages added concurrently.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    @Test
+    void countsConcurrentMessages() throws InterruptedException {
+        final LevelCounterMessageSink sink = new LevelCounterMessageSink();
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    sink.add(new Message(MessageLevel.INFO, MessageType.GENERIC, null, 0, "i"));
+                    sink.add(new Message(MessageLevel.WARN, MessageType.GENERIC, null, 0, "w"));
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, sink.getInfoCount());
+        assertEquals(4000, sink.getWarnCount());
+    }
 }
@@ -0,0 +1,128 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.labs.smartsprites.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.carrot2.labs.smartsprites.message.Message.MessageLevel;
+import org.carrot2.labs.smartsprites.message.Message.MessageType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for {@link MessageLog}.
+ */
+class MessageLogTest {
+
+    /** The sink. */
+    private MemoryMessageSink sink;
+
+    /** The log. */
+    private MessageLog log;
+
+    /**
+     * Prepare.
+     */
+    @BeforeEach
+    void prepare() {
+        sink = new MemoryMessageSink();
+        log = new MessageLog(sink);
+    }
+
+    /**
+     * Messages carry the current location.
+     */
+    @Test
+    void messagesCarryCurrentLocation() {
+        log.setCssFile("a.css");
+        log.setLine(3);
+        log.warning(MessageType.GENERIC, "w");
+
+        assertMessage(0, "a.css", 3);
+    }
+
+    /**
+     * Child logs share sinks but not the location.
+     */
+    @Test
+    void childLogHasOwnLocation() {
+        log.setCssFile("a.css");
+        log.setLine(3);
+
+        final MessageLog child = log.child();
+        child.setCssFile("b.css");
+        child.setLine(7);
+        child.info(MessageType.GENERIC, "child");
+        log.info(MessageType.GENERIC, "parent");
+
+        assertMessage(0, "b.css", 7);
+        assertMessage(1, "a.css", 3);
+    }
+
+    /**
+     * Buffered logs hold messages until flushed.
+     */
+    @Test
+    void bufferedLogHoldsMessagesUntilFlushed() {
+        final MessageLog first = log.buffered();
+        final MessageLog second = log.buffered();
+        second.setCssFile("b.css");
+        second.setLine(2);
+        second.info(MessageType.GENERIC, "second");
+        first.setCssFile("a.css");
+        first.setLine(1);
+        first.info(MessageType.GENERIC, "first");
+        assertTrue(sink.messages.isEmpty());
+
+        first.flush();
+        second.flush();
+
+        assertEquals(2, sink.messages.size());
+        assertMessage(0, "a.css", 1);
+        assertMessage(1, "b.css", 2);
+    }
+
+    /**
+     * Flushing moves the parent log to the buffered log's location, messages logged before the buffered log set its
+     * line get the line of the parent.
+     */
+    @Test
+    void flushUpdatesParentLocation() {
+        log.setCssFile("a.css");
+        log.setLine(5);
+
+        final MessageLog buffered = log.buffered();
+        buffered.setCssFile(null);
+        buffered.info(MessageType.GENERIC, "inherited");
+        buffered.setCssFile("b.css");
+        buffered.setLine(9);
+        buffered.flush();
+        log.info(MessageType.GENERIC, "after");
+
+        assertMessage(0, null, 5);
+        assertMessage(1, "b.css", 9);
+    }
+
+    /**
+     * Asserts the location of a logged message.
+     *
+     * @param index
+     *            the message index
+     * @param cssPath
+     *            the expected css path
+     * @param line
+     *            the expected line
+     */
+    private void assertMessage(int index, String cssPath, int line) {
+        final Message message = sink.messages.get(index);
+        assertEquals(cssPath, message.cssPath);
+        assertEquals(line, message.line);
+        assertTrue(message.level == MessageLevel.INFO || message.level == MessageLevel.WARN);
+    }
+}
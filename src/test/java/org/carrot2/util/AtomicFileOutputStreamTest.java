@@ -0,0 +1,200 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test cases for {@link AtomicFileOutputStream}.
+ */
+class AtomicFileOutputStreamTest {
+
+    /**
+     * Creates a new file.
+     *
+     * @param tempDir
+     *            the temp dir
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void createsFile(@TempDir Path tempDir) throws IOException {
+        final Path file = tempDir.resolve("a.css");
+        write(file, "content");
+
+        assertArrayEquals(bytes("content"), Files.readAllBytes(file));
+        assertEquals(1, count(tempDir));
+    }
+
+    /**
+     * Replaces the content of an existing file.
+     *
+     * @param tempDir
+     *            the temp dir
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void replacesChangedFile(@TempDir Path tempDir) throws IOException {
+        final Path file = tempDir.resolve("a.css");
+        Files.write(file, bytes("old content"));
+        write(file, "new");
+
+        assertArrayEquals(bytes("new"), Files.readAllBytes(file));
+        assertEquals(1, count(tempDir));
+    }
+
+    /**
+     * Leaves a file with the same content untouched.
+     *
+     * @param tempDir
+     *            the temp dir
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void leavesUnchangedFileUntouched(@TempDir Path tempDir) throws IOException {
+        final Path file = tempDir.resolve("a.css");
+        Files.write(file, bytes("content"));
+        final FileTime lastModified = FileTime.fromMillis(1000000000000L);
+        Files.setLastModifiedTime(file, lastModified);
+        write(file, "content");
+
+        assertEquals(lastModified, Files.getLastModifiedTime(file));
+    }
+
+    /**
+     * Leaves the file untouched when the writer fails and aborts the stream.
+     *
+     * @param tempDir
+     *            the temp dir
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void leavesFileUntouchedWhenWriterFails(@TempDir Path tempDir) throws IOException {
+        final Path file = tempDir.resolve("a.css");
+        Files.write(file, bytes("old content"));
+
+        assertThrows(IllegalStateException.class, () -> {
+            try (AtomicFileOutputStream out = new AtomicFileOutputStream(file)) {
+                try {
+                    out.write(bytes("trunc"));
+                    throw new IllegalStateException("Writer failed");
+                } catch (final IllegalStateException e) {
+                    out.abort();
+                    out.write(bytes("ated"));
+                    throw e;
+                }
+            }
+        });
+
+        assertArrayEquals(bytes("old content"), Files.readAllBytes(file));
+        assertEquals(1, count(tempDir));
+    }
+
+    /**
+     * Keeps the permissions of a replaced file.
+     *
+     * @param tempDir
+     *            the temp dir
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void keepsPermissionsOfReplacedFile(@TempDir Path tempDir) throws IOException {
+        assumeTrue(Files.getFileAttributeView(tempDir, PosixFileAttributeView.class) != null);
+        final Path file = tempDir.resolve("a.css");
+        Files.write(file, bytes("old content"));
+        final Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(file, permissions);
+        write(file, "new");
+
+        assertArrayEquals(bytes("new"), Files.readAllBytes(file));
+        assertEquals(permissions, Files.getPosixFilePermissions(file));
+    }
+
+    /**
+     * Fails when opened for a file in a missing directory.
+     *
+     * @param tempDir
+     *            the temp dir
+     */
+    @Test
+    void failsForMissingDirectory(@TempDir Path tempDir) {
+        assertThrows(IOException.class, () -> new AtomicFileOutputStream(tempDir.resolve("missing/a.css")));
+    }
+
+    /**
+     * Writes the content to the file.
+     *
+     * @param file
+     *            the file
+     * @param content
+     *            the content
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static void write(Path file, String content) throws IOException {
+        try (AtomicFileOutputStream out = new AtomicFileOutputStream(file)) {
+            out.write(bytes(content));
+        }
+    }
+
+    /**
+     * Encodes the content.
+     *
+     * @param content
+     *            the content
+     *
+     * @return the bytes
+     */
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Counts the files in a directory, temporary files must not be left behind.
+     *
+     * @param dir
+     *            the dir
+     *
+     * @return the number of files
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static long count(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
@@ -7,11 +7,13 @@
  */
 package org.carrot2.util;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.awt.Color;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 import org.junit.jupiter.api.Test;
@@ -21,6 +23,10 @@ import org.junit.jupiter.api.Test;
  */
 class BufferedImageUtilsTest extends BufferedImageTestBase {
 
+    /** Image types read directly from the data buffer and a converted one. */
+    private static final int[] DRAW_IMAGE_TYPES = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_ARGB_PRE };
+
     /**
      * Test has alpha transparency partial.
      *
@@ -132,4 +138,119 @@ class BufferedImageUtilsTest extends BufferedImageTestBase {
         // black is the same in all bands
         assertEquals(1021, BufferedImageUtils.countDistinctColors(image("many-colors.png")));
     }
+
+    /**
+     * Test count distinct colors stops after the limit.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testCountDistinctColorsLimit() throws IOException {
+        assertEquals(256, BufferedImageUtils.countDistinctColors(image("many-colors.png"), 255));
+        assertEquals(4, BufferedImageUtils.countDistinctColors(image("no-alpha.png"), 255));
+    }
+
+    /**
+     * Test flat ARGB pixels match the pixels returned by {@link BufferedImage#getRGB(int, int)} for the image types
+     * read directly from the data buffer and for the converted ones.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testGetArgb() throws IOException {
+        final BufferedImage source = image("full-alpha.png");
+        for (final int type : new int[] { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_3BYTE_BGR }) {
+            final BufferedImage image = new BufferedImage(source.getWidth(), source.getHeight(), type);
+            image.getGraphics().drawImage(source, 0, 0, null);
+            assertArgb(image);
+            assertArgb(image.getSubimage(1, 0, image.getWidth() - 2, image.getHeight()));
+        }
+    }
+
+    /**
+     * Test drawing images copies the same pixels as {@link BufferedImage#setRGB(int, int, int)}, whether the pixels are
+     * copied directly between the data buffers or not.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testDrawImage() throws IOException {
+        for (final int type : DRAW_IMAGE_TYPES) {
+            final BufferedImage image = image("full-alpha.png", type);
+            for (final int canvasType : DRAW_IMAGE_TYPES) {
+                final BufferedImage canvas = new BufferedImage(image.getWidth() + 3, image.getHeight() + 2, canvasType);
+                final BufferedImage expected = new BufferedImage(canvas.getWidth(), canvas.getHeight(), canvasType);
+                BufferedImageUtils.drawImage(image, canvas, 2, 1);
+                for (int y = 0; y < image.getHeight(); y++) {
+                    for (int x = 0; x < image.getWidth(); x++) {
+                        expected.setRGB(x + 2, y + 1, image.getRGB(x, y));
+                    }
+                }
+                assertArrayEquals(BufferedImageUtils.getArgb(expected), BufferedImageUtils.getArgb(canvas));
+            }
+        }
+    }
+
+    /**
+     * Test drawing images repeatedly gives the same result as drawing each repetition.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testDrawImageRepeated() throws IOException {
+        for (final int type : DRAW_IMAGE_TYPES) {
+            final BufferedImage image = image("full-alpha.png", type);
+            final BufferedImage canvas = new BufferedImage(image.getWidth() * 3 + 1, image.getHeight() * 2 + 1, type);
+            final BufferedImage expected = new BufferedImage(canvas.getWidth(), canvas.getHeight(), type);
+            BufferedImageUtils.drawImageRepeated(image, canvas, 1, 1, 3, 2);
+            for (int row = 0; row < 2; row++) {
+                for (int column = 0; column < 3; column++) {
+                    BufferedImageUtils.drawImage(image, expected, 1 + column * image.getWidth(),
+                            1 + row * image.getHeight());
+                }
+            }
+            assertArrayEquals(BufferedImageUtils.getArgb(expected), BufferedImageUtils.getArgb(canvas));
+        }
+    }
+
+    /**
+     * Reads an image and converts it to the provided type.
+     *
+     * @param fileName
+     *            the file name
+     * @param type
+     *            the image type
+     *
+     * @return the image
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private BufferedImage image(String fileName, int type) throws IOException {
+        final BufferedImage source = image(fileName);
+        final BufferedImage image = new BufferedImage(source.getWidth(), source.getHeight(), type);
+        image.getGraphics().drawImage(source, 0, 0, null);
+        return image;
+    }
+
+    /**
+     * Asserts that flat ARGB pixels match the pixels returned by {@link BufferedImage#getRGB(int, int)}.
+     *
+     * @param image
+     *            the image
+     */
+    private static void assertArgb(BufferedImage image) {
+        final int[] argb = BufferedImageUtils.getArgb(image);
+        assertEquals(image.getWidth() * image.getHeight(), argb.length);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getRGB(x, y), argb[y * image.getWidth() + x]);
+            }
+        }
+    }
 }
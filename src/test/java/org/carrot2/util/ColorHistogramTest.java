@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for {@link ColorHistogram}.
+ */
+class ColorHistogramTest {
+
+    /**
+     * Counts the pixels of each color, giving ids in the order the colors are first added.
+     */
+    @Test
+    void countsColors() {
+        final ColorHistogram histogram = new ColorHistogram();
+        final Map<Integer, Integer> expected = new LinkedHashMap<>();
+        final Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            final int color = random.nextInt(50000) - 100;
+            expected.merge(color, 1, Integer::sum);
+            final int id = histogram.add(color);
+            assertEquals(color, histogram.getColors()[id]);
+        }
+
+        assertEquals(expected.size(), histogram.size());
+        int id = 0;
+        for (final Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getKey().intValue(), histogram.getColors()[id]);
+            assertEquals(entry.getValue().intValue(), histogram.getCounts()[id++]);
+        }
+    }
+
+    /**
+     * Sorting by position renumbers the colors in the order of their last pixel and keeps the lookups consistent.
+     */
+    @Test
+    void sortsByPosition() {
+        final ColorHistogram histogram = new ColorHistogram();
+        final Map<Integer, Integer> lastPositions = new LinkedHashMap<>();
+        final Random random = new Random(0);
+        for (int position = 0; position < 100000; position++) {
+            final int color = random.nextInt(5000);
+            lastPositions.put(color, position);
+            histogram.keepPosition(histogram.add(color), position);
+        }
+        final int[] previousColors = histogram.getColors().clone();
+        final int[] previousCounts = histogram.getCounts().clone();
+
+        final int[] newIds = histogram.sortByPosition();
+
+        int lastPosition = -1;
+        for (int id = 0; id < histogram.size(); id++) {
+            final int position = lastPositions.get(histogram.getColors()[id]);
+            assertTrue(position > lastPosition);
+            lastPosition = position;
+        }
+        for (int id = 0; id < newIds.length; id++) {
+            assertEquals(previousColors[id], histogram.getColors()[newIds[id]]);
+            assertEquals(previousCounts[id], histogram.getCounts()[newIds[id]]);
+            assertEquals(newIds[id], histogram.add(previousColors[id]));
+        }
+    }
+}
@@ -7,11 +7,18 @@
  */
 package org.carrot2.util;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.jupiter.api.Test;
 
@@ -22,6 +29,9 @@ import amd.Quantize;
  */
 class ColorQuantizerTest extends BufferedImageTestBase {
 
+    /** Image sizes to test: square, wide, tall, a single row and column and one with many bands. */
+    private static final int[][] SIZES = { { 6, 6 }, { 7, 3 }, { 3, 7 }, { 5, 1 }, { 1, 5 }, { 3, 200000 } };
+
     /**
      * Test one color.
      *
@@ -106,6 +116,20 @@ class ColorQuantizerTest extends BufferedImageTestBase {
                 .isIndexedColor();
     }
 
+    /**
+     * Test reduce with the palette collected by the color reduction info.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    @Test
+    void testReduceWithColorReductionInfo() throws IOException {
+        final BufferedImage source = image("bit-alpha.png");
+        final BufferedImage quantized = ColorQuantizer.reduce(source, ColorQuantizer.getColorReductionInfo(source));
+        org.carrot2.labs.test.Assertions.assertThat(quantized).isEqualTo(ColorQuantizer.reduce(source))
+                .isIndexedColor();
+    }
+
     /**
      * Test many colors quantize.
      *
@@ -121,6 +145,103 @@ class ColorQuantizerTest extends BufferedImageTestBase {
         // Current quantizer is far from perfect
     }
 
+    /**
+     * Test that fully transparent pixels do not take palette colors from the visible ones.
+     */
+    @Test
+    void testQuantizeIgnoresTransparentPixels() {
+        final BufferedImage source = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        source.setRGB(0, 0, 0xffff0000);
+        source.setRGB(1, 0, 0xff0000ff);
+
+        final BufferedImage quantized = ColorQuantizer.quantize(source, Color.WHITE, 2);
+        assertEquals(0xffff0000, quantized.getRGB(0, 0));
+        assertEquals(0xff0000ff, quantized.getRGB(1, 0));
+        assertEquals(0, quantized.getRGB(50, 50) >>> 24);
+    }
+
+    /**
+     * Test that quantizing in a pool gives the same image as quantizing on the calling thread.
+     */
+    @Test
+    void testQuantizeInPool() {
+        final BufferedImage source = new BufferedImage(700, 900, BufferedImage.TYPE_INT_ARGB);
+        final Random random = new Random(0);
+        for (int y = 0; y < source.getHeight(); y++) {
+            for (int x = 0; x < source.getWidth(); x++) {
+                source.setRGB(x, y, random.nextInt(10) == 0 ? 0 : 0xff000000 | random.nextInt(1 << 12) * 0x1010);
+            }
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (final QuantizerEngine engine : QuantizerEngine.values()) {
+                final BufferedImage expected = ColorQuantizer.quantize(source, Color.WHITE, 255,
+                        engine.createQuantizer(), depth -> {
+                            // Ignore
+                        });
+                final BufferedImage quantized = ColorQuantizer.quantize(source, Color.WHITE, 255,
+                        engine.createQuantizer(), depth -> {
+                            // Ignore
+                        }, pool);
+                assertArrayEquals(getPalette(expected), getPalette(quantized));
+                assertArrayEquals(((DataBufferByte) expected.getRaster().getDataBuffer()).getData(),
+                        ((DataBufferByte) quantized.getRaster().getDataBuffer()).getData());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test that reduced images map each pixel to the palette entry of its color, with the palette holding transparency
+     * followed by the sorted colors, for square and non-square images.
+     */
+    @Test
+    void testReduceIndicesAndPalette() {
+        for (final int[] size : SIZES) {
+            final BufferedImage source = patternImage(size[0], size[1]);
+            final BufferedImage reduced = ColorQuantizer.reduce(source);
+
+            final int[] palette = getPalette(reduced);
+            final int[] colors = getDistinctColors(source);
+            assertEquals(0, palette[0] >>> 24);
+            assertArrayEquals(colors, Arrays.copyOfRange(palette, 1, palette.length));
+            assertIndices(source, reduced);
+        }
+    }
+
+    /**
+     * Test that quantized images map each pixel to the palette entry of its color, with transparency at index 0, for
+     * square and non-square images and all quantizers. The images have few enough colors to keep them all.
+     */
+    @Test
+    void testQuantizeIndicesAndPalette() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (final int[] size : SIZES) {
+                final BufferedImage source = patternImage(size[0], size[1]);
+                for (final QuantizerEngine engine : QuantizerEngine.values()) {
+                    for (final ForkJoinPool quantizePool : new ForkJoinPool[] { null, pool }) {
+                        final BufferedImage quantized = ColorQuantizer.quantize(source, Color.WHITE, 255,
+                                engine.createQuantizer(), depth -> {
+                                    // Ignore
+                                }, quantizePool);
+
+                        final int[] palette = getPalette(quantized);
+                        final int[] colors = Arrays.copyOfRange(palette, 1, palette.length);
+                        Arrays.sort(colors);
+                        assertEquals(0, palette[0] >>> 24);
+                        assertArrayEquals(getDistinctColors(source), colors);
+                        assertIndices(source, quantized);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     /**
      * Test many colors reduce.
      *
@@ -151,6 +272,80 @@ class ColorQuantizerTest extends BufferedImageTestBase {
         checkDataLoss("one-color.png", true);
     }
 
+    /**
+     * Creates an image with a repeating pattern of opaque gray levels and transparent pixels, which differs between
+     * rows and columns, so that transposed pixels are noticed.
+     *
+     * @param width
+     *            the width
+     * @param height
+     *            the height
+     *
+     * @return the image
+     */
+    private static BufferedImage patternImage(int width, int height) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int value = (x * 5 + y * 3) % 13;
+                image.setRGB(x, y, value == 0 ? 0 : 0xff000000 | value * 0x131313);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Gets the sorted distinct colors of the visible pixels of an image.
+     *
+     * @param image
+     *            the image
+     *
+     * @return the colors
+     */
+    private static int[] getDistinctColors(BufferedImage image) {
+        return Arrays.stream(image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth()))
+                .filter(color -> color >>> 24 != 0).distinct().sorted().toArray();
+    }
+
+    /**
+     * Asserts that the palette index of each pixel of an indexed image, in row-major order, refers to the color of
+     * the same pixel of the source image, or to the transparency entry for transparent pixels.
+     *
+     * @param source
+     *            the source image
+     * @param indexed
+     *            the indexed image
+     */
+    private static void assertIndices(BufferedImage source, BufferedImage indexed) {
+        final int[] palette = getPalette(indexed);
+        final byte[] indices = ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+        final int width = source.getWidth();
+        assertEquals(width * source.getHeight(), indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            final int color = source.getRGB(i % width, i / width);
+            if (color >>> 24 == 0) {
+                assertEquals(0, indices[i]);
+            } else {
+                assertEquals(color, palette[indices[i] & 0xff]);
+            }
+        }
+    }
+
+    /**
+     * Gets the palette of an indexed image.
+     *
+     * @param image
+     *            the image
+     *
+     * @return the palette
+     */
+    private static int[] getPalette(BufferedImage image) {
+        final IndexColorModel colorModel = (IndexColorModel) image.getColorModel();
+        final int[] palette = new int[colorModel.getMapSize()];
+        colorModel.getRGBs(palette);
+        return palette;
+    }
+
     /**
      * Check data loss.
      *
@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for {@link IntHashSet}.
+ */
+class IntHashSetTest {
+
+    /**
+     * Adds and finds values, including the value marking empty slots.
+     */
+    @Test
+    void addsValues() {
+        final IntHashSet set = new IntHashSet();
+        assertTrue(set.add(0));
+        assertTrue(set.add(0xffffff));
+        assertTrue(set.add(-1));
+        assertFalse(set.add(0));
+        assertFalse(set.add(0xffffff));
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(-1));
+        assertFalse(set.contains(1));
+    }
+
+    /**
+     * Grows to hold many values, matching a {@link HashSet}.
+     */
+    @Test
+    void growsLikeHashSet() {
+        final IntHashSet set = new IntHashSet(2);
+        final Set<Integer> expected = new HashSet<>();
+        final Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            final int value = random.nextInt(50000);
+            assertEquals(expected.add(value), set.add(value));
+        }
+
+        assertEquals(expected.size(), set.size());
+        final int[] values = set.toArray(0);
+        Arrays.sort(values);
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).sorted().toArray(), values);
+    }
+
+    /**
+     * Leaves the padding at the beginning of the array.
+     */
+    @Test
+    void toArrayWithPadding() {
+        final IntHashSet set = new IntHashSet();
+        set.add(7);
+
+        assertArrayEquals(new int[] { 0, 0, 7 }, set.toArray(2));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for {@link QuantizerEngine} and the {@link PaletteQuantizer}s.
+ */
+class QuantizerEngineTest {
+
+    /**
+     * Parses the names and the values.
+     */
+    @Test
+    void parsesValues() {
+        assertEquals(QuantizerEngine.MEDIAN_CUT, QuantizerEngine.getValue("median-cut"));
+        assertEquals(QuantizerEngine.MEDIAN_CUT, QuantizerEngine.getValue("MEDIAN_CUT"));
+        assertEquals(QuantizerEngine.WU, QuantizerEngine.getValue(" wu "));
+        assertEquals("octree, median-cut, wu", QuantizerEngine.valuesAsString());
+        assertThrows(IllegalArgumentException.class, () -> QuantizerEngine.getValue("other"));
+    }
+
+    /**
+     * Only the octree depends on the order of the colors, and only when it may be pruned.
+     */
+    @Test
+    void dependsOnColorOrder() {
+        assertFalse(QuantizerEngine.OCTREE.createQuantizer().dependsOnColorOrder(255));
+        assertTrue(QuantizerEngine.OCTREE.createQuantizer().dependsOnColorOrder(20000));
+        assertFalse(QuantizerEngine.MEDIAN_CUT.createQuantizer().dependsOnColorOrder(20000));
+        assertFalse(QuantizerEngine.WU.createQuantizer().dependsOnColorOrder(20000));
+    }
+
+    /**
+     * Every call creates a new quantizer, so that no storage outlives its caller.
+     */
+    @Test
+    void createsNewQuantizers() {
+        for (final QuantizerEngine engine : QuantizerEngine.values()) {
+            assertNotSame(engine.createQuantizer(), engine.createQuantizer());
+        }
+    }
+
+    /**
+     * The pool lends each quantizer to one caller at a time and reuses the quantizers given back.
+     */
+    @Test
+    void poolReusesQuantizers() {
+        final QuantizerPool pool = new QuantizerPool();
+        for (final QuantizerEngine engine : QuantizerEngine.values()) {
+            final PaletteQuantizer first = pool.acquire(engine);
+            final PaletteQuantizer second = pool.acquire(engine);
+            assertNotSame(first, second);
+
+            pool.release(engine, first);
+            assertSame(first, pool.acquire(engine));
+        }
+    }
+
+    /**
+     * All engines build palettes of opaque colors no longer than requested and map every color to them.
+     */
+    @Test
+    void mapsColorsToPalette() {
+        final Random random = new Random(0);
+        for (final QuantizerEngine engine : QuantizerEngine.values()) {
+            for (final int maxColors : new int[] { 255, 16, 1 }) {
+                final int length = 5000;
+                final int[] colors = new int[length];
+                final int[] counts = new int[length];
+                for (int i = 0; i < length; i++) {
+                    colors[i] = i * 3355;
+                    counts[i] = 1 + random.nextInt(100);
+                }
+
+                final int[] palette = engine.createQuantizer().quantize(colors, counts, length, maxColors, depth -> {
+                    // Ignore
+                });
+                assertTrue(palette.length > 0 && palette.length <= maxColors, engine.toString());
+                for (final int color : palette) {
+                    assertEquals(0xff, color >>> 24, engine.toString());
+                }
+                for (final int index : colors) {
+                    assertTrue(index >= 0 && index < palette.length, engine.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Median cut and Wu keep the colors of images with fewer colors than the palette, as long as Wu's grid cells
+     * separate them.
+     */
+    @Test
+    void keepsFewColors() {
+        final int[] expected = { 0xff000000, 0xff0000ff, 0xff00ff00, 0xffff0000, 0xffffffff };
+        for (final QuantizerEngine engine : new QuantizerEngine[] { QuantizerEngine.MEDIAN_CUT,
+                QuantizerEngine.WU }) {
+            final int[] colors = expected.clone();
+            final int[] palette = engine.createQuantizer().quantize(colors, new int[] { 1, 2, 3, 4, 5 }, colors.length,
+                    255, depth -> {
+                        // Ignore
+                    });
+
+            final int[] mapped = new int[colors.length];
+            for (int i = 0; i < colors.length; i++) {
+                mapped[i] = palette[colors[i]];
+            }
+            assertArrayEquals(expected, mapped, engine.toString());
+        }
+    }
+
+    /**
+     * An image without visible colors gets an empty palette.
+     */
+    @Test
+    void emptyHistogram() {
+        for (final QuantizerEngine engine : QuantizerEngine.values()) {
+            assertEquals(0, engine.createQuantizer().quantize(new int[0], new int[0], 0, 255, depth -> {
+                // Ignore
+            }).length, engine.toString());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * SPDX-License-Identifier: BSD-3-Clause
+ * See LICENSE file for details.
+ *
+ * Copyright 2021-2026 Hazendaz
+ * Copyright (C) 2007-2009, Stanisław Osiński.
+ */
+package org.carrot2.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for {@link SkylinePacker}.
+ */
+class SkylinePackerTest {
+
+    /**
+     * A single rectangle goes to the origin.
+     */
+    @Test
+    void singleRectangle() {
+        assertArrayEquals(new int[] { 0, 0 }, SkylinePacker.pack(new int[] { 10 }, new int[] { 20 }, 1));
+    }
+
+    /**
+     * Small icons are placed next to a wide banner instead of below each other.
+     */
+    @Test
+    void iconsNextToBanner() {
+        final int[] widths = { 16, 1000, 16, 16, 16 };
+        final int[] heights = { 16, 60, 16, 16, 16 };
+        final int[] positions = SkylinePacker.pack(widths, heights, widths.length);
+
+        assertNoOverlaps(widths, heights, positions);
+        assertEquals((1000 + 2 * 16) * 60, boundingBoxArea(widths, heights, positions));
+    }
+
+    /**
+     * Random rectangles do not overlap and fill most of the bounding box.
+     */
+    @Test
+    void randomRectangles() {
+        final Random random = new Random(0);
+        final int count = 200;
+        final int[] widths = new int[count];
+        final int[] heights = new int[count];
+        long area = 0;
+        for (int i = 0; i < count; i++) {
+            widths[i] = 1 + random.nextInt(64);
+            heights[i] = 1 + random.nextInt(64);
+            area += widths[i] * heights[i];
+        }
+        final int[] positions = SkylinePacker.pack(widths, heights, count);
+
+        assertNoOverlaps(widths, heights, positions);
+        assertTrue(boundingBoxArea(widths, heights, positions) < area * 3 / 2);
+    }
+
+    /**
+     * Checks that no two rectangles overlap.
+     *
+     * @param widths
+     *            the widths
+     * @param heights
+     *            the heights
+     * @param positions
+     *            the positions
+     */
+    private static void assertNoOverlaps(int[] widths, int[] heights, int[] positions) {
+        for (int i = 0; i < widths.length; i++) {
+            assertTrue(positions[i * 2] >= 0 && positions[i * 2 + 1] >= 0);
+            for (int j = i + 1; j < widths.length; j++) {
+                assertFalse(positions[i * 2] < positions[j * 2] + widths[j]
+                        && positions[j * 2] < positions[i * 2] + widths[i]
+                        && positions[i * 2 + 1] < positions[j * 2 + 1] + heights[j]
+                        && positions[j * 2 + 1] < positions[i * 2 + 1] + heights[i], i + " overlaps " + j);
+            }
+        }
+    }
+
+    /**
+     * Computes the area of the bounding box of the rectangles.
+     *
+     * @param widths
+     *            the widths
+     * @param heights
+     *            the heights
+     * @param positions
+     *            the positions
+     *
+     * @return the area
+     */
+    private static long boundingBoxArea(int[] widths, int[] heights, int[] positions) {
+        long width = 0;
+        long height = 0;
+        for (int i = 0; i < widths.length; i++) {
+            width = Math.max(width, positions[i * 2] + widths[i]);
+            height = Math.max(height, positions[i * 2 + 1] + heights[i]);
+        }
+        return width * height;
+    }
+}